@@ -0,0 +1,136 @@
+package com.logistics.common.geo;
+
+/**
+ * 分层网格编码（四叉树 + Morton码，打包为一个long）
+ *
+ * 第 L 层把经度 [-180, 180) 和纬度 [-90, 270) 各等分为 2^L 份，网格为边长 360/2^L 度的正方形
+ * （纬度只用到下半部分），列号 x、行号 y 按位交错得到 Morton 码，层级存放在高位：
+ *
+ *   cell = level << 56 | interleave(x, y)
+ *
+ * 上一层网格的编码只需把 Morton 码右移2位，因此父子关系、任意层级的上卷都是位运算；
+ * 同一层中 Morton 码相近的网格在空间上也相近，按编码建索引时视窗查询只需扫描少数几段连续范围。
+ * Spark 与后端共用本类，保证编码一致。
+ */
+public final class GeoCell {
+
+    public static final int MAX_LEVEL = 26;
+
+    public static final int LEVEL_SHIFT = 56;
+
+    public static final long MORTON_MASK = (1L << LEVEL_SHIFT) - 1;
+
+    /** 位交错：每轮的左移位数和掩码（把32位整数的各位分散到偶数位） */
+    public static final int[] SPREAD_SHIFTS = {16, 8, 4, 2, 1};
+    public static final long[] SPREAD_MASKS = {
+            0x0000FFFF0000FFFFL, 0x00FF00FF00FF00FFL, 0x0F0F0F0F0F0F0F0FL,
+            0x3333333333333333L, 0x5555555555555555L
+    };
+
+    private GeoCell() {
+    }
+
+    /**
+     * 计算经纬度所在的第 level 层网格
+     */
+    public static long encode(double lng, double lat, int level) {
+        return of(level, gridIndex(lng + 180, level), gridIndex(lat + 90, level));
+    }
+
+    /**
+     * 由层级和列号、行号（均从0开始，列号自西向东，行号自南向北）构造网格编码
+     */
+    public static long of(int level, long x, long y) {
+        checkLevel(level);
+        long cells = 1L << level;
+        if (x < 0 || x >= cells || y < 0 || y >= cells) {
+            throw new IllegalArgumentException("第" + level + "层网格行列号超出范围: x=" + x + ", y=" + y);
+        }
+        return ((long) level << LEVEL_SHIFT) | spread(x) | (spread(y) << 1);
+    }
+
+    public static long x(long cell) {
+        return compact(cell & MORTON_MASK);
+    }
+
+    public static long y(long cell) {
+        return compact((cell & MORTON_MASK) >>> 1);
+    }
+
+    public static int level(long cell) {
+        return (int) (cell >>> LEVEL_SHIFT);
+    }
+
+    /**
+     * 上卷到更粗的第 level 层
+     */
+    public static long parent(long cell, int level) {
+        int cellLevel = level(cell);
+        if (level > cellLevel) {
+            throw new IllegalArgumentException("父网格层级不能大于当前层级: " + level + " > " + cellLevel);
+        }
+        long morton = (cell & MORTON_MASK) >>> (2 * (cellLevel - level));
+        return ((long) level << LEVEL_SHIFT) | morton;
+    }
+
+    /**
+     * 第 level 层网格的边长（度）
+     */
+    public static double cellSize(int level) {
+        checkLevel(level);
+        return 360.0 / (1L << level);
+    }
+
+    /**
+     * 与给定边长（度）最接近的层级
+     */
+    public static int levelForCellSize(double sizeDegrees) {
+        if (!(sizeDegrees > 0)) {
+            throw new IllegalArgumentException("网格边长必须大于0: " + sizeDegrees);
+        }
+        long level = Math.round(Math.log(360.0 / sizeDegrees) / Math.log(2));
+        return (int) Math.max(0, Math.min(MAX_LEVEL, level));
+    }
+
+    public static double centerLng(long cell) {
+        return (x(cell) + 0.5) * cellSize(level(cell)) - 180;
+    }
+
+    public static double centerLat(long cell) {
+        return (y(cell) + 0.5) * cellSize(level(cell)) - 90;
+    }
+
+    /**
+     * 把32位整数的各位分散到偶数位
+     */
+    public static long spread(long value) {
+        long v = value & 0xFFFFFFFFL;
+        for (int i = 0; i < SPREAD_SHIFTS.length; i++) {
+            v = (v | (v << SPREAD_SHIFTS[i])) & SPREAD_MASKS[i];
+        }
+        return v;
+    }
+
+    /**
+     * spread 的逆运算：取出偶数位
+     */
+    public static long compact(long value) {
+        long v = value & SPREAD_MASKS[SPREAD_MASKS.length - 1];
+        for (int i = SPREAD_SHIFTS.length - 1; i > 0; i--) {
+            v = (v | (v >>> SPREAD_SHIFTS[i])) & SPREAD_MASKS[i - 1];
+        }
+        return (v | (v >>> SPREAD_SHIFTS[0])) & 0xFFFFFFFFL;
+    }
+
+    private static long gridIndex(double offsetDegrees, int level) {
+        long cells = 1L << level;
+        long index = (long) Math.floor(offsetDegrees / 360.0 * cells);
+        return Math.max(0, Math.min(cells - 1, index));
+    }
+
+    private static void checkLevel(int level) {
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("网格层级必须在0到" + MAX_LEVEL + "之间: " + level);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.logistics.common.geo;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 热力图瓦片的二进制格式
+ *
+ * 瓦片 z/x/y 就是第 z 层的 {@link GeoCell}（列号自西向东，行号自南向北），
+ * 瓦片内按第 z+BIN_BITS 层网格分为 64×64 个格子，只保存有数据的格子：
+ *
+ *   byte  版本号（1）
+ *   byte  BIN_BITS
+ *   short 格子数 n
+ *   int   最大格子计数（前端按它归一化颜色）
+ *   n × { short 格子序号（瓦片内的Morton码）, int 配送量, float 平均配送时长（小时，无数据为NaN） }
+ *
+ * 所有数值为大端序，每个格子10字节，整块瓦片最大约40KB。
+ * Spark 生成瓦片、前端解码均按本格式，修改格式需同时升级版本号。
+ */
+public final class HeatmapTile {
+
+    public static final byte FORMAT_VERSION = 1;
+
+    /** 瓦片每边 2^BIN_BITS 个格子 */
+    public static final int BIN_BITS = 6;
+
+    public static final int MAX_BINS = 1 << (2 * BIN_BITS);
+
+    private static final int HEADER_BYTES = 8;
+    private static final int BIN_BYTES = 10;
+
+    private final int[] bins;
+    private final int[] counts;
+    private final float[] avgHours;
+
+    /**
+     * @param bins     格子序号（瓦片内的Morton码），升序
+     * @param counts   各格子的配送量
+     * @param avgHours 各格子的平均配送时长
+     */
+    public HeatmapTile(int[] bins, int[] counts, float[] avgHours) {
+        if (bins.length != counts.length || bins.length != avgHours.length) {
+            throw new IllegalArgumentException("格子序号、计数、平均时长的个数必须一致");
+        }
+        if (bins.length > MAX_BINS) {
+            throw new IllegalArgumentException("瓦片格子数超过上限: " + bins.length + " > " + MAX_BINS);
+        }
+        this.bins = bins;
+        this.counts = counts;
+        this.avgHours = avgHours;
+    }
+
+    public int size() {
+        return bins.length;
+    }
+
+    public int bin(int i) {
+        return bins[i];
+    }
+
+    public int count(int i) {
+        return counts[i];
+    }
+
+    public float avgHours(int i) {
+        return avgHours[i];
+    }
+
+    public int maxCount() {
+        return Arrays.stream(counts).max().orElse(0);
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + BIN_BYTES * bins.length);
+        buffer.put(FORMAT_VERSION);
+        buffer.put((byte) BIN_BITS);
+        buffer.putShort((short) bins.length);
+        buffer.putInt(maxCount());
+        for (int i = 0; i < bins.length; i++) {
+            buffer.putShort((short) bins[i]);
+            buffer.putInt(counts[i]);
+            buffer.putFloat(avgHours[i]);
+        }
+        return buffer.array();
+    }
+
+    public static HeatmapTile fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("不支持的热力图瓦片格式版本: " + version);
+        }
+        int binBits = buffer.get();
+        if (binBits != BIN_BITS) {
+            throw new IllegalArgumentException("不支持的瓦片格子精度: " + binBits);
+        }
+        int n = buffer.getShort() & 0xFFFF;
+        buffer.getInt();  // 最大计数，可由格子计数得出
+
+        int[] bins = new int[n];
+        int[] counts = new int[n];
+        float[] avgHours = new float[n];
+        for (int i = 0; i < n; i++) {
+            bins[i] = buffer.getShort() & 0xFFFF;
+            counts[i] = buffer.getInt();
+            avgHours[i] = buffer.getFloat();
+        }
+        return new HeatmapTile(bins, counts, avgHours);
+    }
+}
@@ -0,0 +1,335 @@
+package com.logistics.common.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * 可合并的分位数草图（DDSketch：相对误差保证的对数分桶直方图）
+ *
+ * 正值 v 落入第 ceil(log_γ v) 个桶，γ = (1+α)/(1-α)，任意分位数的估计值与真实值的相对误差不超过 α。
+ * 同精度的草图按桶计数相加即可合并，合并结果与对两批数据的并集直接建草图完全相同，
+ * 因此 Spark 按 (city, date, hour) 保存的草图可以在后端按任意日期范围合并后回答任意分位数。
+ * 精度不同的草图（如调整 spark.logistics.quantile.accuracy 前后写入的草图）也可以合并：
+ * 较细的一方按桶代表值重新分入较粗精度的桶，合并结果使用较粗的精度，误差上限约为两者之和。
+ *
+ * 小于 MIN_INDEXABLE_VALUE 的值（包括0）计入零桶；估计值最终限制在 [min, max] 内。
+ * 序列化格式见 toBytes，Spark 与后端共用本类，保证读写格式一致。
+ */
+public class QuantileSketch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /** 小于该值的样本计入零桶 */
+    public static final double MIN_INDEXABLE_VALUE = 1e-6;
+
+    /** 桶数组扩容时额外预留的桶数 */
+    private static final int GROW_SLACK = 32;
+
+    // 与精度更粗的草图合并时改为对方的精度
+    private double relativeAccuracy;
+    private double gamma;
+    private double logGamma;
+
+    /** counts[i] 为第 offset+i 个桶的计数 */
+    private long[] counts = new long[0];
+    private int offset;
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double sum;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("分位数草图相对误差必须在(0, 1)之间: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /**
+     * 加入一个样本（NaN忽略）
+     */
+    public QuantileSketch add(double value) {
+        if (Double.isNaN(value)) {
+            return this;
+        }
+        if (value < MIN_INDEXABLE_VALUE) {
+            zeroCount++;
+        } else {
+            int index = index(value);
+            ensureRange(index, index);
+            counts[index - offset]++;
+        }
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        return this;
+    }
+
+    /**
+     * 合并另一个草图（结果写入当前草图）；精度不同时结果取较粗的精度
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (other.relativeAccuracy > relativeAccuracy) {
+            coarsen(other.relativeAccuracy);
+        }
+        int first = other.firstNonEmpty();
+        if (other.relativeAccuracy < relativeAccuracy) {
+            addBuckets(other);
+        } else if (first >= 0) {
+            int last = other.lastNonEmpty();
+            ensureRange(other.offset + first, other.offset + last);
+            for (int i = first; i <= last; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    /**
+     * 估计分位数，q 取值 [0, 1]；空草图返回 NaN
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("分位数必须在[0, 1]之间: " + q);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        double rank = q * (count - 1);
+        long cumulative = zeroCount;
+        if (cumulative > rank) {
+            return clamp(0);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative > rank) {
+                return clamp(value(offset + i));
+            }
+        }
+        return max;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getAverage() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    // ==================== 序列化 ====================
+
+    /**
+     * 序列化格式：
+     * 版本(1字节) | 相对误差(double) | 零桶计数(varint) | min | max | sum (double)
+     * | 首个非空桶下标(zigzag varint) | 桶数(varint) | 各桶计数(varint)
+     * 首尾空桶不写出，中间的空桶每个占1字节。
+     */
+    public byte[] toBytes() {
+        int first = firstNonEmpty();
+        int last = first < 0 ? -1 : lastNonEmpty();
+        int buckets = first < 0 ? 0 : last - first + 1;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + buckets * 2);
+        out.write(FORMAT_VERSION);
+        writeDouble(out, relativeAccuracy);
+        writeVarLong(out, zeroCount);
+        writeDouble(out, min);
+        writeDouble(out, max);
+        writeDouble(out, sum);
+        writeVarLong(out, zigZag(first < 0 ? 0 : offset + first));
+        writeVarLong(out, buckets);
+        for (int i = 0; i < buckets; i++) {
+            writeVarLong(out, counts[first + i]);
+        }
+        return out.toByteArray();
+    }
+
+    public static QuantileSketch fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("不支持的分位数草图格式版本: " + version);
+        }
+
+        QuantileSketch sketch = new QuantileSketch(buffer.getDouble());
+        sketch.zeroCount = readVarLong(buffer);
+        sketch.min = buffer.getDouble();
+        sketch.max = buffer.getDouble();
+        sketch.sum = buffer.getDouble();
+        int firstIndex = (int) unZigZag(readVarLong(buffer));
+        int buckets = (int) readVarLong(buffer);
+
+        sketch.offset = firstIndex;
+        sketch.counts = new long[buckets];
+        long total = sketch.zeroCount;
+        for (int i = 0; i < buckets; i++) {
+            sketch.counts[i] = readVarLong(buffer);
+            total += sketch.counts[i];
+        }
+        sketch.count = total;
+        return sketch;
+    }
+
+    // ==================== 私有方法 ====================
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    /**
+     * 桶 index 的代表值，与桶内任意值的相对误差不超过 α
+     */
+    private double value(int index) {
+        return Math.exp(index * logGamma) * 2 / (gamma + 1);
+    }
+
+    /**
+     * 改为更粗的精度：现有各桶按代表值重新分桶
+     */
+    private void coarsen(double coarserAccuracy) {
+        QuantileSketch previous = new QuantileSketch(relativeAccuracy);
+        previous.counts = counts;
+        previous.offset = offset;
+
+        relativeAccuracy = coarserAccuracy;
+        gamma = (1 + coarserAccuracy) / (1 - coarserAccuracy);
+        logGamma = Math.log(gamma);
+        counts = new long[0];
+        offset = 0;
+        addBuckets(previous);
+    }
+
+    /**
+     * 把精度更细的 source 的各桶计数按桶代表值计入当前草图的桶（零桶及统计量由调用方处理）
+     */
+    private void addBuckets(QuantileSketch source) {
+        for (int i = 0; i < source.counts.length; i++) {
+            if (source.counts[i] != 0) {
+                int index = index(source.value(source.offset + i));
+                ensureRange(index, index);
+                counts[index - offset] += source.counts[i];
+            }
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * 确保桶数组覆盖 [low, high]
+     */
+    private void ensureRange(int low, int high) {
+        if (counts.length == 0) {
+            offset = low;
+            counts = new long[high - low + 1];
+            return;
+        }
+        int currentHigh = offset + counts.length - 1;
+        if (low >= offset && high <= currentHigh) {
+            return;
+        }
+        int newLow = low < offset ? low - GROW_SLACK : offset;
+        int newHigh = high > currentHigh ? high + GROW_SLACK : currentHigh;
+        long[] grown = new long[newHigh - newLow + 1];
+        System.arraycopy(counts, 0, grown, offset - newLow, counts.length);
+        counts = grown;
+        offset = newLow;
+    }
+
+    private int firstNonEmpty() {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int lastNonEmpty() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void writeDouble(ByteArrayOutputStream out, double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift));
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,105 @@
+package com.logistics.common.geo;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GeoCell 编码往返与边界层级
+ */
+class GeoCellTest {
+
+    @Test
+    void levelZeroIsSingleCell() {
+        long cell = GeoCell.encode(121.47, 31.23, 0);
+
+        assertEquals(0L, cell);
+        assertEquals(cell, GeoCell.encode(-180, -90, 0));
+        assertEquals(cell, GeoCell.encode(179.999, 89.999, 0));
+        assertEquals(0, GeoCell.level(cell));
+        assertEquals(0, GeoCell.x(cell));
+        assertEquals(0, GeoCell.y(cell));
+        assertEquals(360.0, GeoCell.cellSize(0));
+        assertEquals(0.0, GeoCell.centerLng(cell));
+    }
+
+    @Test
+    void maxLevelCornersRoundTrip() {
+        int level = GeoCell.MAX_LEVEL;
+        long last = (1L << level) - 1;
+        long[][] corners = {{0, 0}, {last, 0}, {0, last}, {last, last}};
+
+        for (long[] corner : corners) {
+            long cell = GeoCell.of(level, corner[0], corner[1]);
+            assertEquals(level, GeoCell.level(cell));
+            assertEquals(corner[0], GeoCell.x(cell));
+            assertEquals(corner[1], GeoCell.y(cell));
+            assertEquals(cell & GeoCell.MORTON_MASK, cell ^ ((long) level << GeoCell.LEVEL_SHIFT));
+        }
+    }
+
+    @Test
+    void spreadAndCompactAreInverse() {
+        long[] values = {0, 1, 2, 0x5555, 0xFFFF, (1L << GeoCell.MAX_LEVEL) - 1, 0xFFFFFFFFL};
+        for (long value : values) {
+            assertEquals(value, GeoCell.compact(GeoCell.spread(value)), "value=" + value);
+            assertEquals(0, GeoCell.spread(value) & 0xAAAAAAAAAAAAAAAAL, "value=" + value);
+        }
+    }
+
+    @Test
+    void encodeContainsPointAndCenterRoundTrips() {
+        double lng = 121.4737;
+        double lat = 31.2304;
+        for (int level = 0; level <= GeoCell.MAX_LEVEL; level++) {
+            long cell = GeoCell.encode(lng, lat, level);
+            double half = GeoCell.cellSize(level) / 2;
+
+            assertEquals(lng, GeoCell.centerLng(cell), half, "level=" + level);
+            assertEquals(lat, GeoCell.centerLat(cell), half, "level=" + level);
+            assertEquals(cell, GeoCell.encode(GeoCell.centerLng(cell), GeoCell.centerLat(cell), level),
+                    "level=" + level);
+        }
+    }
+
+    @Test
+    void parentMatchesEncodingAtCoarserLevel() {
+        double lng = 106.5516;
+        double lat = 29.5630;
+        long finest = GeoCell.encode(lng, lat, GeoCell.MAX_LEVEL);
+
+        for (int level = 0; level <= GeoCell.MAX_LEVEL; level++) {
+            assertEquals(GeoCell.encode(lng, lat, level), GeoCell.parent(finest, level), "level=" + level);
+        }
+        assertEquals(0L, GeoCell.parent(finest, 0));
+        assertEquals(finest, GeoCell.parent(finest, GeoCell.MAX_LEVEL));
+    }
+
+    @Test
+    void outOfRangeCoordinatesClampToEdgeCells() {
+        int level = 10;
+        long last = (1L << level) - 1;
+
+        assertEquals(last, GeoCell.x(GeoCell.encode(180, 0, level)));
+        assertEquals(0, GeoCell.x(GeoCell.encode(-200, 0, level)));
+        assertEquals(0, GeoCell.y(GeoCell.encode(0, -100, level)));
+    }
+
+    @Test
+    void levelForCellSizeIsClamped() {
+        assertEquals(0, GeoCell.levelForCellSize(1000));
+        assertEquals(GeoCell.MAX_LEVEL, GeoCell.levelForCellSize(1e-12));
+        assertEquals(15, GeoCell.levelForCellSize(0.011));
+        assertThrows(IllegalArgumentException.class, () -> GeoCell.levelForCellSize(0));
+    }
+
+    @Test
+    void rejectsInvalidLevelAndIndexes() {
+        assertThrows(IllegalArgumentException.class, () -> GeoCell.encode(0, 0, -1));
+        assertThrows(IllegalArgumentException.class, () -> GeoCell.encode(0, 0, GeoCell.MAX_LEVEL + 1));
+        assertThrows(IllegalArgumentException.class, () -> GeoCell.of(3, 8, 0));
+        assertThrows(IllegalArgumentException.class, () -> GeoCell.of(3, 0, -1));
+        assertThrows(IllegalArgumentException.class,
+                () -> GeoCell.parent(GeoCell.encode(0, 0, 5), 6));
+    }
+}
@@ -0,0 +1,94 @@
+package com.logistics.common.geo;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HeatmapTile 二进制格式的往返与字节布局（前端 decodeHeatmapTile 按同一布局解码）
+ */
+class HeatmapTileTest {
+
+    @Test
+    void emptyTileRoundTrip() {
+        byte[] bytes = new HeatmapTile(new int[0], new int[0], new float[0]).toBytes();
+
+        assertArrayEquals(new byte[]{HeatmapTile.FORMAT_VERSION, HeatmapTile.BIN_BITS, 0, 0, 0, 0, 0, 0}, bytes);
+        HeatmapTile decoded = HeatmapTile.fromBytes(bytes);
+        assertEquals(0, decoded.size());
+        assertEquals(0, decoded.maxCount());
+    }
+
+    @Test
+    void byteLayoutIsBigEndianHeaderThenBins() {
+        byte[] bytes = new HeatmapTile(new int[]{5, 4095}, new int[]{7, 300}, new float[]{1.5f, Float.NaN}).toBytes();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertEquals(8 + 2 * 10, bytes.length);
+        assertEquals(HeatmapTile.FORMAT_VERSION, buffer.get());
+        assertEquals(HeatmapTile.BIN_BITS, buffer.get());
+        assertEquals(2, buffer.getShort());
+        assertEquals(300, buffer.getInt());
+        assertEquals(5, buffer.getShort());
+        assertEquals(7, buffer.getInt());
+        assertEquals(1.5f, buffer.getFloat());
+        assertEquals(4095, buffer.getShort() & 0xFFFF);
+        assertEquals(300, buffer.getInt());
+        assertTrue(Float.isNaN(buffer.getFloat()));
+    }
+
+    @Test
+    void fullTileRoundTrip() {
+        int n = HeatmapTile.MAX_BINS;
+        int[] bins = new int[n];
+        int[] counts = new int[n];
+        float[] avgHours = new float[n];
+        for (int i = 0; i < n; i++) {
+            bins[i] = i;
+            counts[i] = i * 31 + 1;
+            avgHours[i] = i % 7 == 0 ? Float.NaN : i / 100f;
+        }
+
+        HeatmapTile decoded = HeatmapTile.fromBytes(new HeatmapTile(bins, counts, avgHours).toBytes());
+
+        assertEquals(n, decoded.size());
+        assertEquals(counts[n - 1], decoded.maxCount());
+        for (int i = 0; i < n; i++) {
+            assertEquals(bins[i], decoded.bin(i));
+            assertEquals(counts[i], decoded.count(i));
+            assertEquals(Float.floatToIntBits(avgHours[i]), Float.floatToIntBits(decoded.avgHours(i)));
+        }
+    }
+
+    @Test
+    void binIndexIsMortonCodeOfFinerGeoCell() {
+        // 瓦片内格子 (x, y) 即第 z+BIN_BITS 层网格相对瓦片左下角的行列号
+        int z = 10;
+        long tile = GeoCell.encode(121.47, 31.23, z);
+        long fine = GeoCell.encode(121.47, 31.23, z + HeatmapTile.BIN_BITS);
+        int bin = (int) (fine & ((1L << (2 * HeatmapTile.BIN_BITS)) - 1));
+
+        assertEquals(tile, GeoCell.parent(fine, z));
+        assertEquals(GeoCell.x(fine) - (GeoCell.x(tile) << HeatmapTile.BIN_BITS), GeoCell.compact(bin));
+        assertEquals(GeoCell.y(fine) - (GeoCell.y(tile) << HeatmapTile.BIN_BITS), GeoCell.compact(bin >>> 1));
+    }
+
+    @Test
+    void rejectsInvalidInput() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new HeatmapTile(new int[1], new int[2], new float[1]));
+        int tooMany = HeatmapTile.MAX_BINS + 1;
+        assertThrows(IllegalArgumentException.class,
+                () -> new HeatmapTile(new int[tooMany], new int[tooMany], new float[tooMany]));
+
+        byte[] wrongVersion = new HeatmapTile(new int[0], new int[0], new float[0]).toBytes();
+        wrongVersion[0] = 2;
+        assertThrows(IllegalArgumentException.class, () -> HeatmapTile.fromBytes(wrongVersion));
+
+        byte[] wrongBinBits = new HeatmapTile(new int[0], new int[0], new float[0]).toBytes();
+        wrongBinBits[1] = 5;
+        assertThrows(IllegalArgumentException.class, () -> HeatmapTile.fromBytes(wrongBinBits));
+    }
+}
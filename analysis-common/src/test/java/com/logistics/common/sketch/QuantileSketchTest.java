@@ -0,0 +1,151 @@
+package com.logistics.common.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * QuantileSketch 序列化往返与边界情况
+ */
+class QuantileSketchTest {
+
+    private static final double DEFAULT_ACCURACY = QuantileSketch.DEFAULT_RELATIVE_ACCURACY;
+
+    private static QuantileSketch sketchOf(double... values) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (double value : values) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+
+    private static QuantileSketch range(int from, int to) {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = from; i <= to; i++) {
+            sketch.add(i);
+        }
+        return sketch;
+    }
+
+    @Test
+    void emptySketchRoundTrip() {
+        QuantileSketch decoded = QuantileSketch.fromBytes(new QuantileSketch().toBytes());
+
+        assertTrue(decoded.isEmpty());
+        assertEquals(0, decoded.getCount());
+        assertTrue(Double.isNaN(decoded.quantile(0.5)));
+        assertTrue(Double.isNaN(decoded.getMin()));
+        assertTrue(Double.isNaN(decoded.getMax()));
+        assertTrue(Double.isNaN(decoded.getAverage()));
+        assertEquals(DEFAULT_ACCURACY, decoded.getRelativeAccuracy());
+
+        // 解码出的空草图可以继续加入样本
+        decoded.add(3.0);
+        assertEquals(1, decoded.getCount());
+        assertEquals(3.0, decoded.quantile(0.5));
+    }
+
+    @Test
+    void roundTripPreservesStatisticsAndQuantiles() {
+        QuantileSketch sketch = range(1, 1000);
+        sketch.add(0);
+        sketch.add(Double.NaN);
+
+        byte[] bytes = sketch.toBytes();
+        QuantileSketch decoded = QuantileSketch.fromBytes(bytes);
+
+        assertEquals(sketch.getCount(), decoded.getCount());
+        assertEquals(sketch.getMin(), decoded.getMin());
+        assertEquals(sketch.getMax(), decoded.getMax());
+        assertEquals(sketch.getSum(), decoded.getSum());
+        for (double q : new double[]{0, 0.01, 0.25, 0.5, 0.9, 0.95, 0.99, 1}) {
+            assertEquals(sketch.quantile(q), decoded.quantile(q), "q=" + q);
+        }
+        assertArrayEquals(bytes, decoded.toBytes());
+    }
+
+    @Test
+    void quantileWithinRelativeAccuracy() {
+        QuantileSketch sketch = QuantileSketch.fromBytes(range(1, 1000).toBytes());
+
+        // rank = q * (count - 1)，第 rank 个值（从0计）为 rank + 1
+        assertEquals(500, sketch.quantile(0.5), 500 * DEFAULT_ACCURACY);
+        assertEquals(950, sketch.quantile(0.95), 950 * DEFAULT_ACCURACY);
+        assertEquals(1, sketch.quantile(0));
+        assertEquals(1000, sketch.quantile(1));
+    }
+
+    @Test
+    void mergeOfDecodedSketchesMatchesUnion() {
+        QuantileSketch merged = QuantileSketch.fromBytes(range(1, 500).toBytes())
+                .merge(QuantileSketch.fromBytes(range(501, 1000).toBytes()));
+
+        assertArrayEquals(range(1, 1000).toBytes(), merged.toBytes());
+    }
+
+    @Test
+    void mergeWithEmptySketchIsNoOp() {
+        QuantileSketch sketch = range(1, 100);
+        byte[] before = sketch.toBytes();
+
+        sketch.merge(QuantileSketch.fromBytes(new QuantileSketch().toBytes()));
+        assertArrayEquals(before, sketch.toBytes());
+
+        QuantileSketch empty = new QuantileSketch().merge(range(1, 100));
+        assertArrayEquals(before, empty.toBytes());
+    }
+
+    @Test
+    void zeroBucketOnlyRoundTrip() {
+        QuantileSketch decoded = QuantileSketch.fromBytes(sketchOf(0, 0, 1e-9).toBytes());
+
+        assertEquals(3, decoded.getCount());
+        assertEquals(0, decoded.quantile(0.5));
+        assertEquals(1e-9, decoded.getMax());
+    }
+
+    @Test
+    void valuesBelowOneRoundTripWithNegativeBucketIndex() {
+        QuantileSketch sketch = sketchOf(0.001, 0.01, 0.1, 0.5);
+        QuantileSketch decoded = QuantileSketch.fromBytes(sketch.toBytes());
+
+        assertEquals(sketch.quantile(0.5), decoded.quantile(0.5));
+        assertEquals(0.01, decoded.quantile(1.0 / 3), 0.01 * DEFAULT_ACCURACY);
+        assertEquals(0.001, decoded.quantile(0));
+    }
+
+    @Test
+    void rejectsUnknownFormatVersion() {
+        byte[] bytes = range(1, 10).toBytes();
+        bytes[0] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.fromBytes(bytes));
+    }
+
+    @Test
+    void mergeWithDifferentAccuracyUsesCoarserAccuracy() {
+        double coarseAccuracy = 0.05;
+        QuantileSketch coarse = new QuantileSketch(coarseAccuracy);
+        for (int i = 501; i <= 1000; i++) {
+            coarse.add(i);
+        }
+        // 最多约为两者精度之和
+        double tolerance = coarseAccuracy + DEFAULT_ACCURACY;
+
+        QuantileSketch fineFirst = QuantileSketch.fromBytes(range(1, 500).toBytes())
+                .merge(QuantileSketch.fromBytes(coarse.toBytes()));
+        QuantileSketch coarseFirst = QuantileSketch.fromBytes(coarse.toBytes())
+                .merge(range(1, 500));
+
+        for (QuantileSketch merged : new QuantileSketch[]{fineFirst, coarseFirst}) {
+            assertEquals(coarseAccuracy, merged.getRelativeAccuracy());
+            assertEquals(1000, merged.getCount());
+            assertEquals(1, merged.getMin());
+            assertEquals(1000, merged.getMax());
+            assertEquals(500, merged.quantile(0.5), 500 * tolerance);
+            assertEquals(950, merged.quantile(0.95), 950 * tolerance);
+            assertEquals(100, merged.quantile(0.1), 100 * tolerance);
+        }
+        assertArrayEquals(fineFirst.toBytes(), coarseFirst.toBytes());
+    }
+}
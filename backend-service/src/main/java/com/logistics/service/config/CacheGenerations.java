@@ -0,0 +1,205 @@
+package com.logistics.service.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 缓存代数：按 (业务域, 城市, 日期) 维护版本号，缓存键带上版本号，写入时只递增受影响的版本号，
+ * 旧键不再被读取并随Redis过期自然淘汰，其他城市、其他日期的缓存保持有效。
+ *
+ * 每个业务域的版本号分为四级，缓存键按查询覆盖的数据范围选择最窄的一级：
+ *   date(域, 城市, 日期)  单个城市单日的查询
+ *   city(域, 城市)        单个城市的日期范围、最近N天、最新数据等查询
+ *   all(域)              跨城市或不区分城市的查询
+ *   根版本号              包含在该域的所有键中，清理历史数据等无法确定范围的写入只递增它
+ * 写入某城市某天的数据时递增 date、city、all 三级（{@link #bump}），
+ * 无法确定范围时递增根版本号（{@link #bumpDomain}）。
+ *
+ * 缓存注解中以 @cacheGenerations 引用，例如：
+ *   key = "@cacheGenerations.date('spatial', #city, #date) + 'hotspot:' + #city + ':' + #date"
+ * 键前缀形如 "spatial:3.12:"，同时带上业务域，不同业务域在共享的 stats 缓存中不会冲突。
+ *
+ * 版本号存放在Redis（cache:gen:*），进程内缓存一段时间；递增后通过两级缓存的失效广播通知其他实例。
+ * 在事务中递增时推迟到提交之后，避免并发读取在提交前把旧数据缓存到新版本号下。
+ */
+@Component("cacheGenerations")
+public class CacheGenerations {
+
+    private static final String LOCAL_CACHE_NAME = "cache_generations";
+    private static final String KEY_PREFIX = "cache:gen:";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Value("${logistics.cache.generation.local-expire-after-write:60s}")
+    private Duration localExpireAfterWrite;
+
+    /** 城市级、日期级版本号的过期时间，须长于缓存条目的过期时间 */
+    @Value("${logistics.cache.generation.scoped-ttl:1d}")
+    private Duration scopedTtl;
+
+    private com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    private TwoLevelCacheManager twoLevelCacheManager;
+
+    @PostConstruct
+    public void init() {
+        local = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(localExpireAfterWrite)
+                .build();
+        if (cacheManager instanceof TwoLevelCacheManager) {
+            twoLevelCacheManager = (TwoLevelCacheManager) cacheManager;
+            twoLevelCacheManager.registerLocalCache(LOCAL_CACHE_NAME, local);
+        }
+    }
+
+    // ==================== 缓存键前缀 ====================
+
+    public String all(String domain) {
+        return prefix(domain, allKey(domain));
+    }
+
+    public String city(String domain, String city) {
+        return prefix(domain, cityKey(domain, city));
+    }
+
+    public String date(String domain, String city, LocalDate date) {
+        return prefix(domain, dateKey(domain, city, date));
+    }
+
+    private String prefix(String domain, String scopeKey) {
+        List<Long> generations = get(Arrays.asList(rootKey(domain), scopeKey));
+        return domain + ":" + generations.get(0) + "." + generations.get(1) + ":";
+    }
+
+    private List<Long> get(List<String> keys) {
+        List<Long> generations = new ArrayList<>(keys.size());
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            Long generation = (Long) local.getIfPresent(key);
+            generations.add(generation);
+            if (generation == null) {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return generations;
+        }
+
+        List<String> values = redisTemplate.opsForValue().multiGet(missing);
+        int next = 0;
+        for (int i = 0; i < generations.size(); i++) {
+            if (generations.get(i) == null) {
+                String value = values != null ? values.get(next) : null;
+                long generation = value != null ? Long.parseLong(value) : 0L;
+                local.put(keys.get(i), generation);
+                generations.set(i, generation);
+                next++;
+            }
+        }
+        return generations;
+    }
+
+    // ==================== 递增 ====================
+
+    /**
+     * 某城市某天的数据发生变化
+     */
+    public void bump(String domain, String city, LocalDate date) {
+        afterCommit(() -> {
+            incrementScoped(dateKey(domain, city, date));
+            incrementScoped(cityKey(domain, city));
+            increment(allKey(domain));
+        });
+    }
+
+    /**
+     * 批量写入：每个不同的 (城市, 日期) 只递增一次
+     */
+    public <T> void bumpEach(String domain, Collection<T> items,
+                             Function<T, String> city, Function<T, LocalDate> date) {
+        Set<List<Object>> scopes = new LinkedHashSet<>();
+        for (T item : items) {
+            scopes.add(Arrays.asList(city.apply(item), date.apply(item)));
+        }
+        for (List<Object> scope : scopes) {
+            bump(domain, (String) scope.get(0), (LocalDate) scope.get(1));
+        }
+    }
+
+    /**
+     * 业务域的数据整体发生变化（如清理历史数据）
+     */
+    public void bumpDomain(String domain) {
+        afterCommit(() -> increment(rootKey(domain)));
+    }
+
+    private void increment(String key) {
+        redisTemplate.opsForValue().increment(key);
+        invalidate(key);
+    }
+
+    private void incrementScoped(String key) {
+        redisTemplate.opsForValue().increment(key);
+        redisTemplate.expire(key, scopedTtl);
+        invalidate(key);
+    }
+
+    private void invalidate(String key) {
+        local.invalidate(key);
+        if (twoLevelCacheManager != null) {
+            twoLevelCacheManager.publishEvict(LOCAL_CACHE_NAME, key);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // ==================== Redis键 ====================
+
+    private static String rootKey(String domain) {
+        return KEY_PREFIX + domain;
+    }
+
+    private static String allKey(String domain) {
+        return KEY_PREFIX + domain + ":all";
+    }
+
+    private static String cityKey(String domain, String city) {
+        return KEY_PREFIX + domain + ":city:" + city;
+    }
+
+    private static String dateKey(String domain, String city, LocalDate date) {
+        return KEY_PREFIX + domain + ":date:" + city + ":" + date;
+    }
+}
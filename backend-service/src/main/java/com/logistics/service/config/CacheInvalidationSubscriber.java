@@ -0,0 +1,68 @@
+package com.logistics.service.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * 订阅其他实例的缓存失效消息（见 {@link TwoLevelCacheManager}）
+ *
+ * 监听容器不注册为Spring Bean：Bean随上下文启动时订阅，Redis不可用会导致整个服务启动失败。
+ * 这里由定时任务在启动后订阅，未连上或连接断开时按间隔重试，期间其他实例的更新只能等本机L1过期后可见。
+ */
+@Slf4j
+@Component
+public class CacheInvalidationSubscriber {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+
+    @Value("${logistics.cache.invalidation-channel:logistics:cache:invalidation}")
+    private String invalidationChannel;
+
+    private RedisMessageListenerContainer container;
+
+    @PostConstruct
+    public void init() {
+        if (!(cacheManager instanceof TwoLevelCacheManager)) {
+            return;
+        }
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener((TwoLevelCacheManager) cacheManager, new ChannelTopic(invalidationChannel));
+        container.afterPropertiesSet();
+    }
+
+    @Scheduled(fixedDelayString = "${logistics.cache.resubscribe-interval-ms:30000}")
+    public void subscribe() {
+        if (container == null || container.isListening()) {
+            return;
+        }
+        try {
+            container.stop();
+            container.start();
+            log.info("已订阅缓存失效频道: {}", invalidationChannel);
+        } catch (Exception e) {
+            log.warn("订阅缓存失效频道失败，稍后重试: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws Exception {
+        if (container != null) {
+            container.destroy();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.logistics.service.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 记录当前线程正在执行的 {@code @Cacheable(sync = true)} 调用，供 {@link TwoLevelCache} 提前刷新使用
+ *
+ * 切面排在缓存拦截器外层，缓存读取时能拿到代理对象、方法和参数。提前刷新在后台线程上
+ * 重新经代理调用同一个方法，完整经过所有拦截器，而不是复用请求线程上Spring生成的valueLoader
+ * （它是请求线程上的方法调用，请求返回后不能再被其他线程调用）。
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CacheRefreshAspect {
+
+    private static final ThreadLocal<Invocation> CURRENT = new ThreadLocal<>();
+
+    @Around("@annotation(cacheable)")
+    public Object recordInvocation(ProceedingJoinPoint joinPoint, Cacheable cacheable) throws Throwable {
+        if (!cacheable.sync()) {
+            return joinPoint.proceed();
+        }
+
+        Invocation previous = CURRENT.get();
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        CURRENT.set(new Invocation(joinPoint.getThis(), method, joinPoint.getArgs().clone()));
+        try {
+            return joinPoint.proceed();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * 当前线程正在执行的缓存方法调用，不在切面内时返回null
+     */
+    static Invocation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 一次缓存方法调用：经代理对象以相同参数重新调用
+     */
+    static final class Invocation {
+        private final Object proxy;
+        private final Method method;
+        private final Object[] args;
+
+        private Invocation(Object proxy, Method method, Object[] args) {
+            this.proxy = proxy;
+            this.method = method;
+            this.args = args;
+        }
+
+        Object invoke() throws Exception {
+            try {
+                return method.invoke(proxy, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
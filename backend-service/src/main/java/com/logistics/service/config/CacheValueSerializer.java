@@ -0,0 +1,128 @@
+package com.logistics.service.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Redis缓存值序列化器，按缓存名选择格式（见 RedisConfig）
+ *
+ * JSON：与原 GenericJackson2JsonRedisSerializer 的输出相同，便于在redis-cli中查看
+ * SMILE：Jackson的二进制JSON，结构与JSON一致（读出后同样是Map/List），列表中重复的字段名、
+ *        短字符串值（城市、日期等）只写一次，后续用回引用，数值按二进制写入
+ * 序列化结果超过 compressThreshold 字节时再用GZIP压缩。
+ *
+ * 读取按内容头识别格式（GZIP魔数、Smile头 ":)\n"，否则按JSON），与写入格式无关，
+ * 切换某个缓存的格式后Redis中的旧条目仍可读取，不需要清空缓存。
+ */
+public class CacheValueSerializer implements RedisSerializer<Object> {
+
+    public enum Format {
+        JSON, SMILE
+    }
+
+    private static final byte[] SMILE_HEADER = {':', ')', '\n'};
+
+    private final Format format;
+    private final int compressThreshold;
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+
+    /**
+     * @param compressThreshold 超过该字节数时压缩，小于0表示不压缩
+     */
+    public CacheValueSerializer(Format format, int compressThreshold) {
+        this.format = format;
+        this.compressThreshold = compressThreshold;
+        this.jsonMapper = new ObjectMapper();
+        this.jsonMapper.registerModule(new JavaTimeModule());
+        SmileFactory smileFactory = new SmileFactory();
+        smileFactory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        this.smileMapper = new ObjectMapper(smileFactory);
+        this.smileMapper.registerModule(new JavaTimeModule());
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        try {
+            byte[] bytes = (format == Format.SMILE ? smileMapper : jsonMapper).writeValueAsBytes(value);
+            return compressThreshold >= 0 && bytes.length > compressThreshold ? gzip(bytes) : bytes;
+        } catch (IOException e) {
+            throw new SerializationException("缓存值序列化失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            if (isGzip(bytes)) {
+                bytes = gunzip(bytes);
+            }
+            return (startsWith(bytes, SMILE_HEADER) ? smileMapper : jsonMapper).readValue(bytes, Object.class);
+        } catch (IOException e) {
+            throw new SerializationException("缓存值反序列化失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        // 默认压缩级别的耗时是最快级别的数倍，压缩率只略好
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        }) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = gzip.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isGzip(byte[] bytes) {
+        return bytes.length > 2 && (bytes[0] & 0xFF) == 0x1F && (bytes[1] & 0xFF) == 0x8B;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
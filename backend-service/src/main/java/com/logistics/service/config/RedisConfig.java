@@ -2,6 +2,8 @@ package com.logistics.service.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
@@ -10,16 +12,54 @@ import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableCaching  // 启用缓存注解
 public class RedisConfig {
 
+    @Value("${logistics.cache.local.enabled:true}")
+    private boolean localCacheEnabled;
+
+    @Value("${logistics.cache.local.maximum-size:10000}")
+    private long localCacheMaximumSize;
+
+    @Value("${logistics.cache.local.expire-after-write:30s}")
+    private Duration localCacheExpireAfterWrite;
+
+    @Value("${logistics.cache.invalidation-channel:logistics:cache:invalidation}")
+    private String invalidationChannel;
+
+    @Value("${logistics.cache.load.lock-ttl:10s}")
+    private Duration loadLockTtl;
+
+    @Value("${logistics.cache.load.early-refresh-beta:1.0}")
+    private double earlyRefreshBeta;
+
+    @Value("${logistics.cache.load.refresh-threads:2}")
+    private int refreshThreads;
+
+    /** 使用二进制格式（Smile）存储的缓存，其余缓存使用JSON */
+    @Value("${logistics.cache.serialization.binary-caches:}")
+    private List<String> binaryCaches;
+
+    /** 序列化结果超过该大小时GZIP压缩，为负数时不压缩 */
+    @Value("${logistics.cache.serialization.compress-threshold:64KB}")
+    private DataSize compressThreshold;
+
+    /** 实时KPI缓存（kpi）在Redis中的过期时间，需与流式作业的微批间隔同一量级 */
+    @Value("${logistics.cache.kpi-ttl:20s}")
+    private Duration kpiTtl;
+
     @Bean
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory factory) {
         RedisTemplate<String, Object> tpl = new RedisTemplate<>();
@@ -44,24 +84,45 @@ public class RedisConfig {
         return tpl;
     }
 
-    // 添加缓存管理器配置
+    // 添加缓存管理器配置：Redis缓存前加一层进程内缓存（见 TwoLevelCacheManager）
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory) {
-        // 创建支持Java 8日期时间API的ObjectMapper
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
+    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+                                     StringRedisTemplate stringRedisTemplate,
+                                     MeterRegistry meterRegistry) {
+        // 关闭一级缓存时L1容量为0，仍由两级缓存负责 sync 加载的单飞和提前刷新
+        return new TwoLevelCacheManager(redisCacheManager(redisConnectionFactory), stringRedisTemplate, meterRegistry,
+                invalidationChannel, localCacheEnabled ? localCacheMaximumSize : 0, localCacheExpireAfterWrite,
+                loadLockTtl, earlyRefreshBeta, refreshThreads);
+    }
 
-        GenericJackson2JsonRedisSerializer serializer =
-                new GenericJackson2JsonRedisSerializer(objectMapper);
+    private RedisCacheManager redisCacheManager(RedisConnectionFactory redisConnectionFactory) {
+        int threshold = (int) compressThreshold.toBytes();
+        RedisCacheConfiguration config = cacheConfiguration(new CacheValueSerializer(CacheValueSerializer.Format.JSON, threshold));
 
-        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+        // 按缓存名选择序列化格式，未列出的缓存（包括运行时新建的）使用默认的JSON
+        RedisCacheConfiguration binaryConfig =
+                cacheConfiguration(new CacheValueSerializer(CacheValueSerializer.Format.SMILE, threshold));
+        Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
+        for (String cacheName : binaryCaches) {
+            cacheConfigurations.put(cacheName.trim(), binaryConfig);
+        }
+        // 实时KPI每个微批都会更新，使用短过期时间（L1过期时间不超过该值，见 TwoLevelCacheManager）
+        RedisCacheConfiguration kpiConfig = cacheConfigurations.getOrDefault("kpi", config);
+        cacheConfigurations.put("kpi", kpiConfig.entryTtl(kpiTtl));
+
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
+                .cacheDefaults(config)
+                .withInitialCacheConfigurations(cacheConfigurations)
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        return redisCacheManager;
+    }
+
+    private static RedisCacheConfiguration cacheConfiguration(CacheValueSerializer serializer) {
+        return RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofMinutes(15))  // 默认缓存15分钟
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer))
                 .disableCachingNullValues();  // 不缓存null值
-
-        return RedisCacheManager.builder(redisConnectionFactory)
-                .cacheDefaults(config)
-                .build();
     }
-}
\ No newline at end of file
+}
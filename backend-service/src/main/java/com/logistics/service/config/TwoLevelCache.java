@@ -0,0 +1,434 @@
+package com.logistics.service.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 两级缓存：进程内Caffeine（L1）在前，Redis（L2）在后
+ *
+ * 读取先查L1，未命中再查Redis，Redis命中的值回填L1；写入和清除先操作Redis，
+ * 再更新本机L1，并通过 {@link TwoLevelCacheManager} 广播失效消息，其他实例收到后丢弃各自的L1副本。
+ * L1的过期时间远短于Redis，失效消息丢失时过期数据最多保留一个L1过期周期。
+ *
+ * {@code @Cacheable(sync = true)} 的方法经 {@link #get(Object, Callable)} 加载，防止缓存击穿：
+ * 1. 单飞：同一实例内同一个键同时只有一个线程查库，其余线程等待它的结果
+ * 2. 跨实例：查库前抢占Redis短锁，未抢到的实例轮询Redis等待持锁实例写入；锁已释放仍无值
+ *    （持锁实例查到空结果或查库失败）时重新抢锁，锁超时未释放则自行查库
+ * 3. 提前刷新（XFetch）：加载时记录查库耗时 delta 和Redis过期时间 expiry，命中时若
+ *    now - delta * beta * ln(rand) >= expiry 则在后台刷新，查询越慢、越临近过期越早刷新，
+ *    热点键在过期前就被替换，不会出现过期瞬间的集中查库。刷新线程经 {@link CacheRefreshAspect}
+ *    记录的代理对象重新调用原方法，不复用请求线程的valueLoader
+ * 同步加载不缓存null和空集合（sync模式不支持unless，这里沿用各方法原有的unless条件）。
+ *
+ * L1直接保存方法返回的对象引用，调用方不应修改缓存返回的结果。
+ */
+public class TwoLevelCache implements org.springframework.cache.Cache {
+
+    private static final long AWAIT_POLL_MILLIS = 50;
+
+    private final String name;
+    private final Cache<Object, Object> local;
+    private final org.springframework.cache.Cache remote;
+    private final TwoLevelCacheManager manager;
+    private final Duration remoteTtl;
+
+    /** 本实例正在加载的键 */
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    /** 本实例正在后台刷新的键 */
+    private final Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+    /** 刷新线程上需要跳过缓存直接查库的键 */
+    private final ThreadLocal<Object> forcedRefresh = new ThreadLocal<>();
+
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder remoteMisses = new LongAdder();
+    private final LongAdder computedLoads = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final LongAdder awaitedLoads = new LongAdder();
+    private final LongAdder earlyRefreshes = new LongAdder();
+
+    /**
+     * @param remoteTtl Redis中条目的过期时间，为0时不做提前刷新
+     */
+    public TwoLevelCache(String name, Cache<Object, Object> local, org.springframework.cache.Cache remote,
+                         Duration remoteTtl, TwoLevelCacheManager manager) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.remoteTtl = remoteTtl;
+        this.manager = manager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object cached = lookup(key, false);
+        return cached != null ? new SimpleValueWrapper(unwrap(cached)) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("缓存值类型不匹配: " + type.getName() + " <- " + value.getClass().getName());
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        if (key.equals(forcedRefresh.get())) {
+            forcedRefresh.remove();
+            return (T) refresh(key, valueLoader);
+        }
+
+        Object cached = lookup(key, true);
+        if (cached != null) {
+            if (cached instanceof LoadedValue && shouldRefreshEarly((LoadedValue) cached)) {
+                refreshAsync(key, CacheRefreshAspect.current());
+            }
+            return (T) unwrap(cached);
+        }
+        return (T) load(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        if (value != null) {
+            local.put(key, value);
+        } else {
+            local.invalidate(key);
+        }
+        manager.publishEvict(name, key);
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(key);
+        manager.publishEvict(name, key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = remote.evictIfPresent(key);
+        local.invalidate(key);
+        manager.publishEvict(name, key);
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        manager.publishClear(name);
+    }
+
+    // ==================== 读取与加载 ====================
+
+    /**
+     * 依次查L1、Redis，Redis命中时回填L1；withLoadInfo 为true时同时读取加载信息，用于提前刷新
+     */
+    private Object lookup(Object key, boolean withLoadInfo) {
+        Object cached = local.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper == null || wrapper.get() == null) {
+            remoteMisses.increment();
+            return null;
+        }
+        remoteHits.increment();
+
+        cached = wrapper.get();
+        if (withLoadInfo) {
+            long[] loadInfo = manager.readLoadInfo(name, key);
+            if (loadInfo != null) {
+                cached = new LoadedValue(cached, loadInfo[0], loadInfo[1]);
+            }
+        }
+        local.put(key, cached);
+        return cached;
+    }
+
+    /**
+     * 单飞加载：同一个键只有第一个线程查库，其余线程等待同一个结果
+     */
+    private Object load(Object key, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            coalescedLoads.increment();
+            try {
+                return inFlight.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ValueRetrievalException(key, valueLoader, e);
+            } catch (ExecutionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+
+        try {
+            Object value = loadAcrossInstances(key, valueLoader);
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e instanceof ValueRetrievalException ? (ValueRetrievalException) e
+                    : new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 抢到Redis锁的实例查库；未抢到时等待持锁实例写入Redis。
+     * 持锁实例释放锁却没有写入（空结果不缓存、查库失败）时重新抢锁，锁过期仍未释放则自行查库
+     */
+    private Object loadAcrossInstances(Object key, Callable<?> valueLoader) throws Exception {
+        while (true) {
+            String token = manager.tryLock(name, key);
+            if (token != null) {
+                try {
+                    // 抢锁前其他实例可能刚写入
+                    Object cached = lookup(key, true);
+                    if (cached != null) {
+                        awaitedLoads.increment();
+                        return unwrap(cached);
+                    }
+                    return compute(key, valueLoader);
+                } finally {
+                    manager.unlock(name, key, token);
+                }
+            }
+
+            Await await = awaitRemote(key);
+            if (await.value != null) {
+                awaitedLoads.increment();
+                return unwrap(await.value);
+            }
+            if (!await.released) {
+                return compute(key, valueLoader);
+            }
+        }
+    }
+
+    /**
+     * 轮询Redis直到等到缓存值、锁被释放或锁过期时间用完
+     */
+    private Await awaitRemote(Object key) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + manager.getLockTtl().toMillis();
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(AWAIT_POLL_MILLIS);
+            Object cached = lookup(key, true);
+            if (cached != null) {
+                return new Await(cached, true);
+            }
+            if (!manager.isLocked(name, key)) {
+                // 持锁实例可能在两次查询之间写入并释放
+                return new Await(lookup(key, true), true);
+            }
+        }
+        return new Await(null, false);
+    }
+
+    private static final class Await {
+        private final Object value;
+        /** 锁是否已在等待期间释放，false表示等到超时 */
+        private final boolean released;
+
+        private Await(Object value, boolean released) {
+            this.value = value;
+            this.released = released;
+        }
+    }
+
+    /**
+     * 查库并写入两级缓存，同时在Redis中记录查库耗时和过期时间
+     */
+    private Object compute(Object key, Callable<?> valueLoader) throws Exception {
+        long start = System.currentTimeMillis();
+        Object value = valueLoader.call();
+        long now = System.currentTimeMillis();
+        computedLoads.increment();
+
+        if (isCacheable(value)) {
+            long delta = now - start;
+            long expiresAt = remoteTtl.isZero() ? 0 : now + remoteTtl.toMillis();
+            remote.put(key, value);
+            manager.writeLoadInfo(name, key, delta, expiresAt, remoteTtl);
+            local.put(key, new LoadedValue(value, delta, expiresAt));
+            manager.publishEvict(name, key);
+        }
+        return value;
+    }
+
+    private boolean shouldRefreshEarly(LoadedValue cached) {
+        double beta = manager.getEarlyRefreshBeta();
+        if (beta <= 0 || cached.expiresAt <= 0) {
+            return false;
+        }
+        // 1 - nextDouble() 落在 (0, 1]，ln 结果非正
+        double gap = cached.computeMillis * beta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() - gap >= cached.expiresAt;
+    }
+
+    /**
+     * 后台刷新：只有抢到Redis锁的实例刷新，其他实例继续使用旧值。
+     * 刷新线程经代理重新调用原方法，缓存拦截器回到 {@link #get(Object, Callable)} 时按 forcedRefresh 直接查库；
+     * 调用不是经 {@link CacheRefreshAspect} 进入时不刷新，条目在过期后正常加载
+     */
+    private void refreshAsync(Object key, CacheRefreshAspect.Invocation invocation) {
+        if (invocation == null || !refreshing.add(key)) {
+            return;
+        }
+        boolean submitted = manager.submitRefresh(() -> {
+            try {
+                String token = manager.tryLock(name, key);
+                if (token == null) {
+                    return;
+                }
+                forcedRefresh.set(key);
+                try {
+                    invocation.invoke();
+                } finally {
+                    forcedRefresh.remove();
+                    manager.unlock(name, key, token);
+                }
+            } catch (Exception e) {
+                manager.logRefreshFailure(name, key, e);
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+        if (!submitted) {
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * 刷新线程上的加载：锁已由 {@link #refreshAsync} 持有，直接查库
+     */
+    private Object refresh(Object key, Callable<?> valueLoader) {
+        earlyRefreshes.increment();
+        try {
+            return compute(key, valueLoader);
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    private static boolean isCacheable(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Collection) {
+            return !((Collection<?>) value).isEmpty();
+        }
+        if (value instanceof Map) {
+            return !((Map<?, ?>) value).isEmpty();
+        }
+        return true;
+    }
+
+    private static Object unwrap(Object cached) {
+        return cached instanceof LoadedValue ? ((LoadedValue) cached).value : cached;
+    }
+
+    /**
+     * 同步加载的L1条目：缓存值和加载信息，只保存在进程内
+     */
+    private static final class LoadedValue {
+        private final Object value;
+        private final long computeMillis;
+        private final long expiresAt;
+
+        private LoadedValue(Object value, long computeMillis, long expiresAt) {
+            this.value = value;
+            this.computeMillis = computeMillis;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // ==================== 失效消息与指标 ====================
+
+    /**
+     * 处理其他实例的失效消息，只清除本机L1
+     */
+    void evictLocal(Object key) {
+        local.invalidate(key);
+    }
+
+    void clearLocal() {
+        local.invalidateAll();
+    }
+
+    Cache<Object, Object> getLocalCache() {
+        return local;
+    }
+
+    CacheStats localStats() {
+        return local.stats();
+    }
+
+    long remoteHitCount() {
+        return remoteHits.sum();
+    }
+
+    long remoteMissCount() {
+        return remoteMisses.sum();
+    }
+
+    /**
+     * Redis命中率：只统计L1未命中后落到Redis的请求
+     */
+    double remoteHitRatio() {
+        long hits = remoteHits.sum();
+        long total = hits + remoteMisses.sum();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    long computedLoadCount() {
+        return computedLoads.sum();
+    }
+
+    long coalescedLoadCount() {
+        return coalescedLoads.sum();
+    }
+
+    long awaitedLoadCount() {
+        return awaitedLoads.sum();
+    }
+
+    long earlyRefreshCount() {
+        return earlyRefreshes.sum();
+    }
+}
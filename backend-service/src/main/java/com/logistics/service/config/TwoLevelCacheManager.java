@@ -0,0 +1,312 @@
+package com.logistics.service.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 两级缓存管理器：为Redis缓存管理器中的每个缓存加一层进程内Caffeine缓存（见 {@link TwoLevelCache}）
+ *
+ * 失效广播：缓存写入、清除后向Redis频道发布 "实例ID \t 缓存名 \t 键"（清空整个缓存时不带键），
+ * 各实例订阅该频道，忽略自己发出的消息，其余消息只清除本机L1。非字符串的键无法在消息中还原，按清空处理。
+ *
+ * 同步加载的协调数据和缓存条目同在 "缓存名::键" 前缀下，随缓存清空一并删除：
+ *   缓存名::键::lock  加载锁，值为持锁方的随机令牌，过期时间为 lockTtl
+ *   缓存名::键::load  "查库耗时毫秒:过期时间戳"，与缓存条目同时过期，供各实例判断提前刷新
+ *
+ * 指标（按 cache、tier=l1/l2 区分）：
+ *   cache.gets{result=hit|miss}  各级的命中、未命中次数，L2只统计L1未命中的请求
+ *   cache.hit.ratio             各级命中率
+ *   cache.size / cache.evictions  L1的条目数和容量淘汰次数
+ *   cache.loads{result=computed|coalesced|awaited|refreshed}
+ *                               同步加载中实际查库、合并到本机加载、等到其他实例结果、提前刷新的次数
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener, DisposableBean {
+
+    private static final String FIELD_SEPARATOR = "\t";
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final CacheManager remoteCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final String channel;
+    private final long localMaximumSize;
+    private final Duration localExpireAfterWrite;
+    private final Duration lockTtl;
+    private final double earlyRefreshBeta;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+    /** 只在进程内的缓存（如缓存代数），不对外提供，只接收失效广播 */
+    private final ConcurrentMap<String, com.github.benmanes.caffeine.cache.Cache<Object, Object>> localCaches =
+            new ConcurrentHashMap<>();
+    private final ExecutorService refreshPool;
+
+    /**
+     * @param lockTtl          跨实例加载锁的过期时间，也是未抢到锁的实例等待的最长时间
+     * @param earlyRefreshBeta 提前刷新系数，越大越早刷新，0表示不提前刷新
+     * @param refreshThreads   后台刷新线程数
+     */
+    public TwoLevelCacheManager(CacheManager remoteCacheManager, StringRedisTemplate redisTemplate,
+                                MeterRegistry meterRegistry, String channel,
+                                long localMaximumSize, Duration localExpireAfterWrite,
+                                Duration lockTtl, double earlyRefreshBeta, int refreshThreads) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.channel = channel;
+        this.localMaximumSize = localMaximumSize;
+        this.localExpireAfterWrite = localExpireAfterWrite;
+        this.lockTtl = lockTtl;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        int threads = Math.max(1, refreshThreads);
+        // 队列满时丢弃刷新任务，条目仍会在过期后正常加载
+        this.refreshPool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(256), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache remote = remoteCacheManager.getCache(name);
+        if (remote == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> createCache(n, remote));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    @Override
+    public void destroy() {
+        refreshPool.shutdownNow();
+    }
+
+    private TwoLevelCache createCache(String name, Cache remote) {
+        Duration remoteTtl = remote instanceof RedisCache
+                ? ((RedisCache) remote).getCacheConfiguration().getTtl()
+                : Duration.ZERO;
+        // L1不比L2保存得更久，否则短过期时间的缓存在本机仍按L1过期时间返回旧值
+        Duration localTtl = !remoteTtl.isZero() && remoteTtl.compareTo(localExpireAfterWrite) < 0
+                ? remoteTtl
+                : localExpireAfterWrite;
+        TwoLevelCache cache = new TwoLevelCache(name,
+                Caffeine.newBuilder()
+                        .maximumSize(localMaximumSize)
+                        .expireAfterWrite(localTtl)
+                        .recordStats()
+                        .build(),
+                remote, remoteTtl, this);
+        bindMetrics(cache);
+        log.info("创建两级缓存[{}]: L1最大{}条, 过期时间{}", name, localMaximumSize, localTtl);
+        return cache;
+    }
+
+    private void bindMetrics(TwoLevelCache cache) {
+        Tags l1 = Tags.of("cache", cache.getName(), "tier", "l1");
+        Tags l2 = Tags.of("cache", cache.getName(), "tier", "l2");
+
+        FunctionCounter.builder("cache.gets", cache, c -> c.localStats().hitCount())
+                .tags(l1).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("cache.gets", cache, c -> c.localStats().missCount())
+                .tags(l1).tag("result", "miss").register(meterRegistry);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.localStats().hitRate())
+                .tags(l1).register(meterRegistry);
+        Gauge.builder("cache.size", cache, c -> c.getLocalCache().estimatedSize())
+                .tags(l1).register(meterRegistry);
+        FunctionCounter.builder("cache.evictions", cache, c -> c.localStats().evictionCount())
+                .tags(l1).register(meterRegistry);
+
+        FunctionCounter.builder("cache.gets", cache, TwoLevelCache::remoteHitCount)
+                .tags(l2).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("cache.gets", cache, TwoLevelCache::remoteMissCount)
+                .tags(l2).tag("result", "miss").register(meterRegistry);
+        Gauge.builder("cache.hit.ratio", cache, TwoLevelCache::remoteHitRatio)
+                .tags(l2).register(meterRegistry);
+
+        Tags loads = Tags.of("cache", cache.getName());
+        FunctionCounter.builder("cache.loads", cache, TwoLevelCache::computedLoadCount)
+                .tags(loads).tag("result", "computed").register(meterRegistry);
+        FunctionCounter.builder("cache.loads", cache, TwoLevelCache::coalescedLoadCount)
+                .tags(loads).tag("result", "coalesced").register(meterRegistry);
+        FunctionCounter.builder("cache.loads", cache, TwoLevelCache::awaitedLoadCount)
+                .tags(loads).tag("result", "awaited").register(meterRegistry);
+        FunctionCounter.builder("cache.loads", cache, TwoLevelCache::earlyRefreshCount)
+                .tags(loads).tag("result", "refreshed").register(meterRegistry);
+    }
+
+    // ==================== 同步加载协调 ====================
+
+    Duration getLockTtl() {
+        return lockTtl;
+    }
+
+    double getEarlyRefreshBeta() {
+        return earlyRefreshBeta;
+    }
+
+    /**
+     * 抢占加载锁，成功时返回令牌，锁已被占用时返回null
+     */
+    String tryLock(String cacheName, Object key) {
+        String token = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue()
+                .setIfAbsent(redisKey(cacheName, key, "lock"), token, lockTtl);
+        return Boolean.TRUE.equals(locked) ? token : null;
+    }
+
+    boolean isLocked(String cacheName, Object key) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(redisKey(cacheName, key, "lock")));
+    }
+
+    /**
+     * 只释放自己持有的锁（锁可能已过期并被其他实例占用）
+     */
+    void unlock(String cacheName, Object key, String token) {
+        try {
+            redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(redisKey(cacheName, key, "lock")), token);
+        } catch (Exception e) {
+            // 锁会自然过期
+            log.warn("释放缓存加载锁失败[{}::{}]: {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取加载信息：{查库耗时毫秒, 过期时间戳}，不存在时返回null
+     */
+    long[] readLoadInfo(String cacheName, Object key) {
+        String info = redisTemplate.opsForValue().get(redisKey(cacheName, key, "load"));
+        if (info == null) {
+            return null;
+        }
+        String[] fields = info.split(":");
+        try {
+            return new long[]{Long.parseLong(fields[0]), Long.parseLong(fields[1])};
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    void writeLoadInfo(String cacheName, Object key, long computeMillis, long expiresAt, Duration ttl) {
+        if (ttl.isZero()) {
+            return;
+        }
+        redisTemplate.opsForValue().set(redisKey(cacheName, key, "load"), computeMillis + ":" + expiresAt, ttl);
+    }
+
+    boolean submitRefresh(Runnable task) {
+        try {
+            refreshPool.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    void logRefreshFailure(String cacheName, Object key, Exception e) {
+        log.warn("缓存提前刷新失败[{}::{}]: {}", cacheName, key, e.getMessage());
+    }
+
+    private static String redisKey(String cacheName, Object key, String suffix) {
+        return cacheName + "::" + key + "::" + suffix;
+    }
+
+    // ==================== 失效广播 ====================
+
+    /**
+     * 注册只在进程内的缓存，其他实例对同名缓存广播的失效消息同样会清除它
+     */
+    void registerLocalCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+        localCaches.put(name, cache);
+    }
+
+    void publishEvict(String cacheName, Object key) {
+        if (key instanceof String) {
+            publish(cacheName + FIELD_SEPARATOR + key);
+        } else {
+            publishClear(cacheName);
+        }
+    }
+
+    void publishClear(String cacheName) {
+        publish(cacheName);
+    }
+
+    private void publish(String payload) {
+        try {
+            redisTemplate.convertAndSend(channel, instanceId + FIELD_SEPARATOR + payload);
+        } catch (Exception e) {
+            // 其他实例的L1会在过期后自然失效
+            log.warn("发布缓存失效消息失败[{}]: {}", payload, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] fields = new String(message.getBody(), StandardCharsets.UTF_8).split(FIELD_SEPARATOR, 3);
+        if (fields.length < 2 || instanceId.equals(fields[0])) {
+            return;
+        }
+
+        TwoLevelCache cache = caches.get(fields[1]);
+        if (cache != null) {
+            if (fields.length == 3) {
+                cache.evictLocal(fields[2]);
+            } else {
+                cache.clearLocal();
+            }
+            return;
+        }
+
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> localCache = localCaches.get(fields[1]);
+        if (localCache != null) {
+            if (fields.length == 3) {
+                localCache.invalidate(fields[2]);
+            } else {
+                localCache.invalidateAll();
+            }
+        }
+    }
+}
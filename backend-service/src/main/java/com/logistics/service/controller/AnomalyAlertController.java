@@ -1,6 +1,7 @@
 package com.logistics.service.controller;
 
 import com.logistics.service.dto.AnomalyAlertDTO;
+import com.logistics.service.dto.CursorPage;
 import com.logistics.service.dto.SimpleResponse;
 import com.logistics.service.service.AnomalyAlertService;
 import lombok.extern.slf4j.Slf4j;
@@ -80,15 +81,19 @@ public class AnomalyAlertController {
     }
 
     // ==================== 原有查询接口 ====================
+    // 列表接口按游标分页：limit 为每页条数（默认50，最多500），返回的 nextCursor 作为 cursor 传回获取下一页
 
     /**
      * 获取指定城市的未解决告警
      */
     @GetMapping("/unresolved/{city}")
-    public SimpleResponse<List<AnomalyAlertDTO>> getUnresolvedAlerts(@PathVariable String city) {
+    public SimpleResponse<CursorPage<AnomalyAlertDTO>> getUnresolvedAlerts(
+            @PathVariable String city,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             log.info("请求城市 {} 的未解决告警", city);
-            List<AnomalyAlertDTO> alerts = anomalyAlertService.getUnresolvedAlertsByCity(city);
+            CursorPage<AnomalyAlertDTO> alerts = anomalyAlertService.getUnresolvedAlertsByCity(city, cursor, limit);
             return SimpleResponse.success(alerts);
         } catch (Exception e) {
             log.error("获取未解决告警失败", e);
@@ -100,10 +105,13 @@ public class AnomalyAlertController {
      * 按严重程度获取告警
      */
     @GetMapping("/severity/{severity}")
-    public SimpleResponse<List<AnomalyAlertDTO>> getAlertsBySeverity(@PathVariable String severity) {
+    public SimpleResponse<CursorPage<AnomalyAlertDTO>> getAlertsBySeverity(
+            @PathVariable String severity,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             log.info("请求严重程度 {} 的告警", severity);
-            List<AnomalyAlertDTO> alerts = anomalyAlertService.getAlertsBySeverity(severity);
+            CursorPage<AnomalyAlertDTO> alerts = anomalyAlertService.getAlertsBySeverity(severity, cursor, limit);
             return SimpleResponse.success(alerts);
         } catch (Exception e) {
             log.error("按严重程度获取告警失败", e);
@@ -115,10 +123,13 @@ public class AnomalyAlertController {
      * 按异常类型获取告警
      */
     @GetMapping("/type/{anomalyType}")
-    public SimpleResponse<List<AnomalyAlertDTO>> getAlertsByType(@PathVariable String anomalyType) {
+    public SimpleResponse<CursorPage<AnomalyAlertDTO>> getAlertsByType(
+            @PathVariable String anomalyType,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             log.info("请求异常类型 {} 的告警", anomalyType);
-            List<AnomalyAlertDTO> alerts = anomalyAlertService.getAlertsByType(anomalyType);
+            CursorPage<AnomalyAlertDTO> alerts = anomalyAlertService.getAlertsByType(anomalyType, cursor, limit);
             return SimpleResponse.success(alerts);
         } catch (Exception e) {
             log.error("按异常类型获取告警失败", e);
@@ -130,13 +141,16 @@ public class AnomalyAlertController {
      * 按时间范围获取告警
      */
     @GetMapping("/range/{city}")
-    public SimpleResponse<List<AnomalyAlertDTO>> getAlertsByDateRange(
+    public SimpleResponse<CursorPage<AnomalyAlertDTO>> getAlertsByDateRange(
             @PathVariable String city,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             log.info("请求城市 {} 时间范围 {} 到 {} 的告警", city, startDate, endDate);
-            List<AnomalyAlertDTO> alerts = anomalyAlertService.getAlertsByDateRange(city, startDate, endDate);
+            CursorPage<AnomalyAlertDTO> alerts =
+                    anomalyAlertService.getAlertsByDateRange(city, startDate, endDate, cursor, limit);
             return SimpleResponse.success(alerts);
         } catch (Exception e) {
             log.error("按时间范围获取告警失败", e);
@@ -148,13 +162,16 @@ public class AnomalyAlertController {
      * 按配送员获取告警
      */
     @GetMapping("/courier/{courierId}")
-    public SimpleResponse<List<AnomalyAlertDTO>> getAlertsByCourier(
+    public SimpleResponse<CursorPage<AnomalyAlertDTO>> getAlertsByCourier(
             @PathVariable String courierId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             log.info("请求配送员 {} 时间范围 {} 到 {} 的告警", courierId, startDate, endDate);
-            List<AnomalyAlertDTO> alerts = anomalyAlertService.getAlertsByCourier(courierId, startDate, endDate);
+            CursorPage<AnomalyAlertDTO> alerts =
+                    anomalyAlertService.getAlertsByCourier(courierId, startDate, endDate, cursor, limit);
             return SimpleResponse.success(alerts);
         } catch (Exception e) {
             log.error("按配送员获取告警失败", e);
@@ -166,10 +183,13 @@ public class AnomalyAlertController {
      * 获取今日告警
      */
     @GetMapping("/today/{city}")
-    public SimpleResponse<List<AnomalyAlertDTO>> getTodayAlerts(@PathVariable String city) {
+    public SimpleResponse<CursorPage<AnomalyAlertDTO>> getTodayAlerts(
+            @PathVariable String city,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             log.info("请求城市 {} 的今日告警", city);
-            List<AnomalyAlertDTO> alerts = anomalyAlertService.getTodayAlerts(city);
+            CursorPage<AnomalyAlertDTO> alerts = anomalyAlertService.getTodayAlerts(city, cursor, limit);
             return SimpleResponse.success(alerts);
         } catch (Exception e) {
             log.error("获取今日告警失败", e);
@@ -181,10 +201,13 @@ public class AnomalyAlertController {
      * 获取高风险告警
      */
     @GetMapping("/high-risk/{city}")
-    public SimpleResponse<List<AnomalyAlertDTO>> getHighRiskAlerts(@PathVariable String city) {
+    public SimpleResponse<CursorPage<AnomalyAlertDTO>> getHighRiskAlerts(
+            @PathVariable String city,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             log.info("请求城市 {} 的高风险告警", city);
-            List<AnomalyAlertDTO> alerts = anomalyAlertService.getHighRiskAlerts(city);
+            CursorPage<AnomalyAlertDTO> alerts = anomalyAlertService.getHighRiskAlerts(city, cursor, limit);
             return SimpleResponse.success(alerts);
         } catch (Exception e) {
             log.error("获取高风险告警失败", e);
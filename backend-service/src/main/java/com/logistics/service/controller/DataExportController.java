@@ -0,0 +1,149 @@
+package com.logistics.service.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.logistics.service.dto.SimpleResponse;
+import com.logistics.service.service.DataExportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 批量导出接口
+ *
+ * 结果直接流式写入响应（format=csv 或 ndjson，默认csv），浏览器作为附件下载。
+ * 开始写入前出错时返回 SimpleResponse 错误信息；写入过程中出错时响应已提交，下载内容不完整。
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/export")
+@CrossOrigin(origins = "*")
+public class DataExportController {
+
+    @Autowired
+    private DataExportService dataExportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 导出告警
+     */
+    @GetMapping("/alerts")
+    public void exportAlerts(
+            @RequestParam(required = false) String city,
+            @RequestParam(required = false) String anomalyType,
+            @RequestParam(required = false) String severity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) Boolean isResolved,
+            @RequestParam(defaultValue = "csv") String format,
+            HttpServletResponse response) {
+        log.info("请求导出告警，城市: {}, 时间范围 {} 到 {}", city, startDate, endDate);
+        export(response, format, fileName("alerts", city, startDate, endDate), (exportFormat, out) ->
+                dataExportService.exportAlerts(city, anomalyType, severity, startDate, endDate, isResolved,
+                        exportFormat, out));
+    }
+
+    /**
+     * 导出城市运营效率
+     */
+    @GetMapping("/operational-efficiency/{city}")
+    public void exportOperationalEfficiency(
+            @PathVariable String city,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "csv") String format,
+            HttpServletResponse response) {
+        log.info("请求导出城市 {} 时间范围 {} 到 {} 的运营效率", city, startDate, endDate);
+        export(response, format, fileName("operational_efficiency", city, startDate, endDate), (exportFormat, out) ->
+                dataExportService.exportOperationalEfficiency(city, startDate, endDate, exportFormat, out));
+    }
+
+    /**
+     * 导出城市时间效率
+     */
+    @GetMapping("/time-efficiency/{city}")
+    public void exportTimeEfficiency(
+            @PathVariable String city,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "csv") String format,
+            HttpServletResponse response) {
+        log.info("请求导出城市 {} 时间范围 {} 到 {} 的时间效率", city, startDate, endDate);
+        export(response, format, fileName("time_efficiency", city, startDate, endDate), (exportFormat, out) ->
+                dataExportService.exportTimeEfficiency(city, startDate, endDate, exportFormat, out));
+    }
+
+    /**
+     * 导出城市综合报告
+     */
+    @GetMapping("/reports/{city}")
+    public void exportReports(
+            @PathVariable String city,
+            @RequestParam(required = false) String reportType,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "csv") String format,
+            HttpServletResponse response) {
+        log.info("请求导出城市 {} 时间范围 {} 到 {} 的综合报告", city, startDate, endDate);
+        export(response, format, fileName("reports", city, startDate, endDate), (exportFormat, out) ->
+                dataExportService.exportReports(city, reportType, startDate, endDate, exportFormat, out));
+    }
+
+    // ==================== 私有方法 ====================
+
+    @FunctionalInterface
+    private interface ExportTask {
+        long run(DataExportService.Format format, OutputStream out) throws IOException;
+    }
+
+    private void export(HttpServletResponse response, String format, String fileName, ExportTask task) {
+        long start = System.currentTimeMillis();
+        try {
+            DataExportService.Format exportFormat = DataExportService.Format.of(format);
+            response.setContentType(exportFormat.getContentType());
+            response.setHeader("Content-Disposition",
+                    "attachment; filename=\"" + fileName + "." + exportFormat.getExtension() + "\"");
+            long rows = task.run(exportFormat, response.getOutputStream());
+            response.flushBuffer();
+            log.info("导出 {} 完成: {} 行, 耗时 {}ms", fileName, rows, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("导出 {} 失败", fileName, e);
+            writeError(response, "导出失败: " + e.getMessage());
+        }
+    }
+
+    private void writeError(HttpServletResponse response, String message) {
+        if (response.isCommitted()) {
+            return;
+        }
+        try {
+            response.reset();
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            objectMapper.writeValue(response.getOutputStream(), SimpleResponse.error(message));
+        } catch (IOException e) {
+            log.warn("写入导出错误信息失败: {}", e.getMessage());
+        }
+    }
+
+    private static String fileName(String name, String city, LocalDate startDate, LocalDate endDate) {
+        return Stream.of(name, city, startDate, endDate)
+                .filter(Objects::nonNull)
+                .map(String::valueOf)
+                .map(part -> part.replaceAll("[^A-Za-z0-9_-]", ""))
+                .filter(part -> !part.isEmpty())
+                .collect(Collectors.joining("_"));
+    }
+}
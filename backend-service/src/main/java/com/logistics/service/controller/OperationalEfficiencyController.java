@@ -1,6 +1,7 @@
 package com.logistics.service.controller;
 
 import com.logistics.service.dao.entity.OperationalEfficiencyMetrics;
+import com.logistics.service.dto.CursorPage;
 import com.logistics.service.dto.OperationalEfficiencyDTO;
 import com.logistics.service.dto.SimpleResponse;
 import com.logistics.service.service.OperationalEfficiencyService;
@@ -57,10 +58,13 @@ public class OperationalEfficiencyController {
      * 获取今日运营效率
      */
     @GetMapping("/today/{city}")
-    public SimpleResponse<List<OperationalEfficiencyDTO>> getTodayEfficiency(@PathVariable String city) {
+    public SimpleResponse<CursorPage<OperationalEfficiencyDTO>> getTodayEfficiency(
+            @PathVariable String city,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             log.info("请求城市 {} 的今日运营效率", city);
-            List<OperationalEfficiencyDTO> data = operationalEfficiencyService.getTodayEfficiency(city);
+            CursorPage<OperationalEfficiencyDTO> data = operationalEfficiencyService.getTodayEfficiency(city, cursor, limit);
             return SimpleResponse.success(data);
         } catch (Exception e) {
             log.error("获取今日运营效率失败", e);
@@ -92,13 +96,16 @@ public class OperationalEfficiencyController {
      * 获取指定时间范围的运营效率
      */
     @GetMapping("/range/{city}")
-    public SimpleResponse<List<OperationalEfficiencyDTO>> getEfficiencyByRange(
+    public SimpleResponse<CursorPage<OperationalEfficiencyDTO>> getEfficiencyByRange(
             @PathVariable String city,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
             log.info("请求城市 {} 时间范围 {} 到 {} 的运营效率", city, startDate, endDate);
-            List<OperationalEfficiencyDTO> data = operationalEfficiencyService.getEfficiencyByCity(city, startDate, endDate);
+            CursorPage<OperationalEfficiencyDTO> data =
+                    operationalEfficiencyService.getEfficiencyByCity(city, startDate, endDate, cursor, limit);
             return SimpleResponse.success(data);
         } catch (Exception e) {
             log.error("获取运营效率失败", e);
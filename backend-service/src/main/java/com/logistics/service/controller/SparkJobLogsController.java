@@ -1,9 +1,15 @@
 package com.logistics.service.controller;
 
 import com.logistics.service.dao.entity.SparkJobLogs;
+import com.logistics.service.dao.entity.SparkStageMetrics;
+import com.logistics.service.dto.JobSubmissionDTO;
+import com.logistics.service.dto.JobSubmissionRequest;
 import com.logistics.service.dto.SparkJobLogsDTO;
 import com.logistics.service.dto.SimpleResponse;
+import com.logistics.service.dto.StageMetricsComparisonDTO;
 import com.logistics.service.service.SparkJobLogsService;
+import com.logistics.service.service.SparkJobSubmissionService;
+import com.logistics.service.service.SparkStageMetricsService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -22,6 +28,12 @@ public class SparkJobLogsController {
     @Autowired
     private SparkJobLogsService sparkJobLogsService;
 
+    @Autowired
+    private SparkStageMetricsService sparkStageMetricsService;
+
+    @Autowired
+    private SparkJobSubmissionService sparkJobSubmissionService;
+
     /**
      * 保存作业日志
      */
@@ -37,6 +49,47 @@ public class SparkJobLogsController {
         }
     }
 
+    /**
+     * 提交分析作业（异步执行，立即返回作业ID）
+     */
+    @PostMapping("/submit")
+    public SimpleResponse<JobSubmissionDTO> submitJob(@RequestBody(required = false) JobSubmissionRequest request) {
+        try {
+            if (request == null) {
+                request = new JobSubmissionRequest();
+            }
+            log.info("提交分析作业: startDs={}, endDs={}", request.getStartDs(), request.getEndDs());
+            JobSubmissionDTO result = sparkJobSubmissionService.submit(request);
+            return SimpleResponse.success(result);
+        } catch (IllegalArgumentException e) {
+            log.warn("提交分析作业参数错误: {}", e.getMessage());
+            return SimpleResponse.error("参数错误: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            log.warn("拒绝提交分析作业: {}", e.getMessage());
+            return SimpleResponse.error("无法提交: " + e.getMessage());
+        } catch (Exception e) {
+            log.error("提交分析作业失败", e);
+            return SimpleResponse.error("提交失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 取消排队或运行中的分析作业
+     */
+    @PostMapping("/{id}/cancel")
+    public SimpleResponse<String> cancelJob(@PathVariable Long id) {
+        try {
+            log.info("取消分析作业: {}", id);
+            if (!sparkJobSubmissionService.cancel(id)) {
+                return SimpleResponse.error("作业不在排队或运行中: " + id);
+            }
+            return SimpleResponse.success("已取消作业: " + id);
+        } catch (Exception e) {
+            log.error("取消分析作业失败: {}", id, e);
+            return SimpleResponse.error("取消失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 批量保存作业日志
      */
@@ -227,6 +280,55 @@ public class SparkJobLogsController {
         }
     }
 
+    /**
+     * 获取作业的stage级运行指标
+     */
+    @GetMapping("/{id}/stages")
+    public SimpleResponse<List<SparkStageMetrics>> getJobStages(@PathVariable Long id) {
+        try {
+            log.info("请求作业 ID {} 的stage指标", id);
+            List<SparkStageMetrics> stages = sparkStageMetricsService.getStageMetrics(id);
+            return SimpleResponse.success(stages);
+        } catch (Exception e) {
+            log.error("获取stage指标失败", e);
+            return SimpleResponse.error("获取数据失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 逐stage对比两次运行
+     */
+    @GetMapping("/compare/stages")
+    public SimpleResponse<List<StageMetricsComparisonDTO>> compareStages(
+            @RequestParam Long baseId,
+            @RequestParam Long targetId) {
+        try {
+            log.info("请求对比作业 {} 与 {} 的stage指标", baseId, targetId);
+            List<StageMetricsComparisonDTO> comparison = sparkStageMetricsService.compareStages(baseId, targetId);
+            return SimpleResponse.success(comparison);
+        } catch (Exception e) {
+            log.error("对比stage指标失败", e);
+            return SimpleResponse.error("对比失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按分析模块对比两次运行
+     */
+    @GetMapping("/compare/modules")
+    public SimpleResponse<List<StageMetricsComparisonDTO>> compareModules(
+            @RequestParam Long baseId,
+            @RequestParam Long targetId) {
+        try {
+            log.info("请求对比作业 {} 与 {} 的模块指标", baseId, targetId);
+            List<StageMetricsComparisonDTO> comparison = sparkStageMetricsService.compareModules(baseId, targetId);
+            return SimpleResponse.success(comparison);
+        } catch (Exception e) {
+            log.error("对比模块指标失败", e);
+            return SimpleResponse.error("对比失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 获取作业统计信息
      */
@@ -1,5 +1,6 @@
 package com.logistics.service.controller;
 
+import com.logistics.service.dao.entity.HeatmapTiles;
 import com.logistics.service.dao.entity.SpatialAnalysisMetrics;
 import com.logistics.service.dto.SpatialAnalysisDTO;
 import com.logistics.service.dto.SimpleResponse;
@@ -7,11 +8,17 @@ import com.logistics.service.service.SpatialAnalysisService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @RestController
@@ -19,6 +26,9 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class SpatialAnalysisController {
 
+    private static final CacheControl TILE_CACHE_CONTROL = CacheControl.maxAge(1, TimeUnit.DAYS).cachePublic();
+    private static final String EMPTY_TILE_ETAG = "empty";
+
     @Autowired
     private SpatialAnalysisService spatialAnalysisService;
 
@@ -239,6 +249,42 @@ public class SpatialAnalysisController {
         }
     }
 
+    /**
+     * 获取热力图瓦片（二进制，格式见 HeatmapTile）
+     *
+     * 同一天的瓦片只在分析作业重跑时变化：响应允许浏览器缓存一天，过期后凭ETag重新验证，
+     * 未变化时返回304；没有数据的瓦片返回204，同样可缓存。
+     */
+    @GetMapping("/tiles/{city}/{date}/{z}/{x}/{y}")
+    public ResponseEntity<byte[]> getHeatmapTile(
+            @PathVariable String city,
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @PathVariable int z,
+            @PathVariable long x,
+            @PathVariable long y,
+            WebRequest request) {
+        try {
+            HeatmapTiles tile = spatialAnalysisService.getHeatmapTile(city, date, z, x, y);
+            String etag = tile != null ? tile.getEtag() : EMPTY_TILE_ETAG;
+            // checkNotModified 同时设置响应的ETag头
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.status(tile != null ? HttpStatus.OK : HttpStatus.NO_CONTENT)
+                    .cacheControl(TILE_CACHE_CONTROL);
+            return tile != null
+                    ? response.contentType(MediaType.APPLICATION_OCTET_STREAM).body(tile.getPayload())
+                    : response.build();
+        } catch (IllegalArgumentException e) {
+            log.warn("热力图瓦片参数错误: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("获取热力图瓦片失败: {}/{}/{}/{}/{}", city, date, z, x, y, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * 获取空间汇总统计
      */
@@ -1,6 +1,7 @@
 package com.logistics.service.controller;
 
 import com.logistics.service.dao.entity.TimeEfficiencyMetrics;
+import com.logistics.service.dto.DurationQuantilesDTO;
 import com.logistics.service.dto.TimeEfficiencyDTO;
 import com.logistics.service.dto.SimpleResponse;
 import com.logistics.service.service.TimeEfficiencyService;
@@ -140,6 +141,25 @@ public class TimeEfficiencyController {
         }
     }
 
+    /**
+     * 获取指定时间范围的配送/取件时长分位数（合并小时草图，q 为逗号分隔的分位点）
+     */
+    @GetMapping("/quantiles/{city}")
+    public SimpleResponse<DurationQuantilesDTO> getDurationQuantiles(
+            @PathVariable String city,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "0.5,0.9,0.95,0.99") List<Double> q) {
+        try {
+            log.info("请求城市 {} 时间范围 {} 到 {} 的时长分位数: {}", city, startDate, endDate, q);
+            DurationQuantilesDTO data = timeEfficiencyService.getDurationQuantiles(city, startDate, endDate, q);
+            return SimpleResponse.success(data);
+        } catch (Exception e) {
+            log.error("获取时长分位数失败", e);
+            return SimpleResponse.error("获取分位数失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 多条件搜索时间效率
      */
@@ -0,0 +1,16 @@
+package com.logistics.service.dao.entity;
+
+import lombok.Data;
+import java.time.LocalDate;
+
+/**
+ * 时长分位数草图（QuantileSketch.toBytes 格式，由Spark时间效率模块按小时写入）
+ */
+@Data
+public class DurationQuantileSketch {
+    private String city;
+    private LocalDate date;
+    private Integer hour;
+    private byte[] deliveryDurationSketch;
+    private byte[] pickupDurationSketch;
+}
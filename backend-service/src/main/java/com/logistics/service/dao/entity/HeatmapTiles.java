@@ -0,0 +1,18 @@
+package com.logistics.service.dao.entity;
+
+import lombok.Data;
+import java.time.LocalDate;
+
+/**
+ * 热力图瓦片（由分析作业生成，payload 格式见 com.logistics.common.geo.HeatmapTile，tileId 为第 zoom 层的网格编码）
+ */
+@Data
+public class HeatmapTiles {
+    private String city;
+    private LocalDate date;
+    private Integer zoom;
+    private Long tileId;
+    private Long deliveryCount;
+    private byte[] payload;
+    private String etag;
+}
@@ -0,0 +1,19 @@
+package com.logistics.service.dao.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Spark作业事件（分析作业完成时由 SparkJobMonitor 与作业状态在同一事务中写入，后端轮询消费）
+ */
+@Data
+public class SparkJobEvent {
+    private Long id;
+    private Long jobLogId;
+    private String eventType; // JOB_COMPLETED
+    private String status; // SUCCESS, FAILED, KILLED
+    private Integer dsStart;
+    private Integer dsEnd;
+    private LocalDateTime createdAt;
+    private LocalDateTime processedAt;
+}
@@ -9,7 +9,7 @@ public class SparkJobLogs {
     private String jobName;
     private LocalDateTime startTime;
     private LocalDateTime endTime;
-    private String status; // RUNNING, SUCCESS, FAILED
+    private String status; // QUEUED, SUBMITTED, RUNNING, SUCCESS, FAILED, KILLED
     private String inputDeliverPath;
     private String inputPickupPath;
     private String outputPath;
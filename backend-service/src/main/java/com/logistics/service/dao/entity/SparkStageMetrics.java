@@ -0,0 +1,37 @@
+package com.logistics.service.dao.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Spark stage运行指标（由分析作业的 StageMetricsListener 按stage写入，moduleName 为 main 表示不属于分析模块）
+ */
+@Data
+public class SparkStageMetrics {
+    private Long id;
+    private Long jobLogId;
+    private String moduleName;
+    private Integer stageId;
+    private Integer stageAttempt;
+    private String stageName;
+    private String status; // SUCCESS, FAILED
+    private Integer numTasks;
+    private LocalDateTime submissionTime;
+    private LocalDateTime completionTime;
+    private Long durationMs;
+    private Long executorRunTimeMs;
+    private Long executorCpuTimeMs;
+    private Long jvmGcTimeMs;
+    private Long shuffleReadBytes;
+    private Long shuffleReadRecords;
+    private Long shuffleWriteBytes;
+    private Long shuffleWriteRecords;
+    private Long memorySpilledBytes;
+    private Long diskSpilledBytes;
+    private Long inputBytes;
+    private Long outputBytes;
+    private Long taskTimeMaxMs;
+    private Long taskTimeMedianMs;
+    private Double taskSkewRatio;
+    private LocalDateTime createdAt;
+}
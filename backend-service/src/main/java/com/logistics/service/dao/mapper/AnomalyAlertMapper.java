@@ -2,6 +2,7 @@ package com.logistics.service.dao.mapper;
 
 import com.logistics.service.dao.entity.AnomalyAlert;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -61,6 +62,33 @@ public interface AnomalyAlertMapper {
                                   @Param("isResolved") Boolean isResolved,
                                   @Param("limit") Integer limit);
 
+    /**
+     * 游标分页查询告警 - 按 (created_at, id) 倒序，cursorCreatedAt/cursorId 为上一页最后一行，为空时从第一页开始
+     */
+    List<AnomalyAlert> findAlertsPage(@Param("city") String city,
+                                      @Param("anomalyType") String anomalyType,
+                                      @Param("severity") String severity,
+                                      @Param("courierId") String courierId,
+                                      @Param("orderId") String orderId,
+                                      @Param("startDate") LocalDate startDate,
+                                      @Param("endDate") LocalDate endDate,
+                                      @Param("isResolved") Boolean isResolved,
+                                      @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                      @Param("cursorId") Long cursorId,
+                                      @Param("limit") int limit);
+
+    /**
+     * 流式查询告警（导出用），按 (created_at, id) 顺序逐行读取，需在事务内遍历
+     */
+    Cursor<AnomalyAlert> streamAlerts(@Param("city") String city,
+                                      @Param("anomalyType") String anomalyType,
+                                      @Param("severity") String severity,
+                                      @Param("courierId") String courierId,
+                                      @Param("orderId") String orderId,
+                                      @Param("startDate") LocalDate startDate,
+                                      @Param("endDate") LocalDate endDate,
+                                      @Param("isResolved") Boolean isResolved);
+
     /**
      * 查找最近的告警
      */
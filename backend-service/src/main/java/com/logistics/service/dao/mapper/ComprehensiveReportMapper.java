@@ -2,6 +2,8 @@ package com.logistics.service.dao.mapper;
 
 import com.logistics.service.dao.entity.ComprehensiveReport;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +44,20 @@ public interface ComprehensiveReportMapper {
                                                      @Param("startDate") LocalDate startDate,
                                                      @Param("endDate") LocalDate endDate);
 
+    /**
+     * 流式查询城市报告（导出用），reportType 为空时导出全部类型，需在事务内遍历
+     * fetchSize 为 Integer.MIN_VALUE 时MySQL驱动逐行读取结果集
+     */
+    @Select("<script>SELECT * FROM comprehensive_reports WHERE city = #{city} " +
+            "<if test='reportType != null and reportType != \"\"'>AND report_type = #{reportType} </if>" +
+            "AND date &gt;= #{startDate} AND date &lt;= #{endDate} " +
+            "ORDER BY date, report_type, region_id</script>")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<ComprehensiveReport> streamByCityAndDateRange(@Param("city") String city,
+                                                         @Param("reportType") String reportType,
+                                                         @Param("startDate") LocalDate startDate,
+                                                         @Param("endDate") LocalDate endDate);
+
     /**
      * 根据报告类型查找报告
      */
@@ -0,0 +1,19 @@
+package com.logistics.service.dao.mapper;
+
+import com.logistics.service.dao.entity.DurationQuantileSketch;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Mapper
+public interface DurationQuantileSketchMapper {
+
+    /**
+     * 根据城市和日期范围查找时长分位数草图
+     */
+    List<DurationQuantileSketch> findByCityAndDateRange(@Param("city") String city,
+                                                        @Param("startDate") LocalDate startDate,
+                                                        @Param("endDate") LocalDate endDate);
+}
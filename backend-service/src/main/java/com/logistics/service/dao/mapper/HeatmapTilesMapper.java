@@ -0,0 +1,18 @@
+package com.logistics.service.dao.mapper;
+
+import com.logistics.service.dao.entity.HeatmapTiles;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDate;
+
+@Mapper
+public interface HeatmapTilesMapper {
+
+    /**
+     * 按主键读取单个瓦片
+     */
+    HeatmapTiles findTile(@Param("city") String city,
+                          @Param("date") LocalDate date,
+                          @Param("tileId") Long tileId);
+}
@@ -3,6 +3,7 @@ package com.logistics.service.dao.mapper;
 import com.logistics.service.dao.entity.OperationalEfficiencyMetrics;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -28,6 +29,24 @@ public interface OperationalEfficiencyMetricsMapper {
                                                               @Param("startDate") LocalDate startDate,
                                                               @Param("endDate") LocalDate endDate);
 
+    /**
+     * 游标分页查询城市运营效率，游标为上一页最后一行的 (date, region_id, courier_id)
+     */
+    List<OperationalEfficiencyMetrics> findByCityAndDateRangePage(@Param("city") String city,
+                                                                  @Param("startDate") LocalDate startDate,
+                                                                  @Param("endDate") LocalDate endDate,
+                                                                  @Param("cursorDate") LocalDate cursorDate,
+                                                                  @Param("cursorRegionId") Integer cursorRegionId,
+                                                                  @Param("cursorCourierId") Integer cursorCourierId,
+                                                                  @Param("limit") int limit);
+
+    /**
+     * 流式查询城市运营效率（导出用），需在事务内遍历
+     */
+    Cursor<OperationalEfficiencyMetrics> streamByCityAndDateRange(@Param("city") String city,
+                                                                  @Param("startDate") LocalDate startDate,
+                                                                  @Param("endDate") LocalDate endDate);
+
     /**
      * 根据配送员和日期范围查找运营效率
      */
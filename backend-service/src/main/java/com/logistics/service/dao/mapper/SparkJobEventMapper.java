@@ -0,0 +1,26 @@
+package com.logistics.service.dao.mapper;
+
+import com.logistics.service.dao.entity.SparkJobEvent;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface SparkJobEventMapper {
+
+    /**
+     * 查找未处理的事件（按ID升序）
+     */
+    List<SparkJobEvent> findPending(@Param("limit") int limit);
+
+    /**
+     * 按作业日志当前的状态和ds范围写入一条事件（用于后端自己标记结束的作业）
+     */
+    int insertForJob(@Param("jobLogId") Long jobLogId, @Param("eventType") String eventType);
+
+    /**
+     * 标记事件已处理，返回0表示已被其他实例处理
+     */
+    int markProcessed(@Param("id") Long id);
+}
@@ -66,6 +66,14 @@ public interface SparkJobLogsMapper {
                         @Param("executionTimeSeconds") Integer executionTimeSeconds,
                         @Param("errorMessage") String errorMessage);
 
+    /**
+     * 更新提交作业的运行状态（不覆盖已写入的最终状态 SUCCESS / FAILED / KILLED）
+     */
+    int updateLaunchState(@Param("id") Long id,
+                          @Param("status") String status,
+                          @Param("endTime") LocalDateTime endTime,
+                          @Param("errorMessage") String errorMessage);
+
     /**
      * 更新作业处理记录数
      */
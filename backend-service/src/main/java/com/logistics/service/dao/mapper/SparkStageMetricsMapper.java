@@ -0,0 +1,16 @@
+package com.logistics.service.dao.mapper;
+
+import com.logistics.service.dao.entity.SparkStageMetrics;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface SparkStageMetricsMapper {
+
+    /**
+     * 查找作业的全部stage指标（按stage_id、attempt排序）
+     */
+    List<SparkStageMetrics> findByJobLogId(@Param("jobLogId") Long jobLogId);
+}
@@ -62,12 +62,25 @@ public interface SpatialAnalysisMetricsMapper {
                                                           @Param("startDate") LocalDate startDate);
 
     /**
-     * 获取网格聚合数据
+     * 获取网格聚合数据（按0.01度网格行重新分组，用于没有分层网格数据的日期）
      */
     List<Map<String, Object>> getGridAggregation(@Param("city") String city,
                                                  @Param("date") LocalDate date,
                                                  @Param("gridSize") Double gridSize);
 
+    /**
+     * 查询某天已持久化的分层网格层级
+     */
+    List<Integer> getGridCellLevels(@Param("city") String city,
+                                    @Param("date") LocalDate date);
+
+    /**
+     * 获取指定层级的分层网格聚合（主键范围查询）
+     */
+    List<Map<String, Object>> getGridCellAggregation(@Param("city") String city,
+                                                     @Param("date") LocalDate date,
+                                                     @Param("cellLevel") Integer cellLevel);
+
     /**
      * 获取空间汇总统计
      */
@@ -3,6 +3,7 @@ package com.logistics.service.dao.mapper;
 import com.logistics.service.dao.entity.TimeEfficiencyMetrics;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -28,6 +29,13 @@ public interface TimeEfficiencyMetricsMapper {
                                                        @Param("startDate") LocalDate startDate,
                                                        @Param("endDate") LocalDate endDate);
 
+    /**
+     * 流式查询城市时间效率（导出用），需在事务内遍历
+     */
+    Cursor<TimeEfficiencyMetrics> streamByCityAndDateRange(@Param("city") String city,
+                                                           @Param("startDate") LocalDate startDate,
+                                                           @Param("endDate") LocalDate endDate);
+
     /**
      * 根据城市和日期查找时间效率
      */
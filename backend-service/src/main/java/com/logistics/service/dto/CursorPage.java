@@ -0,0 +1,97 @@
+package com.logistics.service.dto;
+
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 游标分页结果（keyset分页）
+ *
+ * 查询按唯一的排序键倒序，下一页从上一页最后一行的排序键之后开始，不使用OFFSET，翻页代价与页码无关，
+ * 翻页期间新追加的数据也不会导致重复或遗漏。nextCursor 为最后一行排序键的Base64编码，调用方原样传回即可。
+ */
+@Data
+public class CursorPage<T> {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private static final String SEPARATOR = "|";
+
+    private List<T> items;
+    private String nextCursor;
+    private boolean hasMore;
+
+    /**
+     * 由多查询一行的结果构建分页：超过 pageSize 行说明还有下一页
+     *
+     * @param rows      按排序键查询的 pageSize + 1 行
+     * @param cursorKey 行的排序键，用于生成下一页游标
+     * @param converter 行到返回对象的转换
+     */
+    public static <R, T> CursorPage<T> of(List<R> rows, int pageSize,
+                                          Function<R, Object[]> cursorKey, Function<R, T> converter) {
+        CursorPage<T> page = new CursorPage<>();
+        page.setHasMore(rows.size() > pageSize);
+        List<R> pageRows = page.isHasMore() ? rows.subList(0, pageSize) : rows;
+        page.setItems(pageRows.stream().map(converter).collect(Collectors.toList()));
+        if (page.isHasMore()) {
+            page.setNextCursor(encodeCursor(cursorKey.apply(pageRows.get(pageRows.size() - 1))));
+        }
+        return page;
+    }
+
+    public static <T> CursorPage<T> empty() {
+        CursorPage<T> page = new CursorPage<>();
+        page.setItems(Collections.emptyList());
+        return page;
+    }
+
+    /**
+     * 每页条数：未指定时取默认值，超过上限时取上限
+     */
+    public static int pageSize(Integer limit) {
+        if (limit == null || limit <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    public static String encodeCursor(Object... keys) {
+        StringBuilder raw = new StringBuilder();
+        for (Object key : keys) {
+            if (raw.length() > 0) {
+                raw.append(SEPARATOR);
+            }
+            raw.append(key);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标，游标为空时返回null
+     *
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public static String[] decodeCursor(String cursor, int keyCount) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] keys;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            keys = raw.split("\\|", -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor);
+        }
+        if (keys.length != keyCount) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor);
+        }
+        return keys;
+    }
+}
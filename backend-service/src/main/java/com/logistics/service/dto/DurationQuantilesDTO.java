@@ -0,0 +1,23 @@
+package com.logistics.service.dto;
+
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * 时长分位数（小时）：由日期范围内的小时草图合并得到，quantiles 的键为分位点（如 "0.95"）
+ */
+@Data
+public class DurationQuantilesDTO {
+    private String city;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private BigDecimal relativeAccuracy;
+    private Long totalDeliveries;
+    private BigDecimal avgDeliveryTime;
+    private Map<String, BigDecimal> deliveryQuantiles;
+    private Long totalPickups;
+    private BigDecimal avgPickupTime;
+    private Map<String, BigDecimal> pickupQuantiles;
+}
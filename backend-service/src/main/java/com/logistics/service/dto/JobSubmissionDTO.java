@@ -0,0 +1,14 @@
+package com.logistics.service.dto;
+
+import lombok.Data;
+
+/**
+ * 分析作业提交结果：duplicate 为 true 时表示相同ds范围的作业已在排队或运行，jobId 为该作业的ID
+ */
+@Data
+public class JobSubmissionDTO {
+    private Long jobId;
+    private String status;
+    private Boolean duplicate;
+    private String dsRange;
+}
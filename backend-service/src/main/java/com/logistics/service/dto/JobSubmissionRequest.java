@@ -0,0 +1,15 @@
+package com.logistics.service.dto;
+
+import lombok.Data;
+import java.util.Map;
+
+/**
+ * 分析作业提交请求：startDs/endDs 均为空时全量分析，否则按ds范围增量分析；
+ * conf 为附加的 spark.logistics.* 运行参数
+ */
+@Data
+public class JobSubmissionRequest {
+    private Integer startDs;
+    private Integer endDs;
+    private Map<String, String> conf;
+}
@@ -0,0 +1,28 @@
+package com.logistics.service.dto;
+
+import com.logistics.service.dao.entity.SparkStageMetrics;
+import lombok.Data;
+import java.math.BigDecimal;
+
+/**
+ * 两次运行的stage（或模块）指标对比
+ *
+ * 同一模块内按 stageName 及其出现顺序（stageIndex）配对，stage ID 在两次运行间不一定相同；
+ * 模块级对比时 stageName 为空，base/target 为模块内各stage的汇总。某一方没有对应stage时为null。
+ */
+@Data
+public class StageMetricsComparisonDTO {
+    private String moduleName;
+    private String stageName;
+    private Integer stageIndex;
+    private SparkStageMetrics base;
+    private SparkStageMetrics target;
+    private Long durationDeltaMs;
+    private Long executorRunTimeDeltaMs;
+    private BigDecimal executorRunTimeChangeRate; // 百分比，base为0时为null
+    private Long shuffleReadDeltaBytes;
+    private Long shuffleWriteDeltaBytes;
+    private Long spillDeltaBytes;
+    private Long jvmGcTimeDeltaMs;
+    private Double taskSkewRatioDelta;
+}
@@ -1,8 +1,10 @@
 package com.logistics.service.service;
 
+import com.logistics.service.config.CacheGenerations;
 import com.logistics.service.dao.entity.AnomalyAlert;
 import com.logistics.service.dao.mapper.AnomalyAlertMapper;
 import com.logistics.service.dto.AnomalyAlertDTO;
+import com.logistics.service.dto.CursorPage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.*;
@@ -19,15 +21,21 @@ import java.util.stream.Collectors;
 @Service
 public class AnomalyAlertService {
 
+    /** 缓存代数的业务域，与缓存键中 @cacheGenerations 的参数一致 */
+    private static final String CACHE_DOMAIN = "alerts";
+
     @Autowired
     private AnomalyAlertMapper anomalyAlertMapper;
 
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     // ==================== 基础CRUD操作 ====================
 
     /**
      * 根据ID获取告警 - 添加缓存
      */
-    @Cacheable(value = "alerts", key = "'alert:' + #id", unless = "#result == null")
+    @Cacheable(value = "alerts", key = "@cacheGenerations.all('alerts') + 'alert:' + #id", unless = "#result == null")
     public AnomalyAlertDTO getAlertById(Long id) {
         try {
             log.info("查询数据库获取告警[id={}]", id);
@@ -42,86 +50,50 @@ public class AnomalyAlertService {
     // ==================== 查询操作 ====================
 
     /**
-     * 获取指定城市未解决的异常告警 - 添加缓存
+     * 分页获取指定城市未解决的异常告警 - 不缓存（按游标分页，每页查询走索引）
      */
-    @Cacheable(value = "alerts", key = "'unresolved:' + #city", unless = "#result.isEmpty()")
-    public List<AnomalyAlertDTO> getUnresolvedAlertsByCity(String city) {
-        try {
-            log.info("查询数据库获取未解决告警[city={}]", city);
-            List<AnomalyAlert> alerts = anomalyAlertMapper.findAlerts(
-                    city, null, null, null, null, null, null, false, null);
-            return alerts.stream().map(this::convertToDTO).collect(Collectors.toList());
-        } catch (Exception e) {
-            log.error("获取异常告警失败", e);
-            return new ArrayList<>();
-        }
+    public CursorPage<AnomalyAlertDTO> getUnresolvedAlertsByCity(String city, String cursor, Integer limit) {
+        log.info("查询数据库获取未解决告警[city={}, cursor={}]", city, cursor);
+        return findAlertsPage(city, null, null, null, null, null, false, cursor, limit);
     }
 
     /**
-     * 根据严重程度获取告警 - 添加缓存
+     * 分页获取指定严重程度的告警 - 不缓存
      */
-    @Cacheable(value = "alerts", key = "'severity:' + #severity", unless = "#result.isEmpty()")
-    public List<AnomalyAlertDTO> getAlertsBySeverity(String severity) {
-        try {
-            log.info("查询数据库获取严重程度告警[severity={}]", severity);
-            List<AnomalyAlert> alerts = anomalyAlertMapper.findAlerts(
-                    null, null, severity, null, null, null, null, null, null);
-            return alerts.stream().map(this::convertToDTO).collect(Collectors.toList());
-        } catch (Exception e) {
-            log.error("按严重程度获取告警失败", e);
-            return new ArrayList<>();
-        }
+    public CursorPage<AnomalyAlertDTO> getAlertsBySeverity(String severity, String cursor, Integer limit) {
+        log.info("查询数据库获取严重程度告警[severity={}, cursor={}]", severity, cursor);
+        return findAlertsPage(null, null, severity, null, null, null, null, cursor, limit);
     }
 
     /**
-     * 根据异常类型获取告警 - 不缓存（变化频繁）
+     * 分页获取指定异常类型的告警 - 不缓存（变化频繁）
      */
-    public List<AnomalyAlertDTO> getAlertsByType(String anomalyType) {
-        try {
-            List<AnomalyAlert> alerts = anomalyAlertMapper.findAlerts(
-                    null, anomalyType, null, null, null, null, null, null, null);
-            return alerts.stream().map(this::convertToDTO).collect(Collectors.toList());
-        } catch (Exception e) {
-            log.error("按异常类型获取告警失败", e);
-            return new ArrayList<>();
-        }
+    public CursorPage<AnomalyAlertDTO> getAlertsByType(String anomalyType, String cursor, Integer limit) {
+        return findAlertsPage(null, anomalyType, null, null, null, null, null, cursor, limit);
     }
 
     /**
-     * 获取指定时间范围的告警 - 添加缓存
+     * 分页获取指定时间范围的告警 - 不缓存
      */
-    @Cacheable(value = "alerts", key = "'range:' + #city + ':' + #startDate + ':' + #endDate",
-            unless = "#result.isEmpty()")
-    public List<AnomalyAlertDTO> getAlertsByDateRange(String city, LocalDate startDate, LocalDate endDate) {
-        try {
-            log.info("查询数据库获取时间范围告警[city={}]", city);
-            List<AnomalyAlert> alerts = anomalyAlertMapper.findAlerts(
-                    city, null, null, null, null, startDate, endDate, null, null);
-            return alerts.stream().map(this::convertToDTO).collect(Collectors.toList());
-        } catch (Exception e) {
-            log.error("按时间范围获取告警失败", e);
-            return new ArrayList<>();
-        }
+    public CursorPage<AnomalyAlertDTO> getAlertsByDateRange(String city, LocalDate startDate, LocalDate endDate,
+                                                           String cursor, Integer limit) {
+        log.info("查询数据库获取时间范围告警[city={}, cursor={}]", city, cursor);
+        return findAlertsPage(city, null, null, null, startDate, endDate, null, cursor, limit);
     }
 
     /**
-     * 获取指定配送员的告警 - 不缓存（敏感数据）
+     * 分页获取指定配送员的告警 - 不缓存（敏感数据）
      */
-    public List<AnomalyAlertDTO> getAlertsByCourier(String courierId, LocalDate startDate, LocalDate endDate) {
-        try {
-            List<AnomalyAlert> alerts = anomalyAlertMapper.findAlerts(
-                    null, null, null, courierId, null, startDate, endDate, null, null);
-            return alerts.stream().map(this::convertToDTO).collect(Collectors.toList());
-        } catch (Exception e) {
-            log.error("按配送员获取告警失败", e);
-            return new ArrayList<>();
-        }
+    public CursorPage<AnomalyAlertDTO> getAlertsByCourier(String courierId, LocalDate startDate, LocalDate endDate,
+                                                         String cursor, Integer limit) {
+        return findAlertsPage(null, null, null, courierId, startDate, endDate, null, cursor, limit);
     }
 
     /**
      * 获取订单告警 - 添加缓存
      */
-    @Cacheable(value = "alerts", key = "'order:' + #orderId", unless = "#result.isEmpty()")
+    @Cacheable(value = "alerts",
+            key = "@cacheGenerations.all('alerts') + 'order:' + #orderId", unless = "#result.isEmpty()")
     public List<AnomalyAlertDTO> getAlertsByOrder(String orderId) {
         try {
             List<AnomalyAlert> alerts = anomalyAlertMapper.findAlerts(
@@ -134,33 +106,25 @@ public class AnomalyAlertService {
     }
 
     /**
-     * 获取今日告警 - 添加缓存
+     * 分页获取今日告警
      */
-    @Cacheable(value = "alerts", key = "'today:' + #city", unless = "#result.isEmpty()")
-    public List<AnomalyAlertDTO> getTodayAlerts(String city) {
+    public CursorPage<AnomalyAlertDTO> getTodayAlerts(String city, String cursor, Integer limit) {
         LocalDate today = LocalDate.now();
-        return getAlertsByDateRange(city, today, today);
+        return getAlertsByDateRange(city, today, today, cursor, limit);
     }
 
     /**
-     * 获取高风险告警 - 添加缓存
+     * 分页获取未解决的高风险告警 - 不缓存
      */
-    @Cacheable(value = "alerts", key = "'high_risk:' + #city", unless = "#result.isEmpty()")
-    public List<AnomalyAlertDTO> getHighRiskAlerts(String city) {
-        try {
-            List<AnomalyAlert> alerts = anomalyAlertMapper.findAlerts(
-                    city, null, "HIGH", null, null, null, null, false, null);
-            return alerts.stream().map(this::convertToDTO).collect(Collectors.toList());
-        } catch (Exception e) {
-            log.error("获取高风险告警失败", e);
-            return new ArrayList<>();
-        }
+    public CursorPage<AnomalyAlertDTO> getHighRiskAlerts(String city, String cursor, Integer limit) {
+        return findAlertsPage(city, null, "HIGH", null, null, null, false, cursor, limit);
     }
 
     /**
      * 查找异常值超过阈值最多的告警 - 添加缓存
      */
-    @Cacheable(value = "alerts", key = "'highest_deviation:' + #limit", unless = "#result.isEmpty()")
+    @Cacheable(value = "alerts",
+            key = "@cacheGenerations.all('alerts') + 'highest_deviation:' + #limit", unless = "#result.isEmpty()")
     public List<AnomalyAlertDTO> getHighestDeviationAlerts(int limit) {
         try {
             log.info("查询数据库获取最高偏差告警");
@@ -175,7 +139,8 @@ public class AnomalyAlertService {
     /**
      * 获取最近的告警 - 添加缓存
      */
-    @Cacheable(value = "alerts", key = "'recent:' + #limit", unless = "#result.isEmpty()")
+    @Cacheable(value = "alerts",
+            key = "@cacheGenerations.all('alerts') + 'recent:' + #limit", unless = "#result.isEmpty()")
     public List<AnomalyAlertDTO> getRecentAlerts(int limit) {
         try {
             log.info("查询数据库获取最近告警");
@@ -193,11 +158,11 @@ public class AnomalyAlertService {
      * 解决告警 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = "alerts", allEntries = true)
     public boolean resolveAlert(Long alertId) {
         try {
             int updated = anomalyAlertMapper.resolveAlert(alertId, LocalDateTime.now());
             if (updated > 0) {
+                bumpAlertGeneration(alertId);
                 log.info("告警已解决，ID={}，已清除缓存", alertId);
                 return true;
             }
@@ -212,7 +177,6 @@ public class AnomalyAlertService {
      * 批量解决告警 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = "alerts", allEntries = true)
     public int resolveAlertsBatch(List<Long> alertIds) {
         try {
             if (alertIds == null || alertIds.isEmpty()) {
@@ -223,6 +187,7 @@ public class AnomalyAlertService {
             int totalResolved = anomalyAlertMapper.resolveAlertsBatch(alertIds, resolvedTime);
 
             if (totalResolved > 0) {
+                alertIds.forEach(this::bumpAlertGeneration);
                 log.info("批量解决告警完成，共解决 {} 个，已清除缓存", totalResolved);
             }
 
@@ -256,8 +221,9 @@ public class AnomalyAlertService {
     /**
      * 获取告警统计分析 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'alert_stats:' + #startDate + ':' + #endDate + ':' + #groupBy",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.all('alerts') + 'alert_stats:' + #startDate + ':' + #endDate + ':' + #groupBy",
+            sync = true)
     public List<Map<String, Object>> getAlertStats(LocalDate startDate, LocalDate endDate, String groupBy) {
         try {
             log.info("查询数据库获取告警统计分析");
@@ -268,7 +234,7 @@ public class AnomalyAlertService {
         }
     }
 
-    @Cacheable(value = "stats", key = "'today_stats'", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats", key = "@cacheGenerations.all('alerts') + 'today_stats'", sync = true)
     public List<Map<String, Object>> getTodayAlertStats() {
         LocalDate today = LocalDate.now();
         return getAlertStats(today, today, "type_severity");
@@ -277,8 +243,9 @@ public class AnomalyAlertService {
     /**
      * 获取城市告警趋势 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'trend:' + #city + ':' + #startDate + ':' + #endDate",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('alerts', #city) + 'trend:' + #city + ':' + #startDate + ':' + #endDate",
+            sync = true)
     public List<Map<String, Object>> getCityAlertTrend(String city, LocalDate startDate, LocalDate endDate) {
         try {
             log.info("查询数据库获取城市告警趋势");
@@ -334,11 +301,11 @@ public class AnomalyAlertService {
      * 更新告警描述 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = "alerts", allEntries = true)
     public boolean updateAlertDescription(Long id, String description) {
         try {
             int updated = anomalyAlertMapper.updateAlertDescription(id, description);
             if (updated > 0) {
+                bumpAlertGeneration(id);
                 log.info("更新告警描述成功，ID={}，已清除缓存", id);
                 return true;
             }
@@ -353,11 +320,11 @@ public class AnomalyAlertService {
      * 更新告警严重程度 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = "alerts", allEntries = true)
     public boolean updateAlertSeverity(Long id, String severity) {
         try {
             int updated = anomalyAlertMapper.updateAlertSeverity(id, severity);
             if (updated > 0) {
+                bumpAlertGeneration(id);
                 log.info("更新告警严重程度成功，ID={}，已清除缓存", id);
                 return true;
             }
@@ -372,13 +339,13 @@ public class AnomalyAlertService {
      * 清理旧告警数据 - 清理后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"alerts", "stats"}, allEntries = true)
     public int cleanupOldAlerts(int daysToKeep) {
         try {
             LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysToKeep);
             int deleted = anomalyAlertMapper.cleanupOldAlerts(cutoffDate);
 
             if (deleted > 0) {
+                cacheGenerations.bumpDomain(CACHE_DOMAIN);
                 log.info("清理旧告警数据成功，删除 {} 条记录，已清除缓存", deleted);
             }
 
@@ -391,6 +358,45 @@ public class AnomalyAlertService {
 
     // ==================== 私有方法 ====================
 
+    /**
+     * 游标分页查询告警，游标为上一页最后一行的 (created_at, id)
+     */
+    private CursorPage<AnomalyAlertDTO> findAlertsPage(String city, String anomalyType, String severity, String courierId,
+                                                       LocalDate startDate, LocalDate endDate, Boolean isResolved,
+                                                       String cursor, Integer limit) {
+        String[] keys = CursorPage.decodeCursor(cursor, 2);
+        LocalDateTime cursorCreatedAt = null;
+        Long cursorId = null;
+        if (keys != null) {
+            try {
+                cursorCreatedAt = LocalDateTime.parse(keys[0]);
+                cursorId = Long.valueOf(keys[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+        }
+        int pageSize = CursorPage.pageSize(limit);
+        try {
+            List<AnomalyAlert> alerts = anomalyAlertMapper.findAlertsPage(city, anomalyType, severity, courierId, null,
+                    startDate, endDate, isResolved, cursorCreatedAt, cursorId, pageSize + 1);
+            return CursorPage.of(alerts, pageSize,
+                    alert -> new Object[]{alert.getCreatedAt(), alert.getId()}, this::convertToDTO);
+        } catch (Exception e) {
+            log.error("分页查询告警失败", e);
+            return CursorPage.empty();
+        }
+    }
+
+    /**
+     * 按告警所属的城市和分析日期递增缓存代数
+     */
+    private void bumpAlertGeneration(Long alertId) {
+        AnomalyAlert alert = anomalyAlertMapper.findById(alertId);
+        if (alert != null) {
+            cacheGenerations.bump(CACHE_DOMAIN, alert.getCity(), alert.getAnalysisDate());
+        }
+    }
+
     private AnomalyAlertDTO convertToDTO(AnomalyAlert alert) {
         AnomalyAlertDTO dto = new AnomalyAlertDTO();
         dto.setId(alert.getId());
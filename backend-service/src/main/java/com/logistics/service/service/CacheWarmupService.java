@@ -0,0 +1,295 @@
+package com.logistics.service.service;
+
+import com.logistics.service.config.CacheGenerations;
+import com.logistics.service.dao.entity.SparkJobEvent;
+import com.logistics.service.dao.mapper.ComprehensiveReportMapper;
+import com.logistics.service.dao.mapper.SparkJobEventMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分析作业完成后的缓存预热
+ *
+ * 分析作业直接写MySQL，不经过各服务的写入方法，缓存代数不会递增。作业完成时 SparkJobMonitor
+ * 在 spark_job_events 中写入完成事件（与作业状态同一事务），这里定时轮询：
+ * 1. 递增作业写入的各业务域的代数，清空不带代数的 kpi 缓存，旧结果不再被读取
+ * 2. 条件更新 processed_at 认领事件，多实例部署时只有一个实例预热
+ * 3. 作业成功时按城市预先查询看板各页面默认打开的查询，日期参数与各页面默认值一致（见 {@link #warmUp}），
+ *    在固定大小的线程池中执行，concurrency 限制同时压到MySQL的查询数
+ * 后端自己标记结束的作业（取消、Spark应用丢失等）由 {@link #publishJobEvent} 补写事件，作业已部分写入的结果同样失效。
+ * 同一轮认领的多个事件合并为一次失效和预热；上一次预热未完成时不认领新事件，留到下一轮合并处理。
+ */
+@Slf4j
+@Service
+public class CacheWarmupService {
+
+    /** 分析作业写入的业务域（与各服务的 CACHE_DOMAIN 一致） */
+    private static final List<String> ANALYSIS_DOMAINS = Arrays.asList(
+            "spatial", "time_efficiency", "efficiency", "predictions", "costs", "reports", "alerts", "jobs");
+
+    private static final int POLL_BATCH_SIZE = 100;
+
+    /** 时间效率、运营效率页面默认最近7天：今天-6 ~ 今天 */
+    private static final int WEEK_PAGE_OFFSET_DAYS = 6;
+
+    /** 成本分析、综合报表页面默认 今天-7 ~ 今天 */
+    private static final int COST_REPORT_PAGE_OFFSET_DAYS = 7;
+
+    @Autowired
+    private SparkJobEventMapper sparkJobEventMapper;
+
+    @Autowired
+    private ComprehensiveReportMapper comprehensiveReportMapper;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private KpiService kpiService;
+
+    @Autowired
+    private SpatialAnalysisService spatialAnalysisService;
+
+    @Autowired
+    private TimeEfficiencyService timeEfficiencyService;
+
+    @Autowired
+    private OperationalEfficiencyService operationalEfficiencyService;
+
+    @Autowired
+    private CostAnalysisMetricsService costAnalysisMetricsService;
+
+    @Autowired
+    private PredictiveAnalysisService predictiveAnalysisService;
+
+    @Autowired
+    private ComprehensiveReportService comprehensiveReportService;
+
+    @Autowired
+    private AnomalyAlertService anomalyAlertService;
+
+    @Value("${logistics.cache.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${logistics.cache.warmup.concurrency:4}")
+    private int concurrency;
+
+    /** 预热的城市，为空时取 comprehensive_reports 中的全部城市 */
+    @Value("${logistics.cache.warmup.cities:}")
+    private List<String> cities;
+
+    private ExecutorService warmupPool;
+    private volatile CompletableFuture<Void> running = CompletableFuture.completedFuture(null);
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        warmupPool = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "cache-warmup-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        warmupPool.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${logistics.cache.warmup.poll-interval-ms:10000}")
+    public void pollJobEvents() {
+        if (!enabled || !running.isDone()) {
+            return;
+        }
+
+        List<SparkJobEvent> pending;
+        try {
+            pending = sparkJobEventMapper.findPending(POLL_BATCH_SIZE);
+        } catch (Exception e) {
+            // 分析作业首次运行前 spark_job_events 表还不存在
+            log.debug("轮询Spark作业事件失败: {}", e.getMessage());
+            return;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // 先失效再认领：失效失败（如Redis不可用）时事件保持未处理，下一轮重试；多个实例重复失效没有副作用
+        try {
+            invalidateAnalysisCaches();
+        } catch (Exception e) {
+            log.warn("Spark作业完成后失效缓存失败，稍后重试: {}", e.getMessage());
+            return;
+        }
+
+        List<SparkJobEvent> claimed = new ArrayList<>();
+        for (SparkJobEvent event : pending) {
+            if (sparkJobEventMapper.markProcessed(event.getId()) > 0) {
+                claimed.add(event);
+            }
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        log.info("处理 {} 个Spark作业完成事件，作业ID: {}", claimed.size(),
+                claimed.stream().map(SparkJobEvent::getJobLogId).toArray());
+        if (claimed.stream().anyMatch(event -> "SUCCESS".equals(event.getStatus()))) {
+            running = warmUp();
+        }
+    }
+
+    /**
+     * 使分析作业写入的数据对应的缓存失效
+     */
+    public void invalidateAnalysisCaches() {
+        for (String domain : ANALYSIS_DOMAINS) {
+            cacheGenerations.bumpDomain(domain);
+        }
+        Cache kpiCache = cacheManager.getCache("kpi");
+        if (kpiCache != null) {
+            kpiCache.clear();
+        }
+    }
+
+    /**
+     * 写入后端标记结束的作业的事件，事件表不存在（分析作业从未完成过）时直接失效本地可见的缓存
+     */
+    public void publishJobEvent(Long jobLogId) {
+        try {
+            sparkJobEventMapper.insertForJob(jobLogId, "JOB_COMPLETED");
+        } catch (Exception e) {
+            log.warn("写入作业事件失败，直接失效分析结果缓存，作业ID: {}: {}", jobLogId, e.getMessage());
+            invalidateAnalysisCaches();
+        }
+    }
+
+    /**
+     * 预热看板常用查询，返回全部查询完成的Future
+     *
+     * 日期与看板页面的默认值一致：前端用 toISOString() 取日期，即UTC日期；
+     * 空间分析、预测分析页面以今天为起始日期，时间效率、运营效率页面为今天-6，成本分析、综合报表页面为今天-7
+     */
+    public CompletableFuture<Void> warmUp() {
+        List<String> targetCities = resolveCities();
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        DashboardDates dates = new DashboardDates(today,
+                today.minusDays(WEEK_PAGE_OFFSET_DAYS), today.minusDays(COST_REPORT_PAGE_OFFSET_DAYS));
+
+        Map<String, Runnable> tasks = new LinkedHashMap<>();
+        for (String city : targetCities) {
+            addCityTasks(tasks, city, dates);
+        }
+        tasks.put("time:ranking", () -> timeEfficiencyService.getTimeEfficiencyRanking(targetCities, dates.weekStart, 10));
+        tasks.put("reports:ranking", () -> comprehensiveReportService.getCityEfficiencyRanking(dates.costReportStart, 10));
+        tasks.put("alerts:recent", () -> anomalyAlertService.getRecentAlerts(50));
+
+        long start = System.currentTimeMillis();
+        AtomicInteger failures = new AtomicInteger();
+        CompletableFuture<?>[] futures = tasks.entrySet().stream()
+                .map(task -> CompletableFuture.runAsync(() -> {
+                    try {
+                        task.getValue().run();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        log.warn("缓存预热失败[{}]: {}", task.getKey(), e.getMessage());
+                    }
+                }, warmupPool))
+                .toArray(CompletableFuture[]::new);
+
+        log.info("开始缓存预热: {} 个城市, {} 个查询, 截止日期 {}, 并发 {}",
+                targetCities.size(), tasks.size(), today, concurrency);
+        return CompletableFuture.allOf(futures).whenComplete((ignored, e) ->
+                log.info("缓存预热完成: {} 个查询, 失败 {} 个, 耗时 {}ms",
+                        tasks.size(), failures.get(), System.currentTimeMillis() - start));
+    }
+
+    /**
+     * 单个城市的看板查询，参数与各页面默认加载时一致
+     */
+    private void addCityTasks(Map<String, Runnable> tasks, String city, DashboardDates dates) {
+        LocalDate today = dates.today;
+        LocalDate weekStart = dates.weekStart;
+        LocalDate costReportStart = dates.costReportStart;
+
+        tasks.put("kpi:today:" + city, () -> kpiService.getTodayKpiByCity(city));
+        tasks.put("kpi:recent:" + city, () -> kpiService.getRecentKpi(city, 30));
+
+        tasks.put("spatial:summary:" + city, () -> spatialAnalysisService.getSpatialSummary(city, today));
+        tasks.put("spatial:heatmap:" + city, () -> spatialAnalysisService.getDeliveryTimeHeatmap(city, today));
+        tasks.put("spatial:density:" + city, () -> spatialAnalysisService.getDeliveryDensityHotspots(city, today, 50));
+        tasks.put("spatial:distribution:" + city, () -> spatialAnalysisService.getSpatialDistributionStats(city, today));
+
+        tasks.put("time:summary:" + city, () -> timeEfficiencyService.getTimeEfficiencySummary(city, weekStart));
+        tasks.put("time:trend:" + city, () -> timeEfficiencyService.getDeliveryEfficiencyTrendStats(city, weekStart));
+        tasks.put("time:distribution:" + city, () -> timeEfficiencyService.getEfficiencyDistribution(city, weekStart));
+        tasks.put("time:range:" + city, () -> timeEfficiencyService.getTimeEfficiencyByCity(city, weekStart, today));
+
+        tasks.put("efficiency:summary:" + city, () -> operationalEfficiencyService.getEfficiencySummary(city, weekStart));
+        tasks.put("efficiency:trend:" + city, () -> operationalEfficiencyService.getCityEfficiencyTrend(city, weekStart));
+        tasks.put("efficiency:distribution:" + city,
+                () -> operationalEfficiencyService.getEfficiencyDistribution(city, weekStart));
+        tasks.put("efficiency:courier_ranking:" + city,
+                () -> operationalEfficiencyService.getCourierEfficiencyRanking(city, weekStart, 10));
+        tasks.put("efficiency:region_ranking:" + city,
+                () -> operationalEfficiencyService.getRegionEfficiencyRanking(city, weekStart, 10));
+
+        tasks.put("costs:summary:" + city, () -> costAnalysisMetricsService.getCostSummary(city, costReportStart));
+        tasks.put("costs:trend:" + city, () -> costAnalysisMetricsService.getCityCostTrend(city, costReportStart));
+        tasks.put("costs:region_ranking:" + city,
+                () -> costAnalysisMetricsService.getRegionCostRanking(city, costReportStart, 10));
+        tasks.put("costs:range:" + city,
+                () -> costAnalysisMetricsService.getCostAnalysisByCity(city, costReportStart, today));
+
+        tasks.put("predictions:summary:" + city, () -> predictiveAnalysisService.getPredictiveSummary(city, today));
+        tasks.put("predictions:latest:" + city, () -> predictiveAnalysisService.getLatestPredictions(city));
+        tasks.put("predictions:hourly:" + city, () -> predictiveAnalysisService.getHourlyDistribution(city, today));
+
+        tasks.put("reports:latest_daily:" + city, () -> comprehensiveReportService.getLatestDailyReports(city));
+        tasks.put("reports:trend:" + city, () -> comprehensiveReportService.getCityReportTrend(city, costReportStart));
+    }
+
+    private List<String> resolveCities() {
+        if (cities != null && !cities.isEmpty()) {
+            return cities;
+        }
+        return comprehensiveReportMapper.findAllCities();
+    }
+
+    /**
+     * 看板各页面默认的起始日期
+     */
+    private static final class DashboardDates {
+        private final LocalDate today;
+        private final LocalDate weekStart;
+        private final LocalDate costReportStart;
+
+        private DashboardDates(LocalDate today, LocalDate weekStart, LocalDate costReportStart) {
+            this.today = today;
+            this.weekStart = weekStart;
+            this.costReportStart = costReportStart;
+        }
+    }
+}
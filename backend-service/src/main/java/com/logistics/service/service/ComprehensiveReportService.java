@@ -1,5 +1,6 @@
 package com.logistics.service.service;
 
+import com.logistics.service.config.CacheGenerations;
 import com.logistics.service.dao.entity.ComprehensiveReport;
 import com.logistics.service.dao.mapper.ComprehensiveReportMapper;
 import com.logistics.service.dto.ComprehensiveReportDTO;
@@ -19,16 +20,21 @@ import java.util.stream.Collectors;
 @Service
 public class ComprehensiveReportService {
 
+    /** 缓存代数的业务域，与缓存键中 @cacheGenerations 的参数一致 */
+    private static final String CACHE_DOMAIN = "reports";
+
     @Autowired
     private ComprehensiveReportMapper comprehensiveReportMapper;
 
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     // ==================== 基础CRUD操作 ====================
 
     /**
      * 保存报告（插入或更新）- 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"reports", "stats"}, allEntries = true)
     public boolean saveReport(ComprehensiveReportDTO reportDTO) {
         try {
             ComprehensiveReport report = convertToEntity(reportDTO);
@@ -48,6 +54,9 @@ public class ComprehensiveReportService {
                 log.info(" 插入报告成功，城市: {}, 日期: {}，已清除缓存", report.getCity(), report.getDate());
             }
 
+            if (result > 0) {
+                cacheGenerations.bump(CACHE_DOMAIN, report.getCity(), report.getDate());
+            }
             return result > 0;
         } catch (Exception e) {
             log.error("保存报告失败", e);
@@ -58,7 +67,8 @@ public class ComprehensiveReportService {
     /**
      * 根据城市、日期和类型获取报告 - 添加缓存
      */
-    @Cacheable(value = "reports", key = "'specific:' + #city + ':' + #date + ':' + #reportType",
+    @Cacheable(value = "reports",
+            key = "@cacheGenerations.date('reports', #city, #date) + 'specific:' + #city + ':' + #date + ':' + #reportType",
             unless = "#result == null")
     public ComprehensiveReportDTO getReportByCityDateAndType(String city, LocalDate date, String reportType) {
         try {
@@ -75,13 +85,13 @@ public class ComprehensiveReportService {
      * 更新报告 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"reports", "stats"}, allEntries = true)
     public boolean updateReport(ComprehensiveReportDTO reportDTO) {
         try {
             ComprehensiveReport report = convertToEntity(reportDTO);
             int result = comprehensiveReportMapper.updateReport(report);
 
             if (result > 0) {
+                cacheGenerations.bump(CACHE_DOMAIN, report.getCity(), report.getDate());
                 log.info(" 更新报告成功，已清除缓存");
                 return true;
             }
@@ -98,7 +108,7 @@ public class ComprehensiveReportService {
      * 获取指定城市的综合报告 - 添加缓存
      */
     @Cacheable(value = "reports",
-            key = "'city:' + #city + ':' + #reportType + ':' + #startDate + ':' + #endDate",
+            key = "@cacheGenerations.city('reports', #city) + 'city:' + #city + ':' + #reportType + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<ComprehensiveReportDTO> getReportsByCity(String city, String reportType,
                                                          LocalDate startDate, LocalDate endDate) {
@@ -116,7 +126,8 @@ public class ComprehensiveReportService {
     /**
      * 根据城市和日期范围获取报告（不限类型）- 添加缓存
      */
-    @Cacheable(value = "reports", key = "'range:' + #city + ':' + #startDate + ':' + #endDate",
+    @Cacheable(value = "reports",
+            key = "@cacheGenerations.city('reports', #city) + 'range:' + #city + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<ComprehensiveReportDTO> getReportsByDateRange(String city, LocalDate startDate, LocalDate endDate) {
         try {
@@ -145,7 +156,8 @@ public class ComprehensiveReportService {
     /**
      * 获取最新的日报 - 添加缓存
      */
-    @Cacheable(value = "reports", key = "'daily:latest:' + #city", unless = "#result.isEmpty()")
+    @Cacheable(value = "reports",
+            key = "@cacheGenerations.city('reports', #city) + 'daily:latest:' + #city", unless = "#result.isEmpty()")
     public List<ComprehensiveReportDTO> getLatestDailyReports(String city) {
         try {
             log.info("  查询数据库获取最新日报[city={}]", city);
@@ -160,7 +172,8 @@ public class ComprehensiveReportService {
     /**
      * 获取最新的周报 - 添加缓存
      */
-    @Cacheable(value = "reports", key = "'weekly:latest:' + #city", unless = "#result.isEmpty()")
+    @Cacheable(value = "reports",
+            key = "@cacheGenerations.city('reports', #city) + 'weekly:latest:' + #city", unless = "#result.isEmpty()")
     public List<ComprehensiveReportDTO> getLatestWeeklyReports(String city) {
         try {
             log.info("  查询数据库获取最新周报[city={}]", city);
@@ -175,7 +188,8 @@ public class ComprehensiveReportService {
     /**
      * 获取城市最新报告 - 添加缓存
      */
-    @Cacheable(value = "reports", key = "'latest:' + #city", unless = "#result == null")
+    @Cacheable(value = "reports",
+            key = "@cacheGenerations.city('reports', #city) + 'latest:' + #city", unless = "#result == null")
     public ComprehensiveReportDTO getLatestReportByCity(String city) {
         try {
             log.info("  查询数据库获取最新报告[city={}]", city);
@@ -190,7 +204,7 @@ public class ComprehensiveReportService {
     /**
      * 获取所有城市列表 - 添加缓存（长期缓存）
      */
-    @Cacheable(value = "stats", key = "'cities:all'", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats", key = "@cacheGenerations.all('reports') + 'cities:all'", sync = true)
     public List<String> getAllCities() {
         try {
             log.info("  查询数据库获取城市列表");
@@ -219,7 +233,8 @@ public class ComprehensiveReportService {
     /**
      * 获取城市报告趋势 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'trend:' + #city + ':' + #startDate", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('reports', #city) + 'trend:' + #city + ':' + #startDate", sync = true)
     public List<Map<String, Object>> getCityReportTrend(String city, LocalDate startDate) {
         try {
             log.info("  查询数据库获取报告趋势[city={}]", city);
@@ -233,8 +248,9 @@ public class ComprehensiveReportService {
     /**
      * 获取城市效率排行 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'ranking:efficiency:' + #startDate + ':' + #limit",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.all('reports') + 'ranking:efficiency:' + #startDate + ':' + #limit",
+            sync = true)
     public List<Map<String, Object>> getCityEfficiencyRanking(LocalDate startDate, int limit) {
         try {
             log.info("  查询数据库获取效率排行");
@@ -261,8 +277,9 @@ public class ComprehensiveReportService {
     /**
      * 获取配送效率统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'delivery_efficiency:' + #startDate + ':' + #endDate",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.all('reports') + 'delivery_efficiency:' + #startDate + ':' + #endDate",
+            sync = true)
     public List<Map<String, Object>> getDeliveryEfficiencyStats(LocalDate startDate, LocalDate endDate) {
         try {
             log.info("  查询数据库获取配送效率统计");
@@ -291,13 +308,13 @@ public class ComprehensiveReportService {
      * 清理旧报告数据 - 清理后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"reports", "stats"}, allEntries = true)
     public int cleanupOldReports(int daysToKeep) {
         try {
             LocalDate cutoffDate = LocalDate.now().minusDays(daysToKeep);
             int deleted = comprehensiveReportMapper.cleanupOldReports(cutoffDate);
 
             if (deleted > 0) {
+                cacheGenerations.bumpDomain(CACHE_DOMAIN);
                 log.info(" 清理旧报告数据成功，删除 {} 条记录，已清除缓存", deleted);
             }
 
@@ -1,5 +1,6 @@
 package com.logistics.service.service;
 
+import com.logistics.service.config.CacheGenerations;
 import com.logistics.service.dao.entity.CostAnalysisMetrics;
 import com.logistics.service.dao.mapper.CostAnalysisMetricsMapper;
 import lombok.extern.slf4j.Slf4j;
@@ -17,16 +18,21 @@ import java.util.Map;
 @Transactional(readOnly = true)
 public class CostAnalysisMetricsService {
 
+    /** 缓存代数的业务域，与缓存键中 @cacheGenerations 的参数一致 */
+    private static final String CACHE_DOMAIN = "costs";
+
     @Autowired
     private CostAnalysisMetricsMapper costAnalysisMetricsMapper;
 
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     // ==================== 数据保存操作 ====================
 
     /**
      * 保存成本分析数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"costs", "stats"}, allEntries = true)
     public int saveCostAnalysis(CostAnalysisMetrics metrics) {
         // 数据验证
         validateCostAnalysisMetrics(metrics);
@@ -36,6 +42,7 @@ public class CostAnalysisMetricsService {
 
         int result = costAnalysisMetricsMapper.insertCostAnalysis(metrics);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, metrics.getCity(), metrics.getDate());
             log.info("  保存成本分析数据成功，城市: {}，已清除缓存", metrics.getCity());
         }
         return result;
@@ -45,7 +52,6 @@ public class CostAnalysisMetricsService {
      * 批量保存成本分析数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"costs", "stats"}, allEntries = true)
     public int batchSaveCostAnalysis(List<CostAnalysisMetrics> metricsList) {
         int count = 0;
         for (CostAnalysisMetrics metrics : metricsList) {
@@ -57,6 +63,8 @@ public class CostAnalysisMetricsService {
         }
 
         if (count > 0) {
+            cacheGenerations.bumpEach(CACHE_DOMAIN, metricsList,
+                    CostAnalysisMetrics::getCity, CostAnalysisMetrics::getDate);
             log.info("  批量保存成本分析数据成功，共保存 {} 条，已清除缓存", count);
         }
         return count;
@@ -66,13 +74,13 @@ public class CostAnalysisMetricsService {
      * 更新成本分析数据 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"costs", "stats"}, allEntries = true)
     public int updateCostAnalysis(CostAnalysisMetrics metrics) {
         validateCostAnalysisMetrics(metrics);
         calculateDerivedMetrics(metrics);
 
         int result = costAnalysisMetricsMapper.updateCostAnalysis(metrics);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, metrics.getCity(), metrics.getDate());
             log.info("  更新成本分析数据成功，已清除缓存");
         }
         return result;
@@ -83,7 +91,8 @@ public class CostAnalysisMetricsService {
     /**
      * 根据城市和日期范围查询成本分析 - 添加缓存
      */
-    @Cacheable(value = "costs", key = "'city:' + #city + ':' + #startDate + ':' + #endDate",
+    @Cacheable(value = "costs",
+            key = "@cacheGenerations.city('costs', #city) + 'city:' + #city + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<CostAnalysisMetrics> getCostAnalysisByCity(String city, LocalDate startDate, LocalDate endDate) {
         log.info("  查询数据库获取城市成本分析[city={}]", city);
@@ -93,7 +102,8 @@ public class CostAnalysisMetricsService {
     /**
      * 根据区域和日期范围查询成本分析 - 添加缓存
      */
-    @Cacheable(value = "costs", key = "'region:' + #regionId + ':' + #startDate + ':' + #endDate",
+    @Cacheable(value = "costs",
+            key = "@cacheGenerations.all('costs') + 'region:' + #regionId + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<CostAnalysisMetrics> getCostAnalysisByRegion(Integer regionId, LocalDate startDate, LocalDate endDate) {
         log.info("  查询数据库获取区域成本分析[regionId={}]", regionId);
@@ -104,7 +114,7 @@ public class CostAnalysisMetricsService {
      * 多条件查询成本分析 - 添加缓存
      */
     @Cacheable(value = "costs",
-            key = "'conditions:' + #city + ':' + #regionId + ':' + #analysisType + ':' + #startDate + ':' + #endDate",
+            key = "@cacheGenerations.city('costs', #city) + 'conditions:' + #city + ':' + #regionId + ':' + #analysisType + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<CostAnalysisMetrics> getCostAnalysisByConditions(String city, Integer regionId,
                                                                  String analysisType,
@@ -116,7 +126,8 @@ public class CostAnalysisMetricsService {
     /**
      * 获取高成本告警 - 添加缓存
      */
-    @Cacheable(value = "costs", key = "'high_cost:' + #threshold + ':' + #date + ':' + #limit",
+    @Cacheable(value = "costs",
+            key = "@cacheGenerations.all('costs') + 'high_cost:' + #threshold + ':' + #date + ':' + #limit",
             unless = "#result.isEmpty()")
     public List<CostAnalysisMetrics> getHighCostAlerts(double threshold, LocalDate date, int limit) {
         log.info("  查询数据库获取高成本告警[threshold={}]", threshold);
@@ -128,7 +139,8 @@ public class CostAnalysisMetricsService {
     /**
      * 获取城市成本趋势 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'trend:' + #city + ':' + #startDate", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('costs', #city) + 'trend:' + #city + ':' + #startDate", sync = true)
     public List<Map<String, Object>> getCityCostTrend(String city, LocalDate startDate) {
         log.info("  查询数据库获取城市成本趋势[city={}]", city);
         return costAnalysisMetricsMapper.getCityCostTrend(city, startDate);
@@ -137,8 +149,9 @@ public class CostAnalysisMetricsService {
     /**
      * 获取区域成本排行 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'ranking:' + #city + ':' + #startDate + ':' + #limit",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('costs', #city) + 'ranking:' + #city + ':' + #startDate + ':' + #limit",
+            sync = true)
     public List<Map<String, Object>> getRegionCostRanking(String city, LocalDate startDate, int limit) {
         log.info("  查询数据库获取区域成本排行[city={}]", city);
         return costAnalysisMetricsMapper.getRegionCostRanking(city, startDate, limit);
@@ -147,7 +160,8 @@ public class CostAnalysisMetricsService {
     /**
      * 获取分析类型统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'type_stats:' + #city + ':' + #startDate", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('costs', #city) + 'type_stats:' + #city + ':' + #startDate", sync = true)
     public List<Map<String, Object>> getAnalysisTypeStats(String city, LocalDate startDate) {
         log.info("  查询数据库获取分析类型统计[city={}]", city);
         return costAnalysisMetricsMapper.getAnalysisTypeStats(city, startDate);
@@ -156,7 +170,8 @@ public class CostAnalysisMetricsService {
     /**
      * 获取成本汇总统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'summary:' + #city + ':' + #startDate", unless = "#result == null")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('costs', #city) + 'summary:' + #city + ':' + #startDate", sync = true)
     public Map<String, Object> getCostSummary(String city, LocalDate startDate) {
         log.info("  查询数据库获取成本汇总统计[city={}]", city);
         return costAnalysisMetricsMapper.getCostSummary(city, startDate);
@@ -175,10 +190,10 @@ public class CostAnalysisMetricsService {
      * 清理旧数据 - 清理后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"costs", "stats"}, allEntries = true)
     public int cleanupOldData(LocalDate cutoffDate) {
         int result = costAnalysisMetricsMapper.cleanupOldCostAnalysis(cutoffDate);
         if (result > 0) {
+            cacheGenerations.bumpDomain(CACHE_DOMAIN);
             log.info("  清理旧成本分析数据成功，删除 {} 条记录，已清除缓存", result);
         }
         return result;
@@ -0,0 +1,178 @@
+package com.logistics.service.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.logistics.service.dao.entity.AnomalyAlert;
+import com.logistics.service.dao.entity.ComprehensiveReport;
+import com.logistics.service.dao.entity.OperationalEfficiencyMetrics;
+import com.logistics.service.dao.entity.TimeEfficiencyMetrics;
+import com.logistics.service.dao.mapper.AnomalyAlertMapper;
+import com.logistics.service.dao.mapper.ComprehensiveReportMapper;
+import com.logistics.service.dao.mapper.OperationalEfficiencyMetricsMapper;
+import com.logistics.service.dao.mapper.TimeEfficiencyMetricsMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+
+/**
+ * 批量数据导出
+ *
+ * 各 stream* 查询返回MyBatis Cursor，驱动逐行读取结果集，每读出一行立即序列化写入输出流，
+ * 内存占用与导出行数无关。Cursor 依赖打开的SqlSession，遍历必须在事务内完成，因此导出方法为只读事务。
+ */
+@Slf4j
+@Service
+public class DataExportService {
+
+    public enum Format {
+        CSV("text/csv;charset=UTF-8", "csv"),
+        NDJSON("application/x-ndjson;charset=UTF-8", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format of(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("不支持的导出格式: " + name);
+        }
+    }
+
+    /** Excel按系统编码打开没有BOM的CSV，中文会乱码 */
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    @Autowired
+    private AnomalyAlertMapper anomalyAlertMapper;
+
+    @Autowired
+    private OperationalEfficiencyMetricsMapper operationalEfficiencyMapper;
+
+    @Autowired
+    private TimeEfficiencyMetricsMapper timeEfficiencyMapper;
+
+    @Autowired
+    private ComprehensiveReportMapper comprehensiveReportMapper;
+
+    /** NDJSON与接口返回的JSON格式一致 */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final CsvMapper csvMapper = createCsvMapper();
+
+    /**
+     * 导出告警，过滤条件为空时不过滤
+     *
+     * @return 导出行数
+     */
+    @Transactional(readOnly = true)
+    public long exportAlerts(String city, String anomalyType, String severity, LocalDate startDate, LocalDate endDate,
+                             Boolean isResolved, Format format, OutputStream out) throws IOException {
+        try (Cursor<AnomalyAlert> cursor = anomalyAlertMapper.streamAlerts(
+                city, anomalyType, severity, null, null, startDate, endDate, isResolved)) {
+            return write(cursor, AnomalyAlert.class, format, out);
+        }
+    }
+
+    /**
+     * 导出城市运营效率
+     */
+    @Transactional(readOnly = true)
+    public long exportOperationalEfficiency(String city, LocalDate startDate, LocalDate endDate,
+                                            Format format, OutputStream out) throws IOException {
+        try (Cursor<OperationalEfficiencyMetrics> cursor =
+                     operationalEfficiencyMapper.streamByCityAndDateRange(city, startDate, endDate)) {
+            return write(cursor, OperationalEfficiencyMetrics.class, format, out);
+        }
+    }
+
+    /**
+     * 导出城市时间效率
+     */
+    @Transactional(readOnly = true)
+    public long exportTimeEfficiency(String city, LocalDate startDate, LocalDate endDate,
+                                     Format format, OutputStream out) throws IOException {
+        try (Cursor<TimeEfficiencyMetrics> cursor =
+                     timeEfficiencyMapper.streamByCityAndDateRange(city, startDate, endDate)) {
+            return write(cursor, TimeEfficiencyMetrics.class, format, out);
+        }
+    }
+
+    /**
+     * 导出城市综合报告，reportType 为空时导出全部类型
+     */
+    @Transactional(readOnly = true)
+    public long exportReports(String city, String reportType, LocalDate startDate, LocalDate endDate,
+                              Format format, OutputStream out) throws IOException {
+        try (Cursor<ComprehensiveReport> cursor =
+                     comprehensiveReportMapper.streamByCityAndDateRange(city, reportType, startDate, endDate)) {
+            return write(cursor, ComprehensiveReport.class, format, out);
+        }
+    }
+
+    // ==================== 私有方法 ====================
+
+    /**
+     * 逐行写出，CSV带表头（实体属性名），NDJSON每行一个JSON对象
+     * 不在每行后flush，由Servlet响应缓冲区满时分块发送；输出流由调用方关闭
+     */
+    private <T> long write(Cursor<T> cursor, Class<T> type, Format format, OutputStream out) throws IOException {
+        ObjectWriter writer;
+        if (format == Format.CSV) {
+            out.write(UTF8_BOM);
+            writer = csvMapper.writer(csvMapper.schemaFor(type).withHeader());
+        } else {
+            writer = objectMapper.writerFor(type).withRootValueSeparator("\n");
+        }
+        writer = writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        long rows = 0;
+        try (SequenceWriter sequence = writer.writeValues(out)) {
+            for (T row : cursor) {
+                sequence.write(row);
+                rows++;
+            }
+        }
+        if (format == Format.NDJSON && rows > 0) {
+            out.write('\n');
+        }
+        return rows;
+    }
+
+    private static CsvMapper createCsvMapper() {
+        // CsvMapper默认按属性名排序，改为实体的字段顺序
+        return CsvMapper.builder()
+                .disable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+                .addModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+    }
+}
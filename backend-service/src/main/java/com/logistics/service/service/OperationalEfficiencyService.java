@@ -1,7 +1,9 @@
 package com.logistics.service.service;
 
+import com.logistics.service.config.CacheGenerations;
 import com.logistics.service.dao.entity.OperationalEfficiencyMetrics;
 import com.logistics.service.dao.mapper.OperationalEfficiencyMetricsMapper;
+import com.logistics.service.dto.CursorPage;
 import com.logistics.service.dto.OperationalEfficiencyDTO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,22 +23,28 @@ import java.math.BigDecimal;
 @Transactional(readOnly = true)
 public class OperationalEfficiencyService {
 
+    /** 缓存代数的业务域，与缓存键中 @cacheGenerations 的参数一致 */
+    private static final String CACHE_DOMAIN = "efficiency";
+
     @Autowired
     private OperationalEfficiencyMetricsMapper operationalEfficiencyMapper;
 
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     // ==================== 数据保存操作 ====================
 
     /**
      * 保存运营效率数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"efficiency", "stats"}, allEntries = true)
     public int saveEfficiencyMetrics(OperationalEfficiencyMetrics metrics) {
         validateEfficiencyMetrics(metrics);
         calculateDerivedMetrics(metrics);
 
         int result = operationalEfficiencyMapper.insertEfficiencyMetrics(metrics);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, metrics.getCity(), metrics.getDate());
             log.info("保存运营效率数据成功，城市: {}，已清除缓存", metrics.getCity());
         }
         return result;
@@ -46,7 +54,6 @@ public class OperationalEfficiencyService {
      * 批量保存运营效率数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"efficiency", "stats"}, allEntries = true)
     public int batchSaveEfficiencyMetrics(List<OperationalEfficiencyMetrics> metricsList) {
         for (OperationalEfficiencyMetrics metrics : metricsList) {
             validateEfficiencyMetrics(metrics);
@@ -55,6 +62,8 @@ public class OperationalEfficiencyService {
 
         int result = operationalEfficiencyMapper.batchInsertEfficiencyMetrics(metricsList);
         if (result > 0) {
+            cacheGenerations.bumpEach(CACHE_DOMAIN, metricsList,
+                    OperationalEfficiencyMetrics::getCity, OperationalEfficiencyMetrics::getDate);
             log.info("批量保存运营效率数据成功，共保存 {} 条，已清除缓存", result);
         }
         return result;
@@ -64,13 +73,13 @@ public class OperationalEfficiencyService {
      * 更新运营效率数据 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"efficiency", "stats"}, allEntries = true)
     public int updateEfficiencyMetrics(OperationalEfficiencyMetrics metrics) {
         validateEfficiencyMetrics(metrics);
         calculateDerivedMetrics(metrics);
 
         int result = operationalEfficiencyMapper.updateEfficiencyMetrics(metrics);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, metrics.getCity(), metrics.getDate());
             log.info("更新运营效率数据成功，已清除缓存");
         }
         return result;
@@ -79,18 +88,34 @@ public class OperationalEfficiencyService {
     // ==================== 查询操作 ====================
 
     /**
-     * 获取指定城市的运营效率数据 - 添加缓存
+     * 分页获取指定城市的运营效率数据 - 不缓存（游标分页，每页按索引读取有限行）
      */
-    @Cacheable(value = "efficiency", key = "'city:' + #city + ':' + #startDate + ':' + #endDate",
-            unless = "#result.isEmpty()")
-    public List<OperationalEfficiencyDTO> getEfficiencyByCity(String city, LocalDate startDate, LocalDate endDate) {
+    public CursorPage<OperationalEfficiencyDTO> getEfficiencyByCity(String city, LocalDate startDate, LocalDate endDate,
+                                                                   String cursor, Integer limit) {
+        String[] keys = CursorPage.decodeCursor(cursor, 3);
+        LocalDate cursorDate = null;
+        Integer cursorRegionId = null;
+        Integer cursorCourierId = null;
+        if (keys != null) {
+            try {
+                cursorDate = LocalDate.parse(keys[0]);
+                cursorRegionId = Integer.valueOf(keys[1]);
+                cursorCourierId = Integer.valueOf(keys[2]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+        }
+        int pageSize = CursorPage.pageSize(limit);
         try {
             log.info("查询数据库获取运营效率[city={}]", city);
-            List<OperationalEfficiencyMetrics> metrics = operationalEfficiencyMapper.findByCityAndDateRange(city, startDate, endDate);
-            return metrics.stream().map(this::convertToDTO).collect(Collectors.toList());
+            List<OperationalEfficiencyMetrics> metrics = operationalEfficiencyMapper.findByCityAndDateRangePage(
+                    city, startDate, endDate, cursorDate, cursorRegionId, cursorCourierId, pageSize + 1);
+            return CursorPage.of(metrics, pageSize,
+                    metric -> new Object[]{metric.getDate(), metric.getRegionId(), metric.getCourierId()},
+                    this::convertToDTO);
         } catch (Exception e) {
             log.error("获取运营效率数据失败", e);
-            return new ArrayList<>();
+            return CursorPage.empty();
         }
     }
 
@@ -110,7 +135,8 @@ public class OperationalEfficiencyService {
     /**
      * 获取指定区域的效率数据 - 添加缓存
      */
-    @Cacheable(value = "efficiency", key = "'region:' + #regionId + ':' + #startDate + ':' + #endDate",
+    @Cacheable(value = "efficiency",
+            key = "@cacheGenerations.all('efficiency') + 'region:' + #regionId + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<OperationalEfficiencyDTO> getEfficiencyByRegion(Integer regionId, LocalDate startDate, LocalDate endDate) {
         try {
@@ -127,7 +153,7 @@ public class OperationalEfficiencyService {
      * 多条件查询效率数据 - 添加缓存
      */
     @Cacheable(value = "efficiency",
-            key = "'conditions:' + #city + ':' + #regionId + ':' + #courierId + ':' + #startDate + ':' + #endDate",
+            key = "@cacheGenerations.city('efficiency', #city) + 'conditions:' + #city + ':' + #regionId + ':' + #courierId + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<OperationalEfficiencyDTO> getEfficiencyByConditions(String city, Integer regionId, Integer courierId,
                                                                     LocalDate startDate, LocalDate endDate) {
@@ -143,18 +169,19 @@ public class OperationalEfficiencyService {
     }
 
     /**
-     * 获取今日运营效率 - 添加缓存
+     * 分页获取今日运营效率
      */
-    @Cacheable(value = "efficiency", key = "'today:' + #city", unless = "#result.isEmpty()")
-    public List<OperationalEfficiencyDTO> getTodayEfficiency(String city) {
+    public CursorPage<OperationalEfficiencyDTO> getTodayEfficiency(String city, String cursor, Integer limit) {
         LocalDate today = LocalDate.now();
-        return getEfficiencyByCity(city, today, today);
+        return getEfficiencyByCity(city, today, today, cursor, limit);
     }
 
     /**
      * 获取指定日期的效率数据 - 添加缓存
      */
-    @Cacheable(value = "efficiency", key = "'date:' + #city + ':' + #date", unless = "#result.isEmpty()")
+    @Cacheable(value = "efficiency",
+            key = "@cacheGenerations.date('efficiency', #city, #date) + 'date:' + #city + ':' + #date",
+            unless = "#result.isEmpty()")
     public List<OperationalEfficiencyDTO> getEfficiencyByDate(String city, LocalDate date) {
         try {
             log.info("查询数据库获取指定日期效率[city={}, date={}]", city, date);
@@ -169,7 +196,8 @@ public class OperationalEfficiencyService {
     /**
      * 获取低效率警告 - 添加缓存
      */
-    @Cacheable(value = "efficiency", key = "'low_alerts:' + #threshold + ':' + #startDate + ':' + #limit",
+    @Cacheable(value = "efficiency",
+            key = "@cacheGenerations.all('efficiency') + 'low_alerts:' + #threshold + ':' + #startDate + ':' + #limit",
             unless = "#result.isEmpty()")
     public List<OperationalEfficiencyDTO> getLowEfficiencyAlerts(double threshold, LocalDate startDate, int limit) {
         log.info("查询数据库获取低效率警告[threshold={}]", threshold);
@@ -180,7 +208,8 @@ public class OperationalEfficiencyService {
     /**
      * 获取高效率表现 - 添加缓存
      */
-    @Cacheable(value = "efficiency", key = "'high_performance:' + #threshold + ':' + #startDate + ':' + #limit",
+    @Cacheable(value = "efficiency",
+            key = "@cacheGenerations.all('efficiency') + 'high_performance:' + #threshold + ':' + #startDate + ':' + #limit",
             unless = "#result.isEmpty()")
     public List<OperationalEfficiencyDTO> getHighEfficiencyPerformance(double threshold, LocalDate startDate, int limit) {
         log.info("查询数据库获取高效率表现[threshold={}]", threshold);
@@ -191,7 +220,8 @@ public class OperationalEfficiencyService {
     /**
      * 获取最新运营效率数据 - 添加缓存
      */
-    @Cacheable(value = "efficiency", key = "'latest:' + #city", unless = "#result == null")
+    @Cacheable(value = "efficiency",
+            key = "@cacheGenerations.city('efficiency', #city) + 'latest:' + #city", unless = "#result == null")
     public OperationalEfficiencyDTO getLatestEfficiencyByCity(String city) {
         log.info("查询数据库获取最新效率[city={}]", city);
         OperationalEfficiencyMetrics metrics = operationalEfficiencyMapper.findLatestByCity(city);
@@ -211,7 +241,8 @@ public class OperationalEfficiencyService {
     /**
      * 获取城市效率趋势 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'trend:' + #city + ':' + #startDate", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('efficiency', #city) + 'trend:' + #city + ':' + #startDate", sync = true)
     public List<Map<String, Object>> getCityEfficiencyTrend(String city, LocalDate startDate) {
         log.info("查询数据库获取城市效率趋势[city={}]", city);
         return operationalEfficiencyMapper.getCityEfficiencyTrend(city, startDate);
@@ -220,8 +251,9 @@ public class OperationalEfficiencyService {
     /**
      * 获取配送员效率排行 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'courier_ranking:' + #city + ':' + #startDate + ':' + #limit",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('efficiency', #city) + 'courier_ranking:' + #city + ':' + #startDate + ':' + #limit",
+            sync = true)
     public List<Map<String, Object>> getCourierEfficiencyRanking(String city, LocalDate startDate, int limit) {
         log.info("查询数据库获取配送员效率排行[city={}]", city);
         return operationalEfficiencyMapper.getCourierEfficiencyRanking(city, startDate, limit);
@@ -230,8 +262,9 @@ public class OperationalEfficiencyService {
     /**
      * 获取区域效率排行 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'region_ranking:' + #city + ':' + #startDate + ':' + #limit",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('efficiency', #city) + 'region_ranking:' + #city + ':' + #startDate + ':' + #limit",
+            sync = true)
     public List<Map<String, Object>> getRegionEfficiencyRanking(String city, LocalDate startDate, int limit) {
         log.info("查询数据库获取区域效率排行[city={}]", city);
         return operationalEfficiencyMapper.getRegionEfficiencyRanking(city, startDate, limit);
@@ -240,7 +273,9 @@ public class OperationalEfficiencyService {
     /**
      * 获取效率分布统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'distribution:' + #city + ':' + #startDate", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('efficiency', #city) + 'distribution:' + #city + ':' + #startDate",
+            sync = true)
     public List<Map<String, Object>> getEfficiencyDistribution(String city, LocalDate startDate) {
         log.info("查询数据库获取效率分布统计[city={}]", city);
         return operationalEfficiencyMapper.getEfficiencyDistribution(city, startDate);
@@ -249,7 +284,8 @@ public class OperationalEfficiencyService {
     /**
      * 获取运营效率汇总统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'summary:' + #city + ':' + #startDate", unless = "#result == null")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('efficiency', #city) + 'summary:' + #city + ':' + #startDate", sync = true)
     public Map<String, Object> getEfficiencySummary(String city, LocalDate startDate) {
         log.info("查询数据库获取效率汇总统计[city={}]", city);
         return operationalEfficiencyMapper.getEfficiencySummary(city, startDate);
@@ -258,8 +294,9 @@ public class OperationalEfficiencyService {
     /**
      * 获取城市间效率对比 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'comparison:' + #cities.toString() + ':' + #startDate + ':' + #endDate",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.all('efficiency') + 'comparison:' + #cities.toString() + ':' + #startDate + ':' + #endDate",
+            sync = true)
     public List<Map<String, Object>> getCityEfficiencyComparison(List<String> cities, LocalDate startDate, LocalDate endDate) {
         log.info("查询数据库获取城市效率对比，城市数: {}", cities.size());
         return operationalEfficiencyMapper.getCityEfficiencyComparison(cities, startDate, endDate);
@@ -285,10 +322,10 @@ public class OperationalEfficiencyService {
      * 清理旧数据 - 清理后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"efficiency", "stats"}, allEntries = true)
     public int cleanupOldData(LocalDate cutoffDate) {
         int result = operationalEfficiencyMapper.cleanupOldMetrics(cutoffDate);
         if (result > 0) {
+            cacheGenerations.bumpDomain(CACHE_DOMAIN);
             log.info("清理旧运营效率数据成功，删除 {} 条记录，已清除缓存", result);
         }
         return result;
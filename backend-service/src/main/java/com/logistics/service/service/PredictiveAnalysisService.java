@@ -1,5 +1,6 @@
 package com.logistics.service.service;
 
+import com.logistics.service.config.CacheGenerations;
 import com.logistics.service.dao.entity.PredictiveAnalysisData;
 import com.logistics.service.dao.mapper.PredictiveAnalysisDataMapper;
 import com.logistics.service.dto.PredictiveAnalysisDTO;
@@ -21,21 +22,27 @@ import java.math.BigDecimal;
 @Transactional(readOnly = true)
 public class PredictiveAnalysisService {
 
+    /** 缓存代数的业务域，与缓存键中 @cacheGenerations 的参数一致 */
+    private static final String CACHE_DOMAIN = "predictions";
+
     @Autowired
     private PredictiveAnalysisDataMapper predictiveAnalysisMapper;
 
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     // ==================== 数据保存操作 ====================
 
     /**
      * 保存预测分析数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"predictions", "stats"}, allEntries = true)
     public int savePredictiveAnalysis(PredictiveAnalysisData data) {
         validatePredictiveAnalysisData(data);
 
         int result = predictiveAnalysisMapper.insertPredictiveAnalysis(data);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, data.getCity(), data.getDsDate());
             log.info("保存预测分析数据成功，城市: {}，已清除缓存", data.getCity());
         }
         return result;
@@ -45,7 +52,6 @@ public class PredictiveAnalysisService {
      * 批量保存预测分析数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"predictions", "stats"}, allEntries = true)
     public int batchSavePredictiveAnalysis(List<PredictiveAnalysisData> dataList) {
         for (PredictiveAnalysisData data : dataList) {
             validatePredictiveAnalysisData(data);
@@ -53,6 +59,8 @@ public class PredictiveAnalysisService {
 
         int result = predictiveAnalysisMapper.batchInsertPredictiveAnalysis(dataList);
         if (result > 0) {
+            cacheGenerations.bumpEach(CACHE_DOMAIN, dataList,
+                    PredictiveAnalysisData::getCity, PredictiveAnalysisData::getDsDate);
             log.info("批量保存预测分析数据成功，共保存 {} 条，已清除缓存", result);
         }
         return result;
@@ -62,12 +70,12 @@ public class PredictiveAnalysisService {
      * 更新预测分析数据 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"predictions", "stats"}, allEntries = true)
     public int updatePredictiveAnalysis(PredictiveAnalysisData data) {
         validatePredictiveAnalysisData(data);
 
         int result = predictiveAnalysisMapper.updatePredictiveAnalysis(data);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, data.getCity(), data.getDsDate());
             log.info("更新预测分析数据成功，已清除缓存");
         }
         return result;
@@ -79,7 +87,7 @@ public class PredictiveAnalysisService {
      * 获取指定城市的预测分析数据 - 添加缓存
      */
     @Cacheable(value = "predictions",
-            key = "'city:' + #city + ':' + #dataType + ':' + #startDate + ':' + #endDate",
+            key = "@cacheGenerations.city('predictions', #city) + 'city:' + #city + ':' + #dataType + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<PredictiveAnalysisDTO> getPredictiveAnalysisByCity(String city, String dataType,
                                                                    LocalDate startDate, LocalDate endDate) {
@@ -97,7 +105,9 @@ public class PredictiveAnalysisService {
     /**
      * 根据城市和日期查询预测数据 - 添加缓存
      */
-    @Cacheable(value = "predictions", key = "'date:' + #city + ':' + #date", unless = "#result.isEmpty()")
+    @Cacheable(value = "predictions",
+            key = "@cacheGenerations.date('predictions', #city, #date) + 'date:' + #city + ':' + #date",
+            unless = "#result.isEmpty()")
     public List<PredictiveAnalysisDTO> getPredictiveAnalysisByDate(String city, LocalDate date) {
         try {
             log.info("查询数据库获取指定日期预测[city={}, date={}]", city, date);
@@ -113,7 +123,7 @@ public class PredictiveAnalysisService {
      * 多条件查询预测数据 - 添加缓存
      */
     @Cacheable(value = "predictions",
-            key = "'conditions:' + #city + ':' + #regionId + ':' + #dataType + ':' + #startDate + ':' + #endDate",
+            key = "@cacheGenerations.city('predictions', #city) + 'conditions:' + #city + ':' + #regionId + ':' + #dataType + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<PredictiveAnalysisDTO> getPredictiveAnalysisByConditions(String city, String regionId, String dataType,
                                                                          LocalDate startDate, LocalDate endDate) {
@@ -131,7 +141,8 @@ public class PredictiveAnalysisService {
     /**
      * 获取最新预测数据 - 添加缓存
      */
-    @Cacheable(value = "predictions", key = "'latest:' + #city", unless = "#result.isEmpty()")
+    @Cacheable(value = "predictions",
+            key = "@cacheGenerations.city('predictions', #city) + 'latest:' + #city", unless = "#result.isEmpty()")
     public List<PredictiveAnalysisDTO> getLatestPredictions(String city) {
         return getLatestPredictionsByType(city, "prediction", 24); // 获取最近24小时的预测
     }
@@ -139,7 +150,8 @@ public class PredictiveAnalysisService {
     /**
      * 按类型获取最新预测数据 - 添加缓存
      */
-    @Cacheable(value = "predictions", key = "'latest_type:' + #city + ':' + #dataType + ':' + #limit",
+    @Cacheable(value = "predictions",
+            key = "@cacheGenerations.city('predictions', #city) + 'latest_type:' + #city + ':' + #dataType + ':' + #limit",
             unless = "#result.isEmpty()")
     public List<PredictiveAnalysisDTO> getLatestPredictionsByType(String city, String dataType, int limit) {
         try {
@@ -155,7 +167,9 @@ public class PredictiveAnalysisService {
     /**
      * 获取历史趋势数据 - 添加缓存
      */
-    @Cacheable(value = "predictions", key = "'historical_trends:' + #city", unless = "#result.isEmpty()")
+    @Cacheable(value = "predictions",
+            key = "@cacheGenerations.city('predictions', #city) + 'historical_trends:' + #city",
+            unless = "#result.isEmpty()")
     public List<PredictiveAnalysisDTO> getHistoricalTrends(String city) {
         LocalDate startDate = LocalDate.now().minusDays(30);
         LocalDate endDate = LocalDate.now();
@@ -165,7 +179,9 @@ public class PredictiveAnalysisService {
     /**
      * 获取容量分析数据 - 添加缓存
      */
-    @Cacheable(value = "predictions", key = "'capacity_analysis:' + #city", unless = "#result.isEmpty()")
+    @Cacheable(value = "predictions",
+            key = "@cacheGenerations.city('predictions', #city) + 'capacity_analysis:' + #city",
+            unless = "#result.isEmpty()")
     public List<PredictiveAnalysisDTO> getCapacityAnalysis(String city) {
         LocalDate startDate = LocalDate.now().minusDays(7);
         LocalDate endDate = LocalDate.now().plusDays(7);
@@ -177,8 +193,9 @@ public class PredictiveAnalysisService {
     /**
      * 获取订单量趋势 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'order_trend:' + #city + ':' + #dataType + ':' + #startDate",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('predictions', #city) + 'order_trend:' + #city + ':' + #dataType + ':' + #startDate",
+            sync = true)
     public List<Map<String, Object>> getOrderVolumeTrend(String city, String dataType, LocalDate startDate) {
         log.info("查询数据库获取订单量趋势[city={}, type={}]", city, dataType);
         return predictiveAnalysisMapper.getOrderVolumeTrend(city, dataType, startDate);
@@ -187,8 +204,9 @@ public class PredictiveAnalysisService {
     /**
      * 获取小时分布分析 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'hourly_distribution:' + #city + ':' + #startDate",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('predictions', #city) + 'hourly_distribution:' + #city + ':' + #startDate",
+            sync = true)
     public List<Map<String, Object>> getHourlyDistribution(String city, LocalDate startDate) {
         log.info("查询数据库获取小时分布[city={}]", city);
         return predictiveAnalysisMapper.getHourlyDistribution(city, startDate);
@@ -197,8 +215,9 @@ public class PredictiveAnalysisService {
     /**
      * 获取效率预测趋势 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'efficiency_trend:' + #city + ':' + #startDate",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('predictions', #city) + 'efficiency_trend:' + #city + ':' + #startDate",
+            sync = true)
     public List<Map<String, Object>> getEfficiencyTrend(String city, LocalDate startDate) {
         log.info("查询数据库获取效率趋势[city={}]", city);
         return predictiveAnalysisMapper.getEfficiencyTrend(city, startDate);
@@ -207,8 +226,9 @@ public class PredictiveAnalysisService {
     /**
      * 获取容量分析统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'capacity_stats:' + #city + ':' + #startDate",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('predictions', #city) + 'capacity_stats:' + #city + ':' + #startDate",
+            sync = true)
     public List<Map<String, Object>> getCapacityAnalysisStats(String city, LocalDate startDate) {
         log.info("查询数据库获取容量分析统计[city={}]", city);
         return predictiveAnalysisMapper.getCapacityAnalysis(city, startDate);
@@ -217,8 +237,9 @@ public class PredictiveAnalysisService {
     /**
      * 获取数据类型统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'data_type_stats:' + #city + ':' + #startDate",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('predictions', #city) + 'data_type_stats:' + #city + ':' + #startDate",
+            sync = true)
     public List<Map<String, Object>> getDataTypeStats(String city, LocalDate startDate) {
         log.info("查询数据库获取数据类型统计[city={}]", city);
         return predictiveAnalysisMapper.getDataTypeStats(city, startDate);
@@ -227,7 +248,8 @@ public class PredictiveAnalysisService {
     /**
      * 获取预测汇总统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'summary:' + #city + ':' + #startDate", unless = "#result == null")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('predictions', #city) + 'summary:' + #city + ':' + #startDate", sync = true)
     public Map<String, Object> getPredictiveSummary(String city, LocalDate startDate) {
         log.info("查询数据库获取预测汇总[city={}]", city);
         return predictiveAnalysisMapper.getPredictiveSummary(city, startDate);
@@ -237,8 +259,8 @@ public class PredictiveAnalysisService {
      * 获取城市间预测对比 - 添加缓存
      */
     @Cacheable(value = "stats",
-            key = "'comparison:' + #cities.toString() + ':' + #dataType + ':' + #startDate + ':' + #endDate",
-            unless = "#result.isEmpty()")
+            key = "@cacheGenerations.all('predictions') + 'comparison:' + #cities.toString() + ':' + #dataType + ':' + #startDate + ':' + #endDate",
+            sync = true)
     public List<Map<String, Object>> getCityPredictiveComparison(List<String> cities, String dataType,
                                                                  LocalDate startDate, LocalDate endDate) {
         log.info("查询数据库获取城市预测对比，城市数: {}, 类型: {}", cities.size(), dataType);
@@ -258,10 +280,10 @@ public class PredictiveAnalysisService {
      * 清理旧数据 - 清理后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"predictions", "stats"}, allEntries = true)
     public int cleanupOldData(LocalDate cutoffDate) {
         int result = predictiveAnalysisMapper.cleanupOldPredictions(cutoffDate);
         if (result > 0) {
+            cacheGenerations.bumpDomain(CACHE_DOMAIN);
             log.info("清理旧预测分析数据成功，删除 {} 条记录，已清除缓存", result);
         }
         return result;
@@ -1,5 +1,6 @@
 package com.logistics.service.service;
 
+import com.logistics.service.config.CacheGenerations;
 import com.logistics.service.dao.entity.SparkJobLogs;
 import com.logistics.service.dao.mapper.SparkJobLogsMapper;
 import com.logistics.service.dto.SparkJobLogsDTO;
@@ -21,21 +22,27 @@ import java.util.stream.Collectors;
 @Transactional(readOnly = true)
 public class SparkJobLogsService {
 
+    /** 缓存代数的业务域，作业日志不分城市，任何写入都使整个业务域失效 */
+    private static final String CACHE_DOMAIN = "jobs";
+
     @Autowired
     private SparkJobLogsMapper sparkJobLogsMapper;
 
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     // ==================== 数据保存操作 ====================
 
     /**
      * 保存作业日志 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"jobs", "stats"}, allEntries = true)
     public int saveJob(SparkJobLogs job) {
         validateJob(job);
 
         int result = sparkJobLogsMapper.insertJob(job);
         if (result > 0) {
+            cacheGenerations.bumpDomain(CACHE_DOMAIN);
             log.info("保存作业日志成功，作业: {}，已清除缓存", job.getJobName());
         }
         return result;
@@ -45,7 +52,6 @@ public class SparkJobLogsService {
      * 批量保存作业日志 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"jobs", "stats"}, allEntries = true)
     public int batchSaveJobs(List<SparkJobLogs> jobList) {
         for (SparkJobLogs job : jobList) {
             validateJob(job);
@@ -53,6 +59,7 @@ public class SparkJobLogsService {
 
         int result = sparkJobLogsMapper.batchInsertJobs(jobList);
         if (result > 0) {
+            cacheGenerations.bumpDomain(CACHE_DOMAIN);
             log.info("批量保存作业日志成功，共保存 {} 条，已清除缓存", result);
         }
         return result;
@@ -62,22 +69,35 @@ public class SparkJobLogsService {
      * 更新作业状态 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"jobs", "stats"}, allEntries = true)
     public int updateJobStatus(Long id, String status, LocalDateTime endTime,
                                Integer executionTimeSeconds, String errorMessage) {
         int result = sparkJobLogsMapper.updateJobStatus(id, status, endTime, executionTimeSeconds, errorMessage);
         if (result > 0) {
+            cacheGenerations.bumpDomain(CACHE_DOMAIN);
             log.info("更新作业状态成功，ID: {}，已清除缓存", id);
         }
         return result;
     }
 
+    /**
+     * 更新提交作业的运行状态 - 更新后清除缓存（已是最终状态时不覆盖）
+     */
+    @Transactional
+    public int updateLaunchState(Long id, String status, LocalDateTime endTime, String errorMessage) {
+        int result = sparkJobLogsMapper.updateLaunchState(id, status, endTime, errorMessage);
+        if (result > 0) {
+            cacheGenerations.bumpDomain(CACHE_DOMAIN);
+            log.info("更新提交作业状态，ID: {}，状态: {}，已清除缓存", id, status);
+        }
+        return result;
+    }
+
     // ==================== 查询操作 ====================
 
     /**
      * 获取最近的作业日志 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'recent:' + #limit", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs", key = "@cacheGenerations.all('jobs') + 'recent:' + #limit", unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getRecentJobLogs(int limit) {
         try {
             log.info("查询数据库获取最近作业日志[limit={}]", limit);
@@ -92,7 +112,8 @@ public class SparkJobLogsService {
     /**
      * 按状态获取作业日志 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'status:' + #status", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs",
+            key = "@cacheGenerations.all('jobs') + 'status:' + #status", unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getJobLogsByStatus(String status) {
         try {
             log.info("查询数据库获取状态作业日志[status={}]", status);
@@ -107,7 +128,7 @@ public class SparkJobLogsService {
     /**
      * 按作业名称获取日志 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'name:' + #jobName", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs", key = "@cacheGenerations.all('jobs') + 'name:' + #jobName", unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getJobLogsByName(String jobName) {
         try {
             log.info("查询数据库获取作业日志[jobName={}]", jobName);
@@ -122,7 +143,7 @@ public class SparkJobLogsService {
     /**
      * 获取失败的作业 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'failed'", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs", key = "@cacheGenerations.all('jobs') + 'failed'", unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getFailedJobs() {
         return getJobLogsByStatus("FAILED");
     }
@@ -130,7 +151,7 @@ public class SparkJobLogsService {
     /**
      * 获取运行中的作业 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'running'", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs", key = "@cacheGenerations.all('jobs') + 'running'", unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getRunningJobs() {
         return getJobLogsByStatus("RUNNING");
     }
@@ -138,7 +159,8 @@ public class SparkJobLogsService {
     /**
      * 获取成功的作业 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'successful:' + #limit", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs",
+            key = "@cacheGenerations.all('jobs') + 'successful:' + #limit", unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getSuccessfulJobs(int limit) {
         try {
             log.info("查询数据库获取成功作业[limit={}]", limit);
@@ -153,7 +175,9 @@ public class SparkJobLogsService {
     /**
      * 获取指定时间范围的作业日志 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'range:' + #startTime + ':' + #endTime", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs",
+            key = "@cacheGenerations.all('jobs') + 'range:' + #startTime + ':' + #endTime",
+            unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getJobLogsByTimeRange(LocalDateTime startTime, LocalDateTime endTime) {
         try {
             log.info("查询数据库获取时间范围作业日志[{} - {}]", startTime, endTime);
@@ -168,7 +192,7 @@ public class SparkJobLogsService {
     /**
      * 获取今日作业日志 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'today'", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs", key = "@cacheGenerations.all('jobs') + 'today'", unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getTodayJobs() {
         LocalDateTime startOfDay = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
         LocalDateTime endOfDay = startOfDay.plusDays(1).minusNanos(1);
@@ -178,7 +202,8 @@ public class SparkJobLogsService {
     /**
      * 获取长时间运行的作业 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'long_running:' + #thresholdMinutes", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs",
+            key = "@cacheGenerations.all('jobs') + 'long_running:' + #thresholdMinutes", unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getLongRunningJobs(int thresholdMinutes) {
         try {
             log.info("查询数据库获取长时间运行作业[threshold={}分钟]", thresholdMinutes);
@@ -193,7 +218,8 @@ public class SparkJobLogsService {
     /**
      * 获取有错误的作业 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'with_errors:' + #limit", unless = "#result.isEmpty()")
+    @Cacheable(value = "jobs",
+            key = "@cacheGenerations.all('jobs') + 'with_errors:' + #limit", unless = "#result.isEmpty()")
     public List<SparkJobLogsDTO> getJobsWithErrors(int limit) {
         try {
             log.info("查询数据库获取有错误的作业[limit={}]", limit);
@@ -208,7 +234,7 @@ public class SparkJobLogsService {
     /**
      * 根据ID获取作业详情 - 添加缓存
      */
-    @Cacheable(value = "jobs", key = "'id:' + #id", unless = "#result == null")
+    @Cacheable(value = "jobs", key = "@cacheGenerations.all('jobs') + 'id:' + #id", unless = "#result == null")
     public SparkJobLogsDTO getJobById(Long id) {
         try {
             log.info("查询数据库获取作业详情[id={}]", id);
@@ -225,7 +251,7 @@ public class SparkJobLogsService {
     /**
      * 获取作业统计信息 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'statistics'")
+    @Cacheable(value = "stats", key = "@cacheGenerations.all('jobs') + 'statistics'", sync = true)
     public Map<String, Object> getJobStatistics() {
         try {
             log.info("查询数据库获取作业统计信息");
@@ -266,7 +292,7 @@ public class SparkJobLogsService {
     /**
      * 获取作业执行趋势 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'trend:' + #days", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats", key = "@cacheGenerations.all('jobs') + 'trend:' + #days", sync = true)
     public List<Map<String, Object>> getJobExecutionTrend(int days) {
         try {
             log.info("查询数据库获取作业执行趋势[days={}]", days);
@@ -284,12 +310,12 @@ public class SparkJobLogsService {
      * 清理旧的作业日志 - 清理后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"jobs", "stats"}, allEntries = true)
     public int cleanupOldJobs(int daysToKeep) {
         try {
             LocalDateTime cutoffTime = LocalDateTime.now().minusDays(daysToKeep);
             int deletedCount = sparkJobLogsMapper.cleanupOldJobs(cutoffTime);
             if (deletedCount > 0) {
+                cacheGenerations.bumpDomain(CACHE_DOMAIN);
                 log.info("清理旧作业日志完成，删除 {} 条记录，已清除缓存", deletedCount);
             }
             return deletedCount;
@@ -0,0 +1,374 @@
+package com.logistics.service.service;
+
+import com.logistics.service.dao.entity.SparkJobLogs;
+import com.logistics.service.dto.JobSubmissionDTO;
+import com.logistics.service.dto.JobSubmissionRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.spark.launcher.SparkAppHandle;
+import org.apache.spark.launcher.SparkLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分析作业提交服务
+ *
+ * 通过 SparkLauncher.startApplication 启动 EnhancedCityLogisticsAnalysis：
+ * 1. 提交时先创建 spark_job_logs 记录（QUEUED）并立即返回ID，作业通过 spark.logistics.jobLogId 沿用该记录
+ * 2. 固定大小的线程池限制同时运行的作业数，超出的请求排队，排队数达到 max-queued-runs 时拒绝新的提交
+ * 3. 相同ds范围、相同运行参数的作业在排队或运行时，重复请求直接返回已有作业ID；
+ *    ds范围与排队或运行中的作业重叠（范围相同而运行参数不同，或范围部分重叠）时拒绝提交：
+ *    作业共用暂存区，并写同一批 city/date 分区和MySQL日期，并发执行会互相覆盖。
+ *    全量作业和未指定结束ds的作业与任何作业都视为重叠
+ * 4. SparkAppHandle 的状态变化写入 spark_job_logs（不覆盖作业自身写入的 SUCCESS / FAILED）；
+ *    由这里标记结束状态的作业同时写入作业事件，使其可能已部分写入的结果缓存失效
+ */
+@Slf4j
+@Service
+public class SparkJobSubmissionService {
+
+    private static final String JOB_NAME = "物流分析系统";
+    private static final String MAIN_CLASS = "com.logistics.spark.EnhancedCityLogisticsAnalysis";
+    private static final String CONF_PREFIX = "spark.logistics.";
+
+    @Autowired
+    private SparkJobLogsService sparkJobLogsService;
+
+    @Autowired
+    private CacheWarmupService cacheWarmupService;
+
+    @Value("${logistics.spark.home}")
+    private String sparkHome;
+
+    @Value("${logistics.spark.app-jar}")
+    private String appJar;
+
+    @Value("${logistics.spark.master}")
+    private String master;
+
+    @Value("${logistics.spark.max-concurrent-runs:2}")
+    private int maxConcurrentRuns;
+
+    @Value("${logistics.spark.max-queued-runs:10}")
+    private int maxQueuedRuns;
+
+    @Value("${logistics.spark.log-dir:./logs/spark-jobs}")
+    private String logDir;
+
+    @Value("${logistics.hdfs.base-url}")
+    private String hdfsBaseUrl;
+
+    @Value("${logistics.hdfs.input.deliver-path}")
+    private String deliverPath;
+
+    @Value("${logistics.hdfs.input.pickup-path}")
+    private String pickupPath;
+
+    @Value("${logistics.hdfs.output.base-path}")
+    private String outputPath;
+
+    /** 排队或运行中的作业，键为ds范围 */
+    private final Map<String, Submission> activeRuns = new ConcurrentHashMap<>();
+    private final Map<Long, Submission> submissions = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor launcherPool;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        int threads = Math.max(1, maxConcurrentRuns);
+        launcherPool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, maxQueuedRuns)), runnable -> {
+                    Thread thread = new Thread(runnable, "spark-launcher-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        log.info("分析作业提交服务已启动，最大并发作业数: {}，最大排队数: {}", maxConcurrentRuns, maxQueuedRuns);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        launcherPool.shutdownNow();
+    }
+
+    /**
+     * 提交分析作业（立即返回，作业在后台排队执行）
+     */
+    public JobSubmissionDTO submit(JobSubmissionRequest request) {
+        validateRequest(request);
+        String dsRange = dsRange(request);
+
+        Map<String, String> conf = request.getConf() != null
+                ? new TreeMap<>(request.getConf()) : Collections.emptyMap();
+
+        synchronized (activeRuns) {
+            Submission existing = activeRuns.get(dsRange);
+            if (existing != null) {
+                if (!existing.conf.equals(conf)) {
+                    throw new IllegalStateException("ds范围 " + dsRange + " 已有运行参数不同的作业在执行，作业ID: "
+                            + existing.jobId + "，请等待其结束或先取消");
+                }
+                log.info("ds范围 {} 的作业已在执行，返回已有作业ID: {}", dsRange, existing.jobId);
+                return toDTO(existing, true);
+            }
+            for (Submission active : activeRuns.values()) {
+                if (overlaps(active.request, request)) {
+                    throw new IllegalStateException("ds范围 " + dsRange + " 与执行中的作业 " + active.jobId
+                            + "（ds范围 " + active.dsRange + "）重叠，请等待其结束或先取消");
+                }
+            }
+            // 提交在 activeRuns 锁内串行，队列只会被启动线程取走而变空，预先检查后提交不会被拒绝
+            if (launcherPool.getQueue().remainingCapacity() == 0) {
+                throw new IllegalStateException("排队的分析作业已达上限 " + maxQueuedRuns + "，请稍后再提交");
+            }
+
+            SparkJobLogs job = new SparkJobLogs();
+            job.setJobName(JOB_NAME);
+            job.setStatus("QUEUED");
+            job.setInputDeliverPath(hdfsBaseUrl + deliverPath);
+            job.setInputPickupPath(hdfsBaseUrl + pickupPath);
+            job.setOutputPath(hdfsBaseUrl + outputPath);
+            job.setCreatedAt(LocalDateTime.now());
+            sparkJobLogsService.saveJob(job);
+
+            Submission submission = new Submission(job.getId(), dsRange, conf, request);
+            activeRuns.put(dsRange, submission);
+            submissions.put(submission.jobId, submission);
+            submission.future = launcherPool.submit(() -> run(submission));
+
+            log.info("已提交分析作业，ID: {}，ds范围: {}", submission.jobId, dsRange);
+            return toDTO(submission, false);
+        }
+    }
+
+    /**
+     * 取消排队或运行中的作业，作业已结束时返回false
+     *
+     * 排队中的作业直接标记为 KILLED；已启动的作业结束Spark应用，状态由 SparkAppHandle 回调写入
+     * （应用可能在取消前刚好成功结束，此时保持 SUCCESS）
+     */
+    public boolean cancel(Long jobId) {
+        Submission submission = submissions.get(jobId);
+        if (submission == null) {
+            return false;
+        }
+
+        SparkAppHandle handle;
+        synchronized (submission) {
+            handle = submission.handle;
+            if (handle != null && handle.getState().isFinal()) {
+                return false;
+            }
+            // 与 run 中的启动互斥：此后 run 不会再启动应用
+            submission.cancelled = true;
+        }
+
+        if (handle != null) {
+            handle.kill();
+        } else {
+            if (submission.future != null) {
+                submission.future.cancel(true);
+            }
+            finish(submission);
+            markFinished(jobId, "KILLED", "作业已取消");
+        }
+        log.info("已取消分析作业，ID: {}", jobId);
+        return true;
+    }
+
+    // ==================== 私有方法 ====================
+
+    /**
+     * 在提交线程中启动作业并等待其结束，占用一个并发名额
+     */
+    private void run(Submission submission) {
+        CountDownLatch finished = new CountDownLatch(1);
+        try {
+            synchronized (submission) {
+                if (submission.cancelled) {
+                    return;
+                }
+                submission.handle = launcher(submission).startApplication(new SparkAppHandle.Listener() {
+                    @Override
+                    public void stateChanged(SparkAppHandle handle) {
+                        onStateChanged(submission, handle.getState());
+                        if (handle.getState().isFinal()) {
+                            finished.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void infoChanged(SparkAppHandle handle) {
+                        log.info("分析作业 {} 的Spark应用ID: {}", submission.jobId, handle.getAppId());
+                    }
+                });
+            }
+            finished.await();
+        } catch (InterruptedException e) {
+            if (submission.handle != null) {
+                submission.handle.kill();
+            }
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("启动分析作业失败，ID: {}", submission.jobId, e);
+            markFinished(submission.jobId, "FAILED", "启动失败: " + e.getMessage());
+        } finally {
+            finish(submission);
+        }
+    }
+
+    /**
+     * SparkAppHandle 状态写入 spark_job_logs
+     */
+    private void onStateChanged(Submission submission, SparkAppHandle.State state) {
+        log.info("分析作业 {} 状态变化: {}", submission.jobId, state);
+        switch (state) {
+            case SUBMITTED:
+            case RUNNING:
+                sparkJobLogsService.updateLaunchState(submission.jobId, state.name(), null, null);
+                break;
+            case FINISHED:
+                markFinished(submission.jobId, "SUCCESS", null);
+                break;
+            case KILLED:
+                markFinished(submission.jobId, "KILLED", "作业已取消");
+                break;
+            case FAILED:
+            case LOST:
+                markFinished(submission.jobId, "FAILED",
+                        "Spark应用结束状态: " + state + "，详见 " + logFile(submission).getPath());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 写入结束状态；作业自身未写入结束状态（未完成 SparkJobMonitor.completeJobTracking）时同时写入作业事件
+     */
+    private void markFinished(Long jobId, String status, String errorMessage) {
+        if (sparkJobLogsService.updateLaunchState(jobId, status, LocalDateTime.now(), errorMessage) > 0) {
+            cacheWarmupService.publishJobEvent(jobId);
+        }
+    }
+
+    private SparkLauncher launcher(Submission submission) {
+        File logFile = logFile(submission);
+        logFile.getParentFile().mkdirs();
+
+        SparkLauncher launcher = new SparkLauncher()
+                .setSparkHome(sparkHome)
+                .setAppResource(appJar)
+                .setMainClass(MAIN_CLASS)
+                .setMaster(master)
+                .setAppName(JOB_NAME + "-" + submission.jobId)
+                .setConf("spark.logistics.jobLogId", String.valueOf(submission.jobId))
+                .addAppArgs(hdfsBaseUrl + deliverPath, hdfsBaseUrl + pickupPath, hdfsBaseUrl + outputPath)
+                .redirectError()
+                .redirectOutput(logFile);
+
+        JobSubmissionRequest request = submission.request;
+        if (request.getStartDs() != null) {
+            launcher.setConf("spark.logistics.incremental.startDs", String.valueOf(request.getStartDs()));
+        }
+        if (request.getEndDs() != null) {
+            launcher.setConf("spark.logistics.incremental.endDs", String.valueOf(request.getEndDs()));
+        }
+        if (request.getConf() != null) {
+            request.getConf().forEach(launcher::setConf);
+        }
+        return launcher;
+    }
+
+    private File logFile(Submission submission) {
+        return new File(logDir, "job-" + submission.jobId + ".log");
+    }
+
+    private void finish(Submission submission) {
+        synchronized (activeRuns) {
+            activeRuns.remove(submission.dsRange, submission);
+            submissions.remove(submission.jobId, submission);
+        }
+    }
+
+    private void validateRequest(JobSubmissionRequest request) {
+        Integer startDs = request.getStartDs();
+        Integer endDs = request.getEndDs();
+        if (startDs != null && endDs != null && startDs > endDs) {
+            throw new IllegalArgumentException("起始ds不能大于结束ds: " + startDs + " > " + endDs);
+        }
+        if (request.getConf() != null) {
+            for (String key : request.getConf().keySet()) {
+                if (!key.startsWith(CONF_PREFIX) || key.equals("spark.logistics.jobLogId")) {
+                    throw new IllegalArgumentException("只允许设置 " + CONF_PREFIX + "* 运行参数: " + key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 去重键：全量为 ALL，增量为 起始ds~结束ds（未指定的一端为 *）
+     */
+    private String dsRange(JobSubmissionRequest request) {
+        if (request.getStartDs() == null && request.getEndDs() == null) {
+            return "ALL";
+        }
+        return (request.getStartDs() != null ? request.getStartDs() : "*") + "~"
+                + (request.getEndDs() != null ? request.getEndDs() : "*");
+    }
+
+    /**
+     * 两个作业处理的ds范围是否重叠：全量作业、未指定结束ds的作业（处理到最新分区）与任何作业都重叠；
+     * 未指定起始ds时从上次成功处理的ds之后开始，起点未知，按从最早分区开始处理
+     */
+    private static boolean overlaps(JobSubmissionRequest a, JobSubmissionRequest b) {
+        if (a.getEndDs() == null || b.getEndDs() == null) {
+            return true;
+        }
+        int aStart = a.getStartDs() != null ? a.getStartDs() : Integer.MIN_VALUE;
+        int bStart = b.getStartDs() != null ? b.getStartDs() : Integer.MIN_VALUE;
+        return aStart <= b.getEndDs() && bStart <= a.getEndDs();
+    }
+
+    private JobSubmissionDTO toDTO(Submission submission, boolean duplicate) {
+        JobSubmissionDTO dto = new JobSubmissionDTO();
+        dto.setJobId(submission.jobId);
+        dto.setStatus(submission.handle != null ? submission.handle.getState().name() : "QUEUED");
+        dto.setDuplicate(duplicate);
+        dto.setDsRange(submission.dsRange);
+        return dto;
+    }
+
+    private static final class Submission {
+        private final Long jobId;
+        private final String dsRange;
+        /** 运行参数（按键排序），同一ds范围只允许参数相同的请求去重 */
+        private final Map<String, String> conf;
+        private final JobSubmissionRequest request;
+        private volatile Future<?> future;
+        /** 以下两个字段在 synchronized (this) 中更新 */
+        private volatile SparkAppHandle handle;
+        private volatile boolean cancelled;
+
+        private Submission(Long jobId, String dsRange, Map<String, String> conf, JobSubmissionRequest request) {
+            this.jobId = jobId;
+            this.dsRange = dsRange;
+            this.conf = conf;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.logistics.service.service;
+
+import com.logistics.service.dao.entity.SparkStageMetrics;
+import com.logistics.service.dao.mapper.SparkStageMetricsMapper;
+import com.logistics.service.dto.StageMetricsComparisonDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Spark stage指标查询与运行对比
+ *
+ * 运行中作业的stage指标持续增加，查询不缓存。
+ */
+@Slf4j
+@Service
+@Transactional(readOnly = true)
+public class SparkStageMetricsService {
+
+    @Autowired
+    private SparkStageMetricsMapper sparkStageMetricsMapper;
+
+    /**
+     * 获取作业的全部stage指标
+     */
+    public List<SparkStageMetrics> getStageMetrics(Long jobLogId) {
+        log.info("查询数据库获取stage指标[jobLogId={}]", jobLogId);
+        return sparkStageMetricsMapper.findByJobLogId(jobLogId);
+    }
+
+    /**
+     * 逐stage对比两次运行：同一模块内按stage名称及出现顺序配对（重试的stage只取最后一次attempt）
+     */
+    public List<StageMetricsComparisonDTO> compareStages(Long baseJobId, Long targetJobId) {
+        Map<String, SparkStageMetrics> base = keyByStage(latestAttempts(getStageMetrics(baseJobId)));
+        Map<String, SparkStageMetrics> target = keyByStage(latestAttempts(getStageMetrics(targetJobId)));
+
+        List<StageMetricsComparisonDTO> result = new ArrayList<>();
+        for (String key : unionKeys(base, target)) {
+            SparkStageMetrics b = base.get(key);
+            SparkStageMetrics t = target.get(key);
+            SparkStageMetrics any = b != null ? b : t;
+            StageMetricsComparisonDTO dto = compare(any.getModuleName(), b, t);
+            dto.setStageName(any.getStageName());
+            dto.setStageIndex(Integer.valueOf(key.substring(key.lastIndexOf('#') + 1)));
+            result.add(dto);
+        }
+        log.info("对比作业 {} 与 {} 的stage指标，共 {} 个stage", baseJobId, targetJobId, result.size());
+        return result;
+    }
+
+    /**
+     * 按模块对比两次运行（模块内各stage指标求和，task耗时最大值与倾斜度取最大）
+     */
+    public List<StageMetricsComparisonDTO> compareModules(Long baseJobId, Long targetJobId) {
+        Map<String, SparkStageMetrics> base = sumByModule(latestAttempts(getStageMetrics(baseJobId)));
+        Map<String, SparkStageMetrics> target = sumByModule(latestAttempts(getStageMetrics(targetJobId)));
+
+        List<StageMetricsComparisonDTO> result = new ArrayList<>();
+        for (String module : unionKeys(base, target)) {
+            result.add(compare(module, base.get(module), target.get(module)));
+        }
+        return result;
+    }
+
+    // ==================== 私有方法 ====================
+
+    private List<SparkStageMetrics> latestAttempts(List<SparkStageMetrics> stages) {
+        Map<Integer, SparkStageMetrics> latest = new LinkedHashMap<>();
+        for (SparkStageMetrics stage : stages) {
+            SparkStageMetrics previous = latest.get(stage.getStageId());
+            if (previous == null || stage.getStageAttempt() > previous.getStageAttempt()) {
+                latest.put(stage.getStageId(), stage);
+            }
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * 配对键：模块|stage名称#同名stage在模块内的序号（stage已按ID排序）
+     */
+    private Map<String, SparkStageMetrics> keyByStage(List<SparkStageMetrics> stages) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        Map<String, SparkStageMetrics> keyed = new LinkedHashMap<>();
+        for (SparkStageMetrics stage : stages) {
+            String name = stage.getModuleName() + "|" + stage.getStageName();
+            int index = occurrences.merge(name, 1, Integer::sum) - 1;
+            keyed.put(name + "#" + index, stage);
+        }
+        return keyed;
+    }
+
+    private Map<String, SparkStageMetrics> sumByModule(List<SparkStageMetrics> stages) {
+        Map<String, SparkStageMetrics> modules = new LinkedHashMap<>();
+        for (SparkStageMetrics stage : stages) {
+            SparkStageMetrics sum = modules.computeIfAbsent(stage.getModuleName(), module -> {
+                SparkStageMetrics empty = new SparkStageMetrics();
+                empty.setJobLogId(stage.getJobLogId());
+                empty.setModuleName(module);
+                return empty;
+            });
+            sum.setNumTasks(add(sum.getNumTasks(), stage.getNumTasks()));
+            sum.setDurationMs(add(sum.getDurationMs(), stage.getDurationMs()));
+            sum.setExecutorRunTimeMs(add(sum.getExecutorRunTimeMs(), stage.getExecutorRunTimeMs()));
+            sum.setExecutorCpuTimeMs(add(sum.getExecutorCpuTimeMs(), stage.getExecutorCpuTimeMs()));
+            sum.setJvmGcTimeMs(add(sum.getJvmGcTimeMs(), stage.getJvmGcTimeMs()));
+            sum.setShuffleReadBytes(add(sum.getShuffleReadBytes(), stage.getShuffleReadBytes()));
+            sum.setShuffleReadRecords(add(sum.getShuffleReadRecords(), stage.getShuffleReadRecords()));
+            sum.setShuffleWriteBytes(add(sum.getShuffleWriteBytes(), stage.getShuffleWriteBytes()));
+            sum.setShuffleWriteRecords(add(sum.getShuffleWriteRecords(), stage.getShuffleWriteRecords()));
+            sum.setMemorySpilledBytes(add(sum.getMemorySpilledBytes(), stage.getMemorySpilledBytes()));
+            sum.setDiskSpilledBytes(add(sum.getDiskSpilledBytes(), stage.getDiskSpilledBytes()));
+            sum.setInputBytes(add(sum.getInputBytes(), stage.getInputBytes()));
+            sum.setOutputBytes(add(sum.getOutputBytes(), stage.getOutputBytes()));
+            sum.setTaskTimeMaxMs(max(sum.getTaskTimeMaxMs(), stage.getTaskTimeMaxMs()));
+            if (stage.getTaskSkewRatio() != null
+                    && (sum.getTaskSkewRatio() == null || stage.getTaskSkewRatio() > sum.getTaskSkewRatio())) {
+                sum.setTaskSkewRatio(stage.getTaskSkewRatio());
+            }
+        }
+        return modules;
+    }
+
+    private StageMetricsComparisonDTO compare(String moduleName, SparkStageMetrics base, SparkStageMetrics target) {
+        StageMetricsComparisonDTO dto = new StageMetricsComparisonDTO();
+        dto.setModuleName(moduleName);
+        dto.setBase(base);
+        dto.setTarget(target);
+        if (base == null || target == null) {
+            return dto;
+        }
+
+        dto.setDurationDeltaMs(delta(base, target, SparkStageMetrics::getDurationMs));
+        dto.setExecutorRunTimeDeltaMs(delta(base, target, SparkStageMetrics::getExecutorRunTimeMs));
+        dto.setShuffleReadDeltaBytes(delta(base, target, SparkStageMetrics::getShuffleReadBytes));
+        dto.setShuffleWriteDeltaBytes(delta(base, target, SparkStageMetrics::getShuffleWriteBytes));
+        dto.setSpillDeltaBytes(delta(base, target, s -> add(s.getMemorySpilledBytes(), s.getDiskSpilledBytes())));
+        dto.setJvmGcTimeDeltaMs(delta(base, target, SparkStageMetrics::getJvmGcTimeMs));
+
+        Long baseRunTime = base.getExecutorRunTimeMs();
+        if (baseRunTime != null && baseRunTime > 0 && target.getExecutorRunTimeMs() != null) {
+            dto.setExecutorRunTimeChangeRate(BigDecimal.valueOf(target.getExecutorRunTimeMs() - baseRunTime)
+                    .multiply(BigDecimal.valueOf(100))
+                    .divide(BigDecimal.valueOf(baseRunTime), 2, RoundingMode.HALF_UP));
+        }
+        if (base.getTaskSkewRatio() != null && target.getTaskSkewRatio() != null) {
+            dto.setTaskSkewRatioDelta(target.getTaskSkewRatio() - base.getTaskSkewRatio());
+        }
+        return dto;
+    }
+
+    private static Set<String> unionKeys(Map<String, ?> base, Map<String, ?> target) {
+        Set<String> keys = new LinkedHashSet<>(base.keySet());
+        keys.addAll(target.keySet());
+        return keys;
+    }
+
+    private static Long delta(SparkStageMetrics base, SparkStageMetrics target, Function<SparkStageMetrics, Long> metric) {
+        Long b = metric.apply(base);
+        Long t = metric.apply(target);
+        return b == null || t == null ? null : t - b;
+    }
+
+    private static Long add(Long a, Long b) {
+        if (a == null || b == null) {
+            return a != null ? a : b;
+        }
+        return a + b;
+    }
+
+    private static Integer add(Integer a, Integer b) {
+        if (a == null || b == null) {
+            return a != null ? a : b;
+        }
+        return a + b;
+    }
+
+    private static Long max(Long a, Long b) {
+        if (a == null || b == null) {
+            return a != null ? a : b;
+        }
+        return Math.max(a, b);
+    }
+}
@@ -1,6 +1,10 @@
 package com.logistics.service.service;
 
+import com.logistics.common.geo.GeoCell;
+import com.logistics.service.config.CacheGenerations;
+import com.logistics.service.dao.entity.HeatmapTiles;
 import com.logistics.service.dao.entity.SpatialAnalysisMetrics;
+import com.logistics.service.dao.mapper.HeatmapTilesMapper;
 import com.logistics.service.dao.mapper.SpatialAnalysisMetricsMapper;
 import com.logistics.service.dto.SpatialAnalysisDTO;
 import lombok.extern.slf4j.Slf4j;
@@ -21,21 +25,30 @@ import java.math.BigDecimal;
 @Transactional(readOnly = true)
 public class SpatialAnalysisService {
 
+    /** 缓存代数的业务域，与缓存键中 @cacheGenerations 的参数一致 */
+    private static final String CACHE_DOMAIN = "spatial";
+
     @Autowired
     private SpatialAnalysisMetricsMapper spatialAnalysisMapper;
 
+    @Autowired
+    private HeatmapTilesMapper heatmapTilesMapper;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     // ==================== 数据保存操作 ====================
 
     /**
      * 保存空间分析数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"spatial", "stats"}, allEntries = true)
     public int saveSpatialAnalysis(SpatialAnalysisMetrics metrics) {
         validateSpatialAnalysisMetrics(metrics);
 
         int result = spatialAnalysisMapper.insertSpatialAnalysis(metrics);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, metrics.getCity(), metrics.getDate());
             log.info("保存空间分析数据成功，城市: {}，已清除缓存", metrics.getCity());
         }
         return result;
@@ -45,7 +58,6 @@ public class SpatialAnalysisService {
      * 批量保存空间分析数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"spatial", "stats"}, allEntries = true)
     public int batchSaveSpatialAnalysis(List<SpatialAnalysisMetrics> metricsList) {
         for (SpatialAnalysisMetrics metrics : metricsList) {
             validateSpatialAnalysisMetrics(metrics);
@@ -53,6 +65,8 @@ public class SpatialAnalysisService {
 
         int result = spatialAnalysisMapper.batchInsertSpatialAnalysis(metricsList);
         if (result > 0) {
+            cacheGenerations.bumpEach(CACHE_DOMAIN, metricsList,
+                    SpatialAnalysisMetrics::getCity, SpatialAnalysisMetrics::getDate);
             log.info("批量保存空间分析数据成功，共保存 {} 条，已清除缓存", result);
         }
         return result;
@@ -62,12 +76,12 @@ public class SpatialAnalysisService {
      * 更新空间分析数据 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"spatial", "stats"}, allEntries = true)
     public int updateSpatialAnalysis(SpatialAnalysisMetrics metrics) {
         validateSpatialAnalysisMetrics(metrics);
 
         int result = spatialAnalysisMapper.updateSpatialAnalysis(metrics);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, metrics.getCity(), metrics.getDate());
             log.info(" 更新空间分析数据成功，已清除缓存");
         }
         return result;
@@ -78,7 +92,8 @@ public class SpatialAnalysisService {
     /**
      * 获取指定城市的空间分析数据 - 添加缓存
      */
-    @Cacheable(value = "spatial", key = "'city:' + #city + ':' + #startDate + ':' + #endDate",
+    @Cacheable(value = "spatial",
+            key = "@cacheGenerations.city('spatial', #city) + 'city:' + #city + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<SpatialAnalysisDTO> getSpatialAnalysisByCity(String city, LocalDate startDate, LocalDate endDate) {
         try {
@@ -94,7 +109,9 @@ public class SpatialAnalysisService {
     /**
      * 根据城市和日期获取空间分析 - 添加缓存
      */
-    @Cacheable(value = "spatial", key = "'date:' + #city + ':' + #date", unless = "#result.isEmpty()")
+    @Cacheable(value = "spatial",
+            key = "@cacheGenerations.date('spatial', #city, #date) + 'date:' + #city + ':' + #date",
+            unless = "#result.isEmpty()")
     public List<SpatialAnalysisDTO> getSpatialAnalysisByDate(String city, LocalDate date) {
         try {
             log.info(" 查询数据库获取指定日期空间分析[city={}, date={}]", city, date);
@@ -110,7 +127,7 @@ public class SpatialAnalysisService {
      * 根据地理范围获取空间分析 - 添加缓存
      */
     @Cacheable(value = "spatial",
-            key = "'geo_range:' + #city + ':' + #minLng + ':' + #maxLng + ':' + #minLat + ':' + #maxLat + ':' + #startDate + ':' + #endDate",
+            key = "@cacheGenerations.city('spatial', #city) + 'geo_range:' + #city + ':' + #minLng + ':' + #maxLng + ':' + #minLat + ':' + #maxLat + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<SpatialAnalysisDTO> getSpatialAnalysisByGeoRange(String city, Double minLng, Double maxLng,
                                                                  Double minLat, Double maxLat,
@@ -129,7 +146,9 @@ public class SpatialAnalysisService {
     /**
      * 获取热点区域分析 - 添加缓存
      */
-    @Cacheable(value = "spatial", key = "'hotspot:' + #city + ':' + #date", unless = "#result.isEmpty()")
+    @Cacheable(value = "spatial",
+            key = "@cacheGenerations.date('spatial', #city, #date) + 'hotspot:' + #city + ':' + #date",
+            unless = "#result.isEmpty()")
     public List<SpatialAnalysisDTO> getHotspotAnalysis(String city, LocalDate date) {
         return getHotspotAnalysis(city, date, 20);
     }
@@ -137,7 +156,8 @@ public class SpatialAnalysisService {
     /**
      * 获取热点区域分析（指定数量）- 添加缓存
      */
-    @Cacheable(value = "spatial", key = "'hotspot:' + #city + ':' + #date + ':' + #limit",
+    @Cacheable(value = "spatial",
+            key = "@cacheGenerations.date('spatial', #city, #date) + 'hotspot:' + #city + ':' + #date + ':' + #limit",
             unless = "#result.isEmpty()")
     public List<SpatialAnalysisDTO> getHotspotAnalysis(String city, LocalDate date, int limit) {
         try {
@@ -153,7 +173,9 @@ public class SpatialAnalysisService {
     /**
      * 获取密度分析数据 - 添加缓存
      */
-    @Cacheable(value = "spatial", key = "'density:' + #city + ':' + #date", unless = "#result.isEmpty()")
+    @Cacheable(value = "spatial",
+            key = "@cacheGenerations.date('spatial', #city, #date) + 'density:' + #city + ':' + #date",
+            unless = "#result.isEmpty()")
     public List<SpatialAnalysisDTO> getDensityAnalysis(String city, LocalDate date) {
         try {
             log.info(" 查询数据库获取密度分析[city={}, date={}]", city, date);
@@ -168,7 +190,8 @@ public class SpatialAnalysisService {
     /**
      * 获取今日空间分析 - 添加缓存
      */
-    @Cacheable(value = "spatial", key = "'today:' + #city", unless = "#result.isEmpty()")
+    @Cacheable(value = "spatial",
+            key = "@cacheGenerations.city('spatial', #city) + 'today:' + #city", unless = "#result.isEmpty()")
     public List<SpatialAnalysisDTO> getTodaySpatialAnalysis(String city) {
         LocalDate today = LocalDate.now();
         return getSpatialAnalysisByDate(city, today);
@@ -179,8 +202,9 @@ public class SpatialAnalysisService {
     /**
      * 获取配送密度热点 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'delivery_hotspots:' + #city + ':' + #startDate + ':' + #limit",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('spatial', #city) + 'delivery_hotspots:' + #city + ':' + #startDate + ':' + #limit",
+            sync = true)
     public List<Map<String, Object>> getDeliveryDensityHotspots(String city, LocalDate startDate, int limit) {
         log.info(" 查询数据库获取配送密度热点[city={}]", city);
         return spatialAnalysisMapper.getDeliveryDensityHotspots(city, startDate, limit);
@@ -189,7 +213,8 @@ public class SpatialAnalysisService {
     /**
      * 获取配送时间热图数据 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'time_heatmap:' + #city + ':' + #startDate", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('spatial', #city) + 'time_heatmap:' + #city + ':' + #startDate", sync = true)
     public List<Map<String, Object>> getDeliveryTimeHeatmap(String city, LocalDate startDate) {
         log.info(" 查询数据库获取配送时间热图[city={}]", city);
         return spatialAnalysisMapper.getDeliveryTimeHeatmap(city, startDate);
@@ -198,8 +223,9 @@ public class SpatialAnalysisService {
     /**
      * 获取空间分布统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'distribution_stats:' + #city + ':' + #startDate",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('spatial', #city) + 'distribution_stats:' + #city + ':' + #startDate",
+            sync = true)
     public List<Map<String, Object>> getSpatialDistributionStats(String city, LocalDate startDate) {
         log.info(" 查询数据库获取空间分布统计[city={}]", city);
         return spatialAnalysisMapper.getSpatialDistributionStats(city, startDate);
@@ -208,17 +234,34 @@ public class SpatialAnalysisService {
     /**
      * 获取网格聚合数据 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'grid_aggregation:' + #city + ':' + #date + ':' + #gridSize",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.date('spatial', #city, #date) + 'grid_aggregation:' + #city + ':' + #date + ':' + #gridSize",
+            sync = true)
     public List<Map<String, Object>> getGridAggregation(String city, LocalDate date, Double gridSize) {
         log.info(" 查询数据库获取网格聚合[city={}, gridSize={}]", city, gridSize);
-        return spatialAnalysisMapper.getGridAggregation(city, date, gridSize);
+
+        // 优先读取Spark预先聚合的分层网格，取与请求网格大小最接近的层级
+        List<Integer> levels = spatialAnalysisMapper.getGridCellLevels(city, date);
+        if (levels.isEmpty()) {
+            return spatialAnalysisMapper.getGridAggregation(city, date, gridSize);
+        }
+
+        int requested = GeoCell.levelForCellSize(gridSize);
+        int level = levels.get(0);
+        for (Integer candidate : levels) {
+            if (Math.abs(candidate - requested) < Math.abs(level - requested)) {
+                level = candidate;
+            }
+        }
+        log.info(" 使用分层网格层级 {}（网格边长 {} 度）", level, GeoCell.cellSize(level));
+        return spatialAnalysisMapper.getGridCellAggregation(city, date, level);
     }
 
     /**
      * 获取空间汇总统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'summary:' + #city + ':' + #startDate", unless = "#result == null")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('spatial', #city) + 'summary:' + #city + ':' + #startDate", sync = true)
     public Map<String, Object> getSpatialSummary(String city, LocalDate startDate) {
         log.info(" 查询数据库获取空间汇总[city={}]", city);
         return spatialAnalysisMapper.getSpatialSummary(city, startDate);
@@ -227,8 +270,9 @@ public class SpatialAnalysisService {
     /**
      * 获取配送员空间分布 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'courier_distribution:' + #city + ':' + #startDate + ':' + #limit",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('spatial', #city) + 'courier_distribution:' + #city + ':' + #startDate + ':' + #limit",
+            sync = true)
     public List<Map<String, Object>> getCourierSpatialDistribution(String city, LocalDate startDate, int limit) {
         log.info(" 查询数据库获取配送员空间分布[city={}]", city);
         return spatialAnalysisMapper.getCourierSpatialDistribution(city, startDate, limit);
@@ -238,8 +282,8 @@ public class SpatialAnalysisService {
      * 获取城市间空间对比 - 添加缓存
      */
     @Cacheable(value = "stats",
-            key = "'comparison:' + #cities.toString() + ':' + #startDate + ':' + #endDate",
-            unless = "#result.isEmpty()")
+            key = "@cacheGenerations.all('spatial') + 'comparison:' + #cities.toString() + ':' + #startDate + ':' + #endDate",
+            sync = true)
     public List<Map<String, Object>> getCitySpatialComparison(List<String> cities, LocalDate startDate, LocalDate endDate) {
         log.info(" 查询数据库获取城市空间对比，城市数: {}", cities.size());
         return spatialAnalysisMapper.getCitySpatialComparison(cities, startDate, endDate);
@@ -252,16 +296,28 @@ public class SpatialAnalysisService {
         return spatialAnalysisMapper.countByCity(city);
     }
 
+    /**
+     * 获取热力图瓦片 - 不使用Redis缓存（二进制内容由HTTP缓存和ETag在浏览器端缓存，数据库按主键读取）
+     *
+     * @param x 列号，自西向东
+     * @param y 行号，自南向北
+     * @return 瓦片不存在（该区域无数据）时返回null
+     */
+    public HeatmapTiles getHeatmapTile(String city, LocalDate date, int zoom, long x, long y) {
+        long tileId = GeoCell.of(zoom, x, y);
+        return heatmapTilesMapper.findTile(city, date, tileId);
+    }
+
     // ==================== 数据维护 ====================
 
     /**
      * 清理旧数据 - 清理后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"spatial", "stats"}, allEntries = true)
     public int cleanupOldData(LocalDate cutoffDate) {
         int result = spatialAnalysisMapper.cleanupOldSpatialData(cutoffDate);
         if (result > 0) {
+            cacheGenerations.bumpDomain(CACHE_DOMAIN);
             log.info("清理旧空间分析数据成功，删除 {} 条记录，已清除缓存", result);
         }
         return result;
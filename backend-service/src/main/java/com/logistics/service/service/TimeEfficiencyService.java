@@ -1,7 +1,12 @@
 package com.logistics.service.service;
 
+import com.logistics.common.sketch.QuantileSketch;
+import com.logistics.service.config.CacheGenerations;
+import com.logistics.service.dao.entity.DurationQuantileSketch;
 import com.logistics.service.dao.entity.TimeEfficiencyMetrics;
+import com.logistics.service.dao.mapper.DurationQuantileSketchMapper;
 import com.logistics.service.dao.mapper.TimeEfficiencyMetricsMapper;
+import com.logistics.service.dto.DurationQuantilesDTO;
 import com.logistics.service.dto.TimeEfficiencyDTO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,6 +16,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -21,22 +27,31 @@ import java.math.BigDecimal;
 @Transactional(readOnly = true)
 public class TimeEfficiencyService {
 
+    /** 缓存代数的业务域，与缓存键中 @cacheGenerations 的参数一致 */
+    private static final String CACHE_DOMAIN = "time_efficiency";
+
     @Autowired
     private TimeEfficiencyMetricsMapper timeEfficiencyMapper;
 
+    @Autowired
+    private DurationQuantileSketchMapper durationQuantileSketchMapper;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     // ==================== 数据保存操作 ====================
 
     /**
      * 保存时间效率数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"time_efficiency", "stats"}, allEntries = true)
     public int saveTimeEfficiency(TimeEfficiencyMetrics metrics) {
         validateTimeEfficiencyMetrics(metrics);
         calculateDerivedMetrics(metrics);
 
         int result = timeEfficiencyMapper.insertTimeEfficiency(metrics);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, metrics.getCity(), metrics.getDate());
             log.info(" 保存时间效率数据成功，城市: {}，已清除缓存", metrics.getCity());
         }
         return result;
@@ -46,7 +61,6 @@ public class TimeEfficiencyService {
      * 批量保存时间效率数据 - 保存后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"time_efficiency", "stats"}, allEntries = true)
     public int batchSaveTimeEfficiency(List<TimeEfficiencyMetrics> metricsList) {
         for (TimeEfficiencyMetrics metrics : metricsList) {
             validateTimeEfficiencyMetrics(metrics);
@@ -55,6 +69,8 @@ public class TimeEfficiencyService {
 
         int result = timeEfficiencyMapper.batchInsertTimeEfficiency(metricsList);
         if (result > 0) {
+            cacheGenerations.bumpEach(CACHE_DOMAIN, metricsList,
+                    TimeEfficiencyMetrics::getCity, TimeEfficiencyMetrics::getDate);
             log.info(" 批量保存时间效率数据成功，共保存 {} 条，已清除缓存", result);
         }
         return result;
@@ -64,13 +80,13 @@ public class TimeEfficiencyService {
      * 更新时间效率数据 - 更新后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"time_efficiency", "stats"}, allEntries = true)
     public int updateTimeEfficiency(TimeEfficiencyMetrics metrics) {
         validateTimeEfficiencyMetrics(metrics);
         calculateDerivedMetrics(metrics);
 
         int result = timeEfficiencyMapper.updateTimeEfficiency(metrics);
         if (result > 0) {
+            cacheGenerations.bump(CACHE_DOMAIN, metrics.getCity(), metrics.getDate());
             log.info(" 更新时间效率数据成功，已清除缓存");
         }
         return result;
@@ -81,7 +97,8 @@ public class TimeEfficiencyService {
     /**
      * 获取指定城市的时间效率数据 - 添加缓存
      */
-    @Cacheable(value = "time_efficiency", key = "'city:' + #city + ':' + #startDate + ':' + #endDate",
+    @Cacheable(value = "time_efficiency",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'city:' + #city + ':' + #startDate + ':' + #endDate",
             unless = "#result.isEmpty()")
     public List<TimeEfficiencyDTO> getTimeEfficiencyByCity(String city, LocalDate startDate, LocalDate endDate) {
         try {
@@ -97,7 +114,9 @@ public class TimeEfficiencyService {
     /**
      * 根据城市和日期获取时间效率 - 添加缓存
      */
-    @Cacheable(value = "time_efficiency", key = "'date:' + #city + ':' + #date", unless = "#result.isEmpty()")
+    @Cacheable(value = "time_efficiency",
+            key = "@cacheGenerations.date('time_efficiency', #city, #date) + 'date:' + #city + ':' + #date",
+            unless = "#result.isEmpty()")
     public List<TimeEfficiencyDTO> getTimeEfficiencyByDate(String city, LocalDate date) {
         try {
             log.info(" 查询数据库获取指定日期时间效率[city={}, date={}]", city, date);
@@ -113,7 +132,7 @@ public class TimeEfficiencyService {
      * 多条件查询时间效率 - 添加缓存
      */
     @Cacheable(value = "time_efficiency",
-            key = "'conditions:' + #city + ':' + #startDate + ':' + #endDate + ':' + #minFastRate + ':' + #maxSlowRate",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'conditions:' + #city + ':' + #startDate + ':' + #endDate + ':' + #minFastRate + ':' + #maxSlowRate",
             unless = "#result.isEmpty()")
     public List<TimeEfficiencyDTO> getTimeEfficiencyByConditions(String city, LocalDate startDate, LocalDate endDate,
                                                                  Double minFastRate, Double maxSlowRate) {
@@ -131,7 +150,8 @@ public class TimeEfficiencyService {
     /**
      * 获取今日时间效率 - 添加缓存
      */
-    @Cacheable(value = "time_efficiency", key = "'today:' + #city", unless = "#result.isEmpty()")
+    @Cacheable(value = "time_efficiency",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'today:' + #city", unless = "#result.isEmpty()")
     public List<TimeEfficiencyDTO> getTodayTimeEfficiency(String city) {
         LocalDate today = LocalDate.now();
         return getTimeEfficiencyByDate(city, today);
@@ -140,7 +160,9 @@ public class TimeEfficiencyService {
     /**
      * 获取配送效率趋势 - 添加缓存
      */
-    @Cacheable(value = "time_efficiency", key = "'trend:' + #city + ':' + #days", unless = "#result.isEmpty()")
+    @Cacheable(value = "time_efficiency",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'trend:' + #city + ':' + #days",
+            unless = "#result.isEmpty()")
     public List<TimeEfficiencyDTO> getDeliveryEfficiencyTrend(String city, int days) {
         LocalDate endDate = LocalDate.now();
         LocalDate startDate = endDate.minusDays(days);
@@ -151,7 +173,7 @@ public class TimeEfficiencyService {
      * 获取慢配送分析 - 添加缓存
      */
     @Cacheable(value = "time_efficiency",
-            key = "'slow_delivery:' + #city + ':' + #threshold + ':' + #startDate + ':' + #limit",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'slow_delivery:' + #city + ':' + #threshold + ':' + #startDate + ':' + #limit",
             unless = "#result.isEmpty()")
     public List<TimeEfficiencyDTO> getSlowDeliveryAnalysis(String city, double threshold, LocalDate startDate, int limit) {
         log.info(" 查询数据库获取慢配送分析[city={}, threshold={}]", city, threshold);
@@ -163,7 +185,7 @@ public class TimeEfficiencyService {
      * 获取快速配送分析 - 添加缓存
      */
     @Cacheable(value = "time_efficiency",
-            key = "'fast_delivery:' + #city + ':' + #threshold + ':' + #startDate + ':' + #limit",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'fast_delivery:' + #city + ':' + #threshold + ':' + #startDate + ':' + #limit",
             unless = "#result.isEmpty()")
     public List<TimeEfficiencyDTO> getFastDeliveryAnalysis(String city, double threshold, LocalDate startDate, int limit) {
         log.info(" 查询数据库获取快速配送分析[city={}, threshold={}]", city, threshold);
@@ -174,7 +196,8 @@ public class TimeEfficiencyService {
     /**
      * 获取最新时间效率数据 - 添加缓存
      */
-    @Cacheable(value = "time_efficiency", key = "'latest:' + #city", unless = "#result == null")
+    @Cacheable(value = "time_efficiency",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'latest:' + #city", unless = "#result == null")
     public TimeEfficiencyDTO getLatestTimeEfficiency(String city) {
         log.info(" 查询数据库获取最新时间效率[city={}]", city);
         TimeEfficiencyMetrics metrics = timeEfficiencyMapper.findLatestByCity(city);
@@ -186,7 +209,9 @@ public class TimeEfficiencyService {
     /**
      * 获取配送效率趋势统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'trend_stats:' + #city + ':' + #startDate", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'trend_stats:' + #city + ':' + #startDate",
+            sync = true)
     public List<Map<String, Object>> getDeliveryEfficiencyTrendStats(String city, LocalDate startDate) {
         log.info(" 查询数据库获取配送效率趋势统计[city={}]", city);
         return timeEfficiencyMapper.getDeliveryEfficiencyTrend(city, startDate);
@@ -195,7 +220,9 @@ public class TimeEfficiencyService {
     /**
      * 获取效率分布统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'distribution:' + #city + ':' + #startDate", unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'distribution:' + #city + ':' + #startDate",
+            sync = true)
     public List<Map<String, Object>> getEfficiencyDistribution(String city, LocalDate startDate) {
         log.info(" 查询数据库获取效率分布统计[city={}]", city);
         return timeEfficiencyMapper.getEfficiencyDistribution(city, startDate);
@@ -204,8 +231,9 @@ public class TimeEfficiencyService {
     /**
      * 获取时间效率排行 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'ranking:' + #cities.toString() + ':' + #startDate + ':' + #limit",
-            unless = "#result.isEmpty()")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.all('time_efficiency') + 'ranking:' + #cities.toString() + ':' + #startDate + ':' + #limit",
+            sync = true)
     public List<Map<String, Object>> getTimeEfficiencyRanking(List<String> cities, LocalDate startDate, int limit) {
         log.info("查询数据库获取时间效率排行，城市数: {}", cities.size());
         return timeEfficiencyMapper.getTimeEfficiencyRanking(cities, startDate, limit);
@@ -214,7 +242,9 @@ public class TimeEfficiencyService {
     /**
      * 获取时间效率汇总统计 - 添加缓存
      */
-    @Cacheable(value = "stats", key = "'summary:' + #city + ':' + #startDate", unless = "#result == null")
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'summary:' + #city + ':' + #startDate",
+            sync = true)
     public Map<String, Object> getTimeEfficiencySummary(String city, LocalDate startDate) {
         log.info("查询数据库获取时间效率汇总[city={}]", city);
         return timeEfficiencyMapper.getTimeEfficiencySummary(city, startDate);
@@ -224,13 +254,61 @@ public class TimeEfficiencyService {
      * 获取城市间时间效率对比 - 添加缓存
      */
     @Cacheable(value = "stats",
-            key = "'comparison:' + #cities.toString() + ':' + #startDate + ':' + #endDate",
-            unless = "#result.isEmpty()")
+            key = "@cacheGenerations.all('time_efficiency') + 'comparison:' + #cities.toString() + ':' + #startDate + ':' + #endDate",
+            sync = true)
     public List<Map<String, Object>> getCityTimeEfficiencyComparison(List<String> cities, LocalDate startDate, LocalDate endDate) {
         log.info(" 查询数据库获取城市时间效率对比，城市数: {}", cities.size());
         return timeEfficiencyMapper.getCityTimeEfficiencyComparison(cities, startDate, endDate);
     }
 
+    /**
+     * 获取任意日期范围的配送/取件时长分位数 - 添加缓存
+     * 合并范围内每小时的分位数草图后读出分位数，不需要回扫明细数据
+     */
+    @Cacheable(value = "stats",
+            key = "@cacheGenerations.city('time_efficiency', #city) + 'quantiles:' + #city + ':' + #startDate + ':' + #endDate + ':' + #quantiles.toString()",
+            sync = true)
+    public DurationQuantilesDTO getDurationQuantiles(String city, LocalDate startDate, LocalDate endDate,
+                                                     List<Double> quantiles) {
+        for (Double q : quantiles) {
+            if (q == null || q < 0 || q > 1) {
+                throw new IllegalArgumentException("分位数必须在0到1之间: " + q);
+            }
+        }
+
+        log.info(" 查询数据库合并时长分位数草图[city={}, {} ~ {}]", city, startDate, endDate);
+        List<DurationQuantileSketch> rows = durationQuantileSketchMapper.findByCityAndDateRange(city, startDate, endDate);
+
+        QuantileSketch delivery = null;
+        QuantileSketch pickup = null;
+        for (DurationQuantileSketch row : rows) {
+            delivery = mergeSketch(delivery, row.getDeliveryDurationSketch());
+            pickup = mergeSketch(pickup, row.getPickupDurationSketch());
+        }
+        if (delivery == null && pickup == null) {
+            return null;
+        }
+
+        DurationQuantilesDTO dto = new DurationQuantilesDTO();
+        dto.setCity(city);
+        dto.setStartDate(startDate);
+        dto.setEndDate(endDate);
+        dto.setRelativeAccuracy(BigDecimal.valueOf((delivery != null ? delivery : pickup).getRelativeAccuracy()));
+        if (delivery != null) {
+            dto.setTotalDeliveries(delivery.getCount());
+            dto.setAvgDeliveryTime(BigDecimal.valueOf(delivery.getAverage()));
+            dto.setDeliveryQuantiles(readQuantiles(delivery, quantiles));
+        }
+        if (pickup != null) {
+            dto.setTotalPickups(pickup.getCount());
+            dto.setAvgPickupTime(BigDecimal.valueOf(pickup.getAverage()));
+            dto.setPickupQuantiles(readQuantiles(pickup, quantiles));
+        }
+        log.info(" 合并时长分位数草图 {} 个小时，配送样本 {}，取件样本 {}",
+                rows.size(), dto.getTotalDeliveries(), dto.getTotalPickups());
+        return dto;
+    }
+
     /**
      * 统计记录数 - 不缓存（简单计数查询）
      */
@@ -244,10 +322,10 @@ public class TimeEfficiencyService {
      * 清理旧数据 - 清理后清除缓存
      */
     @Transactional
-    @CacheEvict(value = {"time_efficiency", "stats"}, allEntries = true)
     public int cleanupOldData(LocalDate cutoffDate) {
         int result = timeEfficiencyMapper.cleanupOldTimeEfficiency(cutoffDate);
         if (result > 0) {
+            cacheGenerations.bumpDomain(CACHE_DOMAIN);
             log.info(" 清理旧时间效率数据成功，删除 {} 条记录，已清除缓存", result);
         }
         return result;
@@ -287,6 +365,28 @@ public class TimeEfficiencyService {
         }
     }
 
+    /**
+     * 合并一个序列化草图（null表示该小时没有样本）
+     */
+    private QuantileSketch mergeSketch(QuantileSketch merged, byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return merged;
+        }
+        QuantileSketch sketch = QuantileSketch.fromBytes(bytes);
+        return merged == null ? sketch : merged.merge(sketch);
+    }
+
+    /**
+     * 读出各分位点的估计值
+     */
+    private Map<String, BigDecimal> readQuantiles(QuantileSketch sketch, List<Double> quantiles) {
+        Map<String, BigDecimal> result = new LinkedHashMap<>();
+        for (Double q : quantiles) {
+            result.put(String.valueOf(q), BigDecimal.valueOf(sketch.quantile(q)));
+        }
+        return result;
+    }
+
     /**
      * 实体转DTO
      */
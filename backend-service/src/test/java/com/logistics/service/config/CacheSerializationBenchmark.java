@@ -0,0 +1,159 @@
+package com.logistics.service.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.logistics.service.dto.AnomalyAlertDTO;
+import com.logistics.service.dto.SpatialAnalysisDTO;
+import com.logistics.service.dto.TimeEfficiencyDTO;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 缓存值序列化微基准
+ *
+ * 对有代表性的DTO列表分别用以下序列化器写入、读出，输出字节数和每次序列化/反序列化的最佳耗时：
+ * 1. generic_json  原实现（GenericJackson2JsonRedisSerializer）
+ * 2. json_gzip     CacheValueSerializer JSON + GZIP
+ * 3. smile         CacheValueSerializer Smile，不压缩
+ * 4. smile_gzip    CacheValueSerializer Smile + GZIP
+ *
+ * 使用方法: CacheSerializationBenchmark [列表行数, 默认2000] [每种实现的计时轮数, 默认200]
+ * 基准位于测试源码目录，不打包进服务，以test classpath运行：
+ * mvn -pl backend-service test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.logistics.service.config.CacheSerializationBenchmark
+ */
+public class CacheSerializationBenchmark {
+
+    private static final String[] CITIES = {"Shanghai", "Hangzhou", "Chongqing", "Jilin", "Yantai"};
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        Map<String, RedisSerializer<Object>> serializers = new LinkedHashMap<>();
+        serializers.put("generic_json", new GenericJackson2JsonRedisSerializer(objectMapper));
+        serializers.put("json_gzip", new CacheValueSerializer(CacheValueSerializer.Format.JSON, 0));
+        serializers.put("smile", new CacheValueSerializer(CacheValueSerializer.Format.SMILE, -1));
+        serializers.put("smile_gzip", new CacheValueSerializer(CacheValueSerializer.Format.SMILE, 0));
+
+        Map<String, List<?>> datasets = new LinkedHashMap<>();
+        datasets.put("TimeEfficiencyDTO", timeEfficiencyList(rows));
+        datasets.put("SpatialAnalysisDTO", spatialAnalysisList(rows));
+        datasets.put("AnomalyAlertDTO", anomalyAlertList(rows));
+
+        System.out.println("=== 缓存值序列化基准: 每个列表 " + rows + " 行, 每种实现 " + iterations + " 轮 ===");
+        for (Map.Entry<String, List<?>> dataset : datasets.entrySet()) {
+            System.out.println(dataset.getKey() + ":");
+            for (Map.Entry<String, RedisSerializer<Object>> serializer : serializers.entrySet()) {
+                run(serializer.getKey(), serializer.getValue(), dataset.getValue(), iterations);
+            }
+        }
+    }
+
+    private static void run(String name, RedisSerializer<Object> serializer, Object value, int iterations) {
+        byte[] bytes = serializer.serialize(value);
+        // 预热：触发JIT
+        for (int i = 0; i < Math.max(20, iterations / 4); i++) {
+            serializer.deserialize(serializer.serialize(value));
+        }
+
+        long bestSerialize = Long.MAX_VALUE;
+        long bestDeserialize = Long.MAX_VALUE;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            serializer.serialize(value);
+            long serialized = System.nanoTime();
+            serializer.deserialize(bytes);
+            long deserialized = System.nanoTime();
+            bestSerialize = Math.min(bestSerialize, serialized - start);
+            bestDeserialize = Math.min(bestDeserialize, deserialized - serialized);
+        }
+        System.out.printf("  %-13s %9d 字节, 序列化 %8.1f us, 反序列化 %8.1f us%n",
+                name, bytes.length, bestSerialize / 1e3, bestDeserialize / 1e3);
+    }
+
+    // ==================== 确定性的样本数据 ====================
+
+    private static List<TimeEfficiencyDTO> timeEfficiencyList(int rows) {
+        Random random = new Random(42);
+        List<TimeEfficiencyDTO> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            TimeEfficiencyDTO dto = new TimeEfficiencyDTO();
+            long total = 200 + random.nextInt(5000);
+            long fast = (long) (total * random.nextDouble() * 0.6);
+            long slow = (long) ((total - fast) * random.nextDouble() * 0.3);
+            dto.setCity(CITIES[i % CITIES.length]);
+            dto.setDate(LocalDate.of(2022, 5, 1).plusDays(i / CITIES.length));
+            dto.setTotalDeliveries(total);
+            dto.setAvgDeliveryTime(decimal(0.5 + random.nextDouble() * 6, 2));
+            dto.setFastDeliveries(fast);
+            dto.setSlowDeliveries(slow);
+            dto.setFastDeliveryRate(decimal((double) fast / total, 4));
+            dto.setSlowDeliveryRate(decimal((double) slow / total, 4));
+            list.add(dto);
+        }
+        return list;
+    }
+
+    private static List<SpatialAnalysisDTO> spatialAnalysisList(int rows) {
+        Random random = new Random(42);
+        List<SpatialAnalysisDTO> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            SpatialAnalysisDTO dto = new SpatialAnalysisDTO();
+            dto.setCity("Shanghai");
+            dto.setDate(LocalDate.of(2022, 5, 1).plusDays(i % 30));
+            dto.setLngGrid(decimal(121.0 + random.nextDouble(), 3));
+            dto.setLatGrid(decimal(31.0 + random.nextDouble(), 3));
+            dto.setDeliveryCount((long) random.nextInt(800));
+            dto.setUniqueCouriers((long) random.nextInt(40));
+            dto.setAvgDeliveryTime(decimal(0.5 + random.nextDouble() * 6, 2));
+            dto.setAvgDeliveryDistance(decimal(random.nextDouble() * 8, 2));
+            dto.setDeliveryDensity(decimal(random.nextDouble() * 100, 4));
+            list.add(dto);
+        }
+        return list;
+    }
+
+    private static List<AnomalyAlertDTO> anomalyAlertList(int rows) {
+        Random random = new Random(42);
+        String[] types = {"DELIVERY_DELAY", "ROUTE_DEVIATION", "COURIER_OVERLOAD"};
+        String[] severities = {"HIGH", "MEDIUM", "LOW"};
+        List<AnomalyAlertDTO> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            AnomalyAlertDTO dto = new AnomalyAlertDTO();
+            LocalDateTime time = LocalDateTime.of(2022, 5, 1, 8, 0).plusMinutes(i * 7L);
+            dto.setId((long) i + 1);
+            dto.setAnomalyType(types[random.nextInt(types.length)]);
+            dto.setCity(CITIES[i % CITIES.length]);
+            dto.setOrderId(String.valueOf(3_000_000 + random.nextInt(1_000_000)));
+            dto.setCourierId(String.valueOf(random.nextInt(5000)));
+            dto.setAnomalySeverity(severities[random.nextInt(severities.length)]);
+            dto.setAnomalyValue(decimal(random.nextDouble() * 20, 2));
+            dto.setThresholdValue(decimal(6, 2));
+            dto.setDescription("配送时长超过阈值");
+            dto.setOriginalTime(time.toString());
+            dto.setAnalysisDate(time.toLocalDate());
+            dto.setAnalysisHour(time.getHour());
+            dto.setIsResolved(random.nextBoolean());
+            dto.setCreatedAt(time.plusHours(1));
+            list.add(dto);
+        }
+        return list;
+    }
+
+    private static BigDecimal decimal(double value, int scale) {
+        return BigDecimal.valueOf(value).setScale(scale, RoundingMode.HALF_UP);
+    }
+}
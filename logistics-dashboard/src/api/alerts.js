@@ -4,24 +4,31 @@ export const alertsApi = {
   // 获取告警详情
   getAlertById: (id) => api.get(`/api/alerts/${id}`),
   
+  // 以下列表接口为游标分页：返回 { items, nextCursor, hasMore }，取下一页时传回 nextCursor
+
   // 获取今日告警
-  getTodayAlerts: (city) => api.get(`/api/alerts/today/${city}`),
+  getTodayAlerts: (city, cursor, limit) =>
+    api.get(`/api/alerts/today/${city}`, { params: { cursor, limit } }),
   
   // 获取未解决告警
-  getUnresolvedAlerts: (city) => api.get(`/api/alerts/unresolved/${city}`),
+  getUnresolvedAlerts: (city, cursor, limit) =>
+    api.get(`/api/alerts/unresolved/${city}`, { params: { cursor, limit } }),
   
   // 获取高风险告警
-  getHighRiskAlerts: (city) => api.get(`/api/alerts/high-risk/${city}`),
+  getHighRiskAlerts: (city, cursor, limit) =>
+    api.get(`/api/alerts/high-risk/${city}`, { params: { cursor, limit } }),
   
   // 按严重程度获取告警
-  getAlertsBySeverity: (severity) => api.get(`/api/alerts/severity/${severity}`),
+  getAlertsBySeverity: (severity, cursor, limit) =>
+    api.get(`/api/alerts/severity/${severity}`, { params: { cursor, limit } }),
   
   // 按异常类型获取告警
-  getAlertsByType: (anomalyType) => api.get(`/api/alerts/type/${anomalyType}`),
+  getAlertsByType: (anomalyType, cursor, limit) =>
+    api.get(`/api/alerts/type/${anomalyType}`, { params: { cursor, limit } }),
   
   // 按时间范围获取告警
-  getAlertsByRange: (city, startDate, endDate) => 
-    api.get(`/api/alerts/range/${city}`, { params: { startDate, endDate } }),
+  getAlertsByRange: (city, startDate, endDate, cursor, limit) => 
+    api.get(`/api/alerts/range/${city}`, { params: { startDate, endDate, cursor, limit } }),
   
   // 获取最近告警
   getRecentAlerts: (limit = 50) => api.get('/api/alerts/recent', { params: { limit } }),
@@ -0,0 +1,38 @@
+import api from './index.js'
+
+// 批量导出：后端逐行流式写出文件（format 为 csv 或 ndjson），
+// 通过链接直接下载，不经过axios，避免在浏览器中把整个文件读入内存
+const buildExportUrl = (path, params = {}) => {
+  const query = new URLSearchParams()
+  Object.entries(params).forEach(([key, value]) => {
+    if (value !== undefined && value !== null && value !== '') {
+      query.append(key, value)
+    }
+  })
+  return `${api.defaults.baseURL}${path}?${query.toString()}`
+}
+
+export const exportApi = {
+  // 导出告警，过滤条件均可为空
+  getAlertsExportUrl: ({ city, anomalyType, severity, startDate, endDate, isResolved, format = 'csv' } = {}) =>
+    buildExportUrl('/api/export/alerts', { city, anomalyType, severity, startDate, endDate, isResolved, format }),
+
+  // 导出城市运营效率
+  getOperationalEfficiencyExportUrl: (city, startDate, endDate, format = 'csv') =>
+    buildExportUrl(`/api/export/operational-efficiency/${city}`, { startDate, endDate, format }),
+
+  // 导出城市时间效率
+  getTimeEfficiencyExportUrl: (city, startDate, endDate, format = 'csv') =>
+    buildExportUrl(`/api/export/time-efficiency/${city}`, { startDate, endDate, format }),
+
+  // 导出城市综合报告，reportType 为空时导出全部类型
+  getReportsExportUrl: (city, startDate, endDate, reportType, format = 'csv') =>
+    buildExportUrl(`/api/export/reports/${city}`, { startDate, endDate, reportType, format }),
+
+  // 触发浏览器下载
+  download: (url) => {
+    const a = document.createElement('a')
+    a.href = url
+    a.click()
+  }
+}
@@ -1,9 +1,9 @@
 import api from './index.js'
 
 export const operationalEfficiencyApi = {
-  // 获取今日运营效率数据
-  getTodayOperationalData: (city) => {
-    return api.get(`/api/operational-efficiency/today/${city}`)
+  // 获取今日运营效率数据（游标分页，返回 { items, nextCursor, hasMore }）
+  getTodayOperationalData: (city, cursor, limit) => {
+    return api.get(`/api/operational-efficiency/today/${city}`, { params: { cursor, limit } })
   },
 
   // 获取指定日期的运营效率
@@ -11,10 +11,10 @@ export const operationalEfficiencyApi = {
     return api.get(`/api/operational-efficiency/date/${city}`, { params: { date } })
   },
 
-  // 获取指定时间范围的运营效率
-  getOperationalDataByRange: (city, startDate, endDate) => {
+  // 获取指定时间范围的运营效率（游标分页）
+  getOperationalDataByRange: (city, startDate, endDate, cursor, limit) => {
     return api.get(`/api/operational-efficiency/range/${city}`, { 
-      params: { startDate, endDate } 
+      params: { startDate, endDate, cursor, limit } 
     })
   },
 
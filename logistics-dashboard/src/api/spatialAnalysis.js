@@ -1,4 +1,6 @@
+import axios from 'axios'
 import api from './index.js'
+import { decodeHeatmapTile } from '../utils/heatmapTile.js'
 
 export const spatialAnalysisApi = {
   // 获取今日空间分析数据
@@ -53,6 +55,16 @@ export const spatialAnalysisApi = {
     })
   },
 
+  // 获取热力图瓦片（二进制，绕过统一响应拦截器；浏览器按 Cache-Control/ETag 缓存）
+  // x 自西向东、y 自南向北，第z级瓦片边长 360/2^z 度；无数据的瓦片返回 null
+  getHeatmapTile: async (city, date, z, x, y) => {
+    const response = await axios.get(
+      `${api.defaults.baseURL}/api/spatial-analysis/tiles/${city}/${date}/${z}/${x}/${y}`,
+      { responseType: 'arraybuffer', validateStatus: status => status === 200 || status === 204 }
+    )
+    return response.status === 204 ? null : decodeHeatmapTile(response.data)
+  },
+
   // 获取空间汇总统计
   getSpatialSummary: (city, startDate) => {
     return api.get(`/api/spatial-analysis/summary/${city}`, { 
@@ -165,4 +177,4 @@ export const spatialAnalysisApi = {
     console.warn('聚类分析使用热点分析数据')
     return spatialAnalysisApi.getHotspots(city, date, 20)
   }
-}
\ No newline at end of file
+}
@@ -357,11 +357,12 @@ export function useAlertsApi() {
       () => import('@/api/alerts').then(m => m.alertsApi.getTodayAlerts(city)),
       interval,
       {
-        onSuccess: (alerts) => {
+        onSuccess: (page) => {
+          const alerts = page?.items
           if (alerts?.length > 0) {
             ElNotification.warning({
               title: '新告警',
-              message: `${city}有${alerts.length}条新告警`,
+              message: `${city}有${alerts.length}${page.hasMore ? '+' : ''}条新告警`,
               duration: 5000
             })
           }
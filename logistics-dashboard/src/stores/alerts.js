@@ -140,7 +140,8 @@ export const useAlertsStore = defineStore('alerts', () => {
       let alertsData = []
       
       if (city) {
-        alertsData = await alertsApi.getTodayAlerts(city)
+        const alertsPage = await alertsApi.getTodayAlerts(city, null, pageSize * page)
+        alertsData = alertsPage?.items || []
       } else {
         alertsData = await alertsApi.getRecentAlerts(pageSize * page)
       }
@@ -316,30 +317,6 @@ export const useAlertsStore = defineStore('alerts', () => {
     pagination.value.total = 0
   }
   
-  // 导出数据
-  const exportAlerts = (format = 'json') => {
-    const data = filteredAlerts.value
-    
-    if (format === 'json') {
-      return JSON.stringify(data, null, 2)
-    } else if (format === 'csv') {
-      const headers = ['ID', '城市', '类型', '严重程度', '状态', '创建时间', '解决时间']
-      const rows = data.map(alert => [
-        alert.id,
-        alert.city,
-        alert.anomalyType,
-        alert.anomalySeverity,
-        alert.isResolved ? '已解决' : '未解决',
-        alert.createdAt,
-        alert.resolvedAt || ''
-      ])
-      
-      return [headers, ...rows].map(row => row.join(',')).join('\n')
-    }
-    
-    return data
-  }
-  
   // 统计信息
   const getStatsSummary = () => {
     return {
@@ -394,7 +371,6 @@ export const useAlertsStore = defineStore('alerts', () => {
     
     // 工具方法
     clearAlerts,
-    exportAlerts,
     getStatsSummary
   }
 }, {
@@ -0,0 +1,73 @@
+// 热力图瓦片解码与瓦片范围计算（不依赖请求库，可直接用 node --test 测试）
+
+// 解码热力图瓦片（格式见 analysis-common 的 HeatmapTile）：格子序号为瓦片内的Morton码
+export function decodeHeatmapTile(buffer) {
+  const view = new DataView(buffer)
+  const version = view.getUint8(0)
+  if (version !== 1) {
+    throw new Error(`不支持的热力图瓦片格式版本: ${version}`)
+  }
+  const binBits = view.getUint8(1)
+  const size = view.getUint16(2)
+  const maxCount = view.getInt32(4)
+  const compact = (v) => {
+    let r = 0
+    for (let i = 0; i < binBits; i++) {
+      r |= ((v >> (2 * i)) & 1) << i
+    }
+    return r
+  }
+  const bins = []
+  for (let i = 0, offset = 8; i < size; i++, offset += 10) {
+    const bin = view.getUint16(offset)
+    bins.push({
+      x: compact(bin),
+      y: compact(bin >> 1),
+      count: view.getInt32(offset + 2),
+      avgHours: view.getFloat32(offset + 6)
+    })
+  }
+  return { binsPerSide: 1 << binBits, maxCount, bins }
+}
+
+// 热力图瓦片的缩放级别，与Spark作业 spark.logistics.spatial.tileZoomLevels 的默认值一致
+export const HEATMAP_TILE_ZOOM_LEVELS = [8, 9, 10, 11, 12]
+
+// 经纬度范围在缩放级别 z 下覆盖的瓦片行列（瓦片即该级别的 GeoCell：x 自西向东，y 自南向北）
+const tileRange = (bounds, z) => {
+  const size = 360 / 2 ** z
+  const x0 = Math.floor((bounds.lng[0] + 180) / size)
+  const x1 = Math.floor((bounds.lng[1] + 180) / size)
+  const y0 = Math.floor((bounds.lat[0] + 90) / size)
+  const y1 = Math.floor((bounds.lat[1] + 90) / size)
+  return { x0, x1, y0, y1, count: (x1 - x0 + 1) * (y1 - y0 + 1) }
+}
+
+// 取覆盖范围的瓦片不超过 maxTiles 个的最细级别，返回该级别下的瓦片列表
+export function heatmapTilesForBounds(bounds, maxTiles = 16) {
+  let z = HEATMAP_TILE_ZOOM_LEVELS[0]
+  for (const level of HEATMAP_TILE_ZOOM_LEVELS) {
+    if (tileRange(bounds, level).count <= maxTiles) {
+      z = level
+    }
+  }
+  const range = tileRange(bounds, z)
+  const tiles = []
+  for (let x = range.x0; x <= range.x1; x++) {
+    for (let y = range.y0; y <= range.y1; y++) {
+      tiles.push({ z, x, y })
+    }
+  }
+  return tiles
+}
+
+// 将解码后的瓦片格子转为 [经度, 纬度, 配送量, 平均配送时长(小时)]，坐标取格子中心
+export function heatmapTilePoints(tile, z, x, y) {
+  const binSize = 360 / 2 ** z / tile.binsPerSide
+  return tile.bins.map(bin => [
+    (x * tile.binsPerSide + bin.x + 0.5) * binSize - 180,
+    (y * tile.binsPerSide + bin.y + 0.5) * binSize - 90,
+    bin.count,
+    bin.avgHours
+  ])
+}
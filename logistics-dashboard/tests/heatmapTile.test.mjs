@@ -0,0 +1,92 @@
+// 热力图瓦片解码测试：按 analysis-common HeatmapTile 的字节布局构造瓦片
+import test from 'node:test'
+import assert from 'node:assert/strict'
+import { decodeHeatmapTile, heatmapTilesForBounds, heatmapTilePoints } from '../src/utils/heatmapTile.js'
+
+// 与 HeatmapTile.toBytes 相同的布局：版本、BIN_BITS、格子数、最大计数，之后每个格子10字节（大端序）
+const encodeTile = (bins, { version = 1, binBits = 6 } = {}) => {
+  const view = new DataView(new ArrayBuffer(8 + bins.length * 10))
+  view.setUint8(0, version)
+  view.setUint8(1, binBits)
+  view.setUint16(2, bins.length)
+  view.setInt32(4, bins.reduce((max, bin) => Math.max(max, bin.count), 0))
+  bins.forEach((bin, i) => {
+    view.setUint16(8 + i * 10, bin.morton)
+    view.setInt32(10 + i * 10, bin.count)
+    view.setFloat32(14 + i * 10, bin.avgHours)
+  })
+  return view.buffer
+}
+
+// 与 GeoCell.spread 相同：把各位分散到偶数位
+const spread = (v) => {
+  let r = 0
+  for (let i = 0; i < 16; i++) {
+    r |= ((v >> i) & 1) << (2 * i)
+  }
+  return r
+}
+
+test('空瓦片解码为空格子列表', () => {
+  const tile = decodeHeatmapTile(encodeTile([]))
+  assert.equal(tile.binsPerSide, 64)
+  assert.equal(tile.maxCount, 0)
+  assert.deepEqual(tile.bins, [])
+})
+
+test('格子序号按Morton码还原为行列号', () => {
+  const tile = decodeHeatmapTile(encodeTile([
+    { morton: 0, count: 3, avgHours: 1.5 },
+    { morton: spread(5) | (spread(9) << 1), count: 12, avgHours: 0.25 },
+    { morton: 4095, count: 7, avgHours: NaN }
+  ]))
+  assert.equal(tile.maxCount, 12)
+  assert.deepEqual(tile.bins[0], { x: 0, y: 0, count: 3, avgHours: 1.5 })
+  assert.deepEqual(tile.bins[1], { x: 5, y: 9, count: 12, avgHours: 0.25 })
+  assert.equal(tile.bins[2].x, 63)
+  assert.equal(tile.bins[2].y, 63)
+  assert.ok(Number.isNaN(tile.bins[2].avgHours))
+})
+
+test('满瓦片（64×64个格子）全部解码', () => {
+  const bins = Array.from({ length: 4096 }, (_, morton) => ({ morton, count: morton + 1, avgHours: 1 }))
+  const tile = decodeHeatmapTile(encodeTile(bins))
+  assert.equal(tile.bins.length, 4096)
+  assert.equal(tile.maxCount, 4096)
+  const cells = new Set(tile.bins.map(bin => bin.y * 64 + bin.x))
+  assert.equal(cells.size, 4096)
+})
+
+test('不支持的格式版本抛出异常', () => {
+  assert.throws(() => decodeHeatmapTile(encodeTile([], { version: 2 })), /格式版本/)
+})
+
+test('瓦片范围取覆盖不超过上限的最细级别', () => {
+  const bounds = { lng: [121.0, 121.8], lat: [37.2, 37.8] }
+  const tiles = heatmapTilesForBounds(bounds)
+  assert.ok(tiles.length > 0 && tiles.length <= 16)
+  const z = tiles[0].z
+  assert.ok(tiles.every(tile => tile.z === z))
+  // 更细一级会超过上限
+  if (z < 12) {
+    const size = 360 / 2 ** (z + 1)
+    const cols = Math.floor((bounds.lng[1] + 180) / size) - Math.floor((bounds.lng[0] + 180) / size) + 1
+    const rows = Math.floor((bounds.lat[1] + 90) / size) - Math.floor((bounds.lat[0] + 90) / size) + 1
+    assert.ok(cols * rows > 16)
+  }
+  // 单个瓦片内的范围取最细级别
+  const small = heatmapTilesForBounds({ lng: [121.40, 121.401], lat: [31.20, 31.201] })
+  assert.equal(small.length, 1)
+  assert.equal(small[0].z, 12)
+})
+
+test('格子中心坐标落在瓦片范围内', () => {
+  const [{ z, x, y }] = heatmapTilesForBounds({ lng: [121.40, 121.401], lat: [31.20, 31.201] })
+  const size = 360 / 2 ** z
+  const tile = { binsPerSide: 64, bins: [{ x: 0, y: 0, count: 1, avgHours: 2 }, { x: 63, y: 63, count: 4, avgHours: 3 }] }
+  const [first, last] = heatmapTilePoints(tile, z, x, y)
+  assert.ok(first[0] > x * size - 180 && first[0] < x * size - 180 + size / 64)
+  assert.ok(first[1] > y * size - 90 && first[1] < y * size - 90 + size / 64)
+  assert.ok(last[0] < (x + 1) * size - 180 && last[1] < (y + 1) * size - 90)
+  assert.deepEqual(last.slice(2), [4, 3])
+})
@@ -1,6 +1,23 @@
 package com.logistics.spark;
 
+import com.logistics.spark.config.AnalysisConfig;
+import com.logistics.spark.geo.GeoCells;
+import com.logistics.spark.geo.GeoDistance;
+import com.logistics.spark.geo.HeatmapTiles;
+import com.logistics.spark.ingest.RawDataReader;
+import com.logistics.spark.ingest.RawDataStager;
+import com.logistics.spark.monitor.DataQualityMetrics;
 import com.logistics.spark.monitor.SparkJobMonitor;
+import com.logistics.spark.monitor.StageMetricsListener;
+import com.logistics.spark.plan.IncrementalRange;
+import com.logistics.spark.plan.ModuleScheduler;
+import com.logistics.spark.plan.SharedAggregates;
+import com.logistics.spark.plan.SkewDetector;
+import com.logistics.spark.sink.MySqlWriter;
+import com.logistics.spark.sink.PartitionedParquetWriter;
+import com.logistics.spark.sketch.DistinctCounts;
+import com.logistics.spark.sketch.QuantileSketches;
+import org.apache.spark.sql.Column;
 import org.apache.spark.sql.Dataset;
 import org.apache.spark.sql.Row;
 import org.apache.spark.sql.SparkSession;
@@ -10,6 +27,9 @@ import org.apache.spark.sql.types.DataTypes;
 import static org.apache.spark.sql.functions.*;
 import scala.collection.JavaConverters;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import java.util.Properties;
 
@@ -34,6 +54,66 @@ public class EnhancedCityLogisticsAnalysis {
     private static Properties mysqlProps;
     private static String mysqlUrl;
     private static SparkJobMonitor jobMonitor; // 添加监控器
+    private static MySqlWriter mysqlWriter;
+    private static PartitionedParquetWriter parquetWriter;
+    private static DistinctCounts distinctCounts;
+    private static QuantileSketches quantileSketches;
+    private static SkewDetector skewDetector;
+    private static int[] spatialCellLevels;
+    private static int[] spatialTileZoomLevels;
+    private static IncrementalRange incrementalRange; // 增量模式下本次处理的ds范围，全量运行为null
+
+    // 观测指标经listener bus异步送达，作业结束后最多等待的时间
+    private static final long OBSERVED_METRICS_TIMEOUT_MILLIS = 10_000;
+
+    private static final String[] DATE_PARTITION = {"city", "date"};
+
+    /** 实时KPI表：实时流按 (city, date, hour) 唯一键逐微批更新，批处理按日期替换 */
+    static final String REALTIME_KPI_DDL = "CREATE TABLE IF NOT EXISTS realtime_kpi (" +
+            "city VARCHAR(64) NOT NULL, " +
+            "date DATE NOT NULL, " +
+            "hour INT NOT NULL, " +
+            "total_orders BIGINT, " +
+            "active_couriers BIGINT, " +
+            "coverage_aois BIGINT, " +
+            "avg_delivery_time DOUBLE, " +
+            "fast_deliveries BIGINT, " +
+            "orders_per_courier DOUBLE, " +
+            "orders_per_aoi DOUBLE, " +
+            "fast_delivery_rate DOUBLE, " +
+            "efficiency_score DOUBLE, " +
+            "kpi_timestamp TIMESTAMP NULL, " +
+            "UNIQUE KEY uk_realtime_kpi_city_date_hour (city, date, hour)" +
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    /** 分层网格聚合表：按 (city, date, cell_level, cell_id) 主键查询任意缩放级别 */
+    private static final String SPATIAL_GRID_CELLS_DDL = "CREATE TABLE IF NOT EXISTS spatial_grid_cells (" +
+            "city VARCHAR(64) NOT NULL, " +
+            "date DATE NOT NULL, " +
+            "cell_level TINYINT NOT NULL, " +
+            "cell_id BIGINT NOT NULL, " +
+            "center_lng DOUBLE, " +
+            "center_lat DOUBLE, " +
+            "delivery_count BIGINT NOT NULL, " +
+            "unique_couriers BIGINT NOT NULL, " +
+            "occupied_cells BIGINT NOT NULL, " +
+            "avg_delivery_time DOUBLE, " +
+            "avg_delivery_distance DOUBLE, " +
+            "delivery_density DOUBLE, " +
+            "PRIMARY KEY (city, date, cell_level, cell_id)" +
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    /** 热力图瓦片表：按 (city, date, tile_id) 主键读取单个瓦片，tile_id 为第 zoom 层的网格编码 */
+    private static final String HEATMAP_TILES_DDL = "CREATE TABLE IF NOT EXISTS heatmap_tiles (" +
+            "city VARCHAR(64) NOT NULL, " +
+            "date DATE NOT NULL, " +
+            "zoom TINYINT NOT NULL, " +
+            "tile_id BIGINT NOT NULL, " +
+            "delivery_count BIGINT NOT NULL, " +
+            "payload BLOB NOT NULL, " +
+            "etag CHAR(32) NOT NULL, " +
+            "PRIMARY KEY (city, date, tile_id)" +
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
 
     public static void main(String[] args) {
         if (args.length != 3) {
@@ -54,17 +134,43 @@ public class EnhancedCityLogisticsAnalysis {
         // 初始化监控器
         jobMonitor = new SparkJobMonitor(mysqlProps, mysqlUrl);
 
+        // 运行参数（spark.logistics.*）
+        AnalysisConfig config = AnalysisConfig.load();
+        mysqlWriter = new MySqlWriter(mysqlUrl, mysqlProps, config.isIncremental(),
+                config.jdbcBatchSize(), config.jdbcWriterParallelism(), config.isJdbcRewriteBatchedStatements());
+        parquetWriter = new PartitionedParquetWriter(config.isOutputFileSizing(), config.outputTargetFileBytes(),
+                config.outputBloomFilterNdv());
+        distinctCounts = new DistinctCounts(config.isApproxDistinct(), config.distinctRelativeSD());
+        quantileSketches = new QuantileSketches(config.quantileRelativeAccuracy());
+        skewDetector = new SkewDetector(config.isSkewHandlingEnabled(), config.skewSampleFraction(),
+                config.skewFactor(), config.skewSaltBuckets());
+        spatialCellLevels = config.spatialCellLevels();
+        spatialTileZoomLevels = config.spatialTileZoomLevels();
+
         // 初始化Spark会话
-        SparkSession spark = SparkSession.builder()
+        SparkSession.Builder builder = SparkSession.builder()
                 .appName("物流分析系统")
                 .master("local[*]")
                 .config("spark.sql.adaptive.enabled", "true")
                 .config("spark.sql.adaptive.coalescePartitions.enabled", "true")
                 .config("spark.sql.adaptive.advisoryPartitionSizeInBytes", "128MB")
-                .config("spark.serializer", "org.apache.spark.serializer.KryoSerializer")
-                .getOrCreate();
+                .config("spark.serializer", "org.apache.spark.serializer.KryoSerializer");
+        if (config.isConcurrentModules()) {
+            // 模块并发执行时使用FAIR调度，各模块作业在独立的调度池中共享集群资源
+            builder.config("spark.scheduler.mode", "FAIR");
+        }
+        if (config.isIncremental()) {
+            // 增量模式只覆盖本次写出的 city/date 分区，其余历史分区保持不变
+            builder.config("spark.sql.sources.partitionOverwriteMode", "dynamic");
+        }
+        if (config.isStrictIngest()) {
+            // 严格模式需要完整解析每一行CSV才能发现异常行，关闭CSV列裁剪
+            builder.config(RawDataReader.CSV_COLUMN_PRUNING, "false");
+        }
+        SparkSession spark = builder.getOrCreate();
 
         Long jobId = null;
+        StageMetricsListener stageMetrics = null;
         long totalProcessedRecords = 0;
         String errorMessage = null;
         boolean success = false;
@@ -75,93 +181,142 @@ public class EnhancedCityLogisticsAnalysis {
             System.out.println("取件数据路径: " + pickupPath);
             System.out.println("输出路径: " + outputPath);
 
-            // 作业监控
-            jobId = jobMonitor.startJobTracking(
-                    "物流分析系统",
-                    deliverPath,
-                    pickupPath,
-                    outputPath,
-                    "yyyy-MM-dd HH:mm:ss",  // 时间格式
-                    2024  // 默认年份
-            );
-
-            // 加载和清洗数据
-            Dataset<Row> deliverRaw = spark.read()
-                    .option("header", "true")
-                    .option("inferSchema", "true")
-                    .csv(deliverPath);
-
-            Dataset<Row> pickupRaw = spark.read()
-                    .option("header", "true")
-                    .option("inferSchema", "true")
-                    .csv(pickupPath);
-
-            long rawDeliverCount = deliverRaw.count();
-            long rawPickupCount = pickupRaw.count();
-            System.out.println("原始数据记录数 - 配送: " + rawDeliverCount + ", 取件: " + rawPickupCount);
-
-            // 更新初始进度
-            jobMonitor.updateJobProgress(jobId, rawDeliverCount + rawPickupCount, "数据加载完成");
+            // 作业监控（由后端提交时沿用已创建的作业记录）
+            if (config.jobLogId() != null) {
+                jobId = jobMonitor.attachJobTracking(
+                        config.jobLogId(),
+                        "物流分析系统",
+                        deliverPath,
+                        pickupPath,
+                        outputPath,
+                        "yyyy-MM-dd HH:mm:ss",
+                        2024
+                );
+            } else {
+                jobId = jobMonitor.startJobTracking(
+                        "物流分析系统",
+                        deliverPath,
+                        pickupPath,
+                        outputPath,
+                        "yyyy-MM-dd HH:mm:ss",  // 时间格式
+                        2024  // 默认年份
+                );
+            }
 
-            // 数据清洗和转换
-            Dataset<Row> deliverClean = cleanAndTransformDeliveryData(deliverRaw);
-            Dataset<Row> pickupClean = cleanAndTransformPickupData(pickupRaw);
+            // 按模块、按stage采集运行指标，异步写入 spark_stage_metrics
+            if (jobId != null) {
+                stageMetrics = new StageMetricsListener(jobId, mysqlUrl, mysqlProps);
+                spark.sparkContext().addSparkListener(stageMetrics);
+            }
 
-            long cleanDeliverCount = deliverClean.count();
-            long cleanPickupCount = pickupClean.count();
-            totalProcessedRecords = cleanDeliverCount + cleanPickupCount;
+            // 加载和清洗数据（固定Schema，严格模式下异常行写入隔离目录）
+            RawDataReader rawDataReader = new RawDataReader(spark, config.isStrictIngest(), outputPath + "/_quarantine");
+            Dataset<Row> deliverRaw;
+            Dataset<Row> pickupRaw;
+            if (config.isStagingEnabled()) {
+                // 新增CSV先转换为按 city/ds 分区的Parquet，再从暂存区读取
+                RawDataStager stager = new RawDataStager(spark, rawDataReader, config.stagingPath());
+                deliverRaw = stager.stageDeliver(deliverPath);
+                pickupRaw = stager.stagePickup(pickupPath);
+            } else {
+                deliverRaw = rawDataReader.readDeliver(deliverPath);
+                pickupRaw = rawDataReader.readPickup(pickupPath);
+            }
 
-            System.out.println("清洗后数据记录数 - 配送: " + cleanDeliverCount + ", 取件: " + cleanPickupCount);
+            if (config.isIncremental()) {
+                // 增量模式：只处理指定范围或上次成功运行之后的ds分区
+                IncrementalRange range = IncrementalRange.resolve(
+                        config.incrementalStartDs(), config.incrementalEndDs(),
+                        jobMonitor.findLastProcessedDs(), deliverRaw, pickupRaw);
+                if (range == null) {
+                    System.out.println("增量模式：没有新的ds分区需要处理");
+                    success = true;
+                    return;
+                }
+                jobMonitor.recordProcessedDsRange(jobId, range.getStartDs(), range.getEndDs());
+
+                // 结果按 date 替换：补读范围外 ds 中 date 受影响的订单，被替换的日期由完整数据重算
+                range = range.withAffectedDates(
+                        deliverRaw.select(col("ds"), eventDate(col("delivery_time")).alias("date"))
+                                .union(pickupRaw.select(col("ds"), eventDate(col("pickup_time")).alias("date"))));
+                System.out.println("增量模式：处理ds范围 " + range);
+                incrementalRange = range;
+                deliverRaw = range.filter(deliverRaw, eventDate(col("delivery_time")));
+                pickupRaw = range.filter(pickupRaw, eventDate(col("pickup_time")));
+            }
 
-            // 更新清洗后进度
-            jobMonitor.updateJobProgress(jobId, totalProcessedRecords, "数据清洗完成");
+            // 数据清洗和转换（行数、拒绝原因和空值率在清洗过程中观测，随填充缓存的作业一起产出）
+            DataQualityMetrics dataQuality = DataQualityMetrics.register(spark);
+            Dataset<Row> deliverClean = cleanAndTransformDeliveryData(deliverRaw, dataQuality);
+            Dataset<Row> pickupClean = cleanAndTransformPickupData(pickupRaw, dataQuality);
 
             // 缓存清洗后的数据
             deliverClean.cache();
             pickupClean.cache();
 
-            // 执行8个分析模块
+            // 共享聚合：相同分组键只计算一次，各模块从中选取指标
+            SharedAggregates aggregates = new SharedAggregates(deliverClean, pickupClean,
+                    distinctCounts, quantileSketches, skewDetector);
+
+            // 执行8个分析模块（模块之间相互独立，可按 spark.logistics.modules.parallelism 并发执行）
             System.out.println("\n=== 开始执行分析模块 ===");
+            final Long trackedJobId = jobId;
+            ModuleScheduler scheduler = new ModuleScheduler(spark, config.moduleParallelism());
 
             // 1. 时间效率分析
-            System.out.println("执行时间效率分析...");
-            generateTimeEfficiencyMetrics(deliverClean, pickupClean, outputPath + "/time_efficiency", spark);
-            jobMonitor.logModuleCompletion(jobId, "时间效率分析", totalProcessedRecords);
+            scheduler.submit("time_efficiency", "时间效率分析", () ->
+                    generateTimeEfficiencyMetrics(deliverClean, pickupClean, aggregates, outputPath + "/time_efficiency", spark));
 
             // 2. 空间地理分析
-            System.out.println("执行空间地理分析...");
-            generateSpatialAnalysisMetrics(deliverClean, pickupClean, outputPath + "/spatial_analysis", spark);
-            jobMonitor.logModuleCompletion(jobId, "空间地理分析", totalProcessedRecords);
+            scheduler.submit("spatial_analysis", "空间地理分析", () ->
+                    generateSpatialAnalysisMetrics(deliverClean, pickupClean, aggregates, outputPath + "/spatial_analysis", spark));
 
             // 3. 运营效率分析
-            System.out.println("执行运营效率分析...");
-            generateOperationalEfficiencyMetrics(deliverClean, pickupClean, outputPath + "/operational_efficiency", spark);
-            jobMonitor.logModuleCompletion(jobId, "运营效率分析", totalProcessedRecords);
+            scheduler.submit("operational_efficiency", "运营效率分析", () ->
+                    generateOperationalEfficiencyMetrics(deliverClean, pickupClean, aggregates, outputPath + "/operational_efficiency", spark));
 
             // 4. 预测分析数据
-            System.out.println("生成预测分析数据...");
-            generatePredictiveAnalysisData(deliverClean, pickupClean, outputPath + "/predictive_data", spark);
-            jobMonitor.logModuleCompletion(jobId, "预测分析数据", totalProcessedRecords);
+            scheduler.submit("predictive_data", "预测分析数据", () ->
+                    generatePredictiveAnalysisData(deliverClean, pickupClean, aggregates, outputPath + "/predictive_data", spark));
 
             // 5. 成本效益分析
-            System.out.println("执行成本效益分析...");
-            generateCostAnalysisMetrics(deliverClean, pickupClean, outputPath + "/cost_analysis", spark);
-            jobMonitor.logModuleCompletion(jobId, "成本效益分析", totalProcessedRecords);
+            scheduler.submit("cost_analysis", "成本效益分析", () ->
+                    generateCostAnalysisMetrics(deliverClean, pickupClean, aggregates, outputPath + "/cost_analysis", spark));
 
             // 6. KPI监控指标
-            System.out.println("生成KPI监控指标...");
-            generateKPIMetrics(deliverClean, pickupClean, outputPath + "/kpi_metrics", spark);
-            jobMonitor.logModuleCompletion(jobId, "KPI监控指标", totalProcessedRecords);
+            scheduler.submit("kpi_metrics", "KPI监控指标", () ->
+                    generateKPIMetrics(deliverClean, pickupClean, aggregates, outputPath + "/kpi_metrics", spark));
 
             // 7. 异常检测分析
-            System.out.println("执行异常检测分析...");
-            generateAnomalyDetectionMetrics(deliverClean, pickupClean, outputPath + "/anomaly_detection", spark);
-            jobMonitor.logModuleCompletion(jobId, "异常检测分析", totalProcessedRecords);
+            scheduler.submit("anomaly_detection", "异常检测分析", () ->
+                    generateAnomalyDetectionMetrics(deliverClean, pickupClean, aggregates, outputPath + "/anomaly_detection", spark));
 
             // 8. 综合报表数据
-            System.out.println(" 生成综合报表数据...");
-            generateComprehensiveReports(deliverClean, pickupClean, outputPath + "/comprehensive_reports", spark);
-            jobMonitor.logModuleCompletion(jobId, "综合报表数据", totalProcessedRecords);
+            scheduler.submit("comprehensive_reports", "综合报表数据", () ->
+                    generateComprehensiveReports(deliverClean, pickupClean, aggregates, outputPath + "/comprehensive_reports", spark));
+
+            // 观测指标在填充缓存的作业结束后才异步送达，模块完成情况等指标到齐后再记录
+            Map<String, Long> moduleDurations = Collections.synchronizedMap(new LinkedHashMap<>());
+            scheduler.runAll(moduleDurations::put);
+
+            aggregates.release();
+
+            long cleanRows;
+            if (dataQuality.awaitAll(OBSERVED_METRICS_TIMEOUT_MILLIS)) {
+                cleanRows = dataQuality.totalCleanRows();
+            } else {
+                // 不把部分观测结果当作最终行数，清洗数据已缓存，直接计数
+                System.out.println("⚠️ 等待数据质量指标超时，改为对缓存的清洗数据计数");
+                cleanRows = deliverClean.count() + pickupClean.count();
+            }
+            dataQuality.report(jobMonitor, jobId);
+            synchronized (moduleDurations) {
+                for (Map.Entry<String, Long> module : moduleDurations.entrySet()) {
+                    jobMonitor.logModuleCompletion(trackedJobId, module.getKey(), cleanRows, module.getValue());
+                }
+            }
+            totalProcessedRecords = cleanRows;
+            jobMonitor.updateJobProgress(jobId, totalProcessedRecords, "数据清洗统计完成");
 
             //  作业成功完成
             success = true;
@@ -181,6 +336,11 @@ public class EnhancedCityLogisticsAnalysis {
 
             spark.stop();
 
+            // SparkContext停止时listener bus中的事件已处理完，再等待指标写入完成
+            if (stageMetrics != null) {
+                stageMetrics.close();
+            }
+
             if (!success) {
                 System.exit(1);
             }
@@ -205,12 +365,15 @@ public class EnhancedCityLogisticsAnalysis {
      * delivery_time, delivery_gps_time, delivery_gps_lng, delivery_gps_lat, ds
      */
 
-    private static Dataset<Row> cleanAndTransformDeliveryData(Dataset<Row> deliverRaw) {
-        return deliverRaw
-                .filter(col("order_id").isNotNull())
-                .filter(col("city").isNotNull())
-                .filter(col("courier_id").isNotNull())
-                .filter(col("delivery_time").isNotNull())
+    static Dataset<Row> cleanAndTransformDeliveryData(Dataset<Row> deliverRaw) {
+        return cleanAndTransformDeliveryData(deliverRaw, null);
+    }
+
+    /**
+     * @param dataQuality 不为null时按拒绝原因统计被清洗掉的行数及空值率
+     */
+    static Dataset<Row> cleanAndTransformDeliveryData(Dataset<Row> deliverRaw, DataQualityMetrics dataQuality) {
+        Dataset<Row> transformed = deliverRaw
                 // 在原时间字符串前添加年份
                 .withColumn("delivery_time_with_year", concat(lit("2025-"), col("delivery_time")))
                 .withColumn("accept_time_with_year", concat(lit("2025-"), col("accept_time")))
@@ -232,9 +395,20 @@ public class EnhancedCityLogisticsAnalysis {
                 // 计算配送距离（GPS坐标之间的距离）
                 .withColumn("delivery_distance_km",
                         calculateDistance(col("accept_gps_lng"), col("accept_gps_lat"),
-                                col("delivery_gps_lng"), col("delivery_gps_lat")))
-                .filter(col("delivery_duration_hours").between(0, 72)) // 过滤异常时间
-                .filter(col("delivery_distance_km").between(0, 500));  // 过滤异常距离
+                                col("delivery_gps_lng"), col("delivery_gps_lat")));
+
+        // 清洗规则（按顺序判断，时间缺失或无法解析都计为 missing_delivery_time）
+        Map<String, Column> rules = new LinkedHashMap<>();
+        rules.put("missing_order_id", col("order_id").isNotNull());
+        rules.put("missing_city", col("city").isNotNull());
+        rules.put("missing_courier_id", col("courier_id").isNotNull());
+        rules.put("missing_delivery_time", col("delivery_time").isNotNull());
+        rules.put("invalid_duration", col("delivery_duration_hours").between(0, 72)); // 过滤异常时间
+        rules.put("invalid_distance", col("delivery_distance_km").between(0, 500));  // 过滤异常距离
+
+        return applyCleaningRules(transformed, "delivery", rules, dataQuality,
+                "region_id", "aoi_id", "accept_time", "delivery_time",
+                "accept_gps_lng", "accept_gps_lat", "delivery_gps_lng", "delivery_gps_lat");
     }
 
     /**
@@ -243,12 +417,8 @@ public class EnhancedCityLogisticsAnalysis {
      * lng, lat, aoi_id, aoi_type, pickup_time, pickup_gps_time, pickup_gps_lng, pickup_gps_lat,
      * accept_gps_time, accept_gps_lng, accept_gps_lat, ds
      */
-    private static Dataset<Row> cleanAndTransformPickupData(Dataset<Row> pickupRaw) {
-        return pickupRaw
-                .filter(col("order_id").isNotNull())
-                .filter(col("city").isNotNull())
-                .filter(col("courier_id").isNotNull())
-                .filter(col("pickup_time").isNotNull())
+    private static Dataset<Row> cleanAndTransformPickupData(Dataset<Row> pickupRaw, DataQualityMetrics dataQuality) {
+        Dataset<Row> transformed = pickupRaw
                 // 在原时间字符串前添加年份，将"05-18 08:16:00"转换为"2025-05-18 08:16:00"
                 .withColumn("pickup_time_with_year", concat(lit("2025-"), col("pickup_time")))
                 .withColumn("accept_time_with_year", concat(lit("2025-"), col("accept_time")))
@@ -278,57 +448,92 @@ public class EnhancedCityLogisticsAnalysis {
                                 col("pickup_gps_lng"), col("pickup_gps_lat")))
                 // 检查是否在时间窗口内完成
                 .withColumn("within_time_window",
-                        col("pickup_time").between(col("time_window_start"), col("time_window_end")))
-                .filter(col("pickup_duration_hours").between(0, 48))
-                .filter(col("pickup_distance_km").between(0, 300));
+                        col("pickup_time").between(col("time_window_start"), col("time_window_end")));
+
+        Map<String, Column> rules = new LinkedHashMap<>();
+        rules.put("missing_order_id", col("order_id").isNotNull());
+        rules.put("missing_city", col("city").isNotNull());
+        rules.put("missing_courier_id", col("courier_id").isNotNull());
+        rules.put("missing_pickup_time", col("pickup_time").isNotNull());
+        rules.put("invalid_duration", col("pickup_duration_hours").between(0, 48));
+        rules.put("invalid_distance", col("pickup_distance_km").between(0, 300));
+
+        return applyCleaningRules(transformed, "pickup", rules, dataQuality,
+                "region_id", "aoi_id", "accept_time", "pickup_time", "time_window_start", "time_window_end",
+                "accept_gps_lng", "accept_gps_lat", "pickup_gps_lng", "pickup_gps_lat");
+    }
+
+    /**
+     * 应用清洗规则（拒绝原因 -> 保留条件）：dataQuality 为null时逐条过滤，否则同时观测拒绝行数和空值率
+     */
+    private static Dataset<Row> applyCleaningRules(Dataset<Row> data, String name, Map<String, Column> rules,
+                                                   DataQualityMetrics dataQuality, String... nullRateColumns) {
+        if (dataQuality == null) {
+            for (Column keep : rules.values()) {
+                data = data.filter(keep);
+            }
+            return data;
+        }
+        return dataQuality.filter(name, data, rules, nullRateColumns);
     }
 
     /**
-     * 计算两点间距离（简化版，使用haversine公式）
+     * 计算两点间距离（等距圆柱近似，带cos(纬度)修正）
+     * 配送距离在城市范围内，与haversine的误差在米级以下，而计算量约为haversine的一半（见测试源码中的 DistanceBenchmark）
      */
     private static org.apache.spark.sql.Column calculateDistance(
             org.apache.spark.sql.Column lng1, org.apache.spark.sql.Column lat1,
             org.apache.spark.sql.Column lng2, org.apache.spark.sql.Column lat2) {
-        // 简化距离计算，实际项目中建议使用更精确的公式
-        return sqrt(
-                pow(lng2.minus(lng1).multiply(lit(111.0)), lit(2))
-                        .plus(pow(lat2.minus(lat1).multiply(lit(111.0)), lit(2)))
-        );
+        return GeoDistance.equirectangular(lng1, lat1, lng2, lat2);
+    }
+
+    /**
+     * 原始时间字符串（"05-18 08:16:00"，不带年份）对应的日期，与清洗后的 date 列一致
+     */
+    private static org.apache.spark.sql.Column eventDate(org.apache.spark.sql.Column rawTime) {
+        return to_date(to_timestamp(concat(lit("2025-"), rawTime), "yyyy-MM-dd HH:mm:ss"));
+    }
+
+    /**
+     * ds分区值转换为日期（518 -> 2025-05-18，ds为整数时不足4位需补零）
+     */
+    private static org.apache.spark.sql.Column dsToDate(org.apache.spark.sql.Column ds) {
+        return to_date(concat(lit("2025"), lpad(ds.cast("string"), 4, "0")), "yyyyMMdd");
     }
 
     /**
      * 1. 时间效率分析 - 修正字段名称
      */
-    private static void generateTimeEfficiencyMetrics(Dataset<Row> delivery, Dataset<Row> pickup, String outputPath, SparkSession spark) {
+    private static void generateTimeEfficiencyMetrics(Dataset<Row> delivery, Dataset<Row> pickup, SharedAggregates aggregates, String outputPath, SparkSession spark) {
         try {
-            // 配送时间效率分析
-            Dataset<Row> deliveryTimeMetrics = delivery
-                    .groupBy("city", "date", "hour")
-                    .agg(
-                            count("order_id").alias("total_deliveries"),
-                            avg("delivery_duration_hours").alias("avg_delivery_time"),
-                            percentile_approx(col("delivery_duration_hours"), lit(0.5), lit(10000)).alias("median_delivery_time"),
-                            percentile_approx(col("delivery_duration_hours"), lit(0.95), lit(10000)).alias("p95_delivery_time"),
-                            sum(when(col("delivery_duration_hours").leq(2), 1).otherwise(0)).alias("fast_deliveries"),
-                            sum(when(col("delivery_duration_hours").between(2, 8), 1).otherwise(0)).alias("normal_deliveries"),
-                            sum(when(col("delivery_duration_hours").gt(8), 1).otherwise(0)).alias("slow_deliveries")
+            // 配送时间效率分析（取自共享的 city/date/hour 聚合）
+            Dataset<Row> deliveryTimeMetrics = aggregates.deliveryHourly()
+                    .select(
+                            col("city"), col("date"), col("hour"),
+                            col("total_orders").alias("total_deliveries"),
+                            col("avg_delivery_time"),
+                            col("median_delivery_time"),
+                            col("p95_delivery_time"),
+                            col("fast_deliveries"),
+                            col("normal_deliveries"),
+                            col("slow_deliveries")
                     )
                     .withColumn("fast_delivery_rate", col("fast_deliveries").divide(col("total_deliveries")))
                     .withColumn("slow_delivery_rate", col("slow_deliveries").divide(col("total_deliveries")));
 
-            // 取件时间效率分析
-            Dataset<Row> pickupTimeMetrics = pickup
-                    .groupBy("city", "date", "hour")
-                    .agg(
-                            count("order_id").alias("total_pickups"),
-                            avg("pickup_duration_hours").alias("avg_pickup_time"),
-                            percentile_approx(col("pickup_duration_hours"), lit(0.5), lit(10000)).alias("median_pickup_time"),
-                            percentile_approx(col("pickup_duration_hours"), lit(0.95), lit(10000)).alias("p95_pickup_time"),
-                            sum(when(col("pickup_duration_hours").leq(1), 1).otherwise(0)).alias("fast_pickups"),
-                            sum(when(col("pickup_duration_hours").between(1, 4), 1).otherwise(0)).alias("normal_pickups"),
-                            sum(when(col("pickup_duration_hours").gt(4), 1).otherwise(0)).alias("slow_pickups"),
-                            // 新增：时间窗口遵守率
-                            sum(when(col("within_time_window").equalTo(true), 1).otherwise(0)).alias("on_time_pickups")
+            // 取件时间效率分析（取自共享的 city/date/hour 聚合）
+            Dataset<Row> pickupTimeMetrics = aggregates.pickupHourly()
+                    .select(
+                            "city", "date", "hour",
+                            "total_pickups",
+                            "avg_pickup_time",
+                            "median_pickup_time",
+                            "p95_pickup_time",
+                            "fast_pickups",
+                            "normal_pickups",
+                            "slow_pickups",
+                            // 时间窗口遵守率
+                            "on_time_pickups"
                     )
                     .withColumn("fast_pickup_rate", col("fast_pickups").divide(col("total_pickups")))
                     .withColumn("slow_pickup_rate", col("slow_pickups").divide(col("total_pickups")))
@@ -344,18 +549,24 @@ public class EnhancedCityLogisticsAnalysis {
                     .na().fill(0);
 
             // 保存到HDFS
-            deliveryTimeMetrics.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/delivery_time_metrics");
+            parquetWriter.write(deliveryTimeMetrics, outputPath + "/delivery_time_metrics", "city", "date");
+            parquetWriter.write(pickupTimeMetrics, outputPath + "/pickup_time_metrics", "city", "date");
+
+            // 时长分位数草图：按 (city, date, hour) 保存，供按任意日期范围合并后查询分位数
+            Dataset<Row> durationSketches = aggregates.deliveryHourly()
+                    .select("city", "date", "hour", SharedAggregates.DELIVERY_DURATION_SKETCH)
+                    .join(aggregates.pickupHourly()
+                                    .select("city", "date", "hour", SharedAggregates.PICKUP_DURATION_SKETCH),
+                            JavaConverters.asScalaIteratorConverter(
+                                    Arrays.asList("city", "date", "hour").iterator()
+                            ).asScala().toSeq(),
+                            "full_outer");
 
-            pickupTimeMetrics.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/pickup_time_metrics");
+            parquetWriter.write(durationSketches, outputPath + "/duration_sketches", "city", "date");
 
             // 写入MySQL
             writeTimeEfficiencyToMySQL(combinedTimeMetrics);
+            writeDurationSketchesToMySQL(durationSketches);
 
             System.out.println("时间效率分析完成（HDFS + MySQL）");
 
@@ -368,7 +579,7 @@ public class EnhancedCityLogisticsAnalysis {
     /**
      * 2. 空间地理分析 - 修正字段名称
      */
-    private static void generateSpatialAnalysisMetrics(Dataset<Row> delivery, Dataset<Row> pickup, String outputPath, SparkSession spark) {
+    private static void generateSpatialAnalysisMetrics(Dataset<Row> delivery, Dataset<Row> pickup, SharedAggregates aggregates, String outputPath, SparkSession spark) {
         try {
             // 配送空间分析 - 使用delivery_gps_lng/lat
             Dataset<Row> deliverySpatialMetrics = delivery
@@ -378,7 +589,7 @@ public class EnhancedCityLogisticsAnalysis {
                     .groupBy("city", "date", "lng_grid", "lat_grid")
                     .agg(
                             count("order_id").alias("delivery_count"),
-                            countDistinct("courier_id").alias("unique_couriers"),
+                            distinctCounts.count("courier_id").alias("unique_couriers"),
                             avg("delivery_duration_hours").alias("avg_delivery_time"),
                             avg("delivery_distance_km").alias("avg_delivery_distance")
                     )
@@ -392,7 +603,7 @@ public class EnhancedCityLogisticsAnalysis {
                     .groupBy("city", "date", "lng_grid", "lat_grid")
                     .agg(
                             count("order_id").alias("pickup_count"),
-                            countDistinct("courier_id").alias("unique_couriers"),
+                            distinctCounts.count("courier_id").alias("unique_couriers"),
                             avg("pickup_duration_hours").alias("avg_pickup_time"),
                             avg("pickup_distance_km").alias("avg_pickup_distance")
                     )
@@ -403,29 +614,27 @@ public class EnhancedCityLogisticsAnalysis {
                     .groupBy("city", "date", "aoi_id", "aoi_type")
                     .agg(
                             count("order_id").alias("orders_in_aoi"),
-                            countDistinct("courier_id").alias("couriers_in_aoi"),
+                            distinctCounts.count("courier_id").alias("couriers_in_aoi"),
                             avg("delivery_duration_hours").alias("avg_aoi_delivery_time")
                     )
                     .withColumn("orders_per_courier", col("orders_in_aoi").divide(col("couriers_in_aoi")));
 
-            // 保存到HDFS
-            deliverySpatialMetrics.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/delivery_spatial_metrics");
+            // 多分辨率网格：每层的聚合都持久化，任意缩放级别按 (city, date, cell_level) 直接查询
+            Dataset<Row> deliveryGridCells = aggregateGridCells(delivery);
 
-            pickupSpatialMetrics.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/pickup_spatial_metrics");
+            // 热力图瓦片金字塔：看板平移缩放时只按 z/x/y 读取可见瓦片
+            Dataset<Row> heatmapTiles = HeatmapTiles.build(delivery, "delivery_gps_lng", "delivery_gps_lat",
+                    "delivery_duration_hours", spatialTileZoomLevels);
 
-            regionCoverageMetrics.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/region_coverage_metrics");
+            // 保存到HDFS
+            parquetWriter.write(deliverySpatialMetrics, outputPath + "/delivery_spatial_metrics", "city", "date");
+            parquetWriter.write(pickupSpatialMetrics, outputPath + "/pickup_spatial_metrics", "city", "date");
+            parquetWriter.write(regionCoverageMetrics, outputPath + "/region_coverage_metrics", "city", "date");
+            parquetWriter.write(deliveryGridCells, outputPath + "/delivery_grid_cells", "city", "date");
+            parquetWriter.write(heatmapTiles, outputPath + "/heatmap_tiles", "city", "date");
 
             // 写入MySQL
-            writeSpatialAnalysisToMySQL(deliverySpatialMetrics, regionCoverageMetrics);
+            writeSpatialAnalysisToMySQL(deliverySpatialMetrics, regionCoverageMetrics, deliveryGridCells, heatmapTiles);
 
             System.out.println("空间地理分析完成（HDFS + MySQL）");
 
@@ -435,21 +644,60 @@ public class EnhancedCityLogisticsAnalysis {
         }
     }
 
+    /**
+     * 按配置的各层级聚合配送点
+     *
+     * 每个点只在最细层级编码一次，较粗层级由位移上卷得到；展开为每层一行后一次聚合得到所有层级。
+     * occupied_cells 为网格内有数据的最细层级网格数，由最细层级的聚合结果上卷计算。
+     * delivery_density 为网格内有数据的最细层级网格的平均密度（订单数 / 有数据网格的总面积），
+     * 与原先按0.01°网格求 AVG(delivery_density) 的含义一致，不受粗网格中空白区域的影响。
+     */
+    private static Dataset<Row> aggregateGridCells(Dataset<Row> delivery) {
+        int finest = spatialCellLevels[spatialCellLevels.length - 1];
+
+        Column[] levelCells = new Column[spatialCellLevels.length];
+        for (int i = 0; i < spatialCellLevels.length; i++) {
+            levelCells[i] = struct(
+                    lit(spatialCellLevels[i]).alias("cell_level"),
+                    GeoCells.parent(col("fine_cell"), finest, spatialCellLevels[i]).alias("cell_id"));
+        }
+
+        Dataset<Row> cells = delivery
+                .filter(col("delivery_gps_lng").isNotNull().and(col("delivery_gps_lat").isNotNull()))
+                .withColumn("fine_cell", GeoCells.cell(col("delivery_gps_lng"), col("delivery_gps_lat"), finest))
+                .withColumn("cell", explode(array(levelCells)))
+                .groupBy(col("city"), col("date"), col("cell.cell_level"), col("cell.cell_id"))
+                .agg(
+                        count("order_id").alias("delivery_count"),
+                        distinctCounts.count("courier_id").alias("unique_couriers"),
+                        avg("delivery_duration_hours").alias("avg_delivery_time"),
+                        avg("delivery_distance_km").alias("avg_delivery_distance")
+                );
+
+        Dataset<Row> occupiedCells = cells
+                .filter(col("cell_level").equalTo(finest))
+                .select(col("city"), col("date"), col("cell_id").alias("fine_cell"))
+                .withColumn("cell", explode(array(levelCells)))
+                .groupBy(col("city"), col("date"), col("cell.cell_level"), col("cell.cell_id"))
+                .agg(count(lit(1)).alias("occupied_cells"));
+
+        double fineCellSize = 360.0 / (1L << finest);
+        return cells
+                .join(occupiedCells, JavaConverters.asScalaBufferConverter(
+                        Arrays.asList("city", "date", "cell_level", "cell_id")).asScala().toList())
+                .withColumn("center_lng", GeoCells.centerLng(col("cell_id")))
+                .withColumn("center_lat", GeoCells.centerLat(col("cell_id")))
+                .withColumn("delivery_density", col("delivery_count")
+                        .divide(col("occupied_cells").multiply(fineCellSize * fineCellSize)));
+    }
+
     /**
      * 3. 运营效率分析 - 修正字段名称
      */
-    private static void generateOperationalEfficiencyMetrics(Dataset<Row> delivery, Dataset<Row> pickup, String outputPath, SparkSession spark) {
+    private static void generateOperationalEfficiencyMetrics(Dataset<Row> delivery, Dataset<Row> pickup, SharedAggregates aggregates, String outputPath, SparkSession spark) {
         try {
-            // 快递员效率分析
-            Dataset<Row> courierEfficiencyMetrics = delivery
-                    .groupBy("city", "region_id", "courier_id", "date")
-                    .agg(
-                            count("order_id").alias("total_orders"),
-                            countDistinct("aoi_id").alias("unique_aoi_served"),
-                            sum("delivery_distance_km").alias("total_distance"),
-                            sum("delivery_duration_hours").alias("total_working_hours"),
-                            avg("delivery_duration_hours").alias("avg_delivery_time")
-                    )
+            // 快递员效率分析（取自共享的 city/region_id/courier_id/date 聚合）
+            Dataset<Row> courierEfficiencyMetrics = aggregates.courierDaily()
                     .withColumn("orders_per_hour", col("total_orders").divide(col("total_working_hours")))
                     .withColumn("distance_per_order", col("total_distance").divide(col("total_orders")))
                     .withColumn("efficiency_score",
@@ -457,14 +705,14 @@ public class EnhancedCityLogisticsAnalysis {
                                     .plus(lit(1).divide(col("avg_delivery_time")).multiply(0.4)))
                     .filter(col("total_working_hours").gt(0));
 
-            // 区域负载分析
-            Dataset<Row> regionLoadMetrics = delivery
-                    .groupBy("city", "region_id", "date")
-                    .agg(
-                            count("order_id").alias("total_region_orders"),
-                            countDistinct("courier_id").alias("active_couriers"),
-                            countDistinct("aoi_id").alias("served_aois"),
-                            avg("delivery_duration_hours").alias("avg_region_delivery_time")
+            // 区域负载分析（取自共享的 city/region_id/date 聚合）
+            Dataset<Row> regionLoadMetrics = aggregates.deliveryRegionDaily()
+                    .select(
+                            col("city"), col("region_id"), col("date"),
+                            col("total_orders").alias("total_region_orders"),
+                            col("active_couriers"),
+                            col("served_aois"),
+                            col("avg_delivery_time").alias("avg_region_delivery_time")
                     )
                     .withColumn("orders_per_courier", col("total_region_orders").divide(col("active_couriers")))
                     .withColumn("orders_per_aoi", col("total_region_orders").divide(col("served_aois")))
@@ -472,15 +720,9 @@ public class EnhancedCityLogisticsAnalysis {
                             col("orders_per_courier").multiply(0.6).plus(col("orders_per_aoi").multiply(0.4)));
 
             // 保存到HDFS
-            courierEfficiencyMetrics.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/courier_efficiency_metrics");
-
-            regionLoadMetrics.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/region_load_metrics");
+            parquetWriter.writeClustered(courierEfficiencyMetrics, outputPath, "courier_efficiency_metrics",
+                    DATE_PARTITION);
+            parquetWriter.write(regionLoadMetrics, outputPath + "/region_load_metrics", "city", "date");
 
             // 写入MySQL
             writeOperationalEfficiencyToMySQL(courierEfficiencyMetrics, regionLoadMetrics);
@@ -496,21 +738,36 @@ public class EnhancedCityLogisticsAnalysis {
     /**
      * 4. 预测分析数据生成 - 修正时间序列分析
      */
-    private static void generatePredictiveAnalysisData(Dataset<Row> delivery, Dataset<Row> pickup, String outputPath, SparkSession spark) {
+    private static void generatePredictiveAnalysisData(Dataset<Row> delivery, Dataset<Row> pickup, SharedAggregates aggregates, String outputPath, SparkSession spark) {
         try {
+            // 按 ds 分区输出：增量模式下去掉为补齐 date 而补读的其他 ds 订单，只重写范围内完整的 ds
+            if (incrementalRange != null) {
+                delivery = incrementalRange.filter(delivery);
+            }
+
             // 修正时间转换 - 添加年份
-            Dataset<Row> timeSeriesTrends = delivery
-                    .withColumn("ds_date",
-                            to_date(concat(lit("2025"), col("ds")), "yyyyMMdd")) // 518 -> 20250518
+            Dataset<Row> hourlyVolume = delivery
+                    .withColumn("ds_date", dsToDate(col("ds")))
                     .groupBy("city", "ds_date", "hour")
                     .agg(
                             count("order_id").alias("order_volume"),
-                            countDistinct("courier_id").alias("courier_count"),
+                            distinctCounts.count("courier_id").alias("courier_count"),
                             avg("delivery_duration_hours").alias("avg_duration"),
                             sum("delivery_distance_km").alias("total_distance")
-                    )
+                    );
+
+            // 前一小时订单量：窗口按 (city, ds_date) 分区，不再把整个城市放进同一个分区；
+            // 每天第一个小时的前一小时在前一天，由每日最后一小时的订单量补齐
+            Dataset<Row> timeSeriesTrends = hourlyVolume
                     .withColumn("volume_trend", lag("order_volume", 1).over(
-                            Window.partitionBy("city").orderBy("ds_date", "hour")))
+                            Window.partitionBy("city", "ds_date").orderBy("hour")))
+                    .join(previousDayLastVolume(hourlyVolume, outputPath + "/time_series_trends", spark),
+                            JavaConverters.asScalaIteratorConverter(
+                                    Arrays.asList("city", "ds_date").iterator()
+                            ).asScala().toSeq(),
+                            "left")
+                    .withColumn("volume_trend", coalesce(col("volume_trend"), col("previous_day_volume")))
+                    .drop("previous_day_volume")
                     .withColumn("efficiency_score",
                             col("order_volume").divide(col("courier_count").multiply(col("avg_duration"))))
                     .withColumn("data_type", lit("HOURLY"))
@@ -518,11 +775,11 @@ public class EnhancedCityLogisticsAnalysis {
 
             // 容量规划数据
             Dataset<Row> capacityPlanningData = delivery
-                    .withColumn("ds_date", to_date(col("ds"), "MMdd"))
+                    .withColumn("ds_date", dsToDate(col("ds")))
                     .groupBy("city", "region_id", "ds_date")
                     .agg(
                             count("order_id").alias("daily_orders"),
-                            countDistinct("courier_id").alias("required_couriers"),
+                            distinctCounts.count("courier_id").alias("required_couriers"),
                             max("hour").alias("peak_hour"),
                             sum("delivery_distance_km").alias("total_daily_distance")
                     )
@@ -534,15 +791,8 @@ public class EnhancedCityLogisticsAnalysis {
                     .withColumn("data_type", lit("DAILY"));
 
             // 保存到HDFS
-            timeSeriesTrends.write()
-                    .mode("overwrite")
-                    .partitionBy("city")
-                    .parquet(outputPath + "/time_series_trends");
-
-            capacityPlanningData.write()
-                    .mode("overwrite")
-                    .partitionBy("city")
-                    .parquet(outputPath + "/capacity_planning_data");
+            parquetWriter.write(timeSeriesTrends, outputPath + "/time_series_trends", "city", "ds_date");
+            parquetWriter.write(capacityPlanningData, outputPath + "/capacity_planning_data", "city", "ds_date");
 
             // 写入MySQL
             writePredictiveAnalysisToMySQL(timeSeriesTrends, capacityPlanningData);
@@ -555,36 +805,81 @@ public class EnhancedCityLogisticsAnalysis {
         }
     }
 
+    /**
+     * 每个 (city, ds_date) 前一天最后一小时的订单量
+     *
+     * 先上卷为每城市每天一行，再在这张小表上按城市取前一天；
+     * 增量模式下范围内第一天的前一天不在本次数据中，从已有的 time_series_trends 输出中读取。
+     */
+    private static Dataset<Row> previousDayLastVolume(Dataset<Row> hourlyVolume, String trendsPath, SparkSession spark) {
+        Dataset<Row> dayLast = hourlyVolume
+                .groupBy("city", "ds_date")
+                .agg(max(struct("hour", "order_volume")).getField("order_volume").alias("last_volume"));
+
+        if (incrementalRange != null) {
+            Dataset<Row> priorDayLast = readPriorDayLastVolume(trendsPath, spark);
+            if (priorDayLast != null) {
+                dayLast = dayLast.unionByName(priorDayLast);
+            }
+        }
+
+        return dayLast
+                .withColumn("previous_day_volume", lag("last_volume", 1).over(
+                        Window.partitionBy("city").orderBy("ds_date")))
+                .select("city", "ds_date", "previous_day_volume");
+    }
+
+    /**
+     * 增量模式：从已有输出读取每个城市在本次范围之前最后一小时的订单量（先收集到Driver，避免读写同一路径）
+     */
+    private static Dataset<Row> readPriorDayLastVolume(String trendsPath, SparkSession spark) {
+        try {
+            Dataset<Row> prior = spark.read().parquet(trendsPath)
+                    .where(col("ds_date").lt(dsToDate(lit(incrementalRange.getStartDs()))))
+                    .groupBy("city")
+                    .agg(max(struct("ds_date", "hour", "order_volume")).alias("last"))
+                    .select(
+                            col("city"),
+                            col("last.ds_date").cast("date").alias("ds_date"),
+                            col("last.order_volume").alias("last_volume")
+                    );
+            return spark.createDataFrame(prior.collectAsList(), prior.schema());
+        } catch (Exception e) {
+            System.out.println("增量模式：未读取到已有的时间序列输出，范围内第一小时的 volume_trend 为空 (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
     /**
      * 5. 成本效益分析 - 根据实际数据结构调整
      */
-    private static void generateCostAnalysisMetrics(Dataset<Row> delivery, Dataset<Row> pickup, String outputPath, SparkSession spark) {
+    private static void generateCostAnalysisMetrics(Dataset<Row> delivery, Dataset<Row> pickup, SharedAggregates aggregates, String outputPath, SparkSession spark) {
         try {
-            // 成本结构分析
-            Dataset<Row> costStructureMetrics = delivery
-                    .withColumn("fuel_cost", col("delivery_distance_km").multiply(0.8)) // 每公里0.8元油费
-                    .withColumn("time_cost", col("delivery_duration_hours").multiply(25)) // 每小时25元人工成本
-                    .withColumn("total_delivery_cost", col("fuel_cost").plus(col("time_cost")))
-                    .groupBy("city", "region_id", "date")
-                    .agg(
-                            sum("total_delivery_cost").alias("total_cost"),
-                            sum("fuel_cost").alias("total_fuel_cost"),
-                            sum("time_cost").alias("total_time_cost"),
-                            count("order_id").alias("total_orders"),
-                            sum("delivery_distance_km").alias("total_distance")
+            // 成本结构分析（取自共享的 city/region_id/date 聚合，成本为距离和时长的线性函数，可由汇总值直接换算；
+            // 总成本只计距离和时长都不为空的订单，与逐单计算 油费+人工 后求和一致）
+            Dataset<Row> costStructureMetrics = aggregates.deliveryRegionDaily()
+                    .withColumn("total_fuel_cost", col("total_distance").multiply(0.8)) // 每公里0.8元油费
+                    .withColumn("total_time_cost", col("total_duration").multiply(25)) // 每小时25元人工成本
+                    .select(
+                            col("city"), col("region_id"), col("date"),
+                            col("costed_distance").multiply(0.8).plus(col("costed_duration").multiply(25)).alias("total_cost"),
+                            col("total_fuel_cost"),
+                            col("total_time_cost"),
+                            col("total_orders"),
+                            col("total_distance")
                     )
                     .withColumn("cost_per_order", col("total_cost").divide(col("total_orders")))
                     .withColumn("cost_per_km", col("total_cost").divide(col("total_distance")))
                     .withColumn("fuel_cost_ratio", col("total_fuel_cost").divide(col("total_cost")))
                     .withColumn("analysis_type", lit("REGION"));
 
-            // 效益评估
-            Dataset<Row> efficiencyROI = delivery
-                    .groupBy("city", "courier_id", "date")
-                    .agg(
-                            count("order_id").alias("completed_orders"),
-                            sum("delivery_distance_km").alias("distance_covered"),
-                            sum("delivery_duration_hours").alias("working_hours")
+            // 效益评估（由快递员日聚合上卷，不再扫描明细）
+            Dataset<Row> efficiencyROI = aggregates.courierDailyAcrossRegions()
+                    .select(
+                            col("city"), col("courier_id"), col("date"),
+                            col("total_orders").alias("completed_orders"),
+                            col("total_distance").alias("distance_covered"),
+                            col("total_working_hours").alias("working_hours")
                     )
                     .withColumn("productivity_score",
                             col("completed_orders").divide(col("working_hours")))
@@ -596,15 +891,8 @@ public class EnhancedCityLogisticsAnalysis {
                     .withColumn("analysis_type", lit("COURIER"));
 
             // 保存到HDFS
-            costStructureMetrics.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/cost_structure_metrics");
-
-            efficiencyROI.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/efficiency_roi_metrics");
+            parquetWriter.write(costStructureMetrics, outputPath + "/cost_structure_metrics", "city", "date");
+            parquetWriter.write(efficiencyROI, outputPath + "/efficiency_roi_metrics", "city", "date");
 
             // 写入MySQL
             writeCostAnalysisToMySQL(costStructureMetrics, efficiencyROI);
@@ -617,50 +905,50 @@ public class EnhancedCityLogisticsAnalysis {
         }
     }
 
+    /**
+     * 由 city/date/hour 聚合计算核心KPI（批处理与实时流共用，保证 realtime_kpi 表结构一致）
+     */
+    static Dataset<Row> deriveCoreKPIs(Dataset<Row> hourly) {
+        return hourly
+                .select(
+                        "city", "date", "hour",
+                        "total_orders",
+                        "active_couriers",
+                        "coverage_aois",
+                        "avg_delivery_time",
+                        "fast_deliveries"
+                )
+                .withColumn("orders_per_courier", col("total_orders").divide(col("active_couriers")))
+                .withColumn("orders_per_aoi", col("total_orders").divide(col("coverage_aois")))
+                .withColumn("fast_delivery_rate", col("fast_deliveries").divide(col("total_orders")))
+                .withColumn("efficiency_score",
+                        col("orders_per_courier").multiply(0.4)
+                                .plus(col("fast_delivery_rate").multiply(0.6)))
+                .withColumn("kpi_timestamp", current_timestamp());
+    }
+
     /**
      * 6. KPI监控指标生成 - 调整KPI计算逻辑
      */
-    private static void generateKPIMetrics(Dataset<Row> delivery, Dataset<Row> pickup, String outputPath, SparkSession spark) {
+    private static void generateKPIMetrics(Dataset<Row> delivery, Dataset<Row> pickup, SharedAggregates aggregates, String outputPath, SparkSession spark) {
         try {
-            // 核心KPI指标
-            Dataset<Row> coreKPIs = delivery
-                    .groupBy("city", "date", "hour")
-                    .agg(
-                            count("order_id").alias("total_orders"),
-                            countDistinct("courier_id").alias("active_couriers"),
-                            countDistinct("aoi_id").alias("coverage_aois"),
-                            avg("delivery_duration_hours").alias("avg_delivery_time"),
-                            sum(when(col("delivery_duration_hours").leq(2), 1).otherwise(0)).alias("fast_deliveries")
-                    )
-                    .withColumn("orders_per_courier", col("total_orders").divide(col("active_couriers")))
-                    .withColumn("orders_per_aoi", col("total_orders").divide(col("coverage_aois")))
-                    .withColumn("fast_delivery_rate", col("fast_deliveries").divide(col("total_orders")))
-                    .withColumn("efficiency_score",
-                            col("orders_per_courier").multiply(0.4)
-                                    .plus(col("fast_delivery_rate").multiply(0.6)))
-                    .withColumn("kpi_timestamp", current_timestamp());
+            // 核心KPI指标（取自共享的 city/date/hour 聚合）
+            Dataset<Row> coreKPIs = deriveCoreKPIs(aggregates.deliveryHourly());
 
-            // 服务质量KPI - 包含取件服务
-            Dataset<Row> serviceQualityKPIs = pickup
-                    .groupBy("city", "date", "hour")
-                    .agg(
-                            count("order_id").alias("total_pickups"),
-                            sum(when(col("within_time_window").equalTo(true), 1).otherwise(0)).alias("on_time_pickups"),
-                            avg("pickup_duration_hours").alias("avg_pickup_duration")
+            // 服务质量KPI - 包含取件服务（取自共享的 city/date/hour 聚合）
+            Dataset<Row> serviceQualityKPIs = aggregates.pickupHourly()
+                    .select(
+                            col("city"), col("date"), col("hour"),
+                            col("total_pickups"),
+                            col("on_time_pickups"),
+                            col("avg_pickup_time").alias("avg_pickup_duration")
                     )
                     .withColumn("on_time_pickup_rate", col("on_time_pickups").divide(col("total_pickups")))
                     .withColumn("pickup_service_score", col("on_time_pickup_rate").multiply(100));
 
             // 保存到HDFS
-            coreKPIs.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/core_kpis");
-
-            serviceQualityKPIs.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/service_quality_kpis");
+            parquetWriter.write(coreKPIs, outputPath + "/core_kpis", "city", "date");
+            parquetWriter.write(serviceQualityKPIs, outputPath + "/service_quality_kpis", "city", "date");
 
             // 写入MySQL实时KPI表
             writeKPIsToMySQL(coreKPIs, serviceQualityKPIs, spark);
@@ -676,7 +964,7 @@ public class EnhancedCityLogisticsAnalysis {
     /**
      * 7. 异常检测分析 - 调整异常检测阈值
      */
-    private static void generateAnomalyDetectionMetrics(Dataset<Row> delivery, Dataset<Row> pickup, String outputPath, SparkSession spark) {
+    private static void generateAnomalyDetectionMetrics(Dataset<Row> delivery, Dataset<Row> pickup, SharedAggregates aggregates, String outputPath, SparkSession spark) {
         try {
             // 配送时间异常检测 - 根据实际数据调整阈值
             Dataset<Row> deliveryTimeAnomalies = delivery
@@ -715,20 +1003,12 @@ public class EnhancedCityLogisticsAnalysis {
                                     .otherwise(lit("LOW")));
 
             // 保存到HDFS
-            deliveryTimeAnomalies.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/delivery_time_anomalies");
-
-            pickupTimeAnomalies.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/pickup_time_anomalies");
-
-            distanceAnomalies.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/distance_anomalies");
+            parquetWriter.writeClustered(deliveryTimeAnomalies, outputPath, "delivery_time_anomalies",
+                    DATE_PARTITION);
+            parquetWriter.writeClustered(pickupTimeAnomalies, outputPath, "pickup_time_anomalies",
+                    DATE_PARTITION);
+            parquetWriter.writeClustered(distanceAnomalies, outputPath, "distance_anomalies",
+                    DATE_PARTITION);
 
             // 写入MySQL异常告警表
             writeAnomaliesToMySQL(deliveryTimeAnomalies, pickupTimeAnomalies, distanceAnomalies, spark);
@@ -744,18 +1024,18 @@ public class EnhancedCityLogisticsAnalysis {
     /**
      * 8. 综合报表数据生成 - 根据数据结构调整
      */
-    private static void generateComprehensiveReports(Dataset<Row> delivery, Dataset<Row> pickup, String outputPath, SparkSession spark) {
+    private static void generateComprehensiveReports(Dataset<Row> delivery, Dataset<Row> pickup, SharedAggregates aggregates, String outputPath, SparkSession spark) {
         try {
-            // 日报数据
-            Dataset<Row> dailyReports = delivery
-                    .groupBy("city", "region_id", "date")
-                    .agg(
-                            count("order_id").alias("total_deliveries"),
-                            countDistinct("courier_id").alias("active_couriers"),
-                            countDistinct("aoi_id").alias("served_aois"),
-                            avg("delivery_duration_hours").alias("avg_delivery_time"),
-                            sum("delivery_distance_km").alias("total_distance"),
-                            sum(when(col("delivery_duration_hours").leq(2), 1).otherwise(0)).alias("fast_deliveries")
+            // 日报数据（取自共享的 city/region_id/date 聚合）
+            Dataset<Row> dailyReports = aggregates.deliveryRegionDaily()
+                    .select(
+                            col("city"), col("region_id"), col("date"),
+                            col("total_orders").alias("total_deliveries"),
+                            col("active_couriers"),
+                            col("served_aois"),
+                            col("avg_delivery_time"),
+                            col("total_distance"),
+                            col("fast_deliveries")
                     )
                     .withColumn("avg_orders_per_courier", col("total_deliveries").divide(col("active_couriers")))
                     .withColumn("avg_distance_per_order", col("total_distance").divide(col("total_deliveries")))
@@ -763,29 +1043,26 @@ public class EnhancedCityLogisticsAnalysis {
                     .withColumn("report_type", lit("DAILY"))
                     .withColumn("generated_at", current_timestamp());
 
-            // 取件日报数据
-            Dataset<Row> pickupDailyReports = pickup
-                    .groupBy("city", "region_id", "date")
-                    .agg(
-                            count("order_id").alias("total_pickups"),
-                            countDistinct("courier_id").alias("active_pickup_couriers"),
-                            avg("pickup_duration_hours").alias("avg_pickup_time"),
-                            sum(when(col("within_time_window").equalTo(true), 1).otherwise(0)).alias("on_time_pickups")
-                    )
+            // 取件日报数据（取自共享的 city/region_id/date 聚合）
+            Dataset<Row> pickupDailyReports = aggregates.pickupRegionDaily()
+                    .drop(SharedAggregates.PICKUP_COURIER_SKETCH)
                     .withColumn("on_time_pickup_rate", col("on_time_pickups").divide(col("total_pickups")))
                     .withColumn("report_type", lit("PICKUP_DAILY"))
                     .withColumn("generated_at", current_timestamp());
 
             // 保存到HDFS
-            dailyReports.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/daily_reports");
-
-            pickupDailyReports.write()
-                    .mode("overwrite")
-                    .partitionBy("city", "date")
-                    .parquet(outputPath + "/pickup_daily_reports");
+            parquetWriter.write(dailyReports, outputPath + "/daily_reports", "city", "date");
+            parquetWriter.write(pickupDailyReports, outputPath + "/pickup_daily_reports", "city", "date");
+
+            if (distinctCounts.isApprox()) {
+                // 区域日去重草图，供 SketchRollup 按周/月上卷去重数
+                parquetWriter.write(aggregates.deliveryRegionDaily()
+                                .select("city", "region_id", "date", SharedAggregates.COURIER_SKETCH, SharedAggregates.AOI_SKETCH),
+                        outputPath + "/delivery_region_sketches", "city", "date");
+                parquetWriter.write(aggregates.pickupRegionDaily()
+                                .select("city", "region_id", "date", SharedAggregates.PICKUP_COURIER_SKETCH),
+                        outputPath + "/pickup_region_sketches", "city", "date");
+            }
 
             // 写入MySQL
             writeComprehensiveReportsToMySQL(dailyReports, pickupDailyReports);
@@ -799,32 +1076,45 @@ public class EnhancedCityLogisticsAnalysis {
     }
 
     // ========== MySQL写入方法（修正字段匹配问题） ==========
+    // 经暂存表事务替换写入，不再删表重建，目标表索引保留且写入期间看板不会读到空表
 
     /**
      * 写入时间效率数据到MySQL
      */
     private static void writeTimeEfficiencyToMySQL(Dataset<Row> timeMetrics) {
         try {
-            timeMetrics.write()
-                    .mode("overwrite")
-                    .jdbc(mysqlUrl, "time_efficiency_metrics", mysqlProps);
+            mysqlWriter.write(timeMetrics, "time_efficiency_metrics", "date");
 
             System.out.println("时间效率数据已写入MySQL");
-
-            System.out.println("待写入记录数: " + timeMetrics.count());
         } catch (Exception e) {
             System.err.println("时间效率数据MySQL写入失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 写入时长分位数草图到MySQL
+     */
+    private static void writeDurationSketchesToMySQL(Dataset<Row> durationSketches) {
+        try {
+            mysqlWriter.write(durationSketches, "duration_quantile_sketches", "date");
+
+            System.out.println("时长分位数草图已写入MySQL");
+        } catch (Exception e) {
+            System.err.println("时长分位数草图MySQL写入失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 写入空间地理分析数据到MySQL
      */
-    private static void writeSpatialAnalysisToMySQL(Dataset<Row> spatialMetrics, Dataset<Row> regionMetrics) {
+    private static void writeSpatialAnalysisToMySQL(Dataset<Row> spatialMetrics, Dataset<Row> regionMetrics,
+                                                    Dataset<Row> gridCells, Dataset<Row> heatmapTiles) {
         try {
-            spatialMetrics.write()
-                    .mode("overwrite")
-                    .jdbc(mysqlUrl, "spatial_analysis_metrics", mysqlProps);
+            mysqlWriter.write(spatialMetrics, "spatial_analysis_metrics", "date");
+            mysqlWriter.createTableIfAbsent(SPATIAL_GRID_CELLS_DDL);
+            mysqlWriter.write(gridCells, "spatial_grid_cells", "date");
+            mysqlWriter.createTableIfAbsent(HEATMAP_TILES_DDL);
+            mysqlWriter.write(heatmapTiles, "heatmap_tiles", "date");
 
             System.out.println("空间地理分析数据已写入MySQL");
 
@@ -838,9 +1128,10 @@ public class EnhancedCityLogisticsAnalysis {
      */
     private static void writeOperationalEfficiencyToMySQL(Dataset<Row> courierMetrics, Dataset<Row> regionMetrics) {
         try {
-            courierMetrics.write()
-                    .mode("overwrite")
-                    .jdbc(mysqlUrl, "operational_efficiency_metrics", mysqlProps);
+            // 后端按城市游标分页（ORDER BY date, region_id, courier_id DESC）依赖该索引
+            mysqlWriter.createIndexIfAbsent("operational_efficiency_metrics", "idx_operational_city_date_region_courier",
+                    "city", "date", "region_id", "courier_id");
+            mysqlWriter.write(courierMetrics, "operational_efficiency_metrics", "date");
 
             System.out.println("运营效率数据已写入MySQL");
 
@@ -854,9 +1145,7 @@ public class EnhancedCityLogisticsAnalysis {
      */
     private static void writePredictiveAnalysisToMySQL(Dataset<Row> timeSeriesData, Dataset<Row> capacityData) {
         try {
-            timeSeriesData.write()
-                    .mode("overwrite")
-                    .jdbc(mysqlUrl, "predictive_analysis_data", mysqlProps);
+            mysqlWriter.write(timeSeriesData, "predictive_analysis_data", "ds_date");
 
             System.out.println("预测分析数据已写入MySQL");
 
@@ -873,9 +1162,7 @@ public class EnhancedCityLogisticsAnalysis {
             Dataset<Row> recentData = costMetrics
                     .filter(col("date").geq(date_sub(current_date(), 7)));
 
-            recentData.write()
-                    .mode("overwrite")
-                    .jdbc(mysqlUrl, "cost_analysis_metrics", mysqlProps);
+            mysqlWriter.write(recentData, "cost_analysis_metrics", "date");
 
             System.out.println(" 成本分析数据已写入MySQL");
 
@@ -892,9 +1179,7 @@ public class EnhancedCityLogisticsAnalysis {
 //            Dataset<Row> recentData = dailyReports
 //                    .filter(col("date").geq(date_sub(current_date(), 30)));
 
-            dailyReports.write()
-                    .mode("overwrite")
-                    .jdbc(mysqlUrl, "comprehensive_reports", mysqlProps);
+            mysqlWriter.write(dailyReports, "comprehensive_reports", "date");
 
             System.out.println(" 综合报表数据已写入MySQL");
 
@@ -911,9 +1196,8 @@ public class EnhancedCityLogisticsAnalysis {
 //            Dataset<Row> recentKPIs = coreKPIs
 //                    .filter(col("date").geq(date_sub(current_date(), 7)));
 
-            coreKPIs.write()
-                    .mode("overwrite")
-                    .jdbc(mysqlUrl, "realtime_kpi", mysqlProps);
+            mysqlWriter.createTableIfAbsent(REALTIME_KPI_DDL);
+            mysqlWriter.write(coreKPIs, "realtime_kpi", "date");
 
             System.out.println(" KPI数据已写入MySQL");
 
@@ -942,9 +1226,12 @@ public class EnhancedCityLogisticsAnalysis {
                             col("anomaly_type"), col("anomaly_severity"), col("date")
                     ));
 
-            allAnomalies.write()
-                    .mode("append")
-                    .jdbc(mysqlUrl, "anomaly_alerts", mysqlProps);
+            // 增量运行会补读其他ds中受影响日期的订单，同一范围也可能重跑：按 (order_id, anomaly_type) 只追加新告警，
+            // 已有告警及其处理状态保持不变
+            mysqlWriter.createIndexIfAbsent("anomaly_alerts", "idx_anomaly_alerts_order_type", "order_id", "anomaly_type");
+            // 后端按城市游标分页（ORDER BY created_at, id DESC）依赖该索引
+            mysqlWriter.createIndexIfAbsent("anomaly_alerts", "idx_anomaly_alerts_city_created", "city", "created_at", "id");
+            mysqlWriter.insertNew(allAnomalies, "anomaly_alerts", "order_id", "anomaly_type");
 
             System.out.println(" 异常告警数据已写入MySQL");
 
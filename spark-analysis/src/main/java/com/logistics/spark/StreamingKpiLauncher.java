@@ -0,0 +1,149 @@
+package com.logistics.spark;
+
+import com.logistics.spark.config.AnalysisConfig;
+import com.logistics.spark.ingest.RawDataReader;
+import com.logistics.spark.monitor.SparkJobMonitor;
+import com.logistics.spark.sink.MySqlWriter;
+import org.apache.spark.api.java.function.VoidFunction2;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.streaming.StreamingQuery;
+import org.apache.spark.sql.streaming.Trigger;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 实时KPI流启动器
+ *
+ * 监听配送数据落地目录（Structured Streaming 文件源，HDFS目录和本地目录均可），
+ * 新文件到达后按事件时间（delivery_time）以1小时窗口聚合 city/date/hour 核心KPI，
+ * 每个微批把有变化的窗口更新写入 realtime_kpi 表，看板无需等待批处理作业即可看到当天数据。
+ *
+ * 超过水位线的迟到数据不再更新窗口，由之后的批处理（增量模式）重算对应日期时修正。
+ * 流式聚合不支持精确去重计数，活跃快递员数和覆盖AOI数使用 approx_count_distinct（相对误差约5%）。
+ */
+public class StreamingKpiLauncher {
+
+    private static final String LANDING_PATH = "hdfs://localhost:9000/user/calmdn/lade/landing/deliver";
+    private static final String CHECKPOINT_PATH = "hdfs://localhost:9000/user/calmdn/lade/checkpoints/realtime_kpi";
+
+    // MySQL连接配置
+    private static Properties mysqlProps;
+    private static String mysqlUrl;
+
+    public static void main(String[] args) {
+        String landingPath = args.length > 0 ? args[0] : LANDING_PATH;
+        String checkpointPath = args.length > 1 ? args[1] : CHECKPOINT_PATH;
+
+        System.out.println("🚀 实时KPI流启动器");
+        System.out.println("当前时间: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        System.out.println("===============================================");
+        System.out.println("📋 系统配置:");
+        System.out.println("  落地目录: " + landingPath);
+        System.out.println("  检查点目录: " + checkpointPath);
+
+        initMySQLConfig();
+        AnalysisConfig config = AnalysisConfig.load();
+        SparkJobMonitor jobMonitor = new SparkJobMonitor(mysqlProps, mysqlUrl);
+        MySqlWriter mysqlWriter = new MySqlWriter(mysqlUrl, mysqlProps, true,
+                config.jdbcBatchSize(), config.jdbcWriterParallelism(), config.isJdbcRewriteBatchedStatements());
+
+        System.out.println("  水位线: " + config.streamingWatermark());
+        System.out.println("  触发间隔: " + config.streamingTriggerSeconds() + "秒");
+        System.out.println("===============================================");
+
+        SparkSession spark = SparkSession.builder()
+                .appName("物流实时KPI")
+                .master("local[*]")
+                // 状态存储按shuffle分区保存，分区数在首次启动时写入检查点，之后不可更改
+                .config("spark.sql.shuffle.partitions", System.getProperty("spark.sql.shuffle.partitions", "8"))
+                .getOrCreate();
+
+        Long jobId = jobMonitor.startJobTracking("实时KPI流", landingPath, null, checkpointPath,
+                "yyyy-MM-dd HH:mm:ss", 2025);
+        boolean success = false;
+        String errorMessage = null;
+
+        try {
+            // 微批按 (city, date, hour) 唯一键更新，启动前建表；之前由Spark建的表补上唯一键
+            mysqlWriter.createTableIfAbsent(EnhancedCityLogisticsAnalysis.REALTIME_KPI_DDL);
+            mysqlWriter.createUniqueIndexIfAbsent("realtime_kpi", "uk_realtime_kpi_city_date_hour",
+                    "city", "date", "hour");
+
+            Dataset<Row> deliverStream = spark.readStream()
+                    .option("header", "true")
+                    .option("maxFilesPerTrigger", config.streamingMaxFilesPerTrigger())
+                    .schema(RawDataReader.DELIVER_SCHEMA)
+                    .csv(landingPath);
+
+            Dataset<Row> hourlyKpis = EnhancedCityLogisticsAnalysis.cleanAndTransformDeliveryData(deliverStream)
+                    .withWatermark("delivery_time", config.streamingWatermark())
+                    .groupBy(window(col("delivery_time"), "1 hour"), col("city"))
+                    .agg(
+                            count("order_id").alias("total_orders"),
+                            approx_count_distinct("courier_id").alias("active_couriers"),
+                            approx_count_distinct("aoi_id").alias("coverage_aois"),
+                            avg("delivery_duration_hours").alias("avg_delivery_time"),
+                            sum(when(col("delivery_duration_hours").leq(2), 1).otherwise(0)).alias("fast_deliveries")
+                    )
+                    .withColumn("date", to_date(col("window.start")))
+                    .withColumn("hour", hour(col("window.start")));
+
+            Dataset<Row> coreKpis = EnhancedCityLogisticsAnalysis.deriveCoreKPIs(hourlyKpis);
+
+            StreamingQuery query = coreKpis.writeStream()
+                    .queryName("realtime_kpi")
+                    .outputMode("update")
+                    .option("checkpointLocation", checkpointPath)
+                    .trigger(Trigger.ProcessingTime(config.streamingTriggerSeconds(), TimeUnit.SECONDS))
+                    .foreachBatch((VoidFunction2<Dataset<Row>, Long>) (batch, batchId) -> {
+                        // 先缓存再计数：计数时物化缓存，写入MySQL直接读取缓存，聚合只计算一次
+                        batch.persist();
+                        try {
+                            long rows = batch.count();
+                            if (rows == 0) {
+                                return;
+                            }
+                            mysqlWriter.upsert(batch, "realtime_kpi", "city", "date", "hour");
+                            System.out.println("📊 微批 " + batchId + ": 更新 " + rows + " 个 city/date/hour KPI");
+                        } finally {
+                            batch.unpersist();
+                        }
+                    })
+                    .start();
+
+            System.out.println("✅ 实时KPI流已启动，等待新文件...");
+            query.awaitTermination();
+            success = true;
+
+        } catch (Exception e) {
+            errorMessage = "实时KPI流执行失败: " + e.getMessage();
+            System.err.println("❌ " + errorMessage);
+            e.printStackTrace();
+        } finally {
+            jobMonitor.completeJobTracking(jobId, success, 0, errorMessage);
+            spark.stop();
+
+            if (!success) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * 初始化MySQL配置
+     */
+    private static void initMySQLConfig() {
+        mysqlProps = new Properties();
+        mysqlProps.setProperty("user", "root");
+        mysqlProps.setProperty("password", "root");
+        mysqlProps.setProperty("driver", "com.mysql.cj.jdbc.Driver");
+        mysqlUrl = "jdbc:mysql://localhost:3306/logistics_db";
+    }
+}
@@ -0,0 +1,234 @@
+package com.logistics.spark.config;
+
+import com.logistics.common.geo.GeoCell;
+import com.logistics.common.geo.HeatmapTile;
+import com.logistics.common.sketch.QuantileSketch;
+import org.apache.spark.SparkConf;
+
+import java.util.Arrays;
+
+/**
+ * 分析作业运行参数
+ *
+ * 统一从 SparkConf 读取 spark.logistics.* 配置，
+ * 可通过 spark-submit --conf spark.logistics.xxx=yyy 或 JVM 系统属性 -Dspark.logistics.xxx=yyy 传入。
+ */
+public class AnalysisConfig {
+
+    /** 由后端提交时预先创建的 spark_job_logs 记录ID，作业沿用该记录而不是新建 */
+    public static final String JOB_LOG_ID = "spark.logistics.jobLogId";
+
+    /** 分析模块并发度，1 表示按顺序执行 */
+    public static final String MODULE_PARALLELISM = "spark.logistics.modules.parallelism";
+
+    /** 严格模式：解析失败的CSV行写入隔离目录而不是置为null */
+    public static final String INGEST_STRICT = "spark.logistics.ingest.strict";
+
+    /** Parquet暂存区路径，设置后新增CSV只转换一次，分析作业读取暂存区 */
+    public static final String STAGING_PATH = "spark.logistics.staging.path";
+
+    /** 增量模式：只处理新的ds分区，并只替换对应的输出分区 */
+    public static final String INCREMENTAL_ENABLED = "spark.logistics.incremental.enabled";
+
+    /** 增量模式起始ds（含），未设置时从上次成功运行的ds之后开始 */
+    public static final String INCREMENTAL_START_DS = "spark.logistics.incremental.startDs";
+
+    /** 增量模式结束ds（含），未设置时处理到数据中最新的ds */
+    public static final String INCREMENTAL_END_DS = "spark.logistics.incremental.endDs";
+
+    /** MySQL写入：每个批量INSERT的行数 */
+    public static final String JDBC_BATCH_SIZE = "spark.logistics.jdbc.batchSize";
+
+    /** MySQL写入：并行写入的数据库连接数 */
+    public static final String JDBC_WRITER_PARALLELISM = "spark.logistics.jdbc.writerParallelism";
+
+    /** MySQL写入：是否启用驱动的 rewriteBatchedStatements（批量INSERT改写为多值INSERT） */
+    public static final String JDBC_REWRITE_BATCHED_STATEMENTS = "spark.logistics.jdbc.rewriteBatchedStatements";
+
+    /** 输出Parquet：写入前按分区列重新分区并按目标大小切分文件 */
+    public static final String OUTPUT_FILE_SIZING = "spark.logistics.output.fileSizing";
+
+    /** 输出Parquet：每个文件的目标大小（支持 128m、1g 等写法） */
+    public static final String OUTPUT_TARGET_FILE_BYTES = "spark.logistics.output.targetFileBytes";
+
+    /** 输出Parquet：查找列Bloom过滤器按每个文件的预期不同值个数分配大小（约1.2字节/值，不随实际数据量缩小） */
+    public static final String OUTPUT_BLOOM_FILTER_NDV = "spark.logistics.output.bloomFilterNdv";
+
+    /** 空间分析：分层网格的层级列表（逗号分隔），第L层网格边长为 360/2^L 度，15层约0.011度 */
+    public static final String SPATIAL_CELL_LEVELS = "spark.logistics.spatial.cellLevels";
+
+    /** 空间分析：热力图瓦片的缩放级别列表（逗号分隔），第z级瓦片边长为 360/2^z 度 */
+    public static final String SPATIAL_TILE_ZOOM_LEVELS = "spark.logistics.spatial.tileZoomLevels";
+
+    /** 近似去重模式：approx_count_distinct + 可合并的HyperLogLog草图 */
+    public static final String DISTINCT_APPROX = "spark.logistics.distinct.approx";
+
+    /** 近似去重的相对标准误差 */
+    public static final String DISTINCT_RSD = "spark.logistics.distinct.rsd";
+
+    /** 时长分位数草图的相对误差 */
+    public static final String QUANTILE_ACCURACY = "spark.logistics.quantile.accuracy";
+
+    /** 倾斜检测：是否对热点分组键做加盐两阶段聚合 */
+    public static final String SKEW_ENABLED = "spark.logistics.skew.enabled";
+
+    /** 倾斜检测：键频率抽样比例 */
+    public static final String SKEW_SAMPLE_FRACTION = "spark.logistics.skew.sampleFraction";
+
+    /** 倾斜检测：单个键的行数超过平均分区行数的多少倍视为热点键 */
+    public static final String SKEW_FACTOR = "spark.logistics.skew.factor";
+
+    /** 倾斜检测：热点键拆分的盐值个数 */
+    public static final String SKEW_SALT_BUCKETS = "spark.logistics.skew.saltBuckets";
+
+    /** 实时流：事件时间水位线（允许的最大延迟） */
+    public static final String STREAMING_WATERMARK = "spark.logistics.streaming.watermark";
+
+    /** 实时流：微批触发间隔（秒） */
+    public static final String STREAMING_TRIGGER_SECONDS = "spark.logistics.streaming.triggerSeconds";
+
+    /** 实时流：每个微批最多读取的新文件数 */
+    public static final String STREAMING_MAX_FILES_PER_TRIGGER = "spark.logistics.streaming.maxFilesPerTrigger";
+
+    private final SparkConf conf;
+
+    public AnalysisConfig(SparkConf conf) {
+        this.conf = conf;
+    }
+
+    /**
+     * 从系统属性加载配置（在创建SparkSession之前调用）
+     */
+    public static AnalysisConfig load() {
+        return new AnalysisConfig(new SparkConf());
+    }
+
+    public Long jobLogId() {
+        return conf.contains(JOB_LOG_ID) ? conf.getLong(JOB_LOG_ID, 0) : null;
+    }
+
+    public int moduleParallelism() {
+        return Math.max(1, conf.getInt(MODULE_PARALLELISM, 1));
+    }
+
+    public boolean isConcurrentModules() {
+        return moduleParallelism() > 1;
+    }
+
+    public boolean isStrictIngest() {
+        return conf.getBoolean(INGEST_STRICT, false);
+    }
+
+    public String stagingPath() {
+        return conf.get(STAGING_PATH, "").trim();
+    }
+
+    public boolean isStagingEnabled() {
+        return !stagingPath().isEmpty();
+    }
+
+    public boolean isIncremental() {
+        return conf.getBoolean(INCREMENTAL_ENABLED, false)
+                || conf.contains(INCREMENTAL_START_DS) || conf.contains(INCREMENTAL_END_DS);
+    }
+
+    public Integer incrementalStartDs() {
+        return conf.contains(INCREMENTAL_START_DS) ? conf.getInt(INCREMENTAL_START_DS, 0) : null;
+    }
+
+    public Integer incrementalEndDs() {
+        return conf.contains(INCREMENTAL_END_DS) ? conf.getInt(INCREMENTAL_END_DS, 0) : null;
+    }
+
+    public int jdbcBatchSize() {
+        return Math.max(1, conf.getInt(JDBC_BATCH_SIZE, 5000));
+    }
+
+    public int jdbcWriterParallelism() {
+        return Math.max(1, conf.getInt(JDBC_WRITER_PARALLELISM, 4));
+    }
+
+    public boolean isJdbcRewriteBatchedStatements() {
+        return conf.getBoolean(JDBC_REWRITE_BATCHED_STATEMENTS, true);
+    }
+
+    public boolean isOutputFileSizing() {
+        return conf.getBoolean(OUTPUT_FILE_SIZING, true);
+    }
+
+    public long outputTargetFileBytes() {
+        return Math.max(1, conf.getSizeAsBytes(OUTPUT_TARGET_FILE_BYTES, "128m"));
+    }
+
+    public long outputBloomFilterNdv() {
+        return Math.max(1, conf.getLong(OUTPUT_BLOOM_FILTER_NDV, 10_000));
+    }
+
+    /**
+     * 网格层级，升序去重
+     */
+    public int[] spatialCellLevels() {
+        return levels(SPATIAL_CELL_LEVELS, "11,12,13,14,15,16", GeoCell.MAX_LEVEL);
+    }
+
+    /**
+     * 热力图瓦片缩放级别，升序去重（瓦片内格子比瓦片细 HeatmapTile.BIN_BITS 级）
+     */
+    public int[] spatialTileZoomLevels() {
+        return levels(SPATIAL_TILE_ZOOM_LEVELS, "8,9,10,11,12", GeoCell.MAX_LEVEL - HeatmapTile.BIN_BITS);
+    }
+
+    public boolean isApproxDistinct() {
+        return conf.getBoolean(DISTINCT_APPROX, false);
+    }
+
+    public double distinctRelativeSD() {
+        return conf.getDouble(DISTINCT_RSD, 0.02);
+    }
+
+    public double quantileRelativeAccuracy() {
+        return conf.getDouble(QUANTILE_ACCURACY, QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public boolean isSkewHandlingEnabled() {
+        return conf.getBoolean(SKEW_ENABLED, true);
+    }
+
+    public double skewSampleFraction() {
+        return conf.getDouble(SKEW_SAMPLE_FRACTION, 0.01);
+    }
+
+    public double skewFactor() {
+        return conf.getDouble(SKEW_FACTOR, 5.0);
+    }
+
+    public int skewSaltBuckets() {
+        return Math.max(2, conf.getInt(SKEW_SALT_BUCKETS, 16));
+    }
+
+    public String streamingWatermark() {
+        return conf.get(STREAMING_WATERMARK, "2 hours");
+    }
+
+    public long streamingTriggerSeconds() {
+        return Math.max(1, conf.getLong(STREAMING_TRIGGER_SECONDS, 10));
+    }
+
+    public int streamingMaxFilesPerTrigger() {
+        return Math.max(1, conf.getInt(STREAMING_MAX_FILES_PER_TRIGGER, 10));
+    }
+
+    private int[] levels(String key, String defaultValue, int maxLevel) {
+        int[] levels = Arrays.stream(conf.get(key, defaultValue).split(","))
+                .map(String::trim)
+                .filter(level -> !level.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .distinct()
+                .toArray();
+        if (levels.length == 0 || levels[0] < 0 || levels[levels.length - 1] > maxLevel) {
+            throw new IllegalArgumentException(key + " 必须是0到" + maxLevel + "之间的层级: " + conf.get(key, ""));
+        }
+        return levels;
+    }
+}
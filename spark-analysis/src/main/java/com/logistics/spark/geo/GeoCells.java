@@ -0,0 +1,67 @@
+package com.logistics.spark.geo;
+
+import com.logistics.common.geo.GeoCell;
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.api.java.UDF1;
+import org.apache.spark.sql.expressions.UserDefinedFunction;
+import org.apache.spark.sql.types.DataTypes;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 分层网格编码的Spark列表达式（编码格式见 {@link GeoCell}）
+ *
+ * 编码和上卷用内置的位运算表达式实现，参与代码生成，逐行计算时没有UDF调用开销；
+ * 网格中心坐标只在聚合后的结果上计算，使用UDF。
+ */
+public final class GeoCells {
+
+    private static final UserDefinedFunction CENTER_LNG =
+            udf((UDF1<Long, Double>) GeoCell::centerLng, DataTypes.DoubleType);
+    private static final UserDefinedFunction CENTER_LAT =
+            udf((UDF1<Long, Double>) GeoCell::centerLat, DataTypes.DoubleType);
+
+    private GeoCells() {
+    }
+
+    /**
+     * 经纬度所在的第 level 层网格编码
+     */
+    public static Column cell(Column lng, Column lat, int level) {
+        Column x = gridIndex(lng.plus(180), level);
+        Column y = gridIndex(lat.plus(90), level);
+        return lit((long) level << GeoCell.LEVEL_SHIFT)
+                .bitwiseOR(spread(x))
+                .bitwiseOR(shiftleft(spread(y), 1));
+    }
+
+    /**
+     * 把第 fromLevel 层的网格编码上卷到第 toLevel 层
+     */
+    public static Column parent(Column cell, int fromLevel, int toLevel) {
+        return lit((long) toLevel << GeoCell.LEVEL_SHIFT)
+                .bitwiseOR(shiftrightunsigned(cell.bitwiseAND(lit(GeoCell.MORTON_MASK)), 2 * (fromLevel - toLevel)));
+    }
+
+    public static Column centerLng(Column cell) {
+        return CENTER_LNG.apply(cell);
+    }
+
+    public static Column centerLat(Column cell) {
+        return CENTER_LAT.apply(cell);
+    }
+
+    private static Column gridIndex(Column offsetDegrees, int level) {
+        long cells = 1L << level;
+        Column index = floor(offsetDegrees.divide(360.0).multiply(cells));
+        return least(greatest(index, lit(0L)), lit(cells - 1));
+    }
+
+    private static Column spread(Column value) {
+        Column v = value;
+        for (int i = 0; i < GeoCell.SPREAD_SHIFTS.length; i++) {
+            v = v.bitwiseOR(shiftleft(v, GeoCell.SPREAD_SHIFTS[i])).bitwiseAND(lit(GeoCell.SPREAD_MASKS[i]));
+        }
+        return v;
+    }
+}
@@ -0,0 +1,86 @@
+package com.logistics.spark.geo;
+
+import com.logistics.common.geo.HeatmapTile;
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.api.java.UDF1;
+import org.apache.spark.sql.expressions.UserDefinedFunction;
+import org.apache.spark.sql.types.DataTypes;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+
+import java.util.List;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 热力图瓦片金字塔（瓦片格式见 {@link HeatmapTile}）
+ *
+ * 每个配送点只在最细的格子层级（最大缩放级别 + BIN_BITS）编码一次，
+ * 各缩放级别的瓦片和瓦片内格子都由位移上卷得到，展开后一次聚合生成所有缩放级别的格子，
+ * 再按瓦片收集格子编码为二进制。只生成有数据的瓦片。
+ */
+public final class HeatmapTiles {
+
+    private static final long BIN_MASK = (1L << (2 * HeatmapTile.BIN_BITS)) - 1;
+
+    private static final UserDefinedFunction ENCODE_TILE =
+            udf((UDF1<Seq<Row>, byte[]>) HeatmapTiles::encode, DataTypes.BinaryType);
+
+    private HeatmapTiles() {
+    }
+
+    /**
+     * 生成瓦片：city, date, zoom, tile_id, delivery_count, payload, etag
+     *
+     * @param points    含 city、date、经纬度和 duration 列的明细
+     * @param zoomLevels 缩放级别，升序
+     */
+    public static Dataset<Row> build(Dataset<Row> points, String lngColumn, String latColumn,
+                                     String durationColumn, int[] zoomLevels) {
+        int binLevel = zoomLevels[zoomLevels.length - 1] + HeatmapTile.BIN_BITS;
+
+        Column[] zoomBins = new Column[zoomLevels.length];
+        for (int i = 0; i < zoomLevels.length; i++) {
+            int zoom = zoomLevels[i];
+            zoomBins[i] = struct(
+                    lit(zoom).alias("zoom"),
+                    GeoCells.parent(col("bin_cell"), binLevel, zoom).alias("tile_id"),
+                    GeoCells.parent(col("bin_cell"), binLevel, zoom + HeatmapTile.BIN_BITS)
+                            .bitwiseAND(lit(BIN_MASK)).cast("int").alias("bin"));
+        }
+
+        return points
+                .filter(col(lngColumn).isNotNull().and(col(latColumn).isNotNull()))
+                .withColumn("bin_cell", GeoCells.cell(col(lngColumn), col(latColumn), binLevel))
+                .withColumn("tile", explode(array(zoomBins)))
+                .groupBy(col("city"), col("date"), col("tile.zoom"), col("tile.tile_id"), col("tile.bin"))
+                .agg(
+                        count(lit(1)).cast("int").alias("bin_count"),
+                        avg(durationColumn).cast("float").alias("bin_avg_hours")
+                )
+                .groupBy("city", "date", "zoom", "tile_id")
+                .agg(
+                        sum("bin_count").alias("delivery_count"),
+                        sort_array(collect_list(struct("bin", "bin_count", "bin_avg_hours"))).alias("bins")
+                )
+                .withColumn("payload", ENCODE_TILE.apply(col("bins")))
+                .withColumn("etag", md5(col("payload")))
+                .drop("bins");
+    }
+
+    private static byte[] encode(Seq<Row> rows) {
+        List<Row> bins = JavaConverters.seqAsJavaListConverter(rows).asJava();
+        int[] binIndexes = new int[bins.size()];
+        int[] counts = new int[bins.size()];
+        float[] avgHours = new float[bins.size()];
+        for (int i = 0; i < bins.size(); i++) {
+            Row bin = bins.get(i);
+            binIndexes[i] = bin.getInt(0);
+            counts[i] = bin.getInt(1);
+            avgHours[i] = bin.isNullAt(2) ? Float.NaN : bin.getFloat(2);
+        }
+        return new HeatmapTile(binIndexes, counts, avgHours).toBytes();
+    }
+}
@@ -0,0 +1,144 @@
+package com.logistics.spark.ingest;
+
+import org.apache.spark.sql.DataFrameReader;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 原始CSV数据读取
+ *
+ * 使用固定Schema读取配送/取件数据，替代 inferSchema（避免额外的一次全量扫描以及不同日期推断出不同类型）。
+ * 时间字段保持字符串（原始格式为 "MM-dd HH:mm:ss"，清洗阶段补年份后再转换）。
+ *
+ * 严格模式下，列数不符或类型无法转换的行不会被静默置为null，而是写入隔离目录并从分析数据中剔除。
+ */
+public class RawDataReader {
+
+    /** 解析失败的原始行所在列 */
+    public static final String CORRUPT_RECORD_COLUMN = "_corrupt_record";
+
+    /**
+     * CSV列裁剪开关：开启时只解析被引用的列，未引用列中的错误不会被发现。
+     * 严格模式需要完整解析每一行，由创建会话时关闭（读取是惰性的，在读取方法内临时修改会话配置无法限定作用范围）
+     */
+    public static final String CSV_COLUMN_PRUNING = "spark.sql.csv.parser.columnPruning.enabled";
+
+    /**
+     * deliver数据格式：order_id, region_id, city, courier_id, lng, lat, aoi_id, aoi_type,
+     * accept_time, accept_gps_time, accept_gps_lng, accept_gps_lat,
+     * delivery_time, delivery_gps_time, delivery_gps_lng, delivery_gps_lat, ds
+     */
+    public static final StructType DELIVER_SCHEMA = new StructType()
+            .add("order_id", DataTypes.LongType)
+            .add("region_id", DataTypes.IntegerType)
+            .add("city", DataTypes.StringType)
+            .add("courier_id", DataTypes.IntegerType)
+            .add("lng", DataTypes.DoubleType)
+            .add("lat", DataTypes.DoubleType)
+            .add("aoi_id", DataTypes.IntegerType)
+            .add("aoi_type", DataTypes.IntegerType)
+            .add("accept_time", DataTypes.StringType)
+            .add("accept_gps_time", DataTypes.StringType)
+            .add("accept_gps_lng", DataTypes.DoubleType)
+            .add("accept_gps_lat", DataTypes.DoubleType)
+            .add("delivery_time", DataTypes.StringType)
+            .add("delivery_gps_time", DataTypes.StringType)
+            .add("delivery_gps_lng", DataTypes.DoubleType)
+            .add("delivery_gps_lat", DataTypes.DoubleType)
+            .add("ds", DataTypes.IntegerType);
+
+    /**
+     * pickup数据格式：order_id, region_id, city, courier_id, accept_time, time_window_start, time_window_end,
+     * lng, lat, aoi_id, aoi_type, pickup_time, pickup_gps_time, pickup_gps_lng, pickup_gps_lat,
+     * accept_gps_time, accept_gps_lng, accept_gps_lat, ds
+     */
+    public static final StructType PICKUP_SCHEMA = new StructType()
+            .add("order_id", DataTypes.LongType)
+            .add("region_id", DataTypes.IntegerType)
+            .add("city", DataTypes.StringType)
+            .add("courier_id", DataTypes.IntegerType)
+            .add("accept_time", DataTypes.StringType)
+            .add("time_window_start", DataTypes.StringType)
+            .add("time_window_end", DataTypes.StringType)
+            .add("lng", DataTypes.DoubleType)
+            .add("lat", DataTypes.DoubleType)
+            .add("aoi_id", DataTypes.IntegerType)
+            .add("aoi_type", DataTypes.IntegerType)
+            .add("pickup_time", DataTypes.StringType)
+            .add("pickup_gps_time", DataTypes.StringType)
+            .add("pickup_gps_lng", DataTypes.DoubleType)
+            .add("pickup_gps_lat", DataTypes.DoubleType)
+            .add("accept_gps_time", DataTypes.StringType)
+            .add("accept_gps_lng", DataTypes.DoubleType)
+            .add("accept_gps_lat", DataTypes.DoubleType)
+            .add("ds", DataTypes.IntegerType);
+
+    private final SparkSession spark;
+    private final boolean strict;
+    private final String quarantinePath;
+
+    /**
+     * @param strict         是否启用严格模式（会话需以 {@link #CSV_COLUMN_PRUNING}=false 创建）
+     * @param quarantinePath 严格模式下异常行的隔离目录
+     */
+    public RawDataReader(SparkSession spark, boolean strict, String quarantinePath) {
+        this.spark = spark;
+        this.strict = strict;
+        this.quarantinePath = quarantinePath;
+    }
+
+    public Dataset<Row> readDeliver(String... paths) {
+        return read(paths, DELIVER_SCHEMA, "deliver");
+    }
+
+    public Dataset<Row> readPickup(String... paths) {
+        return read(paths, PICKUP_SCHEMA, "pickup");
+    }
+
+    private Dataset<Row> read(String[] paths, StructType schema, String dataType) {
+        if (!strict) {
+            return csvReader(schema).csv(paths);
+        }
+
+        Dataset<Row> raw = csvReader(schema.add(CORRUPT_RECORD_COLUMN, DataTypes.StringType))
+                .option("mode", "PERMISSIVE")
+                .option("columnNameOfCorruptRecord", CORRUPT_RECORD_COLUMN)
+                .csv(paths);
+
+        quarantine(raw, dataType);
+
+        return raw
+                .filter(col(CORRUPT_RECORD_COLUMN).isNull())
+                .drop(CORRUPT_RECORD_COLUMN);
+    }
+
+    private DataFrameReader csvReader(StructType schema) {
+        return spark.read()
+                .option("header", "true")
+                .schema(schema);
+    }
+
+    /**
+     * 将解析失败的原始行追加写入隔离目录：{quarantinePath}/{dataType}
+     * （需同时引用ds列，Spark不允许查询只引用corrupt record列）
+     */
+    private void quarantine(Dataset<Row> raw, String dataType) {
+        raw.filter(col(CORRUPT_RECORD_COLUMN).isNotNull())
+                .select(
+                        col("ds"),
+                        col(CORRUPT_RECORD_COLUMN).alias("raw_record"),
+                        input_file_name().alias("source_file"),
+                        current_timestamp().alias("quarantined_at")
+                )
+                .write()
+                .mode("append")
+                .parquet(quarantinePath + "/" + dataType);
+
+        System.out.println("严格模式：" + dataType + " 数据中的异常行已写入隔离目录 " + quarantinePath + "/" + dataType);
+    }
+}
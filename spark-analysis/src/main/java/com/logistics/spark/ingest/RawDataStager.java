@@ -0,0 +1,286 @@
+package com.logistics.spark.ingest;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 原始数据列式暂存
+ *
+ * 将 deliver/pickup 下新增的CSV文件只转换一次，写入按 city、ds 分区的Parquet暂存区：
+ *   {stagingPath}/deliver/city=xxx/ds=xxx/*.parquet
+ *   {stagingPath}/pickup/city=xxx/ds=xxx/*.parquet
+ * 已转换的源文件记录在清单目录 {stagingPath}/_manifest/{deliver|pickup} 中，重复运行时跳过。
+ * 分析作业只读取暂存区，利用Parquet列裁剪和分区/谓词下推。
+ *
+ * 每批新文件按以下顺序提交，任一步中断后重新运行都不会重复写入：
+ * 1. 转换结果写入批次目录 {stagingPath}/_incoming/{deliver|pickup}/batch-xxx（不在暂存区表目录下，不会被读到）
+ * 2. 写入同名清单 batch-xxx.txt，此时批次视为已提交
+ * 3. 将批次目录中的文件逐个重命名到暂存区对应的 city/ds 分区（文件名加批次前缀），再删除批次目录
+ * 运行开始时先恢复上次中断的批次：已有清单的批次补完第3步，没有清单的批次直接删除，其源文件仍视为未转换。
+ * 清单按批次写成独立文件，兼容不支持追加写的文件系统。
+ *
+ * 整个暂存过程持有排他锁 {stagingPath}/_lock（以不覆盖方式创建，创建成功即获得锁），
+ * 读清单、恢复批次、转换和发布都只由持锁的作业执行：其他作业的批次目录不会被当作未提交批次删除，
+ * 两个作业也不会基于同一份清单重复转换同一批源文件。
+ * 作业异常退出留下的锁不会自动过期，等待超时后报错，确认没有作业在运行时手动删除锁文件。
+ */
+public class RawDataStager {
+
+    private static final String MANIFEST_DIR = "_manifest";
+    private static final String INCOMING_DIR = "_incoming";
+    private static final String MANIFEST_SUFFIX = ".txt";
+    private static final String LOCK_FILE = "_lock";
+
+    /** 等待暂存区锁的最长时间和重试间隔 */
+    private static final long LOCK_TIMEOUT_MS = 30 * 60 * 1000L;
+    private static final long LOCK_RETRY_MS = 10 * 1000L;
+
+    private final SparkSession spark;
+    private final RawDataReader reader;
+    private final String stagingPath;
+
+    public RawDataStager(SparkSession spark, RawDataReader reader, String stagingPath) {
+        this.spark = spark;
+        this.reader = reader;
+        this.stagingPath = stagingPath;
+    }
+
+    /**
+     * 转换新增的配送数据文件并返回暂存区数据
+     */
+    public Dataset<Row> stageDeliver(String sourcePath) throws IOException {
+        return stage(sourcePath, "deliver");
+    }
+
+    /**
+     * 转换新增的取件数据文件并返回暂存区数据
+     */
+    public Dataset<Row> stagePickup(String sourcePath) throws IOException {
+        return stage(sourcePath, "pickup");
+    }
+
+    private Dataset<Row> stage(String sourcePath, String dataType) throws IOException {
+        Configuration hadoopConf = spark.sparkContext().hadoopConfiguration();
+        Path lock = new Path(stagingPath, LOCK_FILE);
+        acquireLock(lock, hadoopConf);
+        try {
+            stageLocked(sourcePath, dataType, hadoopConf);
+        } finally {
+            lock.getFileSystem(hadoopConf).delete(lock, false);
+        }
+        return spark.read().parquet(stagingPath + "/" + dataType);
+    }
+
+    /**
+     * 持锁执行：恢复中断的批次，按最新清单转换并发布新增源文件
+     */
+    private void stageLocked(String sourcePath, String dataType, Configuration hadoopConf) throws IOException {
+        String tablePath = stagingPath + "/" + dataType;
+        Path manifestDir = new Path(stagingPath + "/" + MANIFEST_DIR + "/" + dataType);
+        Path incomingDir = new Path(stagingPath + "/" + INCOMING_DIR + "/" + dataType);
+
+        recoverIncomingBatches(incomingDir, manifestDir, new Path(tablePath), hadoopConf);
+
+        Set<String> converted = readManifest(manifestDir, hadoopConf);
+        List<String> pending = new ArrayList<>();
+        for (String file : listSourceFiles(sourcePath, hadoopConf)) {
+            if (!converted.contains(file)) {
+                pending.add(file);
+            }
+        }
+
+        System.out.println("暂存区 " + dataType + ": 已转换文件 " + converted.size() + " 个, 新增文件 " + pending.size() + " 个");
+
+        if (!pending.isEmpty()) {
+            Dataset<Row> raw = "deliver".equals(dataType)
+                    ? reader.readDeliver(pending.toArray(new String[0]))
+                    : reader.readPickup(pending.toArray(new String[0]));
+
+            String batchName = "batch-" + System.currentTimeMillis();
+            Path batchDir = new Path(incomingDir, batchName);
+            raw.write()
+                    .mode("overwrite")
+                    .partitionBy("city", "ds")
+                    .parquet(batchDir.toString());
+
+            writeManifestBatch(manifestDir, batchName, pending, hadoopConf);
+            publishBatch(batchDir, new Path(tablePath), hadoopConf);
+            System.out.println("暂存区 " + dataType + ": 新增文件已转换为Parquet -> " + tablePath);
+        }
+
+        Path table = new Path(tablePath);
+        if (!table.getFileSystem(hadoopConf).exists(table)) {
+            throw new IllegalStateException("暂存区为空且没有可转换的源文件: " + sourcePath);
+        }
+    }
+
+    /**
+     * 以不覆盖方式创建锁文件获得暂存区排他锁，锁被其他作业持有时等待
+     */
+    private void acquireLock(Path lock, Configuration hadoopConf) throws IOException {
+        FileSystem fs = lock.getFileSystem(hadoopConf);
+        fs.mkdirs(lock.getParent());
+        long deadline = System.currentTimeMillis() + LOCK_TIMEOUT_MS;
+        while (true) {
+            try (FSDataOutputStream out = fs.create(lock, false)) {
+                out.write((spark.sparkContext().applicationId() + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            } catch (FileAlreadyExistsException e) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new IllegalStateException("等待暂存区锁超时: " + lock
+                            + "，如确认没有其他作业在使用暂存区，删除该锁文件后重试", e);
+                }
+                System.out.println("暂存区正被其他作业使用，等待锁: " + lock);
+                try {
+                    Thread.sleep(LOCK_RETRY_MS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("等待暂存区锁时被中断: " + lock, interrupted);
+                }
+            }
+        }
+    }
+
+    /**
+     * 处理上次运行中断时留下的批次目录：有清单的批次已提交，补完发布；没有清单的批次丢弃
+     */
+    private void recoverIncomingBatches(Path incomingDir, Path manifestDir, Path table,
+                                        Configuration hadoopConf) throws IOException {
+        FileSystem fs = incomingDir.getFileSystem(hadoopConf);
+        if (!fs.exists(incomingDir)) {
+            return;
+        }
+        for (FileStatus batch : fs.listStatus(incomingDir)) {
+            if (!batch.isDirectory()) {
+                continue;
+            }
+            Path batchDir = batch.getPath();
+            if (fs.exists(new Path(manifestDir, batchDir.getName() + MANIFEST_SUFFIX))) {
+                System.out.println("暂存区: 补完上次中断的批次 " + batchDir);
+                publishBatch(batchDir, table, hadoopConf);
+            } else {
+                System.out.println("暂存区: 丢弃未提交的批次 " + batchDir);
+                fs.delete(batchDir, true);
+            }
+        }
+    }
+
+    /**
+     * 将批次目录下各 city/ds 分区中的数据文件重命名到暂存区表的同名分区，完成后删除批次目录。
+     * 目标文件名以批次名为前缀，已存在时说明上次已移动过，重复执行结果不变
+     */
+    private void publishBatch(Path batchDir, Path table, Configuration hadoopConf) throws IOException {
+        FileSystem fs = batchDir.getFileSystem(hadoopConf);
+        String prefix = batchDir.getName() + "-";
+        for (FileStatus city : fs.listStatus(batchDir)) {
+            if (!city.isDirectory()) {
+                continue;
+            }
+            for (FileStatus ds : fs.listStatus(city.getPath())) {
+                if (!ds.isDirectory()) {
+                    continue;
+                }
+                Path partition = new Path(new Path(table, city.getPath().getName()), ds.getPath().getName());
+                fs.mkdirs(partition);
+                for (FileStatus file : fs.listStatus(ds.getPath())) {
+                    String fileName = file.getPath().getName();
+                    if (!file.isFile() || fileName.startsWith(".") || fileName.startsWith("_")) {
+                        continue;
+                    }
+                    Path target = new Path(partition, prefix + fileName);
+                    if (!fs.exists(target) && !fs.rename(file.getPath(), target)) {
+                        throw new IOException("发布暂存批次失败: " + file.getPath() + " -> " + target);
+                    }
+                }
+            }
+        }
+        fs.delete(batchDir, true);
+    }
+
+    /**
+     * 列出源路径（支持通配符）下的所有数据文件
+     */
+    private List<String> listSourceFiles(String sourcePath, Configuration hadoopConf) throws IOException {
+        Path pattern = new Path(sourcePath);
+        FileSystem fs = pattern.getFileSystem(hadoopConf);
+        FileStatus[] statuses = fs.globStatus(pattern);
+        List<String> files = new ArrayList<>();
+        if (statuses == null) {
+            return files;
+        }
+        for (FileStatus status : statuses) {
+            if (status.isFile()) {
+                files.add(status.getPath().toString());
+            } else {
+                for (FileStatus child : fs.listStatus(status.getPath())) {
+                    if (child.isFile() && !child.getPath().getName().startsWith(".")
+                            && !child.getPath().getName().startsWith("_")) {
+                        files.add(child.getPath().toString());
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 读取清单中已转换的源文件路径
+     */
+    private Set<String> readManifest(Path manifestDir, Configuration hadoopConf) throws IOException {
+        FileSystem fs = manifestDir.getFileSystem(hadoopConf);
+        Set<String> converted = new HashSet<>();
+        if (!fs.exists(manifestDir)) {
+            return converted;
+        }
+        for (FileStatus status : fs.listStatus(manifestDir)) {
+            if (!status.isFile() || status.getPath().getName().startsWith(".")) {
+                continue;
+            }
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(fs.open(status.getPath()), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        converted.add(line.trim());
+                    }
+                }
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * 以新文件的形式追加一批已转换的源文件路径（先写临时文件再重命名，避免读到半个清单）
+     */
+    private void writeManifestBatch(Path manifestDir, String batchName, List<String> files,
+                                    Configuration hadoopConf) throws IOException {
+        FileSystem fs = manifestDir.getFileSystem(hadoopConf);
+        fs.mkdirs(manifestDir);
+        String manifestName = batchName + MANIFEST_SUFFIX;
+        Path tmp = new Path(manifestDir, "." + manifestName + ".tmp");
+        try (FSDataOutputStream out = fs.create(tmp, true)) {
+            for (String file : files) {
+                out.write((file + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (!fs.rename(tmp, new Path(manifestDir, manifestName))) {
+            throw new IOException("写入暂存区清单失败: " + manifestDir);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.logistics.spark.monitor;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.execution.QueryExecution;
+import org.apache.spark.sql.util.QueryExecutionListener;
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 数据清洗质量指标（行数、按原因的拒绝行数、关键列空值率）
+ *
+ * 清洗规则不再逐条 filter，而是先算出每行命中的第一条规则作为拒绝原因，
+ * 在过滤前用 Dataset.observe 挂载计数，指标随第一次真正计算清洗数据的作业（填充缓存的作业）一起产出，
+ * 不需要额外的 count() 作业。观测结果通过 QueryExecutionListener 在 listener bus 上异步送达。
+ */
+public class DataQualityMetrics implements QueryExecutionListener {
+
+    private static final String REJECT_REASON = "_reject_reason";
+    private static final String OBSERVATION_PREFIX = "data_quality_";
+
+    private final Map<String, Spec> specs = new LinkedHashMap<>();
+    private final Map<String, Row> observed = new LinkedHashMap<>();
+
+    private DataQualityMetrics() {
+    }
+
+    /**
+     * 创建并注册到 SparkSession
+     */
+    public static DataQualityMetrics register(SparkSession spark) {
+        DataQualityMetrics metrics = new DataQualityMetrics();
+        spark.listenerManager().register(metrics);
+        return metrics;
+    }
+
+    /**
+     * 按顺序应用清洗规则并挂载观测指标
+     *
+     * @param name            数据集名称（delivery / pickup）
+     * @param rules           拒绝原因 -> 保留条件，条件为 false 或 null 的行被拒绝，原因取第一条不满足的规则
+     * @param nullRateColumns 统计空值率的列
+     */
+    public Dataset<Row> filter(String name, Dataset<Row> data, Map<String, Column> rules, String... nullRateColumns) {
+        List<String> reasons = new ArrayList<>(rules.keySet());
+
+        // 从最后一条规则向前嵌套，使第一条不满足的规则优先
+        Column rejectReason = lit(null).cast("string");
+        for (int i = reasons.size() - 1; i >= 0; i--) {
+            Column keep = coalesce(rules.get(reasons.get(i)), lit(false));
+            rejectReason = when(not(keep), lit(reasons.get(i))).otherwise(rejectReason);
+        }
+
+        List<Column> metrics = new ArrayList<>();
+        for (String reason : reasons) {
+            metrics.add(count(when(col(REJECT_REASON).equalTo(reason), true)).alias("rejected_" + reason));
+        }
+        for (String column : nullRateColumns) {
+            metrics.add(count(when(col(column).isNull(), true)).alias("null_" + column));
+        }
+
+        synchronized (this) {
+            specs.put(name, new Spec(reasons, Arrays.asList(nullRateColumns)));
+        }
+
+        return data
+                .withColumn(REJECT_REASON, rejectReason)
+                .observe(OBSERVATION_PREFIX + name, count(lit(1)).alias("raw_rows"), metrics.toArray(new Column[0]))
+                .filter(col(REJECT_REASON).isNull())
+                .drop(REJECT_REASON);
+    }
+
+    /**
+     * 目前已观测到的清洗后总行数（尚未观测到的数据集按0计）
+     */
+    public synchronized long totalCleanRows() {
+        long total = 0;
+        for (String name : observed.keySet()) {
+            total += cleanRows(name);
+        }
+        return total;
+    }
+
+    /**
+     * 等待所有数据集的观测结果送达，超时返回 false
+     */
+    public synchronized boolean awaitAll(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (observed.size() < specs.size()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * 将已观测到的指标上报到作业监控
+     */
+    public synchronized void report(SparkJobMonitor jobMonitor, Long jobId) {
+        for (Map.Entry<String, Spec> entry : specs.entrySet()) {
+            String name = entry.getKey();
+            Row row = observed.get(name);
+            if (row == null) {
+                System.out.println("⚠️ 未观测到数据质量指标: " + name + "（数据集未被计算）");
+                continue;
+            }
+
+            Spec spec = entry.getValue();
+            long rawRows = row.getLong(0);
+            Map<String, Long> rejected = new LinkedHashMap<>();
+            for (int i = 0; i < spec.reasons.size(); i++) {
+                rejected.put(spec.reasons.get(i), row.getLong(1 + i));
+            }
+            Map<String, Double> nullRates = new LinkedHashMap<>();
+            for (int i = 0; i < spec.nullRateColumns.size(); i++) {
+                long nulls = row.getLong(1 + spec.reasons.size() + i);
+                nullRates.put(spec.nullRateColumns.get(i), rawRows == 0 ? 0.0 : (double) nulls / rawRows);
+            }
+
+            jobMonitor.logDataQuality(jobId, name, rawRows, cleanRows(name), rejected, nullRates);
+        }
+    }
+
+    @Override
+    public void onSuccess(String funcName, QueryExecution qe, long durationNs) {
+        Map<String, Row> metrics = JavaConverters.mapAsJavaMapConverter(qe.observedMetrics()).asJava();
+        if (metrics.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (String name : specs.keySet()) {
+                // 后续读取缓存的作业会重复报告同一结果，只保留第一次
+                Row row = metrics.get(OBSERVATION_PREFIX + name);
+                if (row != null && !observed.containsKey(name)) {
+                    observed.put(name, row);
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void onFailure(String funcName, QueryExecution qe, Exception exception) {
+    }
+
+    private long cleanRows(String name) {
+        Row row = observed.get(name);
+        long rows = row.getLong(0);
+        for (int i = 0; i < specs.get(name).reasons.size(); i++) {
+            rows -= row.getLong(1 + i);
+        }
+        return rows;
+    }
+
+    private static final class Spec {
+        private final List<String> reasons;
+        private final List<String> nullRateColumns;
+
+        private Spec(List<String> reasons, List<String> nullRateColumns) {
+            this.reasons = reasons;
+            this.nullRateColumns = nullRateColumns;
+        }
+    }
+}
@@ -2,11 +2,16 @@ package com.logistics.spark.monitor;
 
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 public class SparkJobMonitor {
     private Properties mysqlProps;
     private String mysqlUrl;
+    // 各模块耗时（毫秒），按完成顺序记录，模块可能并发完成
+    private final Map<String, Long> moduleDurations = Collections.synchronizedMap(new LinkedHashMap<>());
 
     public SparkJobMonitor(Properties mysqlProps, String mysqlUrl) {
         this.mysqlProps = mysqlProps;
@@ -64,6 +69,49 @@ public class SparkJobMonitor {
         }
     }
 
+    /**
+     * 沿用后端提交作业时创建的记录开始监控（状态改为RUNNING并补充输入输出信息），记录不存在时新建
+     */
+    public Long attachJobTracking(Long jobId, String jobName, String deliverPath, String pickupPath,
+                                  String outputPath, String timeFormatUsed, Integer defaultYear) {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+            String sql = "UPDATE spark_job_logs " +
+                    "SET start_time = ?, status = ?, input_deliver_path = ?, input_pickup_path = ?, " +
+                    "output_path = ?, time_format_used = ?, default_year = ? " +
+                    "WHERE id = ?";
+
+            stmt = connection.prepareStatement(sql);
+            stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.setString(2, "RUNNING");
+            stmt.setString(3, deliverPath);
+            stmt.setString(4, pickupPath);
+            stmt.setString(5, outputPath);
+            stmt.setString(6, timeFormatUsed);
+            if (defaultYear != null) {
+                stmt.setInt(7, defaultYear);
+            } else {
+                stmt.setNull(7, Types.INTEGER);
+            }
+            stmt.setLong(8, jobId);
+
+            if (stmt.executeUpdate() > 0) {
+                System.out.println("✅ 开始监控作业: " + jobName + " (ID: " + jobId + "，由后端提交)");
+                return jobId;
+            }
+            System.err.println("⚠️ 未找到提交记录 ID: " + jobId + "，新建作业记录");
+
+        } catch (Exception e) {
+            System.err.println("❌ 沿用作业记录失败: " + e.getMessage());
+        } finally {
+            closeResources(null, stmt, connection);
+        }
+        return startJobTracking(jobName, deliverPath, pickupPath, outputPath, timeFormatUsed, defaultYear);
+    }
+
     /**
      * 完成作业监控
      */
@@ -80,6 +128,9 @@ public class SparkJobMonitor {
 
         try {
             connection = getConnection();
+            // 建表、加列会隐式提交，须在开启事务之前
+            ensureDsRangeColumns(connection);
+            ensureEventTable(connection);
 
             // 获取开始时间计算执行时间
             String selectSql = "SELECT start_time FROM spark_job_logs WHERE id = ?";
@@ -97,7 +148,8 @@ public class SparkJobMonitor {
                 }
             }
 
-            // 更新作业状态
+            // 更新作业状态和写入完成事件在同一事务中，后端只会看到两者都成功或都没有
+            connection.setAutoCommit(false);
             String updateSql = "UPDATE spark_job_logs " +
                     "SET end_time = ?, status = ?, processed_records = ?, error_message = ?, execution_time_seconds = ? " +
                     "WHERE id = ?";
@@ -115,23 +167,68 @@ public class SparkJobMonitor {
             updateStmt.setLong(6, jobId);
 
             int affectedRows = updateStmt.executeUpdate();
+            if (affectedRows > 0) {
+                publishCompletionEvent(connection, jobId);
+            }
+            connection.commit();
+
             if (affectedRows > 0) {
                 String status = success ? "SUCCESS" : "FAILED";
                 String emoji = success ? "✅" : "❌";
                 System.out.println(emoji + " 作业监控完成 - ID: " + jobId + ", 状态: " + status +
                         ", 处理记录: " + processedRecords +
                         (executionSeconds != null ? ", 执行时间: " + executionSeconds + "秒" : ""));
+                printModuleDurations();
             }
 
         } catch (Exception e) {
             System.err.println("❌ 完成作业监控失败: " + e.getMessage());
             e.printStackTrace();
+            rollback(connection);
         } finally {
             closeResources(rs, selectStmt, connection);
             closeResources(null, updateStmt, null);
         }
     }
 
+    /**
+     * 写入作业完成事件（发件箱）：后端轮询 spark_job_events，据此失效分析结果的缓存并预热看板常用查询
+     */
+    private void publishCompletionEvent(Connection connection, Long jobId) throws SQLException {
+        String sql = "INSERT INTO spark_job_events (job_log_id, event_type, status, ds_start, ds_end, created_at) " +
+                "SELECT id, 'JOB_COMPLETED', status, ds_start, ds_end, ? FROM spark_job_logs WHERE id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.setLong(2, jobId);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void ensureEventTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS spark_job_events (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "job_log_id BIGINT NOT NULL, " +
+                    "event_type VARCHAR(32) NOT NULL, " +
+                    "status VARCHAR(16) NOT NULL, " +
+                    "ds_start INT NULL, " +
+                    "ds_end INT NULL, " +
+                    "created_at DATETIME NOT NULL, " +
+                    "processed_at DATETIME NULL, " +
+                    "KEY idx_spark_job_events_pending (processed_at, id))");
+        }
+    }
+
+    private void rollback(Connection connection) {
+        try {
+            if (connection != null && !connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            System.err.println("回滚作业监控事务失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 更新作业进度
      */
@@ -171,6 +268,231 @@ public class SparkJobMonitor {
         updateJobProgress(jobId, moduleProcessedRecords, "完成模块: " + moduleName);
     }
 
+    /**
+     * 记录分析模块完成情况及模块耗时，耗时写入 spark_job_modules（每个作业每个模块一行，重复记录时覆盖）
+     */
+    public void logModuleCompletion(Long jobId, String moduleName, long moduleProcessedRecords, long durationMillis) {
+        moduleDurations.put(moduleName, durationMillis);
+        if (jobId == null) return;
+
+        System.out.println("✅ 模块完成: " + moduleName + " (处理记录: " + moduleProcessedRecords +
+                ", 耗时: " + durationMillis + "ms)");
+        recordModuleDuration(jobId, moduleName, moduleProcessedRecords, durationMillis);
+        updateJobProgress(jobId, moduleProcessedRecords, "完成模块: " + moduleName);
+    }
+
+    private void recordModuleDuration(Long jobId, String moduleName, long processedRecords, long durationMillis) {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+            ensureModuleTable(connection);
+            String sql = "INSERT INTO spark_job_modules (job_log_id, module_name, duration_ms, processed_records, completed_at) " +
+                    "VALUES (?, ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE duration_ms = VALUES(duration_ms), " +
+                    "processed_records = VALUES(processed_records), completed_at = VALUES(completed_at)";
+            stmt = connection.prepareStatement(sql);
+            stmt.setLong(1, jobId);
+            stmt.setString(2, moduleName);
+            stmt.setLong(3, durationMillis);
+            stmt.setLong(4, processedRecords);
+            stmt.setTimestamp(5, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.executeUpdate();
+
+        } catch (Exception e) {
+            System.err.println("⚠️ 记录模块耗时失败: " + e.getMessage());
+        } finally {
+            closeResources(null, stmt, connection);
+        }
+    }
+
+    private void ensureModuleTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS spark_job_modules (" +
+                    "job_log_id BIGINT NOT NULL, " +
+                    "module_name VARCHAR(64) NOT NULL, " +
+                    "duration_ms BIGINT NOT NULL, " +
+                    "processed_records BIGINT NULL, " +
+                    "completed_at DATETIME NOT NULL, " +
+                    "PRIMARY KEY (job_log_id, module_name))");
+        }
+    }
+
+    /**
+     * 记录数据清洗质量指标（原始行数、清洗后行数、按原因的拒绝行数、空值率），
+     * 写入 spark_job_data_quality（每个作业每个数据集每项指标一行，重复记录时覆盖）
+     */
+    public void logDataQuality(Long jobId, String dataset, long rawRows, long cleanRows,
+                               Map<String, Long> rejectedRows, Map<String, Double> nullRates) {
+        System.out.println("🧹 数据质量 [" + dataset + "] 原始: " + rawRows + ", 清洗后: " + cleanRows +
+                ", 拒绝: " + (rawRows - cleanRows));
+        for (Map.Entry<String, Long> entry : rejectedRows.entrySet()) {
+            if (entry.getValue() > 0) {
+                System.out.println("  拒绝原因 " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Double> entry : nullRates.entrySet()) {
+            if (entry.getValue() > 0) {
+                System.out.println("  空值率 " + entry.getKey() + ": " + String.format("%.2f%%", entry.getValue() * 100));
+            }
+        }
+        if (jobId == null) return;
+
+        recordDataQuality(jobId, dataset, rawRows, cleanRows, rejectedRows, nullRates);
+    }
+
+    private void recordDataQuality(Long jobId, String dataset, long rawRows, long cleanRows,
+                                   Map<String, Long> rejectedRows, Map<String, Double> nullRates) {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+            ensureDataQualityTable(connection);
+            String sql = "INSERT INTO spark_job_data_quality " +
+                    "(job_log_id, dataset, metric_type, metric_name, metric_value, recorded_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE metric_value = VALUES(metric_value), recorded_at = VALUES(recorded_at)";
+            stmt = connection.prepareStatement(sql);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            addDataQualityRow(stmt, jobId, dataset, "rows", "raw", rawRows, now);
+            addDataQualityRow(stmt, jobId, dataset, "rows", "clean", cleanRows, now);
+            for (Map.Entry<String, Long> entry : rejectedRows.entrySet()) {
+                addDataQualityRow(stmt, jobId, dataset, "rejected", entry.getKey(), entry.getValue(), now);
+            }
+            for (Map.Entry<String, Double> entry : nullRates.entrySet()) {
+                addDataQualityRow(stmt, jobId, dataset, "null_rate", entry.getKey(), entry.getValue(), now);
+            }
+            stmt.executeBatch();
+
+        } catch (Exception e) {
+            System.err.println("⚠️ 记录数据质量指标失败: " + e.getMessage());
+        } finally {
+            closeResources(null, stmt, connection);
+        }
+    }
+
+    private void addDataQualityRow(PreparedStatement stmt, Long jobId, String dataset, String metricType,
+                                   String metricName, double value, Timestamp recordedAt) throws SQLException {
+        stmt.setLong(1, jobId);
+        stmt.setString(2, dataset);
+        stmt.setString(3, metricType);
+        stmt.setString(4, metricName);
+        stmt.setDouble(5, value);
+        stmt.setTimestamp(6, recordedAt);
+        stmt.addBatch();
+    }
+
+    /**
+     * metric_type 为 rows（metric_name 为 raw/clean）、rejected（按拒绝原因）或 null_rate（按列）
+     */
+    private void ensureDataQualityTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS spark_job_data_quality (" +
+                    "job_log_id BIGINT NOT NULL, " +
+                    "dataset VARCHAR(64) NOT NULL, " +
+                    "metric_type VARCHAR(16) NOT NULL, " +
+                    "metric_name VARCHAR(64) NOT NULL, " +
+                    "metric_value DOUBLE NOT NULL, " +
+                    "recorded_at DATETIME NOT NULL, " +
+                    "PRIMARY KEY (job_log_id, dataset, metric_type, metric_name))");
+        }
+    }
+
+    /**
+     * 获取各模块耗时（毫秒）
+     */
+    public Map<String, Long> getModuleDurations() {
+        synchronized (moduleDurations) {
+            return new LinkedHashMap<>(moduleDurations);
+        }
+    }
+
+    /**
+     * 输出各模块耗时汇总
+     */
+    private void printModuleDurations() {
+        Map<String, Long> durations = getModuleDurations();
+        if (durations.isEmpty()) return;
+
+        System.out.println("⏱️ 模块耗时汇总:");
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            System.out.println("  " + entry.getKey() + ": " + entry.getValue() + "ms");
+        }
+    }
+
+    /**
+     * 查询最近一次成功运行处理到的最大ds（增量模式的起点），没有记录时返回null
+     */
+    public Integer findLastProcessedDs() {
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+
+        try {
+            connection = getConnection();
+            ensureDsRangeColumns(connection);
+            String sql = "SELECT MAX(ds_end) FROM spark_job_logs WHERE status = 'SUCCESS' AND ds_end IS NOT NULL";
+            stmt = connection.prepareStatement(sql);
+            rs = stmt.executeQuery();
+            if (rs.next()) {
+                int lastDs = rs.getInt(1);
+                return rs.wasNull() ? null : lastDs;
+            }
+            return null;
+
+        } catch (Exception e) {
+            System.err.println("⚠️ 查询上次处理的ds失败: " + e.getMessage());
+            return null;
+        } finally {
+            closeResources(rs, stmt, connection);
+        }
+    }
+
+    /**
+     * 记录本次作业处理的ds范围，作业成功后作为下次增量运行的起点
+     */
+    public void recordProcessedDsRange(Long jobId, int dsStart, int dsEnd) {
+        if (jobId == null) return;
+
+        Connection connection = null;
+        PreparedStatement stmt = null;
+
+        try {
+            connection = getConnection();
+            ensureDsRangeColumns(connection);
+            String sql = "UPDATE spark_job_logs SET ds_start = ?, ds_end = ? WHERE id = ?";
+            stmt = connection.prepareStatement(sql);
+            stmt.setInt(1, dsStart);
+            stmt.setInt(2, dsEnd);
+            stmt.setLong(3, jobId);
+            stmt.executeUpdate();
+            System.out.println("📅 作业处理ds范围 - ID: " + jobId + ", ds: " + dsStart + " ~ " + dsEnd);
+
+        } catch (Exception e) {
+            System.err.println("⚠️ 记录作业ds范围失败: " + e.getMessage());
+        } finally {
+            closeResources(null, stmt, connection);
+        }
+    }
+
+    /**
+     * 旧版本的 spark_job_logs 表没有 ds_start / ds_end 列，首次使用时补齐
+     */
+    private void ensureDsRangeColumns(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, "spark_job_logs", "ds_end")) {
+            if (columns.next()) {
+                return;
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE spark_job_logs ADD COLUMN ds_start INT NULL, ADD COLUMN ds_end INT NULL");
+            System.out.println("✅ spark_job_logs 已添加 ds_start / ds_end 列");
+        }
+    }
+
     /**
      * 记录模块开始
      */
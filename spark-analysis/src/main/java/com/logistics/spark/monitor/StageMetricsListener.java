@@ -0,0 +1,335 @@
+package com.logistics.spark.monitor;
+
+import com.logistics.spark.plan.ModuleScheduler;
+import org.apache.spark.executor.TaskMetrics;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerStageCompleted;
+import org.apache.spark.scheduler.SparkListenerStageSubmitted;
+import org.apache.spark.scheduler.SparkListenerTaskEnd;
+import org.apache.spark.scheduler.StageInfo;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stage级运行指标采集
+ *
+ * 按stage汇总task指标（shuffle读写、溢写、GC、executor运行时间、task耗时最大值/中位数），
+ * 并通过作业本地属性 logistics.module 归属到分析模块，写入 spark_stage_metrics 表，
+ * 后端可按模块、按stage对比两次运行，定位回归发生在哪个模块的哪个stage。
+ *
+ * 回调在Spark listener bus线程上执行，数据库写入交给单独的写入线程，不阻塞事件处理。
+ */
+public class StageMetricsListener extends SparkListener {
+
+    /** 不属于任何分析模块的stage（数据加载、增量范围判断等） */
+    public static final String NO_MODULE = "main";
+
+    private static final String INSERT_SQL = "INSERT INTO spark_stage_metrics " +
+            "(job_log_id, module_name, stage_id, stage_attempt, stage_name, status, num_tasks, " +
+            "submission_time, completion_time, duration_ms, executor_run_time_ms, executor_cpu_time_ms, " +
+            "jvm_gc_time_ms, shuffle_read_bytes, shuffle_read_records, shuffle_write_bytes, shuffle_write_records, " +
+            "memory_spilled_bytes, disk_spilled_bytes, input_bytes, output_bytes, " +
+            "task_time_max_ms, task_time_median_ms, task_skew_ratio, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final Long jobLogId;
+    private final String mysqlUrl;
+    private final Properties mysqlProps;
+
+    private final Map<String, StageAccumulator> runningStages = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<StageRecord> pending = new ConcurrentLinkedQueue<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stage-metrics-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean tableReady;
+    private volatile long writtenStages;
+
+    /**
+     * @param jobLogId spark_job_logs 中本次作业的ID
+     */
+    public StageMetricsListener(Long jobLogId, String mysqlUrl, Properties mysqlProps) {
+        this.jobLogId = jobLogId;
+        this.mysqlUrl = mysqlUrl;
+        this.mysqlProps = mysqlProps;
+    }
+
+    @Override
+    public void onStageSubmitted(SparkListenerStageSubmitted stageSubmitted) {
+        StageInfo stage = stageSubmitted.stageInfo();
+        Properties properties = stageSubmitted.properties();
+        String module = properties == null ? null : properties.getProperty(ModuleScheduler.MODULE_PROPERTY);
+        runningStages.put(key(stage.stageId(), stage.attemptNumber()),
+                new StageAccumulator(module == null ? NO_MODULE : module));
+    }
+
+    @Override
+    public void onTaskEnd(SparkListenerTaskEnd taskEnd) {
+        StageAccumulator stage = runningStages.get(key(taskEnd.stageId(), taskEnd.stageAttemptId()));
+        TaskMetrics metrics = taskEnd.taskMetrics();
+        if (stage != null && metrics != null) {
+            stage.add(metrics);
+        }
+    }
+
+    @Override
+    public void onStageCompleted(SparkListenerStageCompleted stageCompleted) {
+        StageInfo stage = stageCompleted.stageInfo();
+        StageAccumulator accumulator = runningStages.remove(key(stage.stageId(), stage.attemptNumber()));
+        if (accumulator == null) {
+            return;
+        }
+
+        pending.add(accumulator.toRecord(stage));
+        writer.submit(this::flush);
+    }
+
+    /**
+     * 等待已完成stage的指标写入数据库（应在SparkContext停止后调用，此时listener bus中的事件已全部处理）
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("⚠️ Stage指标写入超时，未写入: " + pending.size() + " 条");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("📈 Stage指标已写入: " + writtenStages + " 条 (作业ID: " + jobLogId + ")");
+    }
+
+    /**
+     * 批量写入当前积压的stage指标
+     */
+    private void flush() {
+        List<StageRecord> batch = new ArrayList<>();
+        StageRecord record;
+        while ((record = pending.poll()) != null) {
+            batch.add(record);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try (Connection connection = DriverManager.getConnection(mysqlUrl, mysqlProps)) {
+            ensureTable(connection);
+            try (PreparedStatement stmt = connection.prepareStatement(INSERT_SQL)) {
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                for (StageRecord r : batch) {
+                    int i = 1;
+                    stmt.setLong(i++, jobLogId);
+                    stmt.setString(i++, r.module);
+                    stmt.setInt(i++, r.stageId);
+                    stmt.setInt(i++, r.stageAttempt);
+                    stmt.setString(i++, r.stageName);
+                    stmt.setString(i++, r.status);
+                    stmt.setInt(i++, r.numTasks);
+                    setTimestamp(stmt, i++, r.submissionTime);
+                    setTimestamp(stmt, i++, r.completionTime);
+                    setLong(stmt, i++, r.durationMs);
+                    stmt.setLong(i++, r.executorRunTimeMs);
+                    stmt.setLong(i++, r.executorCpuTimeMs);
+                    stmt.setLong(i++, r.jvmGcTimeMs);
+                    stmt.setLong(i++, r.shuffleReadBytes);
+                    stmt.setLong(i++, r.shuffleReadRecords);
+                    stmt.setLong(i++, r.shuffleWriteBytes);
+                    stmt.setLong(i++, r.shuffleWriteRecords);
+                    stmt.setLong(i++, r.memorySpilledBytes);
+                    stmt.setLong(i++, r.diskSpilledBytes);
+                    stmt.setLong(i++, r.inputBytes);
+                    stmt.setLong(i++, r.outputBytes);
+                    stmt.setLong(i++, r.taskTimeMaxMs);
+                    stmt.setLong(i++, r.taskTimeMedianMs);
+                    if (r.taskTimeMedianMs > 0) {
+                        stmt.setDouble(i++, (double) r.taskTimeMaxMs / r.taskTimeMedianMs);
+                    } else {
+                        stmt.setNull(i++, Types.DOUBLE);
+                    }
+                    stmt.setTimestamp(i, now);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                writtenStages += batch.size();
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ 写入Stage指标失败（" + batch.size() + " 条）: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 首次写入时建表
+     */
+    private void ensureTable(Connection connection) throws SQLException {
+        if (tableReady) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS spark_stage_metrics (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "job_log_id BIGINT NOT NULL, " +
+                    "module_name VARCHAR(64) NOT NULL, " +
+                    "stage_id INT NOT NULL, " +
+                    "stage_attempt INT NOT NULL, " +
+                    "stage_name VARCHAR(255), " +
+                    "status VARCHAR(16), " +
+                    "num_tasks INT, " +
+                    "submission_time DATETIME(3) NULL, " +
+                    "completion_time DATETIME(3) NULL, " +
+                    "duration_ms BIGINT NULL, " +
+                    "executor_run_time_ms BIGINT, " +
+                    "executor_cpu_time_ms BIGINT, " +
+                    "jvm_gc_time_ms BIGINT, " +
+                    "shuffle_read_bytes BIGINT, " +
+                    "shuffle_read_records BIGINT, " +
+                    "shuffle_write_bytes BIGINT, " +
+                    "shuffle_write_records BIGINT, " +
+                    "memory_spilled_bytes BIGINT, " +
+                    "disk_spilled_bytes BIGINT, " +
+                    "input_bytes BIGINT, " +
+                    "output_bytes BIGINT, " +
+                    "task_time_max_ms BIGINT, " +
+                    "task_time_median_ms BIGINT, " +
+                    "task_skew_ratio DOUBLE NULL, " +
+                    "created_at DATETIME, " +
+                    "INDEX idx_job_module (job_log_id, module_name)" +
+                    ")");
+        }
+        tableReady = true;
+    }
+
+    private static void setTimestamp(PreparedStatement stmt, int index, Long millis) throws SQLException {
+        if (millis != null) {
+            stmt.setTimestamp(index, new Timestamp(millis));
+        } else {
+            stmt.setNull(index, Types.TIMESTAMP);
+        }
+    }
+
+    private static void setLong(PreparedStatement stmt, int index, Long value) throws SQLException {
+        if (value != null) {
+            stmt.setLong(index, value);
+        } else {
+            stmt.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private static String key(int stageId, int attempt) {
+        return stageId + "." + attempt;
+    }
+
+    /**
+     * 单个stage attempt 运行中的task指标累加（只在listener bus线程上更新）
+     */
+    private static final class StageAccumulator {
+        private final String module;
+        private long executorRunTime;
+        private long executorCpuTimeNanos;
+        private long jvmGcTime;
+        private long shuffleReadBytes;
+        private long shuffleReadRecords;
+        private long shuffleWriteBytes;
+        private long shuffleWriteRecords;
+        private long memorySpilled;
+        private long diskSpilled;
+        private long inputBytes;
+        private long outputBytes;
+        private long[] taskTimes = new long[16];
+        private int taskCount;
+
+        private StageAccumulator(String module) {
+            this.module = module;
+        }
+
+        private void add(TaskMetrics metrics) {
+            executorRunTime += metrics.executorRunTime();
+            executorCpuTimeNanos += metrics.executorCpuTime();
+            jvmGcTime += metrics.jvmGCTime();
+            shuffleReadBytes += metrics.shuffleReadMetrics().totalBytesRead();
+            shuffleReadRecords += metrics.shuffleReadMetrics().recordsRead();
+            shuffleWriteBytes += metrics.shuffleWriteMetrics().bytesWritten();
+            shuffleWriteRecords += metrics.shuffleWriteMetrics().recordsWritten();
+            memorySpilled += metrics.memoryBytesSpilled();
+            diskSpilled += metrics.diskBytesSpilled();
+            inputBytes += metrics.inputMetrics().bytesRead();
+            outputBytes += metrics.outputMetrics().bytesWritten();
+
+            if (taskCount == taskTimes.length) {
+                taskTimes = Arrays.copyOf(taskTimes, taskCount * 2);
+            }
+            taskTimes[taskCount++] = metrics.executorRunTime();
+        }
+
+        private StageRecord toRecord(StageInfo stage) {
+            StageRecord record = new StageRecord();
+            record.module = module;
+            record.stageId = stage.stageId();
+            record.stageAttempt = stage.attemptNumber();
+            record.stageName = stage.name().length() > 255 ? stage.name().substring(0, 255) : stage.name();
+            record.status = stage.failureReason().isDefined() ? "FAILED" : "SUCCESS";
+            record.numTasks = stage.numTasks();
+            record.submissionTime = stage.submissionTime().isDefined() ? (Long) stage.submissionTime().get() : null;
+            record.completionTime = stage.completionTime().isDefined() ? (Long) stage.completionTime().get() : null;
+            record.durationMs = record.submissionTime != null && record.completionTime != null
+                    ? record.completionTime - record.submissionTime : null;
+            record.executorRunTimeMs = executorRunTime;
+            record.executorCpuTimeMs = TimeUnit.NANOSECONDS.toMillis(executorCpuTimeNanos);
+            record.jvmGcTimeMs = jvmGcTime;
+            record.shuffleReadBytes = shuffleReadBytes;
+            record.shuffleReadRecords = shuffleReadRecords;
+            record.shuffleWriteBytes = shuffleWriteBytes;
+            record.shuffleWriteRecords = shuffleWriteRecords;
+            record.memorySpilledBytes = memorySpilled;
+            record.diskSpilledBytes = diskSpilled;
+            record.inputBytes = inputBytes;
+            record.outputBytes = outputBytes;
+
+            if (taskCount > 0) {
+                long[] sorted = Arrays.copyOf(taskTimes, taskCount);
+                Arrays.sort(sorted);
+                record.taskTimeMaxMs = sorted[taskCount - 1];
+                record.taskTimeMedianMs = sorted[(taskCount - 1) / 2];
+            }
+            return record;
+        }
+    }
+
+    /**
+     * 已完成stage的指标（写入 spark_stage_metrics 的一行）
+     */
+    private static final class StageRecord {
+        private String module;
+        private int stageId;
+        private int stageAttempt;
+        private String stageName;
+        private String status;
+        private int numTasks;
+        private Long submissionTime;
+        private Long completionTime;
+        private Long durationMs;
+        private long executorRunTimeMs;
+        private long executorCpuTimeMs;
+        private long jvmGcTimeMs;
+        private long shuffleReadBytes;
+        private long shuffleReadRecords;
+        private long shuffleWriteBytes;
+        private long shuffleWriteRecords;
+        private long memorySpilledBytes;
+        private long diskSpilledBytes;
+        private long inputBytes;
+        private long outputBytes;
+        private long taskTimeMaxMs;
+        private long taskTimeMedianMs;
+    }
+}
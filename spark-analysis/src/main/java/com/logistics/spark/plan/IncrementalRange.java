@@ -0,0 +1,132 @@
+package com.logistics.spark.plan;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 增量运行的 ds 分区范围（闭区间）
+ *
+ * 范围来源：
+ * 1. 显式指定 spark.logistics.incremental.startDs / endDs
+ * 2. 未指定时，取上次成功运行记录的最大 ds 之后、当前数据中已有的所有 ds
+ *
+ * 输出和MySQL按 date（由配送/取件时间得出）替换，而订单的 date 不一定等于它所在的 ds。
+ * {@link #withAffectedDates} 找出范围内订单涉及的所有 date，并补读这些 date 落在范围外 ds 中的订单，
+ * 被替换的每个 date 都由完整数据重算。
+ */
+public class IncrementalRange {
+
+    private final int startDs;
+    private final int endDs;
+    /** 范围内订单涉及的 date，未扩展时为null */
+    private final List<Date> affectedDates;
+    /** 包含上述 date 订单的所有 ds（含范围本身） */
+    private final List<Integer> feedingDs;
+
+    public IncrementalRange(int startDs, int endDs) {
+        this(startDs, endDs, null, null);
+    }
+
+    private IncrementalRange(int startDs, int endDs, List<Date> affectedDates, List<Integer> feedingDs) {
+        this.startDs = startDs;
+        this.endDs = endDs;
+        this.affectedDates = affectedDates;
+        this.feedingDs = feedingDs;
+    }
+
+    /**
+     * 解析本次需要处理的 ds 范围，没有新分区时返回 null
+     *
+     * @param startDs        显式起始ds，可为null
+     * @param endDs          显式结束ds，可为null
+     * @param lastSuccessDs  上次成功运行处理到的ds，可为null（首次运行）
+     */
+    public static IncrementalRange resolve(Integer startDs, Integer endDs, Integer lastSuccessDs,
+                                           Dataset<Row> deliverRaw, Dataset<Row> pickupRaw) {
+        if (startDs != null && endDs != null) {
+            return new IncrementalRange(startDs, endDs);
+        }
+
+        int lowerBound = startDs != null ? startDs : (lastSuccessDs != null ? lastSuccessDs + 1 : Integer.MIN_VALUE);
+        Row bounds = deliverRaw.select("ds")
+                .union(pickupRaw.select("ds"))
+                .filter(col("ds").geq(lowerBound))
+                .agg(min("ds"), max("ds"))
+                .first();
+        if (bounds.isNullAt(0)) {
+            return null;
+        }
+
+        int resolvedStart = startDs != null ? startDs : bounds.getInt(0);
+        int resolvedEnd = endDs != null ? endDs : bounds.getInt(1);
+        return new IncrementalRange(resolvedStart, resolvedEnd);
+    }
+
+    /**
+     * 按输出的 date 扩展读取范围
+     *
+     * @param dsDates 全部原始数据的 (ds, date) 两列，配送和取件数据分别按各自的时间列得出 date 后合并
+     */
+    public IncrementalRange withAffectedDates(Dataset<Row> dsDates) {
+        List<Date> dates = new ArrayList<>();
+        for (Row row : dsDates.filter(col("ds").between(startDs, endDs).and(col("date").isNotNull()))
+                .select("date").distinct().collectAsList()) {
+            dates.add(row.getDate(0));
+        }
+        Collections.sort(dates);
+
+        List<Integer> ds = new ArrayList<>();
+        if (!dates.isEmpty()) {
+            for (Row row : dsDates.filter(col("date").isin(dates.toArray()))
+                    .select("ds").distinct().collectAsList()) {
+                ds.add(row.getInt(0));
+            }
+        }
+        Collections.sort(ds);
+        return new IncrementalRange(startDs, endDs, dates, ds);
+    }
+
+    /**
+     * 只保留范围内的 ds 分区（读取Parquet暂存区时为分区裁剪）
+     */
+    public Dataset<Row> filter(Dataset<Row> raw) {
+        return raw.filter(col("ds").between(startDs, endDs));
+    }
+
+    /**
+     * 保留范围内的 ds 分区，以及其他 ds 中 date 受影响的订单（补读的 ds 中其他日期的订单不参与本次计算）
+     *
+     * @param date 由原始时间列得出的日期，与清洗后的 date 列一致
+     */
+    public Dataset<Row> filter(Dataset<Row> raw, Column date) {
+        if (feedingDs == null || feedingDs.isEmpty()) {
+            return filter(raw);
+        }
+        return raw.filter(col("ds").between(startDs, endDs)
+                .or(col("ds").isin(feedingDs.toArray()).and(date.isin(affectedDates.toArray()))));
+    }
+
+    public int getStartDs() {
+        return startDs;
+    }
+
+    public int getEndDs() {
+        return endDs;
+    }
+
+    @Override
+    public String toString() {
+        if (affectedDates == null) {
+            return "[" + startDs + ", " + endDs + "]";
+        }
+        return "[" + startDs + ", " + endDs + "]，涉及日期 " + affectedDates + "，读取ds " + feedingDs;
+    }
+}
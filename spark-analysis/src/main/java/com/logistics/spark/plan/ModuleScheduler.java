@@ -0,0 +1,155 @@
+package com.logistics.spark.plan;
+
+import org.apache.spark.SparkContext;
+import org.apache.spark.sql.SparkSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分析模块调度器
+ *
+ * 并发度为1时按提交顺序在当前线程依次执行；
+ * 并发度大于1时由Driver端固定大小线程池并行提交各模块的Spark作业，
+ * 每个模块使用独立的FAIR调度池和作业组，某个模块失败时取消其余模块。
+ * 调度池名称即模块标识（如 time_efficiency），可在 spark.scheduler.allocation.file 中配置权重和最小份额。
+ */
+public class ModuleScheduler {
+
+    /** 作业本地属性：当前分析模块名称 */
+    public static final String MODULE_PROPERTY = "logistics.module";
+
+    private static final String POOL_PROPERTY = "spark.scheduler.pool";
+
+    /**
+     * 分析模块
+     */
+    public interface Module {
+        void run() throws Exception;
+    }
+
+    /**
+     * 模块完成回调
+     */
+    public interface CompletionListener {
+        void onModuleCompleted(String moduleName, long durationMillis);
+    }
+
+    private static class ModuleTask {
+        final String id;
+        final String name;
+        final Module module;
+
+        ModuleTask(String id, String name, Module module) {
+            this.id = id;
+            this.name = name;
+            this.module = module;
+        }
+    }
+
+    private final SparkSession spark;
+    private final int parallelism;
+    private final List<ModuleTask> tasks = new ArrayList<>();
+
+    public ModuleScheduler(SparkSession spark, int parallelism) {
+        this.spark = spark;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 登记分析模块（按登记顺序提交）
+     *
+     * @param moduleId   模块标识，用作作业组和FAIR调度池名称
+     * @param moduleName 模块名称，用于日志和监控
+     */
+    public void submit(String moduleId, String moduleName, Module module) {
+        tasks.add(new ModuleTask(moduleId, moduleName, module));
+    }
+
+    /**
+     * 执行所有已登记的模块，任一模块失败时抛出其异常
+     */
+    public void runAll(CompletionListener listener) throws Exception {
+        if (parallelism == 1 || tasks.size() <= 1) {
+            for (ModuleTask task : tasks) {
+                runModule(task, listener);
+            }
+            return;
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()), runnable -> {
+            Thread thread = new Thread(runnable, "analysis-module-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorCompletionService<String> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<String>> futures = new ArrayList<>();
+        System.out.println("并发执行分析模块，并发度: " + Math.min(parallelism, tasks.size()));
+
+        try {
+            for (ModuleTask task : tasks) {
+                futures.add(completionService.submit(() -> {
+                    runModule(task, listener);
+                    return task.name;
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    cancelRemaining(futures);
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 在当前线程执行单个模块，设置调度池、作业组并统计耗时
+     */
+    private void runModule(ModuleTask task, CompletionListener listener) throws Exception {
+        SparkContext sc = spark.sparkContext();
+        sc.setJobGroup(task.id, task.name, true);
+        sc.setLocalProperty(MODULE_PROPERTY, task.name);
+        if (parallelism > 1) {
+            sc.setLocalProperty(POOL_PROPERTY, task.id);
+        }
+
+        System.out.println("执行" + task.name + "...");
+        long start = System.currentTimeMillis();
+        try {
+            task.module.run();
+        } finally {
+            sc.clearJobGroup();
+            sc.setLocalProperty(MODULE_PROPERTY, null);
+            sc.setLocalProperty(POOL_PROPERTY, null);
+        }
+        listener.onModuleCompleted(task.name, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 取消其余仍在执行或等待中的模块
+     */
+    private void cancelRemaining(List<Future<String>> futures) {
+        for (Future<String> future : futures) {
+            future.cancel(true);
+        }
+        for (ModuleTask task : tasks) {
+            spark.sparkContext().cancelJobGroup(task.id);
+        }
+    }
+}
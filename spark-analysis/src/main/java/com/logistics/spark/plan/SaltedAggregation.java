@@ -0,0 +1,185 @@
+package com.logistics.spark.plan;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.functions;
+import scala.collection.JavaConverters;
+import scala.collection.Seq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 热点键加盐两阶段聚合
+ *
+ * 没有热点键时等价于 data.groupBy(keys).agg(...)。
+ * 有热点键时只对热点键的行加盐（pmod(xxhash64(盐值列), 盐值个数)）：
+ * 第一阶段按 键+盐 做部分聚合，把一个热点键分散到多个task；第二阶段按键合并部分结果。
+ * 非热点键仍走单阶段聚合，两部分结果按列名合并，输出与单阶段聚合一致。
+ *
+ * 每个聚合指标用 Agg 描述单阶段、部分聚合与合并三种写法；
+ * 精确去重只有在盐值列就是去重列时才能把各盐值的结果相加，其余精确去重列对热点键单独去重后关联回来。
+ */
+public final class SaltedAggregation {
+
+    private static final String SALT = "_salt";
+    private static final String HEAVY = "_heavy";
+
+    private SaltedAggregation() {
+    }
+
+    /**
+     * 可拆分为两阶段计算的聚合指标
+     */
+    public static final class Agg {
+
+        private final String alias;
+        private final Column direct;
+        private final Column[] partial;
+        private final Column merge;
+        private final String distinctColumn;
+
+        private Agg(String alias, Column direct, Column[] partial, Column merge, String distinctColumn) {
+            this.alias = alias;
+            this.direct = direct;
+            this.partial = partial;
+            this.merge = merge;
+            this.distinctColumn = distinctColumn;
+        }
+
+        public static Agg count(String column, String alias) {
+            return new Agg(alias, functions.count(column).alias(alias),
+                    new Column[]{functions.count(column).alias(alias)},
+                    functions.sum(alias).alias(alias), null);
+        }
+
+        public static Agg sum(Column value, String alias) {
+            return new Agg(alias, functions.sum(value).alias(alias),
+                    new Column[]{functions.sum(value).alias(alias)},
+                    functions.sum(alias).alias(alias), null);
+        }
+
+        public static Agg sum(String column, String alias) {
+            return sum(col(column), alias);
+        }
+
+        public static Agg max(String column, String alias) {
+            return new Agg(alias, functions.max(column).alias(alias),
+                    new Column[]{functions.max(column).alias(alias)},
+                    functions.max(alias).alias(alias), null);
+        }
+
+        public static Agg avg(String column, String alias) {
+            String sumAlias = alias + "__sum";
+            String countAlias = alias + "__count";
+            return new Agg(alias, functions.avg(column).alias(alias),
+                    new Column[]{functions.sum(column).alias(sumAlias), functions.count(column).alias(countAlias)},
+                    functions.sum(sumAlias).divide(functions.sum(countAlias)).alias(alias), null);
+        }
+
+        /**
+         * 精确去重计数
+         */
+        public static Agg countDistinct(String column, String alias) {
+            return new Agg(alias, functions.countDistinct(col(column)).alias(alias),
+                    new Column[]{functions.countDistinct(col(column)).alias(alias)},
+                    functions.sum(alias).alias(alias), column);
+        }
+
+        /**
+         * 可合并的聚合（草图等）：部分结果与最终结果类型相同，合并后可选地再做一次转换
+         *
+         * @param direct  单阶段聚合列
+         * @param build   第一阶段构建部分结果的聚合列
+         * @param merge   第二阶段合并部分结果的聚合函数
+         * @param finish  合并结果的转换（如草图估计），不需要时传 UnaryOperator.identity()
+         */
+        public static Agg mergeable(String alias, Column direct, Column build,
+                                    UnaryOperator<Column> merge, UnaryOperator<Column> finish) {
+            String partialAlias = alias + "__partial";
+            return new Agg(alias, direct.alias(alias),
+                    new Column[]{build.alias(partialAlias)},
+                    finish.apply(merge.apply(col(partialAlias))).alias(alias), null);
+        }
+    }
+
+    /**
+     * 按 keys 分组聚合，热点键加盐两阶段计算
+     *
+     * @param heavyKeys   SkewDetector 检测到的热点键
+     * @param saltColumn  热点键内部拆分所依据的列（应为高基数列）
+     */
+    public static Dataset<Row> aggregate(Dataset<Row> data, String[] keys, List<Row> heavyKeys,
+                                         String saltColumn, int saltBuckets, List<Agg> aggs) {
+        Column[] keyColumns = Arrays.stream(keys).map(functions::col).toArray(Column[]::new);
+        if (heavyKeys.isEmpty()) {
+            return data.groupBy(keyColumns).agg(first(aggs, a -> a.direct), rest(aggs, a -> a.direct));
+        }
+
+        Dataset<Row> heavyKeySet = data.sparkSession()
+                .createDataFrame(heavyKeys, data.select(keyColumns).schema())
+                .withColumn(HEAVY, lit(true));
+        Dataset<Row> flagged = data.join(broadcast(heavyKeySet), toSeq(keys), "left");
+
+        // 非热点键：单阶段聚合
+        Dataset<Row> light = flagged.filter(col(HEAVY).isNull())
+                .groupBy(keyColumns)
+                .agg(first(aggs, a -> a.direct), rest(aggs, a -> a.direct));
+
+        // 热点键：按 键+盐 部分聚合，再按键合并
+        Dataset<Row> heavyRows = flagged.filter(col(HEAVY).isNotNull())
+                .withColumn(SALT, pmod(xxhash64(col(saltColumn)), lit(saltBuckets)));
+
+        List<Column> partialColumns = new ArrayList<>();
+        List<Column> mergeColumns = new ArrayList<>();
+        List<Agg> separateDistincts = new ArrayList<>();
+        for (Agg agg : aggs) {
+            if (agg.distinctColumn != null && !agg.distinctColumn.equals(saltColumn)) {
+                separateDistincts.add(agg);
+            } else {
+                partialColumns.addAll(Arrays.asList(agg.partial));
+                mergeColumns.add(agg.merge);
+            }
+        }
+
+        List<String> saltedKeys = new ArrayList<>(Arrays.asList(keys));
+        saltedKeys.add(SALT);
+        Dataset<Row> merged = heavyRows
+                .groupBy(saltedKeys.stream().map(functions::col).toArray(Column[]::new))
+                .agg(partialColumns.get(0), partialColumns.subList(1, partialColumns.size()).toArray(new Column[0]))
+                .groupBy(keyColumns)
+                .agg(mergeColumns.get(0), mergeColumns.subList(1, mergeColumns.size()).toArray(new Column[0]));
+
+        // 盐值列以外的精确去重：去重时按 键+去重列 分布，不会集中到单个task
+        for (Agg agg : separateDistincts) {
+            merged = merged.join(heavyRows.groupBy(keyColumns).agg(agg.direct), toSeq(keys));
+        }
+
+        List<Column> output = new ArrayList<>(Arrays.asList(keyColumns));
+        for (Agg agg : aggs) {
+            output.add(col(agg.alias));
+        }
+        return light.unionByName(merged.select(output.toArray(new Column[0])));
+    }
+
+    private static Column first(List<Agg> aggs, Function<Agg, Column> column) {
+        return column.apply(aggs.get(0));
+    }
+
+    private static Column[] rest(List<Agg> aggs, Function<Agg, Column> column) {
+        return aggs.subList(1, aggs.size()).stream().map(column).toArray(Column[]::new);
+    }
+
+    /**
+     * 转为严格求值的 List：Iterator.toSeq 得到的惰性 Stream 进入执行计划后，序列化task时会深度递归导致栈溢出
+     */
+    private static Seq<String> toSeq(String[] keys) {
+        return JavaConverters.asScalaBufferConverter(Arrays.asList(keys)).asScala().toList();
+    }
+}
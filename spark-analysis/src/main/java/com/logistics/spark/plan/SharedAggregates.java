@@ -0,0 +1,285 @@
+package com.logistics.spark.plan;
+
+import com.logistics.spark.sketch.DistinctCounts;
+import com.logistics.spark.plan.SaltedAggregation.Agg;
+import com.logistics.spark.sketch.QuantileSketches;
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.storage.StorageLevel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 共享聚合计划
+ *
+ * 时间效率、运营效率、成本、KPI、综合报表等模块原本各自对清洗后的数据做groupBy，
+ * 其中 (city, date, hour)、(city, region_id, date) 等分组键被重复扫描和shuffle多次。
+ * 这里对每个不同的分组键只计算一次宽聚合（包含所有模块需要的指标），
+ * 结果持久化后由各模块按需select列，不再重复扫描明细数据。
+ *
+ * 分组键一览：
+ * 1. 配送 (city, date, hour)              - 时间效率、KPI
+ * 2. 取件 (city, date, hour)              - 时间效率、KPI服务质量
+ * 3. 配送 (city, region_id, date)         - 区域负载、成本结构、日报
+ * 4. 取件 (city, region_id, date)         - 取件日报
+ * 5. 配送 (city, region_id, courier_id, date) - 快递员效率、效益评估（上卷到 city, courier_id, date）
+ *
+ * 去重计数按 DistinctCounts 的模式计算；近似模式下区域日聚合额外带有HyperLogLog草图列（*_sketch），
+ * 去重数由草图估计得到，与按周/月上卷草图的结果口径一致。
+ * 小时聚合带有配送/取件时长的分位数草图列（*_duration_sketch），中位数和P95由同一个草图读出。
+ * 配送区域日聚合的 costed_distance / costed_duration 只累计距离和时长都不为空的订单，
+ * 总成本由它们换算，与逐单计算成本再求和时跳过缺少任一项的订单一致。
+ *
+ * 构建每个聚合前由 SkewDetector 抽样检测热点键（热点城市的小时、超级快递员等），
+ * 存在热点键时经 SaltedAggregation 加盐两阶段聚合，结果与单阶段聚合一致。
+ */
+public class SharedAggregates {
+
+    private static final String DELIVERY_HOURLY = "delivery_hourly";
+    private static final String PICKUP_HOURLY = "pickup_hourly";
+    private static final String DELIVERY_REGION_DAILY = "delivery_region_daily";
+    private static final String PICKUP_REGION_DAILY = "pickup_region_daily";
+    private static final String COURIER_DAILY = "courier_daily";
+
+    /** 近似模式下区域日聚合的草图列 */
+    public static final String COURIER_SKETCH = "courier_sketch";
+    public static final String AOI_SKETCH = "aoi_sketch";
+    public static final String PICKUP_COURIER_SKETCH = "pickup_courier_sketch";
+
+    /** 小时聚合的时长分位数草图列 */
+    public static final String DELIVERY_DURATION_SKETCH = "delivery_duration_sketch";
+    public static final String PICKUP_DURATION_SKETCH = "pickup_duration_sketch";
+
+    private final Dataset<Row> delivery;
+    private final Dataset<Row> pickup;
+    private final DistinctCounts distinctCounts;
+    private final QuantileSketches quantileSketches;
+    private final SkewDetector skewDetector;
+    /** 每个分组键的构建任务：并发访问同一聚合的模块等待同一个任务，构建在调用线程上执行而不占用map的锁 */
+    private final Map<String, FutureTask<Dataset<Row>>> aggregates = new ConcurrentHashMap<>();
+
+    public SharedAggregates(Dataset<Row> delivery, Dataset<Row> pickup,
+                            DistinctCounts distinctCounts, QuantileSketches quantileSketches,
+                            SkewDetector skewDetector) {
+        this.delivery = delivery;
+        this.pickup = pickup;
+        this.distinctCounts = distinctCounts;
+        this.quantileSketches = quantileSketches;
+        this.skewDetector = skewDetector;
+    }
+
+    /**
+     * 配送 (city, date, hour) 宽聚合
+     */
+    public Dataset<Row> deliveryHourly() {
+        return shared(DELIVERY_HOURLY, () -> aggregate(DELIVERY_HOURLY, delivery, "courier_id",
+                Arrays.asList(
+                        Agg.count("order_id", "total_orders"),
+                        distinct("courier_id", "active_couriers"),
+                        distinct("aoi_id", "coverage_aois"),
+                        Agg.avg("delivery_duration_hours", "avg_delivery_time"),
+                        durationSketch("delivery_duration_hours", DELIVERY_DURATION_SKETCH),
+                        Agg.sum(when(col("delivery_duration_hours").leq(2), 1).otherwise(0), "fast_deliveries"),
+                        Agg.sum(when(col("delivery_duration_hours").between(2, 8), 1).otherwise(0), "normal_deliveries"),
+                        Agg.sum(when(col("delivery_duration_hours").gt(8), 1).otherwise(0), "slow_deliveries")
+                ), "city", "date", "hour")
+                .withColumn("median_delivery_time", quantileSketches.quantile(col(DELIVERY_DURATION_SKETCH), 0.5))
+                .withColumn("p95_delivery_time", quantileSketches.quantile(col(DELIVERY_DURATION_SKETCH), 0.95)));
+    }
+
+    /**
+     * 取件 (city, date, hour) 宽聚合
+     */
+    public Dataset<Row> pickupHourly() {
+        return shared(PICKUP_HOURLY, () -> aggregate(PICKUP_HOURLY, pickup, "order_id",
+                Arrays.asList(
+                        Agg.count("order_id", "total_pickups"),
+                        Agg.avg("pickup_duration_hours", "avg_pickup_time"),
+                        durationSketch("pickup_duration_hours", PICKUP_DURATION_SKETCH),
+                        Agg.sum(when(col("pickup_duration_hours").leq(1), 1).otherwise(0), "fast_pickups"),
+                        Agg.sum(when(col("pickup_duration_hours").between(1, 4), 1).otherwise(0), "normal_pickups"),
+                        Agg.sum(when(col("pickup_duration_hours").gt(4), 1).otherwise(0), "slow_pickups"),
+                        Agg.sum(when(col("within_time_window").equalTo(true), 1).otherwise(0), "on_time_pickups")
+                ), "city", "date", "hour")
+                .withColumn("median_pickup_time", quantileSketches.quantile(col(PICKUP_DURATION_SKETCH), 0.5))
+                .withColumn("p95_pickup_time", quantileSketches.quantile(col(PICKUP_DURATION_SKETCH), 0.95)));
+    }
+
+    /**
+     * 配送 (city, region_id, date) 宽聚合
+     */
+    public Dataset<Row> deliveryRegionDaily() {
+        if (distinctCounts.isApprox()) {
+            return shared(DELIVERY_REGION_DAILY, () -> aggregate(DELIVERY_REGION_DAILY, delivery, "courier_id",
+                    Arrays.asList(
+                            Agg.count("order_id", "total_orders"),
+                            hllSketch("courier_id", COURIER_SKETCH),
+                            hllSketch("aoi_id", AOI_SKETCH),
+                            Agg.avg("delivery_duration_hours", "avg_delivery_time"),
+                            Agg.sum("delivery_distance_km", "total_distance"),
+                            Agg.sum("delivery_duration_hours", "total_duration"),
+                            Agg.sum(when(col("delivery_duration_hours").isNotNull(), col("delivery_distance_km")), "costed_distance"),
+                            Agg.sum(when(col("delivery_distance_km").isNotNull(), col("delivery_duration_hours")), "costed_duration"),
+                            Agg.sum(when(col("delivery_duration_hours").leq(2), 1).otherwise(0), "fast_deliveries")
+                    ), "city", "region_id", "date")
+                    .withColumn("active_couriers", distinctCounts.estimate(col(COURIER_SKETCH)))
+                    .withColumn("served_aois", distinctCounts.estimate(col(AOI_SKETCH))));
+        }
+        return shared(DELIVERY_REGION_DAILY, () -> aggregate(DELIVERY_REGION_DAILY, delivery, "courier_id",
+                Arrays.asList(
+                        Agg.count("order_id", "total_orders"),
+                        Agg.countDistinct("courier_id", "active_couriers"),
+                        Agg.countDistinct("aoi_id", "served_aois"),
+                        Agg.avg("delivery_duration_hours", "avg_delivery_time"),
+                        Agg.sum("delivery_distance_km", "total_distance"),
+                        Agg.sum("delivery_duration_hours", "total_duration"),
+                        Agg.sum(when(col("delivery_duration_hours").isNotNull(), col("delivery_distance_km")), "costed_distance"),
+                        Agg.sum(when(col("delivery_distance_km").isNotNull(), col("delivery_duration_hours")), "costed_duration"),
+                        Agg.sum(when(col("delivery_duration_hours").leq(2), 1).otherwise(0), "fast_deliveries")
+                ), "city", "region_id", "date"));
+    }
+
+    /**
+     * 取件 (city, region_id, date) 宽聚合
+     */
+    public Dataset<Row> pickupRegionDaily() {
+        if (distinctCounts.isApprox()) {
+            return shared(PICKUP_REGION_DAILY, () -> aggregate(PICKUP_REGION_DAILY, pickup, "courier_id",
+                    Arrays.asList(
+                            Agg.count("order_id", "total_pickups"),
+                            hllSketch("courier_id", PICKUP_COURIER_SKETCH),
+                            Agg.avg("pickup_duration_hours", "avg_pickup_time"),
+                            Agg.sum(when(col("within_time_window").equalTo(true), 1).otherwise(0), "on_time_pickups")
+                    ), "city", "region_id", "date")
+                    .withColumn("active_pickup_couriers", distinctCounts.estimate(col(PICKUP_COURIER_SKETCH))));
+        }
+        return shared(PICKUP_REGION_DAILY, () -> aggregate(PICKUP_REGION_DAILY, pickup, "courier_id",
+                Arrays.asList(
+                        Agg.count("order_id", "total_pickups"),
+                        Agg.countDistinct("courier_id", "active_pickup_couriers"),
+                        Agg.avg("pickup_duration_hours", "avg_pickup_time"),
+                        Agg.sum(when(col("within_time_window").equalTo(true), 1).otherwise(0), "on_time_pickups")
+                ), "city", "region_id", "date"));
+    }
+
+    /**
+     * 配送 (city, region_id, courier_id, date) 宽聚合（超级快递员按 aoi_id 加盐拆分）
+     */
+    public Dataset<Row> courierDaily() {
+        return shared(COURIER_DAILY, () -> aggregate(COURIER_DAILY, delivery, "aoi_id",
+                Arrays.asList(
+                        Agg.count("order_id", "total_orders"),
+                        distinct("aoi_id", "unique_aoi_served"),
+                        Agg.sum("delivery_distance_km", "total_distance"),
+                        Agg.sum("delivery_duration_hours", "total_working_hours"),
+                        Agg.avg("delivery_duration_hours", "avg_delivery_time")
+                ), "city", "region_id", "courier_id", "date"));
+    }
+
+    /**
+     * 快递员 (city, courier_id, date) 汇总，由 courierDaily 上卷得到（均为可加指标），不再扫描明细
+     */
+    public Dataset<Row> courierDailyAcrossRegions() {
+        return courierDaily()
+                .groupBy("city", "courier_id", "date")
+                .agg(
+                        sum("total_orders").alias("total_orders"),
+                        sum("total_distance").alias("total_distance"),
+                        sum("total_working_hours").alias("total_working_hours")
+                );
+    }
+
+    /**
+     * 释放所有已持久化的共享聚合
+     */
+    public void release() {
+        for (FutureTask<Dataset<Row>> task : aggregates.values()) {
+            if (task.isDone()) {
+                try {
+                    task.get().unpersist();
+                } catch (InterruptedException | ExecutionException e) {
+                    // 构建失败的聚合没有持久化，无需释放
+                }
+            }
+        }
+        aggregates.clear();
+    }
+
+    /**
+     * 分组聚合：先抽样检测热点键，热点键按 saltColumn 加盐两阶段聚合
+     */
+    private Dataset<Row> aggregate(String name, Dataset<Row> data, String saltColumn, List<Agg> aggs, String... keys) {
+        List<Row> heavyKeys = skewDetector.heavyKeys(data, name, keys);
+        return SaltedAggregation.aggregate(data, keys, heavyKeys, saltColumn, skewDetector.getSaltBuckets(), aggs);
+    }
+
+    /**
+     * 去重计数：精确模式为 countDistinct；近似模式单阶段为 approx_count_distinct，两阶段时合并HyperLogLog草图后估计
+     */
+    private Agg distinct(String column, String alias) {
+        if (!distinctCounts.isApprox()) {
+            return Agg.countDistinct(column, alias);
+        }
+        return Agg.mergeable(alias, distinctCounts.count(column), distinctCounts.sketch(column),
+                distinctCounts::merge, distinctCounts::estimate);
+    }
+
+    /**
+     * HyperLogLog草图列（近似模式下区域日聚合保存的草图）
+     */
+    private Agg hllSketch(String column, String alias) {
+        Column sketch = distinctCounts.sketch(column);
+        return Agg.mergeable(alias, sketch, sketch, distinctCounts::merge, UnaryOperator.identity());
+    }
+
+    /**
+     * 时长分位数草图列
+     */
+    private Agg durationSketch(String column, String alias) {
+        Column sketch = quantileSketches.sketch(column);
+        return Agg.mergeable(alias, sketch, sketch, quantileSketches::merge, UnaryOperator.identity());
+    }
+
+    /**
+     * 获取共享聚合，首次访问时构建并持久化（实际计算发生在第一个使用它的模块触发action时）
+     *
+     * 构建时的倾斜检测会执行Spark作业，不能放在 computeIfAbsent 中（会长时间占用 ConcurrentHashMap 的桶锁，
+     * 阻塞其他模块访问同一个桶中的聚合）。首个访问者放入构建任务后在自己的线程上执行，其他访问者等待该任务；
+     * 构建失败时移除任务，之后的访问重新构建。
+     */
+    private Dataset<Row> shared(String name, Supplier<Dataset<Row>> builder) {
+        FutureTask<Dataset<Row>> task = aggregates.get(name);
+        if (task == null) {
+            FutureTask<Dataset<Row>> created = new FutureTask<>(
+                    () -> builder.get().persist(StorageLevel.MEMORY_AND_DISK()));
+            task = aggregates.putIfAbsent(name, created);
+            if (task == null) {
+                task = created;
+                created.run();
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待共享聚合构建时被中断: " + name, e);
+        } catch (ExecutionException e) {
+            aggregates.remove(name, task);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("共享聚合构建失败: " + name, e.getCause());
+        }
+    }
+}
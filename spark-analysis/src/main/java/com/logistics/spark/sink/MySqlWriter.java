@@ -0,0 +1,287 @@
+package com.logistics.spark.sink;
+
+import org.apache.spark.api.java.function.ForeachPartitionFunction;
+import org.apache.spark.sql.DataFrameWriter;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 分析结果写入MySQL
+ *
+ * 不再使用 mode("overwrite") 删表重建（会丢失后端查询依赖的索引，且重建期间看板查询到的是空表），而是：
+ * 1. CREATE TABLE 暂存表 LIKE 目标表（保留目标表结构和索引）
+ * 2. 各分区并行、批量写入暂存表
+ * 3. 在同一个事务中删除目标表中待替换的数据并从暂存表 INSERT ... SELECT，提交前看板始终读到旧数据
+ * 4. 删除暂存表
+ *
+ * 替换范围：只替换本次结果中出现的日期（全量模式同样如此，不会一次删除整表）。
+ * 重复执行同一批数据结果不变。目标表须预先建好（带后端查询所需的索引），不存在时写入失败，不由Spark推断建表。
+ *
+ * 实时流的微批经 {@link #upsert} 写入：各分区直接批量执行 INSERT ... ON DUPLICATE KEY UPDATE，
+ * 不建暂存表，目标表须预先建好键列上的唯一键（见 {@link #createTableIfAbsent}）。
+ *
+ * 异常告警等带处理状态的表经 {@link #insertNew} 写入：同样先写暂存表，再只插入目标表中还没有的键，
+ * 已有行（包括后端写入的处理状态）保持不变。
+ */
+public class MySqlWriter {
+
+    private static final String STAGING_SUFFIX = "__staging_";
+
+    private final String mysqlUrl;
+    private final Properties mysqlProps;
+    private final boolean incremental;
+    private final int writerParallelism;
+
+    /**
+     * @param batchSize                每个批量INSERT的行数
+     * @param writerParallelism        并行写入的数据库连接数
+     * @param rewriteBatchedStatements 是否由驱动将批量INSERT改写为多值INSERT
+     */
+    public MySqlWriter(String mysqlUrl, Properties mysqlProps, boolean incremental,
+                       int batchSize, int writerParallelism, boolean rewriteBatchedStatements) {
+        this.mysqlUrl = mysqlUrl;
+        this.mysqlProps = new Properties();
+        this.mysqlProps.putAll(mysqlProps);
+        this.mysqlProps.setProperty("batchsize", String.valueOf(batchSize));
+        this.mysqlProps.setProperty("rewriteBatchedStatements", String.valueOf(rewriteBatchedStatements));
+        this.incremental = incremental;
+        this.writerParallelism = writerParallelism;
+    }
+
+    /**
+     * 替换写入数据表
+     *
+     * @param dateColumn 日期列，按该列替换本次结果中出现的日期
+     */
+    public void write(Dataset<Row> data, String table, String dateColumn) throws SQLException {
+        // 全量模式也只删除暂存表中出现的日期：整表 DELETE 会在事务中锁住并写入整表的undo，
+        // 且本次结果缺少的日期会被清空
+        String deleteSql = "DELETE FROM " + table + " WHERE `" + dateColumn + "` IN " +
+                "(SELECT DISTINCT `" + dateColumn + "` FROM %s)";
+        replace(data, table, deleteSql, (incremental ? "增量" : "全量") + "，按" + dateColumn + "替换");
+    }
+
+    /**
+     * 按唯一键更新写入：目标表中与本批数据键相同的行被更新，其余行保持不变（用于实时流的微批更新）。
+     * 各分区在自己的连接上批量执行 INSERT ... ON DUPLICATE KEY UPDATE，每个微批不做任何DDL；
+     * 目标表须已有 keyColumns 上的唯一键，否则每次写入都会追加新行
+     */
+    public void upsert(Dataset<Row> data, String table, String... keyColumns) {
+        String[] columns = data.columns();
+        List<String> keys = Arrays.asList(keyColumns);
+        StringBuilder updates = new StringBuilder();
+        for (String column : columns) {
+            if (keys.contains(column)) {
+                continue;
+            }
+            if (updates.length() > 0) {
+                updates.append(", ");
+            }
+            updates.append('`').append(column).append("` = VALUES(`").append(column).append("`)");
+        }
+        String sql = "INSERT INTO " + table + " (" + columnList(columns) + ") VALUES (" +
+                String.join(", ", Collections.nCopies(columns.length, "?")) + ") " +
+                "ON DUPLICATE KEY UPDATE " + updates;
+
+        String url = mysqlUrl;
+        Properties props = mysqlProps;
+        int batchSize = Integer.parseInt(mysqlProps.getProperty("batchsize"));
+        data.coalesce(writerParallelism).foreachPartition(
+                (ForeachPartitionFunction<Row>) rows -> upsertPartition(url, props, sql, batchSize, rows));
+    }
+
+    private static void upsertPartition(String url, Properties props, String sql, int batchSize,
+                                        Iterator<Row> rows) throws SQLException {
+        if (!rows.hasNext()) {
+            return;
+        }
+        try (Connection connection = DriverManager.getConnection(url, props);
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+            int pending = 0;
+            while (rows.hasNext()) {
+                Row row = rows.next();
+                for (int i = 0; i < row.length(); i++) {
+                    stmt.setObject(i + 1, row.get(i));
+                }
+                stmt.addBatch();
+                if (++pending == batchSize) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+
+    /**
+     * 在列上建立唯一索引（已存在同名索引时跳过），用于外部创建、缺少 {@link #upsert} 所需唯一键的表
+     */
+    public void createUniqueIndexIfAbsent(String table, String indexName, String... columns) throws SQLException {
+        createIndexIfAbsent(table, indexName, true, columns);
+    }
+
+    /**
+     * 按建表语句（CREATE TABLE IF NOT EXISTS）预先建表，带上写入和查询所需的主键、索引
+     */
+    public void createTableIfAbsent(String createTableSql) throws SQLException {
+        try (Connection connection = getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(createTableSql);
+        }
+    }
+
+    /**
+     * 在列上建立普通索引（已存在同名索引时跳过），用于外部创建、缺少写入所需索引的表
+     */
+    public void createIndexIfAbsent(String table, String indexName, String... columns) throws SQLException {
+        createIndexIfAbsent(table, indexName, false, columns);
+    }
+
+    private void createIndexIfAbsent(String table, String indexName, boolean unique,
+                                     String... columns) throws SQLException {
+        try (Connection connection = getConnection()) {
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "SELECT 1 FROM information_schema.statistics " +
+                    "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?")) {
+                stmt.setString(1, table);
+                stmt.setString(2, indexName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        return;
+                    }
+                }
+            }
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + indexName + " ON " + table + " (" + columnList(columns) + ")");
+            }
+        }
+    }
+
+    /**
+     * 只插入目标表中还没有的行：本批数据按键列去重后，跳过目标表中已存在相同键的行。
+     * 已有行保持不变，重复执行同一批数据不会产生重复行（用于只追加的表，如异常告警）
+     */
+    public void insertNew(Dataset<Row> data, String table, String... keyColumns) throws SQLException {
+        StringBuilder match = new StringBuilder();
+        for (String key : keyColumns) {
+            if (match.length() > 0) {
+                match.append(" AND ");
+            }
+            match.append("t.`").append(key).append("` = s.`").append(key).append('`');
+        }
+        Dataset<Row> distinct = data.dropDuplicates(keyColumns);
+        String columns = columnList(distinct.columns());
+        String insertSql = "INSERT INTO " + table + " (" + columns + ") " +
+                "SELECT " + columns + " FROM %s s " +
+                "WHERE NOT EXISTS (SELECT 1 FROM " + table + " t WHERE " + match + ")";
+        applyViaStaging(distinct, table, null, insertSql, "按" + String.join(",", keyColumns) + "去重追加");
+    }
+
+    /**
+     * 经暂存表替换目标表数据
+     *
+     * @param deleteSql 删除待替换数据的语句，%s 为暂存表名
+     */
+    private void replace(Dataset<Row> data, String table, String deleteSql, String scope) throws SQLException {
+        String columns = columnList(data.columns());
+        String insertSql = "INSERT INTO " + table + " (" + columns + ") SELECT " + columns + " FROM %s";
+        applyViaStaging(data, table, deleteSql, insertSql, scope);
+    }
+
+    /**
+     * 数据先写入与目标表结构相同的暂存表，再在一个事务中对目标表执行删除（可选）和插入
+     *
+     * @param deleteSql 删除语句，%s 为暂存表名，为null时不删除
+     * @param insertSql 从暂存表插入目标表的语句，%s 为暂存表名
+     */
+    private void applyViaStaging(Dataset<Row> data, String table, String deleteSql, String insertSql,
+                                 String scope) throws SQLException {
+        try (Connection connection = getConnection()) {
+            if (!tableExists(connection, table)) {
+                // Spark推断建表没有主键和索引，后端查询会全表扫描，去重写入也无法依赖唯一键
+                throw new SQLException("MySQL表 " + table + " 不存在，需先按建表语句建表（见 createTableIfAbsent）");
+            }
+
+            String stagingTable = table + STAGING_SUFFIX + System.currentTimeMillis();
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE " + stagingTable + " LIKE " + table);
+            }
+
+            try {
+                jdbcWriter(data).mode("append").jdbc(mysqlUrl, stagingTable, mysqlProps);
+                swap(connection, table,
+                        deleteSql != null ? String.format(deleteSql, stagingTable) : null,
+                        String.format(insertSql, stagingTable), scope);
+            } finally {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.executeUpdate("DROP TABLE IF EXISTS " + stagingTable);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中用暂存表数据替换目标表数据
+     */
+    private void swap(Connection connection, String table, String deleteSql, String insertSql,
+                      String scope) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            int deleted = deleteSql != null ? stmt.executeUpdate(deleteSql) : 0;
+            int inserted = stmt.executeUpdate(insertSql);
+            connection.commit();
+            System.out.println("MySQL表 " + table + " 已替换: 删除 " + deleted + " 条, 写入 " + inserted + " 条" +
+                    (scope != null ? "（" + scope + "）" : ""));
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 按配置的并行连接数写入（numPartitions 超过数据分区数时不会增加分区）
+     */
+    private DataFrameWriter<Row> jdbcWriter(Dataset<Row> data) {
+        return data.write().option("numPartitions", writerParallelism);
+    }
+
+    private static String columnList(String... columns) {
+        StringBuilder columnList = new StringBuilder();
+        for (String column : columns) {
+            if (columnList.length() > 0) {
+                columnList.append(", ");
+            }
+            columnList.append('`').append(column).append('`');
+        }
+        return columnList.toString();
+    }
+
+    private boolean tableExists(Connection connection, String table) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(connection.getCatalog(), null, table, null)) {
+            return tables.next();
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(mysqlUrl, mysqlProps);
+    }
+}
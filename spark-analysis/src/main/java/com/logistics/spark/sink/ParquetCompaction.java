@@ -0,0 +1,239 @@
+package com.logistics.spark.sink;
+
+import com.logistics.spark.config.AnalysisConfig;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分区Parquet文件合并
+ *
+ * 遍历分析输出目录，找出包含数据文件的分区目录（如 core_kpis/city=X/date=Y），
+ * 文件数超过按目标文件大小计算的文件数时，原地重写为大小接近目标的少量文件：
+ * 1. 读取该分区目录，写入其下的隐藏目录 _compacting（Spark读取时忽略 _ 开头的目录）；
+ *    聚簇输出（如 courier_efficiency_metrics）经 {@link PartitionedParquetWriter#rewritePartition}
+ *    保持查找列排序、Bloom过滤器和页大小限制，合并后按快递员、订单的查找仍能跳过行组和页
+ * 2. 核对新旧行数一致，将待删除的旧文件列表写入 _compacting/_old_files（此后合并视为已提交）
+ * 3. 将新文件移入分区目录，再删除旧文件和临时目录
+ *
+ * 第3步中断时分区内同时有新旧两份数据，再次运行时发现 _old_files 先补完中断的合并
+ * （移入剩余新文件、删除列出的旧文件），而不是丢弃临时目录后对重复数据重新合并；
+ * 没有 _old_files 的临时目录是未提交的合并，直接删除。
+ * 第3步期间并发读取该分区可能短暂读到新旧两份数据，应在分析作业不运行时执行。
+ * 目标文件大小取 spark.logistics.output.targetFileBytes。
+ *
+ * 使用方法: ParquetCompaction <analysis_output_path> [相对路径 ...]（不指定时合并整个输出目录）
+ */
+public class ParquetCompaction {
+
+    private static final String WORK_DIR = "_compacting";
+    private static final String OLD_FILES_MARKER = "_old_files";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("使用方法: ParquetCompaction <analysis_output_path> [相对路径 ...]");
+            System.err.println("示例: ParquetCompaction hdfs://localhost:9000/output/analysis kpi_metrics comprehensive_reports/daily_reports");
+            System.exit(1);
+        }
+
+        AnalysisConfig config = AnalysisConfig.load();
+        SparkSession spark = SparkSession.builder()
+                .appName("Parquet文件合并")
+                .master("local[*]")
+                .getOrCreate();
+
+        try {
+            PartitionedParquetWriter writer = new PartitionedParquetWriter(config.isOutputFileSizing(),
+                    config.outputTargetFileBytes(), config.outputBloomFilterNdv());
+            ParquetCompaction compaction = new ParquetCompaction(spark, writer, config.outputTargetFileBytes());
+            Path root = new Path(args[0]);
+            List<Path> datasets = new ArrayList<>();
+            if (args.length > 1) {
+                for (int i = 1; i < args.length; i++) {
+                    datasets.add(new Path(root, args[i]));
+                }
+            } else {
+                datasets.add(root);
+            }
+
+            int compacted = 0;
+            for (Path dataset : datasets) {
+                compacted += compaction.compact(dataset);
+            }
+            System.out.println("✅ 文件合并完成，共合并 " + compacted + " 个分区目录");
+
+        } finally {
+            spark.stop();
+        }
+    }
+
+    private final SparkSession spark;
+    private final PartitionedParquetWriter writer;
+    private final long targetFileBytes;
+
+    public ParquetCompaction(SparkSession spark, PartitionedParquetWriter writer, long targetFileBytes) {
+        this.spark = spark;
+        this.writer = writer;
+        this.targetFileBytes = targetFileBytes;
+    }
+
+    /**
+     * 合并目录下所有碎片分区，返回合并的分区目录数
+     */
+    public int compact(Path path) throws IOException {
+        FileSystem fs = path.getFileSystem(spark.sparkContext().hadoopConfiguration());
+        List<Path> partitionDirs = new ArrayList<>();
+        collectPartitionDirs(fs, path, partitionDirs);
+
+        int compacted = 0;
+        for (Path dir : partitionDirs) {
+            if (compactPartition(fs, dir)) {
+                compacted++;
+            }
+        }
+        return compacted;
+    }
+
+    // ==================== 私有方法 ====================
+
+    private void collectPartitionDirs(FileSystem fs, Path dir, List<Path> result) throws IOException {
+        boolean hasDataFiles = false;
+        for (FileStatus status : fs.listStatus(dir)) {
+            if (isHidden(status.getPath())) {
+                continue;
+            }
+            if (status.isDirectory()) {
+                collectPartitionDirs(fs, status.getPath(), result);
+            } else if (isDataFile(status.getPath())) {
+                hasDataFiles = true;
+            }
+        }
+        if (hasDataFiles) {
+            result.add(dir);
+        }
+    }
+
+    private boolean compactPartition(FileSystem fs, Path dir) throws IOException {
+        Path workDir = new Path(dir, WORK_DIR);
+        if (fs.exists(new Path(workDir, OLD_FILES_MARKER))) {
+            System.out.println("🗜️ 补完上次中断的合并: " + dir);
+            publish(fs, dir, workDir, readOldFiles(fs, workDir));
+        } else {
+            fs.delete(workDir, true);  // 上次未提交的合并
+        }
+
+        List<Path> oldFiles = new ArrayList<>();
+        long totalBytes = 0;
+        for (FileStatus status : fs.listStatus(dir)) {
+            if (status.isFile() && isDataFile(status.getPath())) {
+                oldFiles.add(status.getPath());
+                totalBytes += status.getLen();
+            }
+        }
+
+        int targetFiles = (int) Math.max(1, (totalBytes + targetFileBytes - 1) / targetFileBytes);
+        if (oldFiles.size() <= targetFiles) {
+            return false;
+        }
+
+        Dataset<Row> data = spark.read().parquet(dir.toString());
+        long rows = data.count();
+        writer.rewritePartition(data, workDir.toString(), targetFiles, outputName(dir));
+
+        long newRows = spark.read().parquet(workDir.toString()).count();
+        if (newRows != rows) {
+            fs.delete(workDir, true);
+            throw new IllegalStateException("合并后行数不一致: " + dir + "（" + rows + " -> " + newRows + "）");
+        }
+
+        writeOldFiles(fs, workDir, oldFiles);
+        publish(fs, dir, workDir, oldFiles);
+
+        System.out.println("🗜️ 已合并 " + dir + ": " + oldFiles.size() + " 个文件 -> " + targetFiles
+                + " 个文件（" + rows + " 行，" + totalBytes / 1024 + " KB）");
+        return true;
+    }
+
+    /**
+     * 将临时目录中的新文件移入分区目录，删除旧文件和临时目录；已移动、已删除的文件跳过，可重复执行
+     */
+    private static void publish(FileSystem fs, Path dir, Path workDir, List<Path> oldFiles) throws IOException {
+        // 新文件名包含本次写入的UUID，不会与旧文件重名
+        for (FileStatus status : fs.listStatus(workDir)) {
+            if (status.isFile() && isDataFile(status.getPath())) {
+                Path target = new Path(dir, status.getPath().getName());
+                if (!fs.exists(target) && !fs.rename(status.getPath(), target)) {
+                    throw new IOException("移动合并文件失败: " + status.getPath() + " -> " + target);
+                }
+            }
+        }
+        for (Path oldFile : oldFiles) {
+            fs.delete(oldFile, false);
+        }
+        fs.delete(workDir, true);
+    }
+
+    /**
+     * 写入待删除的旧文件列表（先写临时文件再重命名，列表存在即表示合并已提交）
+     */
+    private static void writeOldFiles(FileSystem fs, Path workDir, List<Path> oldFiles) throws IOException {
+        Path tmp = new Path(workDir, "." + OLD_FILES_MARKER + ".tmp");
+        try (FSDataOutputStream out = fs.create(tmp, true)) {
+            for (Path oldFile : oldFiles) {
+                out.write((oldFile.getName() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (!fs.rename(tmp, new Path(workDir, OLD_FILES_MARKER))) {
+            throw new IOException("写入合并旧文件列表失败: " + workDir);
+        }
+    }
+
+    /**
+     * 读取中断的合并的旧文件列表（文件名，位于分区目录下）
+     */
+    private static List<Path> readOldFiles(FileSystem fs, Path workDir) throws IOException {
+        List<Path> oldFiles = new ArrayList<>();
+        Path dir = workDir.getParent();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                fs.open(new Path(workDir, OLD_FILES_MARKER)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    oldFiles.add(new Path(dir, line.trim()));
+                }
+            }
+        }
+        return oldFiles;
+    }
+
+    /**
+     * 分区目录所属的输出目录名：跳过 key=value 形式的分区层级
+     */
+    private static String outputName(Path dir) {
+        Path current = dir;
+        while (current.getParent() != null && current.getName().contains("=")) {
+            current = current.getParent();
+        }
+        return current.getName();
+    }
+
+    private static boolean isHidden(Path path) {
+        String name = path.getName();
+        return name.startsWith("_") || name.startsWith(".");
+    }
+
+    private static boolean isDataFile(Path path) {
+        return !isHidden(path) && path.getName().endsWith(".parquet");
+    }
+}
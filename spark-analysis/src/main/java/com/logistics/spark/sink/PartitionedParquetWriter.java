@@ -0,0 +1,171 @@
+package com.logistics.spark.sink;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.DataFrameWriter;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.types.StructField;
+import org.apache.spark.sql.types.StructType;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.apache.spark.sql.functions.col;
+
+/**
+ * 分析结果按分区写入Parquet，并控制每个分区目录的文件大小
+ *
+ * 直接对shuffle输出 partitionBy 时，每个上游分区都会在它包含的每个 city/date 目录下写一个文件，
+ * 即使开启AQE合并分区，一个目录下仍会有几十到几百个小文件，下游每次读取都要逐个列出和打开。
+ *
+ * 写入前先按分区列重新分区，使同一目录的数据落在同一个任务中，再用 maxRecordsPerFile
+ * 按目标文件大小 / 估计行大小切分文件：小目录只有一个文件，大目录按目标大小拆成多个文件。
+ * 行大小按schema中各列类型的默认大小估计（未压缩），实际Parquet文件通常小于目标大小。
+ *
+ * 按快递员、订单查找的输出（{@link #CLUSTERED_OUTPUTS}）通过 {@link #writeClustered} 写入：分区内按查找列排序，
+ * 并为查找列写入Bloom过滤器，页级min/max统计（列索引）随排序变得紧凑，
+ * 按单个快递员过滤时读取端可以跳过不包含该值的行组和页。
+ *
+ * 已有的碎片分区由 {@link ParquetCompaction} 离线合并，合并时经 {@link #rewritePartition} 沿用相同的写入选项。
+ */
+public class PartitionedParquetWriter {
+
+    /** 聚簇写入时每页的最大行数，页越小列索引的min/max范围越窄 */
+    private static final int CLUSTERED_PAGE_ROW_LIMIT = 5000;
+
+    /** 聚簇写入的输出目录名及其查找列（按排序优先级） */
+    public static final Map<String, String[]> CLUSTERED_OUTPUTS;
+
+    static {
+        Map<String, String[]> outputs = new LinkedHashMap<>();
+        outputs.put("courier_efficiency_metrics", new String[]{"courier_id"});
+        outputs.put("delivery_time_anomalies", new String[]{"courier_id", "order_id"});
+        outputs.put("pickup_time_anomalies", new String[]{"courier_id", "order_id"});
+        outputs.put("distance_anomalies", new String[]{"courier_id", "order_id"});
+        CLUSTERED_OUTPUTS = Collections.unmodifiableMap(outputs);
+    }
+
+    private final boolean fileSizingEnabled;
+    private final long targetFileBytes;
+    private final long bloomFilterNdv;
+
+    /**
+     * @param fileSizingEnabled 是否按分区列重新分区并限制单文件行数，关闭时直接写出shuffle输出
+     * @param targetFileBytes   每个文件的目标字节数
+     * @param bloomFilterNdv    Bloom过滤器按每个文件的预期不同值个数分配大小（不超过单文件行数）
+     */
+    public PartitionedParquetWriter(boolean fileSizingEnabled, long targetFileBytes, long bloomFilterNdv) {
+        this.fileSizingEnabled = fileSizingEnabled;
+        this.targetFileBytes = targetFileBytes;
+        this.bloomFilterNdv = bloomFilterNdv;
+    }
+
+    /**
+     * 覆盖写入（增量模式下由 partitionOverwriteMode=dynamic 只替换本次写出的分区）
+     */
+    public void write(Dataset<Row> data, String path, String... partitionColumns) {
+        writer(data, partitionColumns)
+                .mode("overwrite")
+                .partitionBy(partitionColumns)
+                .parquet(path);
+    }
+
+    /**
+     * 按查找列聚簇写入：分区内按查找列依次排序，并为每个查找列写入Bloom过滤器
+     *
+     * @param outputRoot 分析输出目录
+     * @param outputName 输出目录名，查找列取自 {@link #CLUSTERED_OUTPUTS}
+     */
+    public void writeClustered(Dataset<Row> data, String outputRoot, String outputName, String[] partitionColumns) {
+        String[] lookupColumns = CLUSTERED_OUTPUTS.get(outputName);
+        if (lookupColumns == null) {
+            throw new IllegalArgumentException("未登记查找列的聚簇输出: " + outputName);
+        }
+
+        // 先按分区列排序，写出时无需再为 partitionBy 额外排序
+        Column[] sortCols = new Column[partitionColumns.length + lookupColumns.length];
+        for (int i = 0; i < partitionColumns.length; i++) {
+            sortCols[i] = col(partitionColumns[i]);
+        }
+        for (int i = 0; i < lookupColumns.length; i++) {
+            sortCols[partitionColumns.length + i] = col(lookupColumns[i]);
+        }
+
+        clusteredOptions(writer(data, partitionColumns, sortCols), data.schema(), lookupColumns)
+                .mode("overwrite")
+                .partitionBy(partitionColumns)
+                .parquet(outputRoot + "/" + outputName);
+    }
+
+    /**
+     * 将单个分区目录的数据重写为 files 个文件到新目录（{@link ParquetCompaction} 使用）。
+     * 聚簇输出在每个文件内按查找列重新排序，并写入与 {@link #writeClustered} 相同的Bloom过滤器和页大小限制
+     *
+     * @param outputName 分区所属的输出目录名，不在 {@link #CLUSTERED_OUTPUTS} 中时按普通输出重写
+     */
+    public void rewritePartition(Dataset<Row> data, String path, int files, String outputName) {
+        Dataset<Row> coalesced = data.coalesce(files);
+        String[] lookupColumns = CLUSTERED_OUTPUTS.get(outputName);
+        if (lookupColumns == null) {
+            coalesced.write().parquet(path);
+            return;
+        }
+
+        Column[] sortCols = new Column[lookupColumns.length];
+        for (int i = 0; i < lookupColumns.length; i++) {
+            sortCols[i] = col(lookupColumns[i]);
+        }
+        clusteredOptions(coalesced.sortWithinPartitions(sortCols).write(), data.schema(), lookupColumns)
+                .parquet(path);
+    }
+
+    /**
+     * 聚簇写入的Parquet选项：限制每页行数，为每个查找列写入Bloom过滤器
+     */
+    private DataFrameWriter<Row> clusteredOptions(DataFrameWriter<Row> writer, StructType schema, String[] lookupColumns) {
+        long ndv = Math.min(bloomFilterNdv, recordsPerFile(schema));
+        writer = writer.option("parquet.page.row.count.limit", CLUSTERED_PAGE_ROW_LIMIT);
+        for (String column : lookupColumns) {
+            writer = writer
+                    .option("parquet.bloom.filter.enabled#" + column, true)
+                    .option("parquet.bloom.filter.expected.ndv#" + column, ndv);
+        }
+        return writer;
+    }
+
+    private DataFrameWriter<Row> writer(Dataset<Row> data, String[] partitionColumns, Column... sortCols) {
+        if (!fileSizingEnabled) {
+            return (sortCols.length > 0 ? data.sortWithinPartitions(sortCols) : data).write();
+        }
+
+        Column[] partitionCols = new Column[partitionColumns.length];
+        for (int i = 0; i < partitionColumns.length; i++) {
+            partitionCols[i] = col(partitionColumns[i]);
+        }
+        Dataset<Row> repartitioned = data.repartition(partitionCols);
+        if (sortCols.length > 0) {
+            repartitioned = repartitioned.sortWithinPartitions(sortCols);
+        }
+        return repartitioned.write()
+                .option("maxRecordsPerFile", recordsPerFile(data.schema()));
+    }
+
+    /**
+     * 按目标文件大小计算的单文件最大行数
+     */
+    public long recordsPerFile(StructType schema) {
+        return Math.max(1, targetFileBytes / estimatedRowBytes(schema));
+    }
+
+    /**
+     * 按列类型默认大小估计一行的字节数
+     */
+    public static long estimatedRowBytes(StructType schema) {
+        long bytes = 0;
+        for (StructField field : schema.fields()) {
+            bytes += field.dataType().defaultSize();
+        }
+        return Math.max(1, bytes);
+    }
+}
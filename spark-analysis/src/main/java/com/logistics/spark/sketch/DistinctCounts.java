@@ -0,0 +1,66 @@
+package com.logistics.spark.sketch;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.api.java.UDF1;
+import org.apache.spark.sql.expressions.UserDefinedFunction;
+import org.apache.spark.sql.types.DataTypes;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 去重计数方式
+ *
+ * 精确模式：countDistinct，每个去重列都会展开一次数据再shuffle。
+ * 近似模式：approx_count_distinct（HyperLogLog++），相对标准误差由 rsd 控制；
+ * 日粒度的区域聚合另外生成可合并的HyperLogLog草图，与Parquet结果一起保存，按周/月上卷时无需重新扫描明细。
+ */
+public class DistinctCounts {
+
+    private final boolean approx;
+    private final double relativeSD;
+    private final UserDefinedFunction buildSketch;
+    private final UserDefinedFunction mergeSketch;
+    private final UserDefinedFunction estimateSketch;
+
+    public DistinctCounts(boolean approx, double relativeSD) {
+        this.approx = approx;
+        this.relativeSD = relativeSD;
+        this.buildSketch = udaf(new HllAggregators.Build(HyperLogLog.precisionFor(relativeSD)), Encoders.LONG());
+        this.mergeSketch = udaf(new HllAggregators.Merge(), Encoders.BINARY());
+        this.estimateSketch = udf((UDF1<byte[], Long>) sketch ->
+                sketch == null ? null : HyperLogLog.estimate(sketch), DataTypes.LongType);
+    }
+
+    public boolean isApprox() {
+        return approx;
+    }
+
+    /**
+     * 去重计数聚合列
+     */
+    public Column count(String column) {
+        return approx ? approx_count_distinct(col(column), relativeSD) : countDistinct(col(column));
+    }
+
+    /**
+     * 构建HyperLogLog草图的聚合列
+     */
+    public Column sketch(String column) {
+        return buildSketch.apply(when(col(column).isNotNull(), xxhash64(col(column))));
+    }
+
+    /**
+     * 合并草图的聚合列
+     */
+    public Column merge(Column sketch) {
+        return mergeSketch.apply(sketch);
+    }
+
+    /**
+     * 草图的基数估计
+     */
+    public Column estimate(Column sketch) {
+        return estimateSketch.apply(sketch);
+    }
+}
@@ -0,0 +1,98 @@
+package com.logistics.spark.sketch;
+
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.expressions.Aggregator;
+
+/**
+ * HyperLogLog 草图的Spark聚合器
+ */
+public final class HllAggregators {
+
+    private HllAggregators() {
+    }
+
+    /**
+     * 由64位哈希值构建草图（null输入忽略，与 countDistinct 一致）
+     */
+    public static class Build extends Aggregator<Long, byte[], byte[]> {
+
+        private final int precision;
+
+        public Build(int precision) {
+            this.precision = precision;
+        }
+
+        @Override
+        public byte[] zero() {
+            return HyperLogLog.create(precision);
+        }
+
+        @Override
+        public byte[] reduce(byte[] sketch, Long hash) {
+            return hash == null ? sketch : HyperLogLog.add(sketch, hash);
+        }
+
+        @Override
+        public byte[] merge(byte[] left, byte[] right) {
+            return HyperLogLog.merge(left, right);
+        }
+
+        @Override
+        public byte[] finish(byte[] sketch) {
+            return sketch;
+        }
+
+        @Override
+        public Encoder<byte[]> bufferEncoder() {
+            return Encoders.BINARY();
+        }
+
+        @Override
+        public Encoder<byte[]> outputEncoder() {
+            return Encoders.BINARY();
+        }
+    }
+
+    /**
+     * 合并已有草图（用于按周、按月上卷）
+     */
+    public static class Merge extends Aggregator<byte[], byte[], byte[]> {
+
+        @Override
+        public byte[] zero() {
+            return new byte[0];
+        }
+
+        @Override
+        public byte[] reduce(byte[] buffer, byte[] sketch) {
+            return merge(buffer, sketch);
+        }
+
+        @Override
+        public byte[] merge(byte[] left, byte[] right) {
+            if (right == null || right.length == 0) {
+                return left;
+            }
+            if (left.length == 0) {
+                return right.clone();
+            }
+            return HyperLogLog.merge(left, right);
+        }
+
+        @Override
+        public byte[] finish(byte[] sketch) {
+            return sketch.length == 0 ? null : sketch;
+        }
+
+        @Override
+        public Encoder<byte[]> bufferEncoder() {
+            return Encoders.BINARY();
+        }
+
+        @Override
+        public Encoder<byte[]> outputEncoder() {
+            return Encoders.BINARY();
+        }
+    }
+}
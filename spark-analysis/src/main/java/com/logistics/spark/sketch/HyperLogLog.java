@@ -0,0 +1,86 @@
+package com.logistics.spark.sketch;
+
+/**
+ * HyperLogLog 基数估计（寄存器直接存放在 byte[] 中，便于作为Parquet二进制列保存和合并）
+ *
+ * 布局：第0字节为精度p，之后 2^p 个寄存器，每个寄存器1字节。
+ * 输入为64位哈希值（由Spark内置 xxhash64 计算），相对标准误差约 1.04/sqrt(2^p)。
+ * 同精度的草图按寄存器取最大值即可合并，合并结果等价于对两批数据的并集建草图。
+ */
+public final class HyperLogLog {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private HyperLogLog() {
+    }
+
+    /**
+     * 满足给定相对标准误差所需的精度
+     */
+    public static int precisionFor(double relativeSD) {
+        double registers = Math.pow(1.04 / relativeSD, 2);
+        int precision = (int) Math.ceil(Math.log(registers) / Math.log(2));
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    public static byte[] create(int precision) {
+        byte[] sketch = new byte[1 + (1 << precision)];
+        sketch[0] = (byte) precision;
+        return sketch;
+    }
+
+    /**
+     * 加入一个哈希值（原地修改）
+     */
+    public static byte[] add(byte[] sketch, long hash) {
+        int precision = sketch[0];
+        int index = (int) (hash >>> (64 - precision));
+        long remaining = hash << precision;
+        int rank = remaining == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(remaining) + 1;
+        if (rank > sketch[1 + index]) {
+            sketch[1 + index] = (byte) rank;
+        }
+        return sketch;
+    }
+
+    /**
+     * 合并两个草图（结果写入 target）
+     */
+    public static byte[] merge(byte[] target, byte[] other) {
+        if (target[0] != other[0]) {
+            throw new IllegalArgumentException("HyperLogLog精度不一致，无法合并: " + target[0] + " / " + other[0]);
+        }
+        for (int i = 1; i < target.length; i++) {
+            if (other[i] > target[i]) {
+                target[i] = other[i];
+            }
+        }
+        return target;
+    }
+
+    /**
+     * 估计基数
+     */
+    public static long estimate(byte[] sketch) {
+        int registers = sketch.length - 1;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 1; i < sketch.length; i++) {
+            sum += 1.0 / (1L << sketch[i]);
+            if (sketch[i] == 0) {
+                zeros++;
+            }
+        }
+
+        double alpha = registers >= 128 ? 0.7213 / (1 + 1.079 / registers)
+                : registers == 64 ? 0.709 : registers == 32 ? 0.697 : 0.673;
+        double estimate = alpha * registers * registers / sum;
+
+        // 小基数时使用线性计数
+        if (estimate <= 2.5 * registers && zeros > 0) {
+            estimate = registers * Math.log((double) registers / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
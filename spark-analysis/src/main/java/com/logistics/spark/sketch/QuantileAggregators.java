@@ -0,0 +1,101 @@
+package com.logistics.spark.sketch;
+
+import com.logistics.common.sketch.QuantileSketch;
+import org.apache.spark.sql.Encoder;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.expressions.Aggregator;
+
+/**
+ * 分位数草图的Spark聚合器
+ */
+public final class QuantileAggregators {
+
+    private QuantileAggregators() {
+    }
+
+    /**
+     * 由样本值构建草图（null输入忽略，与 percentile_approx 一致）
+     *
+     * 聚合缓冲区保持为草图对象，只在shuffle时经Kryo序列化；输出为 QuantileSketch.toBytes 格式。
+     */
+    public static class Build extends Aggregator<Double, QuantileSketch, byte[]> {
+
+        private final double relativeAccuracy;
+
+        public Build(double relativeAccuracy) {
+            this.relativeAccuracy = relativeAccuracy;
+        }
+
+        @Override
+        public QuantileSketch zero() {
+            return new QuantileSketch(relativeAccuracy);
+        }
+
+        @Override
+        public QuantileSketch reduce(QuantileSketch sketch, Double value) {
+            return value == null ? sketch : sketch.add(value);
+        }
+
+        @Override
+        public QuantileSketch merge(QuantileSketch left, QuantileSketch right) {
+            return left.merge(right);
+        }
+
+        @Override
+        public byte[] finish(QuantileSketch sketch) {
+            return sketch.isEmpty() ? null : sketch.toBytes();
+        }
+
+        @Override
+        public Encoder<QuantileSketch> bufferEncoder() {
+            return Encoders.kryo(QuantileSketch.class);
+        }
+
+        @Override
+        public Encoder<byte[]> outputEncoder() {
+            return Encoders.BINARY();
+        }
+    }
+
+    /**
+     * 合并已有草图（用于热点键的两阶段聚合）
+     */
+    public static class Merge extends Aggregator<byte[], QuantileSketch, byte[]> {
+
+        private final double relativeAccuracy;
+
+        public Merge(double relativeAccuracy) {
+            this.relativeAccuracy = relativeAccuracy;
+        }
+
+        @Override
+        public QuantileSketch zero() {
+            return new QuantileSketch(relativeAccuracy);
+        }
+
+        @Override
+        public QuantileSketch reduce(QuantileSketch buffer, byte[] sketch) {
+            return sketch == null ? buffer : buffer.merge(QuantileSketch.fromBytes(sketch));
+        }
+
+        @Override
+        public QuantileSketch merge(QuantileSketch left, QuantileSketch right) {
+            return left.merge(right);
+        }
+
+        @Override
+        public byte[] finish(QuantileSketch sketch) {
+            return sketch.isEmpty() ? null : sketch.toBytes();
+        }
+
+        @Override
+        public Encoder<QuantileSketch> bufferEncoder() {
+            return Encoders.kryo(QuantileSketch.class);
+        }
+
+        @Override
+        public Encoder<byte[]> outputEncoder() {
+            return Encoders.BINARY();
+        }
+    }
+}
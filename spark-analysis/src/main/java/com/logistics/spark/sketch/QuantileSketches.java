@@ -0,0 +1,51 @@
+package com.logistics.spark.sketch;
+
+import com.logistics.common.sketch.QuantileSketch;
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Encoders;
+import org.apache.spark.sql.api.java.UDF2;
+import org.apache.spark.sql.expressions.UserDefinedFunction;
+import org.apache.spark.sql.types.DataTypes;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 时长分位数草图
+ *
+ * 每个分组只构建一次草图，中位数、P95等都从同一个草图读出；
+ * 草图本身随结果一起保存（Parquet + MySQL），后端按任意日期范围合并后即可回答任意分位数，无需重新扫描明细。
+ */
+public class QuantileSketches {
+
+    private final UserDefinedFunction buildSketch;
+    private final UserDefinedFunction mergeSketch;
+    private final UserDefinedFunction quantile;
+
+    public QuantileSketches(double relativeAccuracy) {
+        this.buildSketch = udaf(new QuantileAggregators.Build(relativeAccuracy), Encoders.DOUBLE());
+        this.mergeSketch = udaf(new QuantileAggregators.Merge(relativeAccuracy), Encoders.BINARY());
+        this.quantile = udf((UDF2<byte[], Double, Double>) (sketch, q) ->
+                sketch == null ? null : QuantileSketch.fromBytes(sketch).quantile(q), DataTypes.DoubleType);
+    }
+
+    /**
+     * 构建分位数草图的聚合列
+     */
+    public Column sketch(String column) {
+        return buildSketch.apply(col(column).cast("double"));
+    }
+
+    /**
+     * 合并草图的聚合列
+     */
+    public Column merge(Column sketch) {
+        return mergeSketch.apply(sketch);
+    }
+
+    /**
+     * 从草图读出分位数
+     */
+    public Column quantile(Column sketch, double q) {
+        return quantile.apply(sketch, lit(q));
+    }
+}
@@ -0,0 +1,108 @@
+package com.logistics.spark.sketch;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 去重数按周/月上卷
+ *
+ * 读取近似去重模式下保存的区域日草图（comprehensive_reports/*_region_sketches），
+ * 合并草图得到每周/每月的活跃快递员数、服务AOI数，不需要重新扫描明细数据。
+ * 同一快递员在多个区域或多天出现只计一次，这是日去重数直接相加无法做到的。
+ *
+ * 输出：{analysis_output}/comprehensive_reports/{week|month}_distinct_counts（region_id为null的行为城市汇总）
+ *
+ * 使用方法: SketchRollup <analysis_output_path> <week|month>
+ */
+public class SketchRollup {
+
+    public static void main(String[] args) {
+        if (args.length != 2 || !("week".equals(args[1]) || "month".equals(args[1]))) {
+            System.err.println("使用方法: SketchRollup <analysis_output_path> <week|month>");
+            System.exit(1);
+        }
+
+        String reportsPath = args[0] + "/comprehensive_reports";
+        String period = args[1];
+
+        SparkSession spark = SparkSession.builder()
+                .appName("去重数上卷-" + period)
+                .master("local[*]")
+                .getOrCreate();
+
+        try {
+            // 上卷只做合并和估计，精度由草图本身决定
+            DistinctCounts distinctCounts = new DistinctCounts(true, 0.02);
+
+            Dataset<Row> delivery = spark.read().parquet(reportsPath + "/delivery_region_sketches")
+                    .withColumn("period_start", date_trunc(period, col("date")).cast("date"));
+            Dataset<Row> pickup = spark.read().parquet(reportsPath + "/pickup_region_sketches")
+                    .withColumn("period_start", date_trunc(period, col("date")).cast("date"));
+
+            Dataset<Row> regionLevel = rollup(delivery, pickup, distinctCounts, col("region_id"));
+            Dataset<Row> cityLevel = rollup(delivery, pickup, distinctCounts, lit(null).cast("int"));
+
+            Dataset<Row> result = regionLevel.unionByName(cityLevel)
+                    .withColumn("period", lit(period.toUpperCase()));
+
+            result.write()
+                    .mode("overwrite")
+                    .partitionBy("city")
+                    .parquet(reportsPath + "/" + period + "_distinct_counts");
+
+            System.out.println("去重数上卷完成: " + reportsPath + "/" + period + "_distinct_counts");
+            result.orderBy("city", "period_start", "region_id").show(50, false);
+
+        } finally {
+            spark.stop();
+        }
+    }
+
+    /**
+     * 按 city、周期（及区域）合并草图并估计去重数
+     */
+    private static Dataset<Row> rollup(Dataset<Row> delivery, Dataset<Row> pickup,
+                                       DistinctCounts distinctCounts, Column regionId) {
+        Dataset<Row> deliveryCounts = delivery
+                .withColumn("region_id", regionId)
+                .groupBy("city", "period_start", "region_id")
+                .agg(
+                        distinctCounts.merge(col("courier_sketch")).alias("courier_sketch"),
+                        distinctCounts.merge(col("aoi_sketch")).alias("aoi_sketch"),
+                        countDistinct("date").alias("days")
+                )
+                .select(
+                        col("city"), col("period_start"), col("region_id"), col("days"),
+                        distinctCounts.estimate(col("courier_sketch")).alias("active_couriers"),
+                        distinctCounts.estimate(col("aoi_sketch")).alias("served_aois")
+                );
+
+        Dataset<Row> pickupCounts = pickup
+                .withColumn("region_id", regionId)
+                .groupBy("city", "period_start", "region_id")
+                .agg(distinctCounts.merge(col("pickup_courier_sketch")).alias("pickup_courier_sketch"))
+                .select(
+                        col("city"), col("period_start"), col("region_id"),
+                        distinctCounts.estimate(col("pickup_courier_sketch")).alias("active_pickup_couriers")
+                );
+
+        return deliveryCounts.join(pickupCounts,
+                deliveryCounts.col("city").equalTo(pickupCounts.col("city"))
+                        .and(deliveryCounts.col("period_start").equalTo(pickupCounts.col("period_start")))
+                        .and(deliveryCounts.col("region_id").eqNullSafe(pickupCounts.col("region_id"))),
+                "full_outer")
+                .select(
+                        coalesce(deliveryCounts.col("city"), pickupCounts.col("city")).alias("city"),
+                        coalesce(deliveryCounts.col("period_start"), pickupCounts.col("period_start")).alias("period_start"),
+                        coalesce(deliveryCounts.col("region_id"), pickupCounts.col("region_id")).alias("region_id"),
+                        deliveryCounts.col("days"),
+                        deliveryCounts.col("active_couriers"),
+                        deliveryCounts.col("served_aois"),
+                        pickupCounts.col("active_pickup_couriers")
+                );
+    }
+}
@@ -0,0 +1,100 @@
+package com.logistics.spark.geo;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * 距离计算微基准
+ *
+ * 在 spark.range 生成的坐标对上分别求和计算以下实现，输出每核吞吐量以及相对haversine的最大误差：
+ * 1. legacy_euclidean  原实现（经纬度差×111km，无cos(纬度)修正）
+ * 2. haversine_expr    内置函数组合的haversine（代码生成）
+ * 3. equirect_expr     内置函数组合的等距圆柱近似（代码生成）
+ * 4. haversine_udf     注册为UDF的haversine
+ *
+ * 使用方法: DistanceBenchmark [行数, 默认1亿] [每种实现的计时轮数, 默认3]
+ * 基准位于测试源码目录，不打包进作业jar，以test classpath运行：
+ * mvn -pl spark-analysis test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.logistics.spark.geo.DistanceBenchmark
+ */
+public class DistanceBenchmark {
+
+    public static void main(String[] args) {
+        long rows = args.length > 0 ? Long.parseLong(args[0]) : 100_000_000L;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        SparkSession spark = SparkSession.builder()
+                .appName("距离计算基准")
+                .master("local[*]")
+                .getOrCreate();
+        spark.sparkContext().setLogLevel("WARN");
+        GeoDistance.registerUdf(spark);
+
+        int cores = spark.sparkContext().defaultParallelism();
+        System.out.println("=== 距离计算基准: " + rows + " 个坐标对, " + cores + " 核, 每种实现 " + iterations + " 轮 ===");
+
+        Map<String, Column> variants = new LinkedHashMap<>();
+        variants.put("legacy_euclidean", legacyEuclidean(col("lng1"), col("lat1"), col("lng2"), col("lat2")));
+        variants.put("haversine_expr", GeoDistance.haversine(col("lng1"), col("lat1"), col("lng2"), col("lat2")));
+        variants.put("equirect_expr", GeoDistance.equirectangular(col("lng1"), col("lat1"), col("lng2"), col("lat2")));
+        variants.put("haversine_udf", callUDF(GeoDistance.HAVERSINE_UDF, col("lng1"), col("lat1"), col("lng2"), col("lat2")));
+
+        // 精度：以haversine为基准，在100万个坐标对上比较
+        Dataset<Row> sample = coordinatePairs(spark, 1_000_000L)
+                .withColumn("reference", variants.get("haversine_expr"));
+        for (Map.Entry<String, Column> variant : variants.entrySet()) {
+            Row error = sample
+                    .withColumn("diff", abs(variant.getValue().minus(col("reference"))))
+                    .agg(max("diff"), max(col("diff").divide(col("reference"))))
+                    .first();
+            System.out.printf("%-18s 最大绝对误差 %.4f km, 最大相对误差 %.2f%%%n",
+                    variant.getKey(), error.getDouble(0), error.getDouble(1) * 100);
+        }
+
+        Dataset<Row> pairs = coordinatePairs(spark, rows);
+        for (Map.Entry<String, Column> variant : variants.entrySet()) {
+            // 预热：触发代码生成和JIT
+            coordinatePairs(spark, Math.min(rows, 10_000_000L)).agg(sum(variant.getValue())).first();
+
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                pairs.agg(sum(variant.getValue())).first();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double seconds = best / 1e9;
+            System.out.printf("%-18s 最佳耗时 %.2fs, 吞吐量 %.1f M对/秒/核%n",
+                    variant.getKey(), seconds, rows / seconds / cores / 1e6);
+        }
+
+        spark.stop();
+    }
+
+    /**
+     * 生成确定性的城市范围坐标对（约±0.5度，接近实际配送距离分布）
+     */
+    private static Dataset<Row> coordinatePairs(SparkSession spark, long rows) {
+        return spark.range(rows)
+                .withColumn("lng1", lit(100.0).plus(pmod(col("id").multiply(7919), lit(2000)).divide(100.0)))
+                .withColumn("lat1", lit(20.0).plus(pmod(col("id").multiply(104729), lit(2500)).divide(100.0)))
+                .withColumn("lng2", col("lng1").plus(pmod(col("id").multiply(31), lit(1000)).divide(1000.0)).minus(0.5))
+                .withColumn("lat2", col("lat1").plus(pmod(col("id").multiply(17), lit(1000)).divide(1000.0)).minus(0.5));
+    }
+
+    /**
+     * 原实现：经纬度差直接乘以111km
+     */
+    private static Column legacyEuclidean(Column lng1, Column lat1, Column lng2, Column lat2) {
+        return sqrt(
+                pow(lng2.minus(lng1).multiply(lit(111.0)), lit(2))
+                        .plus(pow(lat2.minus(lat1).multiply(lit(111.0)), lit(2)))
+        );
+    }
+}